@@ -2,6 +2,8 @@ package cakehat;
 
 import cakehat.email.EmailManager;
 import cakehat.email.EmailManagerImpl;
+import cakehat.email.EmailOutbox;
+import cakehat.email.EmailOutboxImpl;
 import cakehat.services.CourseInfo;
 import cakehat.services.CourseInfoImpl;
 import cakehat.services.GradingServices;
@@ -19,8 +21,16 @@ import cakehat.services.FileSystemServicesImpl;
 import cakehat.services.GradingServicesImpl;
 import cakehat.services.GrdGenerator;
 import cakehat.services.GrdGeneratorImpl;
+import cakehat.services.HandinCatalog;
+import cakehat.services.HandinCatalogImpl;
 import cakehat.services.PathServices;
 import cakehat.services.PathServicesImpl;
+import cakehat.services.GradeSnapshotService;
+import cakehat.services.GradeSnapshotServiceImpl;
+import cakehat.services.GradeStatisticsService;
+import cakehat.services.GradeStatisticsServiceImpl;
+import cakehat.services.TempSpaceManager;
+import cakehat.services.TempSpaceManagerImpl;
 import cakehat.services.UserServices;
 import cakehat.services.UserServicesImpl;
 import support.testutils.TestUtilities;
@@ -125,6 +135,11 @@ public class Allocator
     private final SingletonAllocation<UserUtilities> _userUtils;
     private final SingletonAllocation<DataServices> _dataServices;
     private final SingletonAllocation<EmailManager> _emailManager;
+    private final SingletonAllocation<HandinCatalog> _handinCatalog;
+    private final SingletonAllocation<TempSpaceManager> _tempSpaceManager;
+    private final SingletonAllocation<EmailOutbox> _emailOutbox;
+    private final SingletonAllocation<GradeSnapshotService> _gradeSnapshotService;
+    private final SingletonAllocation<GradeStatisticsService> _gradeStatisticsService;
 
     /**
      * Creates the underlying instance of the Allocator. Any of the parameters may be {@code null}. If the parameter is
@@ -296,6 +311,56 @@ public class Allocator
         {
             _emailManager = customizer._emailManager;
         }
+        
+        if(customizer._handinCatalog == null)
+        {
+            _handinCatalog = new SingletonAllocation<HandinCatalog>()
+                    { public HandinCatalog allocate() { return new HandinCatalogImpl(); } };
+        }
+        else
+        {
+            _handinCatalog = customizer._handinCatalog;
+        }
+        
+        if(customizer._tempSpaceManager == null)
+        {
+            _tempSpaceManager = new SingletonAllocation<TempSpaceManager>()
+                    { public TempSpaceManager allocate() { return new TempSpaceManagerImpl(); } };
+        }
+        else
+        {
+            _tempSpaceManager = customizer._tempSpaceManager;
+        }
+        
+        if(customizer._emailOutbox == null)
+        {
+            _emailOutbox = new SingletonAllocation<EmailOutbox>()
+                    { public EmailOutbox allocate() { return new EmailOutboxImpl(); } };
+        }
+        else
+        {
+            _emailOutbox = customizer._emailOutbox;
+        }
+        
+        if(customizer._gradeSnapshotService == null)
+        {
+            _gradeSnapshotService = new SingletonAllocation<GradeSnapshotService>()
+                    { public GradeSnapshotService allocate() { return new GradeSnapshotServiceImpl(); } };
+        }
+        else
+        {
+            _gradeSnapshotService = customizer._gradeSnapshotService;
+        }
+        
+        if(customizer._gradeStatisticsService == null)
+        {
+            _gradeStatisticsService = new SingletonAllocation<GradeStatisticsService>()
+                    { public GradeStatisticsService allocate() { return new GradeStatisticsServiceImpl(); } };
+        }
+        else
+        {
+            _gradeStatisticsService = customizer._gradeStatisticsService;
+        }
     }
 
     public static CourseInfo getCourseInfo()
@@ -338,6 +403,31 @@ public class Allocator
         return getInstance()._database.getInstance();
     }
 
+    /**
+     * Closes the database if it has been allocated. If it has not been allocated it is not allocated only to be closed.
+     */
+    public static void closeDatabase()
+    {
+        Database database = getInstance()._database._instance;
+        if(database != null)
+        {
+            database.close();
+        }
+    }
+
+    /**
+     * Returns a summary of how the database's connections have been used, or {@code null} if the database has not been
+     * allocated. If it has not been allocated it is not allocated only to be summarized.
+     *
+     * @return
+     */
+    public static String getDatabaseConnectionUsageSummary()
+    {
+        Database database = getInstance()._database._instance;
+
+        return database == null ? null : database.getConnectionUsageSummary();
+    }
+
     public static DataServices getDataServices() 
     {
         return getInstance()._dataServices.getInstance();
@@ -377,6 +467,31 @@ public class Allocator
     {
         return getInstance()._emailManager.getInstance();
     }
+    
+    public static HandinCatalog getHandinCatalog()
+    {
+        return getInstance()._handinCatalog.getInstance();
+    }
+    
+    public static TempSpaceManager getTempSpaceManager()
+    {
+        return getInstance()._tempSpaceManager.getInstance();
+    }
+    
+    public static EmailOutbox getEmailOutbox()
+    {
+        return getInstance()._emailOutbox.getInstance();
+    }
+    
+    public static GradeSnapshotService getGradeSnapshotService()
+    {
+        return getInstance()._gradeSnapshotService.getInstance();
+    }
+    
+    public static GradeStatisticsService getGradeStatisticsService()
+    {
+        return getInstance()._gradeStatisticsService.getInstance();
+    }
 
     /**
      * Outside of the Allocator class, this class should <strong>ONLY</strong> used for testing purposes.
@@ -402,6 +517,11 @@ public class Allocator
         private SingletonAllocation<UserUtilities> _userUtils;
         private SingletonAllocation<DataServices> _dataServices;
         private SingletonAllocation<EmailManager> _emailManager;
+        private SingletonAllocation<HandinCatalog> _handinCatalog;
+        private SingletonAllocation<TempSpaceManager> _tempSpaceManager;
+        private SingletonAllocation<EmailOutbox> _emailOutbox;
+        private SingletonAllocation<GradeSnapshotService> _gradeSnapshotService;
+        private SingletonAllocation<GradeStatisticsService> _gradeStatisticsService;
 
         public Customizer setCourseInfo(SingletonAllocation<CourseInfo> courseInfo)
         {
@@ -514,6 +634,41 @@ public class Allocator
             
             return this;
         }
+        
+        public Customizer setHandinCatalog(SingletonAllocation<HandinCatalog> handinCatalog)
+        {
+            _handinCatalog = handinCatalog;
+            
+            return this;
+        }
+        
+        public Customizer setTempSpaceManager(SingletonAllocation<TempSpaceManager> tempSpaceManager)
+        {
+            _tempSpaceManager = tempSpaceManager;
+            
+            return this;
+        }
+        
+        public Customizer setEmailOutbox(SingletonAllocation<EmailOutbox> emailOutbox)
+        {
+            _emailOutbox = emailOutbox;
+            
+            return this;
+        }
+        
+        public Customizer setGradeSnapshotService(SingletonAllocation<GradeSnapshotService> gradeSnapshotService)
+        {
+            _gradeSnapshotService = gradeSnapshotService;
+            
+            return this;
+        }
+        
+        public Customizer setGradeStatisticsService(SingletonAllocation<GradeStatisticsService> gradeStatisticsService)
+        {
+            _gradeStatisticsService = gradeStatisticsService;
+            
+            return this;
+        }
 
         /**
          * <b>WARNING: THIS METHOD IS FOR TESTING PURPOSES ONLY.</b>
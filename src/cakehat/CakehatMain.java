@@ -2,7 +2,10 @@ package cakehat;
 
 import cakehat.CakehatSession.CakehatSessionProvider;
 import cakehat.CakehatSession.ConnectionType;
+import cakehat.database.DbPropertyValue;
+import cakehat.database.DbPropertyValue.DbPropertyKey;
 import cakehat.database.DbTA;
+import cakehat.email.EmailOutbox;
 import cakehat.logging.ErrorReporter;
 import cakehat.services.ServicesException;
 import com.google.common.collect.ImmutableSet;
@@ -303,11 +306,22 @@ public class CakehatMain
                             }
                         }
 
-                        if(runMode.backupDatabaseOnShutdown())
+                        if(isCakehatConfigured)
                         {
-                            Runtime.getRuntime().addShutdownHook(new Thread()
+                            applyCourseSettings();
+                        }
+
+                        //Close the database's pooled connections when the session ends, and only then back it up
+                        //so that no transaction is in progress while the database file is copied. Shutdown hooks
+                        //run in no particular order, so both are done by the same hook.
+                        final boolean backupDatabase = runMode.backupDatabaseOnShutdown();
+                        Runtime.getRuntime().addShutdownHook(new Thread()
+                        {
+                            public void run()
                             {
-                                public void run()
+                                Allocator.closeDatabase();
+
+                                if(backupDatabase)
                                 {
                                     try
                                     {
@@ -321,8 +335,8 @@ public class CakehatMain
                                         e.printStackTrace();
                                     }
                                 }
-                            });
-                        }
+                            }
+                        });
 
                         runMode.run(parsedArgs, isCakehatConfigured);
                     }
@@ -458,6 +472,42 @@ public class CakehatMain
         }
     }
     
+    /**
+     * Applies the settings the course has configured in the database to the services they affect. Settings that have
+     * not been configured keep their defaults.
+     * 
+     * @throws CakehatException 
+     */
+    private static void applyCourseSettings() throws CakehatException
+    {
+        try
+        {
+            DbPropertyValue<Integer> quotaProp = Allocator.getDatabase()
+                    .getPropertyValue(DbPropertyKey.TEMP_SPACE_QUOTA_MB);
+            if(quotaProp != null)
+            {
+                Allocator.getTempSpaceManager().setQuota(quotaProp.getValue() * 1024L * 1024L);
+            }
+            
+            DbPropertyValue<Integer> maxConnectionsProp = Allocator.getDatabase()
+                    .getPropertyValue(DbPropertyKey.EMAIL_MAX_CONNECTIONS);
+            DbPropertyValue<Integer> messagesPerMinuteProp = Allocator.getDatabase()
+                    .getPropertyValue(DbPropertyKey.EMAIL_MESSAGES_PER_MINUTE);
+            if(maxConnectionsProp != null || messagesPerMinuteProp != null)
+            {
+                int maxConnections = maxConnectionsProp == null ?
+                        EmailOutbox.DEFAULT_MAX_CONNECTIONS : maxConnectionsProp.getValue();
+                double messagesPerSecond = messagesPerMinuteProp == null ?
+                        EmailOutbox.DEFAULT_MESSAGES_PER_SECOND : messagesPerMinuteProp.getValue() / 60D;
+                Allocator.getEmailOutbox().setLimits(maxConnections, messagesPerSecond);
+            }
+        }
+        catch(SQLException e)
+        {
+            throw new CakehatException("Could not retrieve course settings from database.", e);
+        }
+    }
+    
     /**
      * If the user is running over SSH some UI properties will be changed to improve performance.
      */
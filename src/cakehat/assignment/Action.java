@@ -12,9 +12,11 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import support.resources.icons.IconLoader.IconImage;
 import support.ui.ModalDialog;
+import support.ui.ProgressDialog;
 
 /**
  *
@@ -186,22 +188,29 @@ public class Action implements Comparable<Action>
         if(_task != null && _requiredPropertiesPresent)
         {
             Set<Group> groupsWithHandins = new HashSet<Group>();
-            for(Group group : groups)
+            try
             {
-                try
+                Map<Group, File> handins = this.getPart().getGradableEvent().getDigitalHandins(groups);
+                for(Entry<Group, File> entry : handins.entrySet())
                 {
-                    if(this.getPart().getGradableEvent().hasDigitalHandin(group))
+                    if(entry.getValue().exists())
                     {
-                        groupsWithHandins.add(group);
+                        groupsWithHandins.add(entry.getKey());
                     }
                 }
-                catch(IOException e)
+                
+                //If a handin does not exist, then the cache is out of sync
+                if(groupsWithHandins.size() != handins.size())
                 {
-                    throw new TaskException("Unable to determine if a digital handin exists\n" +
-                            "Part: " + this.getPart().getFullDisplayName() + "\n" +
-                            "Group: " + group, e);
+                    this.getPart().getGradableEvent().clearDigitalHandinCache();
                 }
             }
+            catch(IOException e)
+            {
+                throw new TaskException("Unable to determine if digital handins exist\n" +
+                        "Part: " + this.getPart().getFullDisplayName() + "\n" +
+                        "Groups: " + groups, e);
+            }
 
             supported = _task.isTaskSupported(this, groupsWithHandins);
         }
@@ -234,67 +243,171 @@ public class Action implements Comparable<Action>
         }
         else
         {
-            boolean proceed = true;
-            Set<Group> taskGroups = groups;
+            //Keep the handins and temp directories the task uses from being deleted to free up disk space
+            Set<File> dirs = this.getTempSpaceDirs(groups);
+            Allocator.getTempSpaceManager().beginUse(dirs);
+            try
+            {
+                this.performTaskInTempSpace(graphicalOwner, groups);
+            }
+            finally
+            {
+                Allocator.getTempSpaceManager().endUse(dirs);
+            }
+        }
+    }
 
-            //Unarchive each group's handin, keep track of those with missing handins
-            if(_task.requiresDigitalHandin())
+    private void performTaskInTempSpace(Window graphicalOwner, Set<Group> groups) throws TaskException
+    {
+        boolean proceed = true;
+        Set<Group> taskGroups = groups;
+
+        //Unarchive each group's handin, keep track of those with missing handins
+        if(_task.requiresDigitalHandin())
+        {
+            Set<Group> groupsWithMissingHandins = new HashSet<Group>();
+            Set<Group> groupsWithHandins = new HashSet<Group>();
+            for(Group group : groups)
             {
-                Set<Group> groupsWithMissingHandins = new HashSet<Group>();
-                for(Group group : groups)
+                try
                 {
-                    try
+                    if(!this.getPart().getGradableEvent().hasDigitalHandin(group))
                     {
-                        if(!this.getPart().getGradableEvent().hasDigitalHandin(group))
-                        {
-                            groupsWithMissingHandins.add(group);
-                        }
-                        else
-                        {
-                            this.getPart().unarchive(graphicalOwner, group, false);
-                        }
+                        groupsWithMissingHandins.add(group);
                     }
-                    catch(IOException e)
+                    else
                     {
-                        throw new TaskException("Unable to determine if a digital handin exists\n" +
-                                "Part: " + this.getPart().getFullDisplayName() + "\n" +
-                             "Group: " + group, e);
+                        groupsWithHandins.add(group);
                     }
                 }
-
-                if(!groupsWithMissingHandins.isEmpty())
+                catch(IOException e)
                 {
-                    proceed = resolveMissingHandins(graphicalOwner, groupsWithMissingHandins);
-                    if(proceed)
-                    {   
-                        taskGroups = new HashSet<Group>();
-                        taskGroups.addAll(groups);
-                        taskGroups.removeAll(groupsWithMissingHandins);
-                    }
+                    throw new TaskException("Unable to determine if a digital handin exists\n" +
+                            "Part: " + this.getPart().getFullDisplayName() + "\n" +
+                         "Group: " + group, e);
                 }
             }
+            
+            if(!groupsWithHandins.isEmpty())
+            {
+                proceed = this.unarchive(graphicalOwner, groupsWithHandins);
+            }
 
-            if(proceed)
+            if(proceed && !groupsWithMissingHandins.isEmpty())
             {
-                //Check the task is supported before running it
-                if(!_task.isTaskSupported(this, taskGroups))
-                {
-                    throw new IllegalArgumentException(this.getPart().getFullDisplayName() + " does not support " +
-                            "groups " + taskGroups);
-                }
-                
-                this.setupActionTempDir(groups);
-                
-                try
-                {
-                    _task.performTask(_taskProperties, new TaskContext(graphicalOwner), this, taskGroups);
-                }
-                catch(TaskConfigurationIssue issue)
-                {
-                    ModalDialog.showMessage(graphicalOwner, "Configuration Issue", issue.getMessage());
+                proceed = resolveMissingHandins(graphicalOwner, groupsWithMissingHandins);
+                if(proceed)
+                {   
+                    taskGroups = new HashSet<Group>();
+                    taskGroups.addAll(groups);
+                    taskGroups.removeAll(groupsWithMissingHandins);
                 }
             }
         }
+
+        if(proceed)
+        {
+            //Check the task is supported before running it
+            if(!_task.isTaskSupported(this, taskGroups))
+            {
+                throw new IllegalArgumentException(this.getPart().getFullDisplayName() + " does not support " +
+                        "groups " + taskGroups);
+            }
+            
+            this.setupActionTempDir(groups);
+            
+            try
+            {
+                _task.performTask(_taskProperties, new TaskContext(graphicalOwner), this, taskGroups);
+            }
+            catch(TaskConfigurationIssue issue)
+            {
+                ModalDialog.showMessage(graphicalOwner, "Configuration Issue", issue.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Unarchives the digital handins of {@code groups} concurrently while showing the progress to the user, then
+     * notifies the user of any handins that are missing files and directories the part expects.
+     * 
+     * @param owner
+     * @param groups
+     * @return {@code false} if the user canceled unarchiving
+     * @throws TaskException if any of the handins could not be unarchived
+     */
+    private boolean unarchive(Window owner, Set<Group> groups) throws TaskException
+    {
+        UnarchiveTask unarchiveTask = new UnarchiveTask(this.getPart(), groups, UnarchiveTask.DEFAULT_PARALLELISM);
+        try
+        {
+            //Failures are reported together once the task has finished
+            ProgressDialog.showAndWait(owner, owner, "Unarchiving Digital Handins", unarchiveTask,
+                    new ProgressDialog.ExceptionReporter()
+                    {
+                        @Override
+                        public void report(String message, Exception exception) { }
+                    });
+        }
+        catch(InterruptedException e)
+        {
+            unarchiveTask.cancel();
+            Thread.currentThread().interrupt();
+            throw new TaskException("Interrupted while unarchiving digital handins\n" +
+                    "Part: " + this.getPart().getFullDisplayName() + "\n" +
+                    "Groups: " + groups, e);
+        }
+
+        //If the dialog was closed the task is still finishing the extractions that have already started; they clean up
+        //after themselves, so there is no need to wait for them
+        if(!unarchiveTask.isDone())
+        {
+            unarchiveTask.cancel();
+            return false;
+        }
+
+        if(unarchiveTask.getTaskFailure() != null)
+        {
+            throw new TaskException("Unable to unarchive digital handins\n" +
+                    "Part: " + this.getPart().getFullDisplayName() + "\n" +
+                    "Groups: " + groups, unarchiveTask.getTaskFailure());
+        }
+        if(unarchiveTask.wasCanceled())
+        {
+            return false;
+        }
+        
+        Map<Group, IOException> failures = unarchiveTask.getFailures();
+        if(!failures.isEmpty())
+        {
+            List<Group> failedGroups = new ArrayList<Group>(failures.keySet());
+            Collections.sort(failedGroups);
+            String message = "Unable to unarchive digital handins\n" +
+                    "Part: " + this.getPart().getFullDisplayName();
+            for(Group group : failedGroups)
+            {
+                message += "\nGroup: " + group + " - " + failures.get(group).getMessage();
+            }
+            throw new TaskException(message, failures.get(failedGroups.get(0)));
+        }
+
+        Map<Group, String> missingContents = unarchiveTask.getMissingContents();
+        if(!missingContents.isEmpty())
+        {
+            List<Group> sortedGroups = new ArrayList<Group>(missingContents.keySet());
+            Collections.sort(sortedGroups);
+            String message = "Not all files and/or directories this part expected were found in the digital " +
+                    "handins of the following " + (this.getPart().getAssignment().hasGroups() ? "groups" : "students") +
+                    ". All files and directories will now be included for this part so that you can find files " +
+                    "that may be misnamed or placed in the wrong directory.";
+            for(Group group : sortedGroups)
+            {
+                message += "\n\n" + group.getName() + " is missing:\n" + missingContents.get(group);
+            }
+            ModalDialog.showMessage(owner, "Digital Handins - Missing Expected Contents", message);
+        }
+        
+        return true;
     }
     
     private boolean resolveMissingHandins(Window owner, Set<Group> groupsWithMissingHandins)
@@ -313,6 +426,29 @@ public class Action implements Comparable<Action>
         return ModalDialog.showConfirmation(owner, "Missing Handins", message, "Proceed", "Cancel");
     }
     
+    /**
+     * The directories performing this action's task for {@code groups} may use: the groups' unarchive directories if
+     * the task requires digital handins, and the action temp directories.
+     * 
+     * @param groups
+     * @return 
+     */
+    private Set<File> getTempSpaceDirs(Set<Group> groups)
+    {
+        Set<File> dirs = new HashSet<File>();
+        for(Group group : groups)
+        {
+            if(_task.requiresDigitalHandin())
+            {
+                dirs.add(Allocator.getPathServices().getUnarchiveHandinDir(this.getPart(), group));
+            }
+            dirs.add(Allocator.getPathServices().getActionTempDir(this, group));
+        }
+        dirs.add(Allocator.getPathServices().getActionTempDir(this, null));
+        
+        return dirs;
+    }
+    
     private void setupActionTempDir(Set<Group> groups) throws TaskException
     {
         //Build a set with all of the groups and null, null is used when operating on no groups (ex. a demo task)
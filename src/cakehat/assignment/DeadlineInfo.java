@@ -2,7 +2,6 @@ package cakehat.assignment;
 
 import cakehat.database.Extension;
 import org.joda.time.DateTime;
-import org.joda.time.Duration;
 import org.joda.time.Period;
 
 /**
@@ -22,6 +21,9 @@ public class DeadlineInfo
     private final Double _earlyPoints, _latePoints;
     private final Period _latePeriod;
     
+    //The dates as milliseconds, so that resolving a deadline compares longs instead of dates
+    private final long _earlyMillis, _onTimeMillis, _lateMillis;
+    
     private DeadlineInfo(Type type,
             DateTime earlyDate, Double earlyPoints,
             DateTime onTimeDate,
@@ -37,6 +39,10 @@ public class DeadlineInfo
         _lateDate = lateDate;
         _latePoints = latePoints;
         _latePeriod = latePeriod;
+        
+        _earlyMillis = earlyDate == null ? 0 : earlyDate.getMillis();
+        _onTimeMillis = onTimeDate == null ? 0 : onTimeDate.getMillis();
+        _lateMillis = lateDate == null ? 0 : lateDate.getMillis();
     }
     
     /**
@@ -202,129 +208,154 @@ public class DeadlineInfo
      */
     public DeadlineResolution apply(DateTime occurrenceDate, DateTime onTimeExtension, Boolean shiftDates)
     {
-        DeadlineResolution effect;
-        if(occurrenceDate == null)
-        {
-            effect = new DeadlineResolution(TimeStatus.UNKNOWN, 0);
-        }
-        else if(_type == Type.NONE)
-        {
-            effect = new DeadlineResolution(TimeStatus.ON_TIME, 0);
-        }
-        else
-        {
-            //Determe the early, ontime, and late dates to work with
-            DateTime earlyDate, ontimeDate, lateDate;
-            if(onTimeExtension != null)
-            {
-                if(shiftDates)
-                {
-                    Duration shiftBy = new Duration(_onTimeDate, onTimeExtension);
-
-                    earlyDate = (_earlyDate == null) ? null : _earlyDate.plus(shiftBy);
-                    ontimeDate = onTimeExtension;
-                    lateDate = (_lateDate == null) ? null : _lateDate.plus(shiftBy);
-                }
-                else
-                {
-                    earlyDate = null;
-                    ontimeDate = onTimeExtension;
-                    lateDate = null;
-                }
-            }
-            else
-            {
-                earlyDate = _earlyDate;
-                ontimeDate = _onTimeDate;
-                lateDate = _lateDate;
-            }
-
-            if(_type == Type.FIXED)
-            {
-                effect = applyFixed(occurrenceDate, earlyDate, ontimeDate, lateDate);
-            }
-            else if(_type == Type.VARIABLE)
-            {
-                effect = applyVariable(occurrenceDate, ontimeDate, lateDate);
-            }
-            else
-            {
-                throw new IllegalStateException("Unknown " + Type.class.getName() + ": " + _type);
-            }
-        }
-        
-        return effect;
+        return apply(new DateTime[] { occurrenceDate },
+                     new DateTime[] { onTimeExtension },
+                     new boolean[] { onTimeExtension != null && shiftDates }).get(0);
     }
     
-    private DeadlineResolution applyFixed(DateTime occurrenceDate, DateTime earlyDate, DateTime onTimeDate, DateTime lateDate)
+    /**
+     * Determines the effect of this deadline info for each of {@code occurrenceDates}, such as those of every group of
+     * the {@link GradableEvent}, in one pass. The resolution at index {@code i} is that of
+     * {@code apply(occurrenceDates[i], extensions[i])}. A convenience method for
+     * {@link #apply(org.joda.time.DateTime[], org.joda.time.DateTime[], boolean[])}.
+     * 
+     * @param occurrenceDates elements may be {@code null}
+     * @param extensions the same length as {@code occurrenceDates}, elements may be {@code null}
+     * @return 
+     */
+    public DeadlineResolutions apply(DateTime[] occurrenceDates, Extension[] extensions)
     {
-        DeadlineResolution effect;
-        if(earlyDate != null && (occurrenceDate.isBefore(earlyDate) || occurrenceDate.isEqual(earlyDate)))
-        {
-            effect = new DeadlineResolution(TimeStatus.EARLY, _earlyPoints);
-        }
-        else if(occurrenceDate.isBefore(onTimeDate) || occurrenceDate.isEqual(onTimeDate))
-        {
-            effect = new DeadlineResolution(TimeStatus.ON_TIME, 0);
-        }
-        else if(lateDate == null && occurrenceDate.isAfter(onTimeDate))
+        DateTime[] onTimeExtensions = new DateTime[extensions.length];
+        boolean[] shiftDates = new boolean[extensions.length];
+        for(int i = 0; i < extensions.length; i++)
         {
-            effect = new DeadlineResolution(TimeStatus.NC_LATE, Double.NaN);
-        }
-        else if(lateDate != null && (occurrenceDate.isBefore(lateDate) || occurrenceDate.isEqual(lateDate)))
-        {
-            effect = new DeadlineResolution(TimeStatus.LATE, _latePoints);
-        }
-        else if(lateDate != null && occurrenceDate.isAfter(lateDate))
-        {
-            effect = new DeadlineResolution(TimeStatus.NC_LATE, Double.NaN);
-        }
-        else
-        {
-            throw new IllegalStateException("Unexpected situation for FIXED Deadlines\n" +
-                    "Original Early: " + _earlyDate + "\n" +
-                    "Original On Time: " + _onTimeDate + "\n" +
-                    "Original Late: " + _lateDate + "\n" + 
-                    "Occurrence Date: " + occurrenceDate + "\n" +
-                    "Adjusted Early: " + earlyDate + "\n" +
-                    "Adjusted On Time: " + onTimeDate + "\n" + 
-                    "Adjusted Late: " + lateDate);
+            if(extensions[i] != null)
+            {
+                onTimeExtensions[i] = extensions[i].getNewOnTime();
+                shiftDates[i] = extensions[i].getShiftDates();
+            }
         }
         
-        return effect;
+        return apply(occurrenceDates, onTimeExtensions, shiftDates);
     }
     
-    private DeadlineResolution applyVariable(DateTime occurrenceDate, DateTime onTimeDate, DateTime lateDate)
+    /**
+     * Determines the effect of this deadline info for each of {@code occurrenceDates} in one pass. The resolution at
+     * index {@code i} is that of {@code apply(occurrenceDates[i], onTimeExtensions[i], shiftDates[i])}.
+     * 
+     * @param occurrenceDates elements may be {@code null}
+     * @param onTimeExtensions the same length as {@code occurrenceDates}, elements may be {@code null}
+     * @param shiftDates the same length as {@code occurrenceDates}, elements are ignored where
+     * {@code onTimeExtensions} is {@code null}
+     * @return 
+     */
+    public DeadlineResolutions apply(DateTime[] occurrenceDates, DateTime[] onTimeExtensions, boolean[] shiftDates)
     {
-        DeadlineResolution effect;
-        if(occurrenceDate.isBefore(onTimeDate) || occurrenceDate.equals(onTimeDate))
+        if(occurrenceDates.length != onTimeExtensions.length || occurrenceDates.length != shiftDates.length)
         {
-            effect = new DeadlineResolution(TimeStatus.ON_TIME, 0);
+            throw new IllegalArgumentException("occurrenceDates, onTimeExtensions, and shiftDates must be the same " +
+                    "length; lengths: " + occurrenceDates.length + ", " + onTimeExtensions.length + ", " +
+                    shiftDates.length);
         }
-        //If there is a date after which ocurrence dates become NC Late
-        else if(lateDate != null && occurrenceDate.isAfter(lateDate))
+        
+        TimeStatus[] statuses = new TimeStatus[occurrenceDates.length];
+        double[] penaltiesOrBonuses = new double[occurrenceDates.length];
+        long latePeriod = 0;
+        for(int i = 0; i < occurrenceDates.length; i++)
         {
-            effect = new DeadlineResolution(TimeStatus.NC_LATE, Double.NaN);
-        }
-        else
-        {   
-            long amountLate = new Duration(onTimeDate, occurrenceDate).getMillis();
-            long latePeriod = _latePeriod.toStandardDuration().getMillis();
-            //Units late = ceiling(amount late / late period)
-            //For example:
-            // - if the amount late is 1 second and the late period is 5 minutes,
-            //   then there is 1 late unit
-            // - if the amount late is 5 minutes and the late period is 5 minutes,
-            //   then there is 1 late unit
-            // - if the amount later is 5 minutes 1 second and the late period is 5 minutes,
-            //   then there are 2 late units
-            long unitsLate = amountLate / latePeriod + (amountLate % latePeriod == 0 ? 0 : 1);
-            double pointsEffect = unitsLate * _latePoints;
-
-            effect = new DeadlineResolution(TimeStatus.LATE, pointsEffect);
+            if(occurrenceDates[i] == null)
+            {
+                statuses[i] = TimeStatus.UNKNOWN;
+            }
+            else if(_type == Type.NONE)
+            {
+                statuses[i] = TimeStatus.ON_TIME;
+            }
+            else
+            {
+                //Determine the early, ontime, and late dates to work with
+                long occurrenceDate = occurrenceDates[i].getMillis();
+                long earlyDate = _earlyMillis, onTimeDate = _onTimeMillis, lateDate = _lateMillis;
+                boolean hasEarlyDate = _earlyDate != null, hasLateDate = _lateDate != null;
+                if(onTimeExtensions[i] != null)
+                {
+                    onTimeDate = onTimeExtensions[i].getMillis();
+                    if(shiftDates[i])
+                    {
+                        long shiftBy = onTimeDate - _onTimeMillis;
+                        earlyDate += shiftBy;
+                        lateDate += shiftBy;
+                    }
+                    else
+                    {
+                        hasEarlyDate = false;
+                        hasLateDate = false;
+                    }
+                }
+                
+                if(_type == Type.FIXED)
+                {
+                    if(hasEarlyDate && occurrenceDate <= earlyDate)
+                    {
+                        statuses[i] = TimeStatus.EARLY;
+                        penaltiesOrBonuses[i] = _earlyPoints;
+                    }
+                    else if(occurrenceDate <= onTimeDate)
+                    {
+                        statuses[i] = TimeStatus.ON_TIME;
+                    }
+                    else if(hasLateDate && occurrenceDate <= lateDate)
+                    {
+                        statuses[i] = TimeStatus.LATE;
+                        penaltiesOrBonuses[i] = _latePoints;
+                    }
+                    else
+                    {
+                        statuses[i] = TimeStatus.NC_LATE;
+                        penaltiesOrBonuses[i] = Double.NaN;
+                    }
+                }
+                else if(_type == Type.VARIABLE)
+                {
+                    if(occurrenceDate <= onTimeDate)
+                    {
+                        statuses[i] = TimeStatus.ON_TIME;
+                    }
+                    //If there is a date after which ocurrence dates become NC Late
+                    else if(hasLateDate && occurrenceDate > lateDate)
+                    {
+                        statuses[i] = TimeStatus.NC_LATE;
+                        penaltiesOrBonuses[i] = Double.NaN;
+                    }
+                    else
+                    {
+                        if(latePeriod == 0)
+                        {
+                            latePeriod = _latePeriod.toStandardDuration().getMillis();
+                        }
+                        long amountLate = occurrenceDate - onTimeDate;
+                        //Units late = ceiling(amount late / late period)
+                        //For example:
+                        // - if the amount late is 1 second and the late period is 5 minutes,
+                        //   then there is 1 late unit
+                        // - if the amount late is 5 minutes and the late period is 5 minutes,
+                        //   then there is 1 late unit
+                        // - if the amount later is 5 minutes 1 second and the late period is 5 minutes,
+                        //   then there are 2 late units
+                        long unitsLate = amountLate / latePeriod + (amountLate % latePeriod == 0 ? 0 : 1);
+                        
+                        statuses[i] = TimeStatus.LATE;
+                        penaltiesOrBonuses[i] = unitsLate * _latePoints;
+                    }
+                }
+                else
+                {
+                    throw new IllegalStateException("Unknown " + Type.class.getName() + ": " + _type);
+                }
+            }
         }
         
-        return effect;
+        return new DeadlineResolutions(statuses, penaltiesOrBonuses);
     }
     
     public static enum TimeStatus
@@ -401,4 +432,55 @@ public class DeadlineInfo
             return "[TimeStatus=" + _status + ", PenaltyOrBonus=" + _penaltyOrBonus + "]";
         }
     }
+    
+    /**
+     * The effects of a DeadlineInfo instance for a number of occurrence dates, as determined by
+     * {@link DeadlineInfo#apply(org.joda.time.DateTime[], org.joda.time.DateTime[], boolean[])}. Index {@code i} is the
+     * effect for the occurrence date at index {@code i}.
+     */
+    public static class DeadlineResolutions
+    {
+        private final TimeStatus[] _statuses;
+        private final double[] _penaltiesOrBonuses;
+        
+        private DeadlineResolutions(TimeStatus[] statuses, double[] penaltiesOrBonuses)
+        {
+            _statuses = statuses;
+            _penaltiesOrBonuses = penaltiesOrBonuses;
+        }
+        
+        public int size()
+        {
+            return _statuses.length;
+        }
+        
+        public TimeStatus getTimeStatus(int index)
+        {
+            return _statuses[index];
+        }
+        
+        /**
+         * Returns the penalty or bonus for the occurrence date at {@code index}, in the same manner as
+         * {@link DeadlineResolution#getPenaltyOrBonus(java.lang.Double)}.
+         * 
+         * @param index
+         * @param unadjustedGradableEventTotalEarned
+         * @return 
+         */
+        public double getPenaltyOrBonus(int index, Double unadjustedGradableEventTotalEarned)
+        {
+            double penaltyOrBonus = _penaltiesOrBonuses[index];
+            if(_statuses[index] == TimeStatus.NC_LATE)
+            {
+                penaltyOrBonus = unadjustedGradableEventTotalEarned == null ? 0 : -unadjustedGradableEventTotalEarned;
+            }
+            
+            return penaltyOrBonus;
+        }
+        
+        public DeadlineResolution get(int index)
+        {
+            return new DeadlineResolution(_statuses[index], _penaltiesOrBonuses[index]);
+        }
+    }
 }
\ No newline at end of file
@@ -4,16 +4,22 @@ import cakehat.Allocator;
 import cakehat.database.Group;
 import cakehat.database.Student;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import org.joda.time.DateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import support.utils.FilePermissionException;
 
 /**
  * A {@code GradableEvent} belongs to an {@code Assignment} and is a collection of {@link Part}s. Conceptually a
@@ -49,10 +55,15 @@ public class GradableEvent implements Comparable<GradableEvent>, Iterable<Part>
     
     /**
      * Populated with the files representing the digital handins. It will be {@code null} until it is first requested
-     * with a call to {@link #getHandins()} and it may become {@code null} again when the cache is cleared by
-     * {@link #clearHandinCache()}.
+     * with a call to {@link #getHandinIndex()} and it may become {@code null} again when the cache is cleared by
+     * {@link #clearDigitalHandinCache()}.
      */
-    private Set<File> _handins = null;
+    private volatile HandinIndex _handins = null;
+    
+    /**
+     * Incremented whenever cached digital handins which may have already been used are discarded.
+     */
+    private final AtomicLong _handinCacheVersion = new AtomicLong();
     
     /**
      * Constructs a GradableEvent.
@@ -196,42 +207,92 @@ public class GradableEvent implements Comparable<GradableEvent>, Iterable<Part>
     public void clearDigitalHandinCache()
     {
         _handins = null;
+        _handinCacheVersion.incrementAndGet();
+    }
+    
+    /**
+     * Returns a number which changes whenever the cached digital handins are cleared or are reloaded because they
+     * changed. Anything computed from the digital handins is out of date if this number has changed since before it
+     * was computed.
+     * 
+     * @return 
+     */
+    public long getDigitalHandinCacheVersion()
+    {
+        return _handinCacheVersion.get();
     }
 
     /**
-     * Returns an immutable set of the {@link File}s for each digital handin for this GradableEvent. If this method has
-     * not been called before it will load all of the digital handins. Subsequent calls of this method will return the
-     * same list unless the cache has been cleared with {@link #clearDigitalHandinCache()}.
+     * Returns the index of the digital handins for this GradableEvent. If this method has not been called before it will
+     * load all of the digital handins. Subsequent calls of this method will return the same index unless the cache has
+     * been cleared with {@link #clearDigitalHandinCache()}.
      *
-     * @return set of digital handins
+     * @return index of digital handins
      */
-    private Set<File> getDigitalHandins() throws IOException
+    private HandinIndex getHandinIndex() throws IOException
     {
         //If digital handins have not been requested yet, load them
-        if(_handins == null)
+        HandinIndex handins = _handins;
+        if(handins == null)
         {
-            if(_handinDirectory != null && _handinDirectory.exists() && _handinDirectory.isDirectory())
-            {
-                FileFilter handinFilter = Allocator.getArchiveUtilities().getArchiveFormatsFileFilter();
-
-                try
-                {
-                    _handins = Allocator.getFileSystemUtilities().getFiles(_handinDirectory, handinFilter);
-                }
-                catch(IOException e)
-                {
-                    throw new IOException("Unable to retrieve handins for gradable event [" + 
-                            _name + "] with specified digital handin directory [" +
-                            _handinDirectory.getAbsolutePath() + "]", e);
-                }
-            }
-            else
-            {
-                _handins = ImmutableSet.of();
-            }
+            handins = new HandinIndex(_handinDirectory, Allocator.getArchiveUtilities().getArchiveFormatsFileFilter());
+            this.refreshHandinIndex(handins);
+            _handins = handins;
         }
 
-        return _handins;
+        return handins;
+    }
+    
+    /**
+     * Updates the cached digital handins with the handins that have been added, removed or modified since they were
+     * loaded or last refreshed. The size and modification time of each handin is read, as overwriting a handin does not
+     * change the modification time of its directory, and only the directories whose modification time changed are
+     * listed again. The index is updated only for the handins which changed. This is cheap enough to call periodically.
+     * If the digital handins have not been loaded yet then there is nothing to refresh and this method does nothing.
+     * 
+     * @return whether any handin was added, removed or modified
+     * @throws IOException 
+     */
+    public boolean refreshDigitalHandinCache() throws IOException
+    {
+        HandinIndex handins = _handins;
+        if(handins == null)
+        {
+            return false;
+        }
+        
+        boolean changed;
+        try
+        {
+            changed = this.refreshHandinIndex(handins);
+        }
+        catch(IOException e)
+        {
+            //The index may have been partially updated, so load it again when it is next needed
+            this.clearDigitalHandinCache();
+            throw e;
+        }
+        
+        if(changed)
+        {
+            _handinCacheVersion.incrementAndGet();
+        }
+        
+        return changed;
+    }
+    
+    private boolean refreshHandinIndex(HandinIndex handins) throws IOException
+    {
+        try
+        {
+            return handins.refresh();
+        }
+        catch(IOException e)
+        {
+            throw new IOException("Unable to retrieve handins for gradable event [" + 
+                    _name + "] with specified digital handin directory [" +
+                    _handinDirectory.getAbsolutePath() + "]", e);
+        }
     }
 
     /**
@@ -244,20 +305,10 @@ public class GradableEvent implements Comparable<GradableEvent>, Iterable<Part>
      */
     public File getDigitalHandin(Group group) throws IOException
     {
-        //Valid names are the login of any group member or the group name
-        HashSet<String> validHandinNames = new HashSet<String>();
-        for(Student student : group)
-        {
-            validHandinNames.add(student.getLogin());
-        }
-        validHandinNames.add(group.getName());
-
-        //Get all handins for the group
-        ArrayList<File> matchingHandins = new ArrayList<File>();
-        Set<File> allHandins;
+        HandinIndex handins;
         try
         {
-            allHandins = this.getDigitalHandins();
+            handins = this.getHandinIndex();
         }
         catch(IOException e)
         {
@@ -265,32 +316,33 @@ public class GradableEvent implements Comparable<GradableEvent>, Iterable<Part>
                     _name + "] with specified digital handin directory [" + _handinDirectory.getAbsolutePath() + "]", e);
         }
 
-        for(File handin : allHandins)
-        {
-            for(String name : validHandinNames)
-            {
-                if(handin.getName().startsWith(name + "."))
-                {
-                    matchingHandins.add(handin);
-                }
-            }
-        }
-
-        //Find the most recent
-        File mostRecentHandin = null;
-        for(File handin : matchingHandins)
+        return handins.getMostRecentHandin(group);
+    }
+    
+    /**
+     * Finds the most recent digital handin for each of the {@code groups} as described by
+     * {@link #getDigitalHandin(Group)}. The handins are loaded at most once for all of the groups. Groups without a
+     * digital handin will not have an entry in the returned map.
+     * 
+     * @param groups
+     * @return immutable map from group to the File representing the group's digital handin
+     * @throws IOException 
+     */
+    public Map<Group, File> getDigitalHandins(Set<Group> groups) throws IOException
+    {
+        HandinIndex handins = this.getHandinIndex();
+        
+        ImmutableMap.Builder<Group, File> groupHandins = ImmutableMap.builder();
+        for(Group group : groups)
         {
-            if(mostRecentHandin == null)
+            File handin = handins.getMostRecentHandin(group);
+            if(handin != null)
             {
-                mostRecentHandin = handin;
-            }
-            else if(new DateTime(handin.lastModified()).isAfter(new DateTime(mostRecentHandin.lastModified())))
-            {
-                mostRecentHandin = handin;
+                groupHandins.put(group, handin);
             }
         }
-
-        return mostRecentHandin;
+        
+        return groupHandins.build();
     }
 
     /**
@@ -324,7 +376,7 @@ public class GradableEvent implements Comparable<GradableEvent>, Iterable<Part>
     public Set<String> getDigitalHandinNames() throws IOException
     {
         Set<String> logins = new HashSet<String>();
-        for(File handin : this.getDigitalHandins())
+        for(File handin : this.getHandinIndex().getHandins())
         {
             //Split at the first . in the filename
             //If handin is "jak2.tar", will add the "jak2" part
@@ -335,6 +387,316 @@ public class GradableEvent implements Comparable<GradableEvent>, Iterable<Part>
         return logins;
     }
     
+    /**
+     * The digital handins of a GradableEvent indexed by the names that may identify them. A handin is identified by a
+     * name if its file name starts with that name followed by a period, so {@code jak2.tar.gz} is identified by
+     * {@code jak2} and {@code jak2.tar}. Each name is mapped to its most recently modified handin so that finding a
+     * group's handin only requires a lookup for each valid name rather than a scan of every handin.
+     * <br/><br/>
+     * The index is loaded and kept up to date by {@link #refresh()}. The index is refreshed by the thread checking for
+     * changes to the handins while other threads read from it, so all access is synchronized.
+     */
+    private static class HandinIndex
+    {
+        /**
+         * Modification times are only recorded to the second on some file systems, so a directory modified within this
+         * long of being listed may be modified again without its modification time changing.
+         */
+        private static final long MODIFICATION_TIME_GRANULARITY_MILLIS = 2000;
+        
+        private final File _handinDirectory;
+        private final FileFilter _handinFilter;
+        
+        /**
+         * The size and modification time of each handin when it was last read.
+         */
+        private final Map<File, FileState> _handins = new HashMap<File, FileState>();
+        private final SetMultimap<String, File> _handinsByName = HashMultimap.create();
+        private final Map<String, File> _mostRecentByName = new HashMap<String, File>();
+        
+        /**
+         * The modification time of the handin directory and each directory within it when it was last listed, or
+         * {@code null} if it was modified too recently for a change to be detectable from its modification time.
+         */
+        private final Map<File, Long> _directories = new HashMap<File, Long>();
+        
+        /**
+         * Constructs an empty index; it is loaded by the first call to {@link #refresh()}.
+         * 
+         * @param handinDirectory may be {@code null}
+         * @param handinFilter 
+         */
+        HandinIndex(File handinDirectory, FileFilter handinFilter)
+        {
+            _handinDirectory = handinDirectory;
+            _handinFilter = handinFilter;
+        }
+        
+        /**
+         * Updates the index with the handins that have been added, removed or modified since it was last refreshed.
+         * 
+         * @return whether any handin was added, removed or modified
+         * @throws IOException if a directory could not be listed
+         */
+        synchronized boolean refresh() throws IOException
+        {
+            Set<String> changedNames = new HashSet<String>();
+            
+            if(_directories.isEmpty())
+            {
+                if(_handinDirectory != null && _handinDirectory.isDirectory())
+                {
+                    this.listDirectory(_handinDirectory, changedNames);
+                }
+            }
+            else
+            {
+                //Handins are only added to or removed from directories whose modification time has changed
+                for(Map.Entry<File, Long> directory : new HashMap<File, Long>(_directories).entrySet())
+                {
+                    File dir = directory.getKey();
+                    if(!_directories.containsKey(dir))
+                    {
+                        //Removed along with the directory containing it
+                    }
+                    else if(!dir.isDirectory())
+                    {
+                        this.removeDirectory(dir, changedNames);
+                    }
+                    else if(directory.getValue() == null || directory.getValue() != dir.lastModified())
+                    {
+                        this.listDirectory(dir, changedNames);
+                    }
+                }
+            }
+            
+            //Overwriting a handin does not change the modification time of its directory
+            List<File> removed = new ArrayList<File>();
+            for(Map.Entry<File, FileState> handin : _handins.entrySet())
+            {
+                FileState state = new FileState(handin.getKey());
+                if(!state.equals(handin.getValue()))
+                {
+                    if(state.exists())
+                    {
+                        handin.setValue(state);
+                        changedNames.addAll(getNames(handin.getKey()));
+                    }
+                    else
+                    {
+                        removed.add(handin.getKey());
+                    }
+                }
+            }
+            for(File handin : removed)
+            {
+                this.removeHandin(handin, changedNames);
+            }
+            
+            for(String name : changedNames)
+            {
+                File mostRecent = null;
+                for(File handin : _handinsByName.get(name))
+                {
+                    if(mostRecent == null ||
+                            _handins.get(handin).getLastModified() > _handins.get(mostRecent).getLastModified())
+                    {
+                        mostRecent = handin;
+                    }
+                }
+                
+                if(mostRecent == null)
+                {
+                    _mostRecentByName.remove(name);
+                }
+                else
+                {
+                    _mostRecentByName.put(name, mostRecent);
+                }
+            }
+            
+            return !changedNames.isEmpty();
+        }
+        
+        /**
+         * Adds the handins in {@code dir} which are not yet in the index and removes those which are no longer in it.
+         * Directories within {@code dir} which are not yet in the index are listed as well.
+         */
+        private void listDirectory(File dir, Set<String> changedNames) throws FilePermissionException
+        {
+            //Read before listing so that a change made while listing results in the directory being listed again
+            long lastModified = dir.lastModified();
+            File[] entries = dir.listFiles();
+            if(entries == null)
+            {
+                throw new FilePermissionException(ImmutableSet.of(dir), "One or more directories were encountered " +
+                        "whose contents could not be accessed");
+            }
+            _directories.put(dir, System.currentTimeMillis() - lastModified < MODIFICATION_TIME_GRANULARITY_MILLIS ?
+                    null : lastModified);
+            
+            Set<File> present = ImmutableSet.copyOf(entries);
+            for(File handin : new ArrayList<File>(_handins.keySet()))
+            {
+                if(dir.equals(handin.getParentFile()) && !present.contains(handin))
+                {
+                    this.removeHandin(handin, changedNames);
+                }
+            }
+            for(File subdir : new ArrayList<File>(_directories.keySet()))
+            {
+                if(dir.equals(subdir.getParentFile()) && !present.contains(subdir))
+                {
+                    this.removeDirectory(subdir, changedNames);
+                }
+            }
+            
+            for(File entry : entries)
+            {
+                if(entry.isDirectory())
+                {
+                    if(!_directories.containsKey(entry))
+                    {
+                        this.listDirectory(entry, changedNames);
+                    }
+                }
+                else if(!_handins.containsKey(entry) && _handinFilter.accept(entry))
+                {
+                    _handins.put(entry, new FileState(entry));
+                    for(String name : getNames(entry))
+                    {
+                        _handinsByName.put(name, entry);
+                        changedNames.add(name);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Removes {@code dir} and the directories and handins within it.
+         */
+        private void removeDirectory(File dir, Set<String> changedNames)
+        {
+            String prefix = dir.getPath() + File.separator;
+            for(File subdir : new ArrayList<File>(_directories.keySet()))
+            {
+                if(subdir.equals(dir) || subdir.getPath().startsWith(prefix))
+                {
+                    _directories.remove(subdir);
+                }
+            }
+            for(File handin : new ArrayList<File>(_handins.keySet()))
+            {
+                if(handin.getPath().startsWith(prefix))
+                {
+                    this.removeHandin(handin, changedNames);
+                }
+            }
+        }
+        
+        private void removeHandin(File handin, Set<String> changedNames)
+        {
+            _handins.remove(handin);
+            for(String name : getNames(handin))
+            {
+                _handinsByName.remove(name, handin);
+                changedNames.add(name);
+            }
+        }
+        
+        /**
+         * The names which identify {@code handin}.
+         */
+        private static List<String> getNames(File handin)
+        {
+            List<String> names = new ArrayList<String>();
+            String fileName = handin.getName();
+            for(int i = fileName.indexOf('.'); i != -1; i = fileName.indexOf('.', i + 1))
+            {
+                names.add(fileName.substring(0, i));
+            }
+            
+            return names;
+        }
+        
+        synchronized Set<File> getHandins()
+        {
+            return ImmutableSet.copyOf(_handins.keySet());
+        }
+        
+        /**
+         * Valid names are the login of any group member or the group name.
+         */
+        synchronized File getMostRecentHandin(Group group)
+        {
+            File mostRecentHandin = this.getMostRecentHandin(group.getName(), null);
+            for(Student student : group)
+            {
+                mostRecentHandin = this.getMostRecentHandin(student.getLogin(), mostRecentHandin);
+            }
+            
+            return mostRecentHandin;
+        }
+        
+        private File getMostRecentHandin(String name, File mostRecentHandin)
+        {
+            File handin = _mostRecentByName.get(name);
+            if(handin != null && (mostRecentHandin == null ||
+                    _handins.get(handin).getLastModified() > _handins.get(mostRecentHandin).getLastModified()))
+            {
+                mostRecentHandin = handin;
+            }
+            
+            return mostRecentHandin;
+        }
+    }
+    
+    /**
+     * The size and modification time of a file when it was read.
+     */
+    private static class FileState
+    {
+        private final long _size;
+        private final long _lastModified;
+        
+        FileState(File file)
+        {
+            _size = file.length();
+            _lastModified = file.lastModified();
+        }
+        
+        long getLastModified()
+        {
+            return _lastModified;
+        }
+        
+        /**
+         * Whether the file existed when it was read; {@link File#lastModified()} is {@code 0} if it does not exist.
+         */
+        boolean exists()
+        {
+            return _lastModified != 0L;
+        }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof FileState))
+            {
+                return false;
+            }
+            FileState other = (FileState) obj;
+            
+            return _size == other._size && _lastModified == other._lastModified;
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return (int) (_size ^ (_size >>> 32)) * 31 + (int) (_lastModified ^ (_lastModified >>> 32));
+        }
+    }
+    
     @Override
     public String toString()
     {
@@ -0,0 +1,170 @@
+package cakehat.assignment;
+
+import cakehat.logging.ErrorReporter;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Periodically checks the digital handin directories of gradable events for handins that have been added, removed or
+ * replaced and reloads the cached handins of those that have changed. Listeners are notified of each gradable event
+ * whose handins changed so that anything showing handin status can be updated without a manual refresh.
+ * <br/><br/>
+ * Changes are detected by polling the size and modification time of each handin and the modification time of each
+ * directory holding handins, which works on NFS where file system change notifications are not delivered. Only gradable
+ * events whose handins have already been loaded are checked; the handins of any other gradable event will be current
+ * when they are first loaded.
+ */
+public class HandinDirectoryMonitor
+{
+    /**
+     * The interval at which the views check for changes to the digital handins.
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 10 * 1000;
+
+    private final ImmutableList<GradableEvent> _gradableEvents;
+    private final List<HandinListener> _listeners = new CopyOnWriteArrayList<HandinListener>();
+
+    /**
+     * The timer running the checks, or {@code null} if it is not running. Guarded by {@code this}.
+     */
+    private Timer _timer;
+
+    /**
+     * Whether the last check failed, so that a handin directory that is unavailable for a while is reported once rather
+     * than on every check. Only accessed by the timer's thread.
+     */
+    private boolean _checkFailed = false;
+
+    /**
+     * @param assignments the assignments whose gradable events with digital handins will be monitored
+     */
+    public HandinDirectoryMonitor(Iterable<Assignment> assignments)
+    {
+        ImmutableList.Builder<GradableEvent> gradableEvents = ImmutableList.builder();
+        for(Assignment asgn : assignments)
+        {
+            for(GradableEvent ge : asgn)
+            {
+                if(ge.hasDigitalHandins())
+                {
+                    gradableEvents.add(ge);
+                }
+            }
+        }
+        _gradableEvents = gradableEvents.build();
+    }
+
+    /**
+     * Starts checking for changes on a background thread every {@code intervalMillis} milliseconds, replacing any checks
+     * that are already running.
+     *
+     * @param intervalMillis must be positive
+     */
+    public synchronized void start(long intervalMillis)
+    {
+        if(intervalMillis <= 0)
+        {
+            throw new IllegalArgumentException("intervalMillis must be positive, was " + intervalMillis);
+        }
+
+        this.stop();
+        _timer = new Timer("cakehat-handin-monitor", true);
+        _timer.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                checkForChangesAndReport();
+            }
+        }, intervalMillis, intervalMillis);
+    }
+
+    public synchronized void stop()
+    {
+        if(_timer != null)
+        {
+            _timer.cancel();
+            _timer = null;
+        }
+    }
+
+    /**
+     * Checks each monitored gradable event for changes to its digital handins and notifies listeners of each gradable
+     * event whose handins changed.
+     *
+     * @throws IOException if the handins of a gradable event could not be reloaded; the remaining gradable events are
+     * still checked
+     */
+    public void checkForChanges() throws IOException
+    {
+        IOException failure = null;
+        for(GradableEvent ge : _gradableEvents)
+        {
+            try
+            {
+                if(ge.refreshDigitalHandinCache())
+                {
+                    for(HandinListener listener : _listeners)
+                    {
+                        listener.handinsChanged(ge);
+                    }
+                }
+            }
+            catch(IOException e)
+            {
+                failure = e;
+            }
+        }
+
+        if(failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    private void checkForChangesAndReport()
+    {
+        IOException failure = null;
+        try
+        {
+            this.checkForChanges();
+        }
+        catch(IOException e)
+        {
+            failure = e;
+        }
+
+        if(failure != null && !_checkFailed)
+        {
+            ErrorReporter.report("Unable to check for new digital handins. New handins will not be shown until the " +
+                    "check succeeds.", failure);
+        }
+        _checkFailed = (failure != null);
+    }
+
+    public void addHandinListener(HandinListener listener)
+    {
+        _listeners.add(listener);
+    }
+
+    public void removeHandinListener(HandinListener listener)
+    {
+        _listeners.remove(listener);
+    }
+
+    public static interface HandinListener
+    {
+        /**
+         * Called when the digital handins of {@code gradableEvent} have changed. This is called on the monitor's
+         * background thread, so implementations that update UI components must do so via
+         * {@link java.awt.EventQueue#invokeLater(Runnable)}.
+         *
+         * @param gradableEvent
+         */
+        public void handinsChanged(GradableEvent gradableEvent);
+    }
+}
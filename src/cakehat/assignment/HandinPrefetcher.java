@@ -0,0 +1,245 @@
+package cakehat.assignment;
+
+import cakehat.Allocator;
+import cakehat.database.Group;
+import cakehat.services.CatalogedHandin;
+import cakehat.services.ServicesException;
+import cakehat.services.TempSpaceManager;
+import com.google.common.collect.SetMultimap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unarchives digital handins in the background before they are needed, so that actions performed on them do not have
+ * to wait for them to be unarchived. Handins are unarchived one at a time on a single low priority thread, in the
+ * order of their parts and then groups.
+ * <br/><br/>
+ * Unarchiving pauses from when foreground work begins, as reported by {@link #beginForegroundWork()}, until all
+ * foreground work has ended, as reported by {@link #endForegroundWork()}. A handin already being unarchived when
+ * foreground work begins is finished.
+ * Handins that cannot be unarchived are skipped; the failure will be reported if the handin is unarchived for an
+ * action.
+ * <br/><br/>
+ * Unarchiving stops once the unarchived handins and temp directories use the {@link TempSpaceManager}'s quota, so that
+ * handins unarchived in advance do not cause handins unarchived earlier, by the prefetcher or for an action, to be
+ * deleted to free up disk space.
+ */
+public class HandinPrefetcher
+{
+    private final List<Part> _parts;
+    private final SetMultimap<Part, Group> _groups;
+
+    private final Object _foregroundWorkLock = new Object();
+
+    /**
+     * The number of pieces of foreground work that have begun and not yet ended. Guarded by
+     * {@code _foregroundWorkLock}.
+     */
+    private int _foregroundWorkCount = 0;
+
+    /**
+     * The thread unarchiving handins, or {@code null} if it is not running. Guarded by {@code this}.
+     */
+    private Thread _thread;
+
+    /**
+     * @param groups the groups whose handins will be unarchived for each part; parts without digital handins are
+     * ignored
+     */
+    public HandinPrefetcher(SetMultimap<Part, Group> groups)
+    {
+        _groups = groups;
+
+        _parts = new ArrayList<Part>();
+        for(Part part : groups.keySet())
+        {
+            if(part.getGradableEvent().hasDigitalHandins())
+            {
+                _parts.add(part);
+            }
+        }
+        Collections.sort(_parts);
+    }
+
+    /**
+     * Starts unarchiving handins in the background. Has no effect if already started.
+     */
+    public synchronized void start()
+    {
+        if(_thread == null)
+        {
+            _thread = new Thread("cakehat-handin-prefetcher")
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        prefetch();
+                    }
+                    //Signals that the prefetcher was stopped
+                    catch(InterruptedException e) { }
+                }
+            };
+            _thread.setDaemon(true);
+            _thread.setPriority(Thread.MIN_PRIORITY);
+            _thread.start();
+        }
+    }
+
+    /**
+     * Stops unarchiving handins. A handin that is being unarchived will finish being unarchived.
+     */
+    public synchronized void stop()
+    {
+        if(_thread != null)
+        {
+            _thread.interrupt();
+            _thread = null;
+        }
+    }
+
+    /**
+     * Pauses unarchiving so that it does not compete with work the user is waiting on. Unarchiving resumes once
+     * {@link #endForegroundWork()} has been called once for each call to this method.
+     */
+    public void beginForegroundWork()
+    {
+        synchronized(_foregroundWorkLock)
+        {
+            _foregroundWorkCount++;
+        }
+    }
+
+    /**
+     * Reports that foreground work begun by {@link #beginForegroundWork()} has ended.
+     */
+    public void endForegroundWork()
+    {
+        synchronized(_foregroundWorkLock)
+        {
+            if(_foregroundWorkCount == 0)
+            {
+                throw new IllegalStateException("endForegroundWork() called without a matching beginForegroundWork()");
+            }
+
+            _foregroundWorkCount--;
+            if(_foregroundWorkCount == 0)
+            {
+                _foregroundWorkLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Unarchives handins until all have been unarchived or the quota is used.
+     * <br/><br/>
+     * Package private for testing purposes.
+     *
+     * @throws InterruptedException if the prefetcher is stopped
+     */
+    void prefetch() throws InterruptedException
+    {
+        for(Part part : _parts)
+        {
+            if(isQuotaUsed())
+            {
+                return;
+            }
+
+            List<Group> groups = new ArrayList<Group>();
+            for(Group group : _groups.get(part))
+            {
+                if(!Allocator.getPathServices().getUnarchiveHandinDir(part, group).exists())
+                {
+                    groups.add(group);
+                }
+            }
+            Collections.sort(groups);
+
+            //Find and catalog all of the part's handins at once, before unarchiving any of them
+            Map<Group, File> handins;
+            Map<File, CatalogedHandin> catalogedHandins;
+            try
+            {
+                awaitNotPaused();
+                handins = part.getGradableEvent().getDigitalHandins(new HashSet<Group>(groups));
+                catalogedHandins = Allocator.getHandinCatalog().getCatalogedHandins(
+                        new HashSet<File>(handins.values()));
+            }
+            //Failures are reported if the handins are unarchived for an action
+            catch(IOException e)
+            {
+                continue;
+            }
+            catch(ServicesException e)
+            {
+                continue;
+            }
+
+            for(Group group : groups)
+            {
+                File handin = handins.get(group);
+                if(handin != null)
+                {
+                    awaitNotPaused();
+                    if(isQuotaUsed())
+                    {
+                        return;
+                    }
+
+                    //Handins that could not be cataloged are reported if they are unarchived for an action
+                    CatalogedHandin catalogedHandin = catalogedHandins.get(handin);
+                    if(catalogedHandin == null)
+                    {
+                        continue;
+                    }
+                    try
+                    {
+                        part.prefetchHandin(group, handin, catalogedHandin.getContents());
+                    }
+                    //Reported if the handin is unarchived for an action
+                    catch(IOException e) { }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the tracked trees use all of the quota. Sizes are measured in the background, so the most recently
+     * unarchived handins may not yet be counted.
+     *
+     * @return
+     */
+    private static boolean isQuotaUsed()
+    {
+        TempSpaceManager tempSpaceManager = Allocator.getTempSpaceManager();
+
+        return tempSpaceManager.getUsage() >= tempSpaceManager.getQuota();
+    }
+
+    /**
+     * Blocks until unarchiving is not paused.
+     *
+     * @throws InterruptedException if the prefetcher is stopped
+     */
+    private void awaitNotPaused() throws InterruptedException
+    {
+        synchronized(_foregroundWorkLock)
+        {
+            while(_foregroundWorkCount > 0)
+            {
+                _foregroundWorkLock.wait();
+            }
+        }
+        if(Thread.interrupted())
+        {
+            throw new InterruptedException("prefetcher stopped");
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package cakehat.assignment;
 
 import cakehat.Allocator;
+import cakehat.CakehatSession;
 import support.utils.AlwaysAcceptingFileFilter;
 import cakehat.database.Group;
 import cakehat.gradingsheet.GradingSheet;
+import cakehat.services.ServicesException;
+import com.google.common.collect.ImmutableSet;
 import java.awt.Window;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import support.ui.ModalDialog;
 import support.utils.ArchiveExtractionException;
@@ -40,6 +45,17 @@ public class Part implements Comparable<Part>
      * accessing this field, to ensure visibility this value must be volatile.
      */
     private volatile GradableEvent _gradableEvent;
+
+    /**
+     * Locks that prevent a group's handin from being unarchived more than once at the same time.
+     */
+    private final ConcurrentMap<Group, Object> _unarchiveLocks = new ConcurrentHashMap<Group, Object>();
+
+    /**
+     * Descriptions of the files and directories missing from handins that were unarchived in advance and have not been
+     * unarchived since.
+     */
+    private final ConcurrentMap<Group, String> _prefetchedMissingContents = new ConcurrentHashMap<Group, String>();
     
     /**
      * Constructs a Part.
@@ -185,7 +201,10 @@ public class Part implements Comparable<Part>
     }
 
     /**
-     * Unarchives a group's most recent digital handin for the gradable event this part belongs to.
+     * Unarchives a group's most recent digital handin for the gradable event this part belongs to. The unarchive
+     * directory is recorded as used now, even if it had already been unarchived; callers that go on to use the
+     * directory should mark it in use with {@link cakehat.services.TempSpaceManager#beginUse(Collection)} first so
+     * that it is not deleted to free up disk space while they do.
      *
      * @throws IOException
      *
@@ -195,8 +214,15 @@ public class Part implements Comparable<Part>
      */
     public void unarchive(Window owner, Group group, boolean silent) throws IOException
     {
+        String missingContents;
         File unarchiveDir = Allocator.getPathServices().getUnarchiveHandinDir(this, group);
-        if(!unarchiveDir.exists())
+        if(unarchiveDir.exists())
+        {
+            //If the handin was unarchived in advance, the user has not yet been told about any missing contents
+            missingContents = this.removePrefetchedMissingContents(group);
+            Allocator.getTempSpaceManager().track(unarchiveDir);
+        }
+        else
         {
             //Access the digital handin
             File handin = _gradableEvent.getDigitalHandin(group);
@@ -207,44 +233,176 @@ public class Part implements Comparable<Part>
                         "Part: " + this.getFullDisplayName());
             }
 
-            //Determine if all of files and directories that belong to this part are present in the archive
-            //If not, then create a filter that accepts all files and directory, and notify the user
-            FileFilter filter;
-            Collection<ArchiveEntry> contents = Allocator.getArchiveUtilities().getArchiveContents(handin);
-            StringBuilder builder = new StringBuilder();
-            if(_filterProvider.areFilteredFilesPresent(contents, builder))
+            Collection<ArchiveEntry> contents;
+            try
             {
-                filter = _filterProvider.getFileFilter(unarchiveDir);
+                //The catalog lists the archive's contents without decompressing it
+                contents = Allocator.getHandinCatalog().getCatalogedHandin(handin).getContents();
             }
-            else
+            catch(ServicesException e)
             {
-                filter = new AlwaysAcceptingFileFilter();
-
-                if(!silent)
-                {
-                    String msg = "Not all files and/or directories this part expected were found in the digital " +
-                            "handin. All files and directories will now be included for this part so that you " +
-                            "can find files that may be misnamed or placed in the wrong directory.\n\n" +
-                            "The missing files and/or directories are:\n" + builder.toString();
-                    ModalDialog.showMessage(owner, group + "'s Digital Handin - Missing Expected Contents", msg);
-                }
+                throw new IOException("Unable to determine contents of digital handin\n" +
+                        "Group: " + group + "\n" +
+                        "Part: " + this.getFullDisplayName() + "\n" +
+                        "Archive: " + handin.getAbsolutePath(), e);
             }
 
-            //Extract
-            try
+            missingContents = this.extractHandin(group, handin, contents);
+        }
+
+        if(missingContents != null && !silent)
+        {
+            String msg = "Not all files and/or directories this part expected were found in the digital " +
+                    "handin. All files and directories will now be included for this part so that you " +
+                    "can find files that may be misnamed or placed in the wrong directory.\n\n" +
+                    "The missing files and/or directories are:\n" + missingContents;
+            ModalDialog.showMessage(owner, group + "'s Digital Handin - Missing Expected Contents", msg);
+        }
+    }
+
+    /**
+     * Extracts {@code handin}, the group's most recent digital handin, into the group's unarchive directory for this
+     * part. If not all of the files and directories this part expects are present in {@code contents} then all files
+     * and directories are extracted so that misnamed or misplaced files can be found, and a description of the missing
+     * files and directories is returned. No dialogs are shown, so this may be called from any thread. Different groups
+     * may be extracted concurrently.
+     * <br/><br/>
+     * If the unarchive directory already exists when the extraction starts, because the handin was unarchived in
+     * advance by {@link #prefetchHandin(Group, File, Collection)}, nothing is extracted and the description of any
+     * missing files and directories found then is returned.
+     *
+     * @param group
+     * @param handin
+     * @param contents the entries of {@code handin}
+     * @return a description of the missing files and directories, or {@code null} if none are missing
+     * @throws IOException if the handin could not be extracted; anything partially extracted will have been deleted
+     */
+    String extractHandin(Group group, File handin, Collection<ArchiveEntry> contents) throws IOException
+    {
+        File unarchiveDir = Allocator.getPathServices().getUnarchiveHandinDir(this, group);
+        synchronized(this.getUnarchiveLock(group))
+        {
+            if(unarchiveDir.exists())
             {
-                Allocator.getArchiveUtilities().extractArchive(handin, unarchiveDir, filter,
-                        Allocator.getCourseInfo().getTAGroup());
+                Allocator.getTempSpaceManager().track(unarchiveDir);
+
+                return this.removePrefetchedMissingContents(group);
             }
-            catch(ArchiveExtractionException e)
+
+            String missingContents = this.extractHandin(group, handin, contents, unarchiveDir);
+            Allocator.getTempSpaceManager().track(unarchiveDir);
+
+            return missingContents;
+        }
+    }
+
+    /**
+     * Unarchives {@code handin}, the group's most recent digital handin, in advance of it being needed. The handin is
+     * extracted into a sibling of the group's unarchive directory which is then renamed to be the unarchive directory,
+     * so that a partially extracted handin is never visible. If the handin is unarchived by
+     * {@link #extractHandin(Group, File, Collection)} in the mean time then the extracted files are deleted. The
+     * description of any missing files and directories is held on to until the handin is next unarchived.
+     *
+     * @param group
+     * @param handin
+     * @param contents the entries of {@code handin}
+     * @throws IOException if the handin could not be extracted; anything partially extracted will have been deleted
+     */
+    void prefetchHandin(Group group, File handin, Collection<ArchiveEntry> contents) throws IOException
+    {
+        File unarchiveDir = Allocator.getPathServices().getUnarchiveHandinDir(this, group);
+        if(unarchiveDir.exists())
+        {
+            return;
+        }
+
+        //The unarchive directories are shared by all users, so the directory is specific to the user
+        File prefetchDir = new File(unarchiveDir.getParentFile(), unarchiveDir.getName() + ".prefetch." +
+                CakehatSession.getUserId());
+        if(prefetchDir.exists())
+        {
+            //Left behind by a previous run of cakehat that exited while unarchiving
+            Allocator.getFileSystemUtilities().deleteFiles(ImmutableSet.of(prefetchDir));
+        }
+        String missingContents = this.extractHandin(group, handin, contents, prefetchDir);
+
+        boolean renamed = false;
+        synchronized(this.getUnarchiveLock(group))
+        {
+            if(!unarchiveDir.exists() && prefetchDir.renameTo(unarchiveDir))
             {
-                throw new IOException("Unable to extract digital handin\n" +
-                        "Group: " + group + "\n" +
-                        "Part: " + this.getFullDisplayName() + " \n" +
-                        "Archive: " + handin.getAbsolutePath() + "\n" +
-                        "Unarchive Directory: " + unarchiveDir.getAbsolutePath());
+                renamed = true;
+                if(missingContents != null)
+                {
+                    _prefetchedMissingContents.put(group, missingContents);
+                }
             }
         }
+        if(renamed)
+        {
+            Allocator.getTempSpaceManager().track(unarchiveDir);
+        }
+        else
+        {
+            Allocator.getFileSystemUtilities().deleteFiles(ImmutableSet.of(prefetchDir));
+        }
+    }
+
+    /**
+     * Returns the description of the files and directories missing from the group's handin if it was unarchived by
+     * {@link #prefetchHandin(Group, File, Collection)} and was missing files and directories, and forgets it so that
+     * the user is only told about them once.
+     *
+     * @param group
+     * @return description of the missing files and directories, or {@code null}
+     */
+    String removePrefetchedMissingContents(Group group)
+    {
+        return _prefetchedMissingContents.remove(group);
+    }
+
+    private Object getUnarchiveLock(Group group)
+    {
+        Object lock = new Object();
+        Object existingLock = _unarchiveLocks.putIfAbsent(group, lock);
+
+        return existingLock == null ? lock : existingLock;
+    }
+
+    private String extractHandin(Group group, File handin, Collection<ArchiveEntry> contents, File dstDir)
+            throws IOException
+    {
+        //Determine if all of files and directories that belong to this part are present in the archive
+        //If not, then create a filter that accepts all files and directory
+        FileFilter filter;
+        String missingContents = null;
+        StringBuilder builder = new StringBuilder();
+        if(_filterProvider.areFilteredFilesPresent(contents, builder))
+        {
+            filter = _filterProvider.getFileFilter(dstDir);
+        }
+        else
+        {
+            filter = new AlwaysAcceptingFileFilter();
+            missingContents = builder.toString();
+        }
+
+        //Extract
+        try
+        {
+            Allocator.getArchiveUtilities().extractArchive(handin, dstDir, filter,
+                    Allocator.getCourseInfo().getTAGroup());
+        }
+        catch(ArchiveExtractionException e)
+        {
+            throw new IOException("Unable to extract digital handin\n" +
+                    "Group: " + group + "\n" +
+                    "Part: " + this.getFullDisplayName() + " \n" +
+                    "Archive: " + handin.getAbsolutePath() + "\n" +
+                    "Unarchive Directory: " + dstDir.getAbsolutePath(), e);
+        }
+
+        return missingContents;
     }
     
     @Override
@@ -0,0 +1,335 @@
+package cakehat.assignment;
+
+import cakehat.Allocator;
+import cakehat.database.Group;
+import cakehat.services.CatalogedHandin;
+import cakehat.services.ServicesException;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import support.utils.LongRunningTask;
+
+/**
+ * Unarchives the digital handins of many groups for a part, extracting several handins at once. Each handin is looked
+ * up in the handin catalog, and cataloged if it has not been already, by the same one of a bounded number of threads
+ * that then extracts it. Handins that have already been unarchived are not extracted again.
+ * <br/><br/>
+ * Each group is a step of the task. A group whose handin cannot be extracted is reported as a failed step; as with
+ * {@link Part#unarchive(java.awt.Window, Group, boolean)} anything partially extracted for that group is deleted and
+ * the other groups are unaffected. No dialogs are shown; the failures and the groups whose handins are missing files
+ * the part expects can be retrieved once the task is complete.
+ * <br/><br/>
+ * Execution of the task occurs on internally managed threads which exist only for the life time of the task.
+ */
+public class UnarchiveTask extends LongRunningTask
+{
+    /**
+     * The number of handins extracted at once by default. Extraction is split between decompressing and writing to the
+     * file system, so more handins than processors are extracted at once.
+     */
+    public static final int DEFAULT_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final Part _part;
+    private final Set<Group> _groups;
+    private final int _parallelism;
+
+    private final Map<Group, IOException> _failures = new ConcurrentHashMap<Group, IOException>();
+    private final Map<Group, String> _missingContents = new ConcurrentHashMap<Group, String>();
+    private final CountDownLatch _completed = new CountDownLatch(1);
+
+    /**
+     * The reason the task as a whole failed, {@code null} if it has not failed.
+     */
+    private volatile Exception _taskFailure;
+
+    private volatile boolean _canceled;
+
+    /**
+     * @param part
+     * @param groups the groups whose handins will be unarchived, each must have a digital handin
+     * @param parallelism the maximum number of handins extracted at once, must be positive
+     */
+    public UnarchiveTask(Part part, Set<Group> groups, int parallelism)
+    {
+        if(parallelism <= 0)
+        {
+            throw new IllegalArgumentException("parallelism must be positive, was " + parallelism);
+        }
+
+        _part = part;
+        _groups = new HashSet<Group>(groups);
+        _parallelism = parallelism;
+    }
+
+    @Override
+    protected void startTask()
+    {
+        new Thread("cakehat-unarchive-" + _part.getId())
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    unarchive();
+                }
+                catch(RuntimeException e)
+                {
+                    _taskFailure = e;
+                    notifyTaskFailed(e, "Unexpected runtime exception encountered while unarchiving digital handins");
+                }
+                catch(IOException e)
+                {
+                    _taskFailure = e;
+                    notifyTaskFailed(e, "Unable to access digital handins");
+                }
+                //Signals that the task was canceled
+                catch(InterruptedException e)
+                {
+                    _canceled = true;
+                    notifyTaskCanceled();
+                }
+                finally
+                {
+                    _completed.countDown();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Blocks until the task has completed, failed or been canceled. The task must have been started.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void awaitCompletion() throws InterruptedException
+    {
+        _completed.await();
+    }
+
+    /**
+     * Whether the task has completed, failed or been canceled. A task that has been canceled may not have completed
+     * until the extractions that had already started finish.
+     *
+     * @return
+     */
+    public boolean isDone()
+    {
+        return _completed.getCount() == 0;
+    }
+
+    /**
+     * The reason the task as a whole failed, such as a digital handin being inaccessible, or {@code null} if it did
+     * not fail. The handins of individual groups that could not be extracted are not a failure of the task; they are
+     * returned by {@link #getFailures()}. Should only be called once the task has completed.
+     *
+     * @return
+     */
+    public Exception getTaskFailure()
+    {
+        return _taskFailure;
+    }
+
+    /**
+     * Whether the task was canceled before all of the handins were extracted. Should only be called once the task has
+     * completed.
+     *
+     * @return
+     */
+    public boolean wasCanceled()
+    {
+        return _canceled;
+    }
+
+    /**
+     * The groups whose handins could not be extracted, mapped to the reason. Should only be called once the task has
+     * completed.
+     *
+     * @return
+     */
+    public Map<Group, IOException> getFailures()
+    {
+        return ImmutableMap.copyOf(_failures);
+    }
+
+    /**
+     * The groups whose handins did not contain all of the files and directories the part expects, mapped to a
+     * description of what is missing. All files and directories were extracted for these groups. Should only be called
+     * once the task has completed.
+     *
+     * @return
+     */
+    public Map<Group, String> getMissingContents()
+    {
+        return ImmutableMap.copyOf(_missingContents);
+    }
+
+    private void unarchive() throws IOException, InterruptedException
+    {
+        //Keep handins unarchived earlier in the task from being deleted to free up disk space for later ones
+        Set<File> dirs = new HashSet<File>();
+        for(Group group : _groups)
+        {
+            dirs.add(Allocator.getPathServices().getUnarchiveHandinDir(_part, group));
+        }
+        Allocator.getTempSpaceManager().beginUse(dirs);
+        try
+        {
+            this.unarchiveInTempSpace();
+        }
+        finally
+        {
+            Allocator.getTempSpaceManager().endUse(dirs);
+        }
+    }
+
+    private void unarchiveInTempSpace() throws IOException, InterruptedException
+    {
+        notifyTaskDetermined(_groups.size());
+
+        //Handins that have already been unarchived are complete
+        Set<Group> groupsToUnarchive = new HashSet<Group>();
+        for(Group group : _groups)
+        {
+            if(Allocator.getPathServices().getUnarchiveHandinDir(_part, group).exists())
+            {
+                String missingContents = _part.removePrefetchedMissingContents(group);
+                if(missingContents != null)
+                {
+                    _missingContents.put(group, missingContents);
+                }
+                notifyTaskStepCompleted();
+            }
+            else
+            {
+                groupsToUnarchive.add(group);
+            }
+        }
+        checkAttemptCancel();
+
+        Map<Group, File> handins = _part.getGradableEvent().getDigitalHandins(groupsToUnarchive);
+        for(Group group : groupsToUnarchive)
+        {
+            File handin = handins.get(group);
+            if(handin == null || !handin.exists())
+            {
+                throw new IOException("Expected to be able to access digital handin\n" +
+                        "Group: " + group + "\n" +
+                        "Part: " + _part.getFullDisplayName());
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(_parallelism,
+                Math.max(1, groupsToUnarchive.size())), new UnarchiveThreadFactory(_part));
+        try
+        {
+            for(Group group : groupsToUnarchive)
+            {
+                executor.execute(new ExtractHandin(group, handins.get(group)));
+            }
+        }
+        finally
+        {
+            //Extractions that have started are allowed to finish so that no partially extracted handin is left behind
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        checkAttemptCancel();
+
+        String message = "Unarchived " + (_groups.size() - _failures.size()) + " of " + _groups.size() +
+                " digital handins";
+        if(!_failures.isEmpty())
+        {
+            message += "; unable to unarchive the handins of: " + _failures.keySet();
+        }
+        notifyTaskCompleted(message);
+    }
+
+    private class ExtractHandin implements Runnable
+    {
+        private final Group _group;
+        private final File _handin;
+
+        ExtractHandin(Group group, File handin)
+        {
+            _group = group;
+            _handin = handin;
+        }
+
+        @Override
+        public void run()
+        {
+            //Extractions that have not started when the task is canceled are skipped
+            if(isCancelAttempted())
+            {
+                return;
+            }
+
+            notifyTaskStepStarted("Unarchiving " + _group.getName());
+            try
+            {
+                //Cataloging a handin reads through the archive, so it is done here rather than before extraction begins
+                CatalogedHandin catalogedHandin;
+                try
+                {
+                    catalogedHandin = Allocator.getHandinCatalog().getCatalogedHandin(_handin);
+                }
+                catch(ServicesException e)
+                {
+                    throw new IOException("Unable to determine contents of digital handin\n" +
+                            "Group: " + _group + "\n" +
+                            "Part: " + _part.getFullDisplayName() + "\n" +
+                            "Archive: " + _handin.getAbsolutePath(), e);
+                }
+
+                String missingContents = _part.extractHandin(_group, _handin, catalogedHandin.getContents());
+                if(missingContents != null)
+                {
+                    _missingContents.put(_group, missingContents);
+                }
+                notifyTaskStepCompleted();
+            }
+            catch(IOException e)
+            {
+                _failures.put(_group, e);
+                notifyTaskStepFailed(e, "Unable to unarchive the digital handin of " + _group.getName());
+            }
+            catch(RuntimeException e)
+            {
+                _failures.put(_group, new IOException("Unexpected runtime exception encountered while unarchiving " +
+                        "the digital handin of " + _group.getName(), e));
+                notifyTaskStepFailed(e, "Unable to unarchive the digital handin of " + _group.getName());
+            }
+        }
+    }
+
+    private static class UnarchiveThreadFactory implements ThreadFactory
+    {
+        private final String _namePrefix;
+        private final AtomicInteger _threadCount = new AtomicInteger();
+
+        UnarchiveThreadFactory(Part part)
+        {
+            _namePrefix = "cakehat-unarchive-" + part.getId() + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, _namePrefix + _threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
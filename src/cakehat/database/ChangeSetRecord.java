@@ -0,0 +1,86 @@
+package cakehat.database;
+
+import java.util.Set;
+
+/**
+ * Represents the students and groups that have changed in the database since a given change sequence number. This
+ * class should used only as a return type for {@link Database#getChangesSince(long)}.
+ */
+class ChangeSetRecord {
+
+    private final String _epoch;
+    private final long _sequence;
+    private final boolean _complete;
+    private final Set<DbStudent> _students;
+    private final Set<Integer> _removedStudentIds;
+    private final Set<DbGroup> _groups;
+    private final Set<Integer> _removedGroupIds;
+
+    ChangeSetRecord(String epoch, long sequence, boolean complete, Set<DbStudent> students,
+                    Set<Integer> removedStudentIds, Set<DbGroup> groups, Set<Integer> removedGroupIds) {
+        _epoch = epoch;
+        _sequence = sequence;
+        _complete = complete;
+        _students = students;
+        _removedStudentIds = removedStudentIds;
+        _groups = groups;
+        _removedGroupIds = removedGroupIds;
+    }
+
+    /**
+     * The epoch of the database when this change set was read.
+     *
+     * @return
+     * @see Database#getChangeEpoch()
+     */
+    String getEpoch() {
+        return _epoch;
+    }
+
+    /**
+     * The sequence number of the most recent change included in this change set. Passing it to
+     * {@link Database#getChangesSince(long)} will return only changes made after this change set was retrieved.
+     *
+     * @return
+     */
+    long getSequence() {
+        return _sequence;
+    }
+
+    /**
+     * Whether the change log still held every change since the requested sequence number. If not, because they have
+     * been pruned, this change set is empty and everything should be reloaded.
+     *
+     * @return
+     */
+    boolean isComplete() {
+        return _complete;
+    }
+
+    /**
+     * Students that have been added or modified; their current state in the database.
+     *
+     * @return
+     */
+    Set<DbStudent> getStudents() {
+        return _students;
+    }
+
+    Set<Integer> getRemovedStudentIds() {
+        return _removedStudentIds;
+    }
+
+    /**
+     * Groups that have been added or modified, including changes to their members; their current state in the
+     * database.
+     *
+     * @return
+     */
+    Set<DbGroup> getGroups() {
+        return _groups;
+    }
+
+    Set<Integer> getRemovedGroupIds() {
+        return _removedGroupIds;
+    }
+}
@@ -26,4 +26,18 @@ public interface ConnectionProvider {
      * @throws SQLException
      */
     public void closeConnection(Connection connection) throws SQLException;
-}
\ No newline at end of file
+
+    /**
+     * Closes any connections this provider holds open and releases any other resources it holds. Connections may not be
+     * created once the provider has been shut down.
+     */
+    public void shutdown();
+
+    /**
+     * Returns a human readable summary of how this provider's connections have been used, such as how long callers
+     * have waited for a connection.
+     *
+     * @return
+     */
+    public String getUsageSummary();
+}
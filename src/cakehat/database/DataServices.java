@@ -233,6 +233,95 @@ public interface DataServices {
     
     public Map<Part, Map<Group, GroupGradingSheet>> getGroupGradingSheets(SetMultimap<Part, Group> toRetrieve) throws ServicesException;
     
+    /**
+     * Returns the total earned points, submission state and assigned TA of the grading sheet of each group for each
+     * part in {@code toRetrieve}. The totals are computed by the database, so unlike
+     * {@link #getGroupGradingSheets(SetMultimap)} neither the earned points of individual subsections nor comments are
+     * loaded. A group without a grading sheet for a part is given the total of an empty, unsubmitted grading sheet.
+     *
+     * @param toRetrieve
+     * @return
+     * @throws ServicesException
+     */
+    public Map<Part, Map<Group, GroupGradingSheetTotal>> getGroupGradingSheetTotals(SetMultimap<Part, Group> toRetrieve)
+            throws ServicesException;
+
+    /**
+     * Returns the totals, as described by {@link #getGroupGradingSheetTotals(SetMultimap)}, of the grading sheets
+     * assigned to {@code ta}. The result contains the same parts and groups as {@link #getAssignedGroups(TA)} but is
+     * read with a single query.
+     *
+     * @param ta
+     * @return
+     * @throws ServicesException
+     */
+    public Map<Part, Map<Group, GroupGradingSheetTotal>> getAssignedGroupGradingSheetTotals(TA ta)
+            throws ServicesException;
+
+    /**
+     * Returns the totals, as described by {@link #getGroupGradingSheetTotals(SetMultimap)}, of the grading sheets for
+     * {@code parts} that have been modified, submitted, unsubmitted or assigned since the change with sequence number
+     * {@code sequence}. Only the grading sheets which have changed are read, so this is suited to keeping totals read
+     * at {@code sequence} up to date.
+     *
+     * @param parts
+     * @param epoch the epoch from {@link Database#getChangeEpoch()} at which {@code sequence} was read; if the
+     * database now has a different epoch then all totals must be read again
+     * @param sequence a sequence number from {@link Database#getLatestChangeSequence()} or from a previous call
+     * @return
+     * @throws ServicesException
+     */
+    public GroupGradingSheetTotalChanges getGroupGradingSheetTotalsChangedSince(Set<Part> parts, String epoch,
+                                                                               long sequence)
+            throws ServicesException;
+
+    /**
+     * Returns the earned points, grading status and assigned TA of every group for each of {@code parts} as a
+     * {@link GradeMatrix}. The totals are computed by the database, without creating {@link GroupGradingSheet}s.
+     * The matrix includes all of the groups of the assignments {@code parts} belong to, sorted, and indexes
+     * {@code students} in the order given. As with {@link #getGroups(Assignment)}, groups of one are created for
+     * students without one for assignments without groups.
+     *
+     * @param students
+     * @param parts
+     * @return
+     * @throws ServicesException
+     */
+    public GradeMatrix getGradeMatrix(List<Student> students, List<Part> parts) throws ServicesException;
+
+    /**
+     * Reads the grades of each of {@code students} and passes them to {@code handler} one student at a time, in the
+     * order of {@code students}. Unlike {@link #getGroupGradingSheets(SetMultimap)}, grades are read from the database
+     * through cursors a fixed size page of students at a time, so memory use does not grow with the size of the course.
+     * Each page is read within its own short database transaction; the grades of the students in a page are consistent
+     * with one another, but a save made by another user between pages may be reflected in later pages only.
+     * <br/><br/>
+     * Groups of one are first created for students without one for assignments without groups, as is done by
+     * {@link #getGroups(Assignment)}. {@code handler} is called on the calling thread once the transaction that read
+     * the student's page has ended, so the time it takes, for instance to write each student to a CSV file, does not
+     * block other users from saving.
+     *
+     * @param students
+     * @param handler
+     * @throws ServicesException if the grades could not be read or if thrown by {@code handler}
+     */
+    public void streamStudentGrades(List<Student> students, StudentGradesHandler handler) throws ServicesException;
+
+    /**
+     * Receives the grades of each student from {@link DataServices#streamStudentGrades(List, StudentGradesHandler)}.
+     */
+    public static interface StudentGradesHandler {
+
+        /**
+         * Called with the grades of each student in turn.
+         *
+         * @param grades
+         * @return whether to continue; if {@code false} the grades of no further students are read
+         * @throws ServicesException
+         */
+        public boolean handle(StudentGrades grades) throws ServicesException;
+    }
+    
     public void saveGroupGradingSheet(GroupGradingSheet groupGradingSheet) throws ServicesException;
     
     /**
@@ -319,7 +408,7 @@ public interface DataServices {
      */
     public Map<Group, GradableEventOccurrence> getGradableEventOccurrences(GradableEvent gradableEvent,
             Set<Group> groups) throws ServicesException;
-
+    
     /**
      * For each entry in the given map, stores the corresponding gradable event occurrence in the database for the
      * corresponding Group and given GradableEvent. Any existing gradable event occurrences for groups with entries in
@@ -348,6 +437,55 @@ public interface DataServices {
      * @throws ServicesException
      */
     public void updateDataCache() throws ServicesException;
+
+    /**
+     * The interval at which the views refresh the data cache in the background.
+     */
+    public static final long DEFAULT_CACHE_REFRESH_INTERVAL_MILLIS = 15 * 1000;
+
+    /**
+     * Starts refreshing the data cache on a background thread every {@code intervalMillis} milliseconds, replacing any
+     * refresher that is already running. Each refresh first checks whether the students and groups in the database have
+     * changed since the cache was last updated and only calls {@link #updateDataCache()} if they have, so an idle
+     * refresh is a single cheap query. Changes made by other users are therefore reflected in the cache no more than
+     * {@code intervalMillis} plus the time taken by a refresh after they are made.
+     *
+     * @param intervalMillis must be positive
+     */
+    public void startCacheRefresher(long intervalMillis);
+
+    /**
+     * Stops the background refresher started by {@link #startCacheRefresher(long)}, if any.
+     */
+    public void stopCacheRefresher();
+
+    /**
+     * Registers {@code listener} to be notified whenever {@link #updateDataCache()}, including a call made by the
+     * background refresher, changes the cached students or groups.
+     *
+     * @param listener
+     */
+    public void addDataCacheListener(DataCacheListener listener);
+
+    public void removeDataCacheListener(DataCacheListener listener);
+
+    /**
+     * Listens for changes to the students and groups cached by {@link DataServices}.
+     */
+    public static interface DataCacheListener {
+
+        /**
+         * Called after the cache has been updated. This is called on the thread that updated the cache, which is
+         * usually not the UI thread, so implementations that update UI components must do so via
+         * {@link java.awt.EventQueue#invokeLater(Runnable)}.
+         *
+         * Only called if at least one of {@code students} and {@code groups} is not empty.
+         *
+         * @param students the students that were added, modified or removed
+         * @param groups the groups that were added, modified, including changes to their members, or removed
+         */
+        public void dataCacheUpdated(Set<Student> students, Set<Group> groups);
+    }
     
     /**
      * Returns the Student object corresponding to the given studentLogin. If no such student exists in the database,
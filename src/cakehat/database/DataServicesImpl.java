@@ -10,14 +10,17 @@ import cakehat.assignment.Part;
 import cakehat.gradingsheet.GradingSheet;
 import cakehat.gradingsheet.GradingSheetSection;
 import cakehat.gradingsheet.GradingSheetSubsection;
+import cakehat.logging.ErrorReporter;
 import cakehat.services.ServicesException;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -26,7 +29,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import org.joda.time.DateTime;
 import support.utils.posix.NativeException;
@@ -37,6 +43,12 @@ import support.utils.posix.NativeException;
  */
 public class DataServicesImpl implements DataServices {
     
+    /**
+     * The number of students whose grades {@link #streamStudentGrades(List, StudentGradesHandler)} reads in each
+     * database transaction.
+     */
+    static final int STREAM_PAGE_SIZE = 200;
+    
     /**
      * Maps a student's ID in the database to the corresponding Student object.
      */
@@ -60,6 +72,32 @@ public class DataServicesImpl implements DataServices {
      */
     private Map<Integer, Map<Integer, Group>> _groupsCache = new ConcurrentHashMap<Integer, Map<Integer, Group>>();
     
+    /**
+     * The change sequence number of the database as of the last call to {@link #updateDataCache()}, or {@code -1} if it
+     * has not yet been called. Guarded by {@link #_cacheUpdateLock}.
+     */
+    private volatile long _changeSequence = -1;
+    
+    /**
+     * The epoch of the database as of the last call to {@link #updateDataCache()}, or {@code null} if it has not yet
+     * been called. Guarded by {@link #_cacheUpdateLock}.
+     */
+    private volatile String _changeEpoch = null;
+    private final Object _cacheUpdateLock = new Object();
+    
+    private final List<DataCacheListener> _cacheListeners = new CopyOnWriteArrayList<DataCacheListener>();
+    
+    /**
+     * The timer running the background refresher, or {@code null} if it is not running. Guarded by {@code this}.
+     */
+    private Timer _refreshTimer;
+    
+    /**
+     * Whether the last background refresh failed, so that a database that is unavailable for a while is reported once
+     * rather than on every refresh. Only accessed by the refresher's thread.
+     */
+    private boolean _refreshFailed = false;
+    
     private final ImmutableSet<TA> _tas;
     private final ImmutableSet<TA> _defaultGraders;
     private final ImmutableMap<Integer, TA> _taIdMap;
@@ -227,8 +265,8 @@ public class DataServicesImpl implements DataServices {
         
         try
         {
-            Allocator.getDatabase().setExtensions(gradableEvent.getId(), ontime.toString(), shiftDates, 
-                    note, new DateTime().toString(), CakehatSession.getUserId(), groupIds);
+            Allocator.getDatabase().setExtensions(gradableEvent.getId(), ontime.getMillis(), shiftDates, 
+                    note, DateTime.now().getMillis(), CakehatSession.getUserId(), groupIds);
         }
         catch(SQLException e)
         {
@@ -336,6 +374,245 @@ public class DataServicesImpl implements DataServices {
         }
     }
     
+    @Override
+    public Map<Part, Map<Group, GroupGradingSheetTotal>> getGroupGradingSheetTotals(SetMultimap<Part, Group> toRetrieve)
+            throws ServicesException {
+        Set<Integer> partIds = new HashSet<Integer>();
+        for (Part part : toRetrieve.keySet()) {
+            partIds.add(part.getId());
+        }
+        List<GradingSheetTotalRecord> records = this.readGradingSheetTotals(partIds,
+                groupsToIdCollection(toRetrieve.values(), new HashSet<Integer>()), null);
+        
+        Map<Part, Map<Group, GroupGradingSheetTotal>> totals = new HashMap<Part, Map<Group, GroupGradingSheetTotal>>();
+        for (Part part : toRetrieve.keySet()) {
+            totals.put(part, new HashMap<Group, GroupGradingSheetTotal>());
+        }
+        for (GradingSheetTotalRecord record : records) {
+            Part part = _partIdMap.get(record.getPartId());
+            Group group = this.getGroup(record.getGroupId());
+            
+            //a group may have been requested for some of the parts but not for this one
+            if (toRetrieve.containsEntry(part, group)) {
+                totals.get(part).put(group, this.createGroupGradingSheetTotal(part, group, record));
+            }
+        }
+        for (Part part : toRetrieve.keySet()) {
+            for (Group group : toRetrieve.get(part)) {
+                if (!totals.get(part).containsKey(group)) {
+                    totals.get(part).put(group, new GroupGradingSheetTotal(part, group));
+                }
+            }
+        }
+        
+        return totals;
+    }
+    
+    @Override
+    public Map<Part, Map<Group, GroupGradingSheetTotal>> getAssignedGroupGradingSheetTotals(TA ta)
+            throws ServicesException {
+        List<GradingSheetTotalRecord> records = this.readGradingSheetTotals(_partIdMap.keySet(), null, ta.getId());
+        
+        Map<Part, Map<Group, GroupGradingSheetTotal>> totals = new HashMap<Part, Map<Group, GroupGradingSheetTotal>>();
+        for (GradingSheetTotalRecord record : records) {
+            Part part = _partIdMap.get(record.getPartId());
+            if (!totals.containsKey(part)) {
+                totals.put(part, new HashMap<Group, GroupGradingSheetTotal>());
+            }
+            
+            Group group = this.getGroup(record.getGroupId());
+            totals.get(part).put(group, this.createGroupGradingSheetTotal(part, group, record));
+        }
+        
+        return totals;
+    }
+    
+    @Override
+    public GroupGradingSheetTotalChanges getGroupGradingSheetTotalsChangedSince(Set<Part> parts, String epoch,
+                                                                               long sequence)
+            throws ServicesException {
+        GradingSheetChangeSetRecord changes;
+        try {
+            changes = Allocator.getDatabase().getGradingSheetTotalsChangedSince(sequence);
+        } catch (SQLException ex) {
+            throw new ServicesException("Unable to read changed group grading sheet totals.", ex);
+        }
+        
+        Map<Part, Map<Group, GroupGradingSheetTotal>> totals = new HashMap<Part, Map<Group, GroupGradingSheetTotal>>();
+        
+        //the group of a removed grading sheet is not known, and group changes may change the groups of a part
+        boolean requiresReload = !changes.getEpoch().equals(epoch) || !changes.isComplete()
+                || changes.haveGroupsChanged()
+                || !changes.getRemovedGradingSheetIds().isEmpty();
+        if (!requiresReload) {
+            for (GradingSheetTotalRecord record : changes.getTotals()) {
+                Part part = _partIdMap.get(record.getPartId());
+                if (parts.contains(part)) {
+                    if (!totals.containsKey(part)) {
+                        totals.put(part, new HashMap<Group, GroupGradingSheetTotal>());
+                    }
+                    
+                    Group group = this.getGroup(record.getGroupId());
+                    totals.get(part).put(group, this.createGroupGradingSheetTotal(part, group, record));
+                }
+            }
+        }
+        
+        return new GroupGradingSheetTotalChanges(changes.getEpoch(), changes.getSequence(), requiresReload, totals);
+    }
+    
+    private List<GradingSheetTotalRecord> readGradingSheetTotals(Set<Integer> partIds, Set<Integer> groupIds,
+                                                                 Integer assignedToId) throws ServicesException {
+        final List<GradingSheetTotalRecord> records = new ArrayList<GradingSheetTotalRecord>();
+        try {
+            Allocator.getDatabase().readGradingSheetTotals(partIds, groupIds, assignedToId,
+                                                           new GradingSheetTotalRecord.Handler() {
+                @Override
+                public void handle(GradingSheetTotalRecord record) {
+                    records.add(record);
+                }
+            });
+        } catch (SQLException ex) {
+            throw new ServicesException("Unable to read group grading sheet totals.", ex);
+        }
+        
+        return records;
+    }
+    
+    private GroupGradingSheetTotal createGroupGradingSheetTotal(Part part, Group group,
+                                                                GradingSheetTotalRecord record) {
+        TA assignedTo = record.getAssignedToId() == null ? null : _taIdMap.get(record.getAssignedToId());
+        
+        return new GroupGradingSheetTotal(part, group, assignedTo, record);
+    }
+    
+    @Override
+    public GradeMatrix getGradeMatrix(List<Student> students, List<Part> parts) throws ServicesException {
+        Map<Assignment, List<Group>> groups = new HashMap<Assignment, List<Group>>();
+        final Map<Integer, Integer> groupIndices = new HashMap<Integer, Integer>();
+        final Map<Integer, Integer> partIndices = new HashMap<Integer, Integer>();
+        for (int partIndex = 0; partIndex < parts.size(); partIndex++) {
+            Part part = parts.get(partIndex);
+            partIndices.put(part.getId(), partIndex);
+            
+            Assignment asgn = part.getAssignment();
+            if (!groups.containsKey(asgn)) {
+                List<Group> asgnGroups = new ArrayList<Group>(this.getGroups(asgn));
+                Collections.sort(asgnGroups);
+                groups.put(asgn, asgnGroups);
+                for (int groupIndex = 0; groupIndex < asgnGroups.size(); groupIndex++) {
+                    groupIndices.put(asgnGroups.get(groupIndex).getId(), groupIndex);
+                }
+            }
+        }
+        
+        final GradeMatrix matrix = new GradeMatrix(students, parts, groups);
+        try {
+            Allocator.getDatabase().readGradingSheetTotals(partIndices.keySet(), null, null,
+                                                           new GradingSheetTotalRecord.Handler() {
+                @Override
+                public void handle(GradingSheetTotalRecord record) {
+                    //a group created after the groups were retrieved is not part of the matrix
+                    Integer groupIndex = groupIndices.get(record.getGroupId());
+                    if (groupIndex != null) {
+                        TA assignedTo = record.getAssignedToId() == null ? null
+                                : _taIdMap.get(record.getAssignedToId());
+                        matrix.putGradingSheet(partIndices.get(record.getPartId()), groupIndex, assignedTo,
+                                               record.isSubmitted(), record.getEarnedTotal());
+                    }
+                }
+            });
+        } catch (SQLException ex) {
+            throw new ServicesException("Unable to read grades for parts: " + parts, ex);
+        }
+        
+        return matrix;
+    }
+    
+    @Override
+    public void streamStudentGrades(List<Student> students, final StudentGradesHandler handler)
+            throws ServicesException {
+        //groups of one are created now as the handler is called while the database is being read
+        for (Assignment asgn : _assignments) {
+            if (!asgn.hasGroups()) {
+                this.getGroups(asgn);
+            }
+        }
+        
+        final Map<Integer, Assignment> asgnIdMap = new HashMap<Integer, Assignment>();
+        for (Assignment asgn : _assignments) {
+            asgnIdMap.put(asgn.getId(), asgn);
+        }
+        
+        final Map<Integer, Student> studentIdMap = new HashMap<Integer, Student>();
+        List<Integer> studentIds = new ArrayList<Integer>(students.size());
+        for (Student student : students) {
+            studentIdMap.put(student.getId(), student);
+            studentIds.add(student.getId());
+        }
+        
+        //each page is read in its own short transaction and handed to the handler only once that transaction has
+        //ended, so that the handler's work does not keep other users from saving
+        for (List<Integer> page : Lists.partition(studentIds, STREAM_PAGE_SIZE)) {
+            final List<StudentGrades> pageGrades = new ArrayList<StudentGrades>(page.size());
+            try {
+                Allocator.getDatabase().streamStudentGrades(page, new StudentGradesRecord.Handler() {
+                    @Override
+                    public boolean handle(StudentGradesRecord record) throws ServicesException {
+                        pageGrades.add(createStudentGrades(studentIdMap.get(record.getStudentId()), record,
+                                                           asgnIdMap));
+                        return true;
+                    }
+                });
+            } catch (SQLException ex) {
+                throw new ServicesException("Unable to read the grades of students.", ex);
+            }
+            
+            for (StudentGrades grades : pageGrades) {
+                if (!handler.handle(grades)) {
+                    return;
+                }
+            }
+        }
+    }
+    
+    private StudentGrades createStudentGrades(Student student, StudentGradesRecord record,
+                                              Map<Integer, Assignment> asgnIdMap) throws ServicesException {
+        Map<Assignment, Group> groups = new HashMap<Assignment, Group>();
+        Map<Part, GroupGradingSheetTotal> gradingSheetTotals = new HashMap<Part, GroupGradingSheetTotal>();
+        Map<GradableEvent, GradableEventOccurrence> occurrences = new HashMap<GradableEvent, GradableEventOccurrence>();
+        Map<GradableEvent, Extension> extensions = new HashMap<GradableEvent, Extension>();
+        
+        for (Entry<Integer, Integer> groupEntry : record.getGroupIds().entrySet()) {
+            Assignment asgn = asgnIdMap.get(groupEntry.getKey());
+            Group group = this.getGroup(groupEntry.getValue());
+            groups.put(asgn, group);
+            
+            for (GradableEvent ge : asgn) {
+                for (Part part : ge) {
+                    GradingSheetTotalRecord total = record.getGradingSheetTotals().get(part.getId());
+                    gradingSheetTotals.put(part, total == null ? new GroupGradingSheetTotal(part, group)
+                            : this.createGroupGradingSheetTotal(part, group, total));
+                }
+                
+                GradableEventOccurrenceRecord occurrence = record.getOccurrences().get(ge.getId());
+                if (occurrence != null) {
+                    occurrences.put(ge, new GradableEventOccurrence(ge, group, _taIdMap.get(occurrence.getTA()),
+                            new DateTime(occurrence.getDateRecorded()), new DateTime(occurrence.getOccurrenceDate())));
+                }
+                
+                ExtensionRecord extension = record.getExtensions().get(ge.getId());
+                if (extension != null) {
+                    extensions.put(ge, new Extension(ge, group, _taIdMap.get(extension.getTAId()),
+                            new DateTime(extension.getDateRecorded()), new DateTime(extension.getOnTime()),
+                            extension.getShiftDates(), extension.getNote()));
+                }
+            }
+        }
+        
+        return new StudentGrades(student, groups, gradingSheetTotals, occurrences, extensions);
+    }
+    
     @Override
     public void saveGroupGradingSheet(GroupGradingSheet groupGradingSheet) throws ServicesException {
         try {
@@ -354,10 +631,10 @@ public class DataServicesImpl implements DataServices {
         }
         
         Integer submittedById = null;
-        String submissionTime = null;
+        Long submissionTime = null;
         if (submitted) {
             submittedById = Allocator.getUserServices().getUser().getId();
-            submissionTime = DateTime.now().toString();
+            submissionTime = DateTime.now().getMillis();
         }
 
         try {
@@ -371,7 +648,7 @@ public class DataServicesImpl implements DataServices {
             throw new ServicesException("Could not save group grading sheet.", ex);
         }
     }
-
+    
     @Override
     public Set<TA> getTAs()
     {   
@@ -523,14 +800,14 @@ public class DataServicesImpl implements DataServices {
         
         try
         {
-            Map<Integer, String> dbStatuses = new HashMap<Integer, String>();
+            Map<Integer, Long> dbStatuses = new HashMap<Integer, Long>();
             for(Entry<Group, DateTime> status : statuses.entrySet())
             {
-                dbStatuses.put(status.getKey().getId(), status.getValue().toString());
+                dbStatuses.put(status.getKey().getId(), status.getValue().getMillis());
             }
             
             Allocator.getDatabase().setGradableEventOccurrences(gradableEvent.getId(), dbStatuses,
-                    CakehatSession.getUserId(), new DateTime().toString());
+                    CakehatSession.getUserId(), DateTime.now().getMillis());
         }
         catch(SQLException ex)
         {
@@ -558,71 +835,217 @@ public class DataServicesImpl implements DataServices {
 
     @Override
     public void updateDataCache() throws ServicesException {
+        Set<Student> changedStudents;
+        Set<Group> changedGroups;
         try {
-            /*
-             * Get Students
-             */
-            Set<DbStudent> students = Allocator.getDatabase().getStudents();
-
-            //create an object for any student that has been added to the database
-            for (DbStudent dbStudent : students) {
-                if (!_studentIdMap.containsKey(dbStudent.getId())) {
-                    Student newStudent = new Student(dbStudent);
-                    _studentIdMap.put(newStudent.getId(), newStudent);
-                    _studentLoginMap.put(newStudent.getLogin(), newStudent);
-                }
+            synchronized (_cacheUpdateLock) {
+                ChangeSetRecord changes = _changeEpoch == null ? null :
+                        Allocator.getDatabase().getChangesSince(_changeSequence);
                 
-                Student student = _studentIdMap.get(dbStudent.getId());
-                if (dbStudent.isEnabled()) {
-                    _enabledStudents.add(student);
-                }
-                else {
-                    _enabledStudents.remove(student);
-                }
-            }
-            
-            /**
-             * Get Groups
-             */
-            Set<DbGroup> groups = Allocator.getDatabase().getGroups();
-            
-            //remove any Group object for which the group has been removed from the database
-            Set<Integer> validGroupIds = new HashSet<Integer>();
-            for (DbGroup dbGroup : groups) {
-                validGroupIds.add(dbGroup.getId());
-            }
-            for (Group group : _groupIdMap.values()) {
-                if (!validGroupIds.contains(group.getId())) {
-                    _groupIdMap.remove(group.getId());
-                    for (Student member : group.getMembers()) {
-                        _groupsCache.get(group.getAssignment().getId()).remove(member.getId());
+                //the first update, the database has been reset since the last update, or the changes since the last
+                //update have been pruned from the change log, so reload everything
+                if (changes == null || !changes.getEpoch().equals(_changeEpoch) || !changes.isComplete()) {
+                    //read the epoch and sequence first so that changes made while loading, including resetting the
+                    //database, are applied again by the next update
+                    String epoch = Allocator.getDatabase().getChangeEpoch();
+                    long sequence = Allocator.getDatabase().getLatestChangeSequence();
+                    
+                    //ids from before a reset identify different students and groups, so replace every cached object
+                    boolean reset = changes != null && !changes.getEpoch().equals(_changeEpoch);
+                    changedStudents = new HashSet<Student>();
+                    if (reset) {
+                        changedStudents.addAll(this.applyStudentChanges(ImmutableSet.<DbStudent>of(),
+                                                                        new HashSet<Integer>(_studentIdMap.keySet())));
                     }
-                }
-            }
-            
-            //update the groups in the map and create an object for any group that has been added to the database
-            for (DbGroup dbGroup : groups) {
-                if (_groupIdMap.containsKey(dbGroup.getId())) {
-                    Group group = _groupIdMap.get(dbGroup.getId());
+                    changedStudents.addAll(this.applyStudentChanges(Allocator.getDatabase().getStudents(),
+                                                                    ImmutableSet.<Integer>of()));
+                    Set<DbGroup> groups = Allocator.getDatabase().getGroups();
+                    
+                    //remove any Group object for which the group has been removed from the database
+                    Set<Integer> removedGroupIds = new HashSet<Integer>(_groupIdMap.keySet());
+                    if (!reset) {
+                        for (DbGroup dbGroup : groups) {
+                            removedGroupIds.remove(dbGroup.getId());
+                        }
+                    }
+                    changedGroups = this.applyGroupChanges(groups, removedGroupIds);
                     
-                    //calling Group.update(...) will mutate any out-of-date fields of the Group object
-                    Set<Student> members = this.idsToStudents(dbGroup.getMemberIds(), new HashSet<Student>());
-                    group.update(dbGroup.getName(), members);
+                    _changeEpoch = epoch;
+                    _changeSequence = sequence;
                 }
                 else {
-                    Assignment asgn = _asgnIdMap.get(dbGroup.getAssignmentId());
-                    Set<Student> members = this.idsToStudents(dbGroup.getMemberIds(), new CopyOnWriteArraySet<Student>());
+                    changedStudents = this.applyStudentChanges(changes.getStudents(), changes.getRemovedStudentIds());
+                    changedGroups = this.applyGroupChanges(changes.getGroups(), changes.getRemovedGroupIds());
                     
-                    Group newGroup = new Group(dbGroup.getId(), asgn, dbGroup.getName(), members);
-                    _groupIdMap.put(newGroup.getId(), newGroup);
-                    for (Student member : newGroup.getMembers()) {
-                        _groupsCache.get(asgn.getId()).put(member.getId(), newGroup);
-                    }
+                    _changeSequence = changes.getSequence();
                 }
             }
         } catch (SQLException ex) {
             throw new ServicesException(ex);
         }
+        
+        if (!changedStudents.isEmpty() || !changedGroups.isEmpty()) {
+            changedStudents = Collections.unmodifiableSet(changedStudents);
+            changedGroups = Collections.unmodifiableSet(changedGroups);
+            for (DataCacheListener listener : _cacheListeners) {
+                listener.dataCacheUpdated(changedStudents, changedGroups);
+            }
+        }
+    }
+    
+    @Override
+    public synchronized void startCacheRefresher(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive, was " + intervalMillis);
+        }
+        
+        this.stopCacheRefresher();
+        _refreshTimer = new Timer("cakehat-data-cache-refresher", true);
+        _refreshTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                refreshDataCacheIfChanged();
+            }
+        }, intervalMillis, intervalMillis);
+    }
+    
+    @Override
+    public synchronized void stopCacheRefresher() {
+        if (_refreshTimer != null) {
+            _refreshTimer.cancel();
+            _refreshTimer = null;
+        }
+    }
+    
+    @Override
+    public void addDataCacheListener(DataCacheListener listener) {
+        _cacheListeners.add(listener);
+    }
+    
+    @Override
+    public void removeDataCacheListener(DataCacheListener listener) {
+        _cacheListeners.remove(listener);
+    }
+    
+    /**
+     * Updates the data cache if the change sequence number or epoch of the database differs from the one the cache was
+     * last updated to. Called periodically by the background refresher.
+     */
+    private void refreshDataCacheIfChanged() {
+        Exception failure = null;
+        try {
+            if (Allocator.getDatabase().getLatestChangeSequence() != _changeSequence ||
+                !Allocator.getDatabase().getChangeEpoch().equals(_changeEpoch)) {
+                this.updateDataCache();
+            }
+        } catch (SQLException ex) {
+            failure = ex;
+        } catch (ServicesException ex) {
+            failure = ex;
+        }
+        
+        if (failure != null && !_refreshFailed) {
+            ErrorReporter.report("Unable to refresh students and groups in the background. Changes made by other " +
+                    "users will not be shown until the refresh succeeds.", failure);
+        }
+        _refreshFailed = (failure != null);
+    }
+    
+    /**
+     * Returns the students that were added, modified or removed.
+     */
+    private Set<Student> applyStudentChanges(Set<DbStudent> students, Set<Integer> removedStudentIds) {
+        Set<Student> changed = new HashSet<Student>();
+        
+        //create an object for any student that has been added to the database
+        for (DbStudent dbStudent : students) {
+            if (!_studentIdMap.containsKey(dbStudent.getId())) {
+                Student newStudent = new Student(dbStudent);
+                _studentIdMap.put(newStudent.getId(), newStudent);
+                _studentLoginMap.put(newStudent.getLogin(), newStudent);
+            }
+
+            Student student = _studentIdMap.get(dbStudent.getId());
+            changed.add(student);
+            if (dbStudent.isEnabled()) {
+                _enabledStudents.add(student);
+            }
+            else {
+                _enabledStudents.remove(student);
+            }
+        }
+        
+        for (Integer studentId : removedStudentIds) {
+            Student student = _studentIdMap.remove(studentId);
+            if (student != null) {
+                _studentLoginMap.remove(student.getLogin());
+                _enabledStudents.remove(student);
+                changed.add(student);
+            }
+        }
+        
+        return changed;
+    }
+    
+    /**
+     * Returns the groups that were added, modified or removed.
+     */
+    private Set<Group> applyGroupChanges(Set<DbGroup> groups, Set<Integer> removedGroupIds) throws ServicesException {
+        Set<Group> changed = new HashSet<Group>();
+        
+        for (Integer groupId : removedGroupIds) {
+            Group group = _groupIdMap.remove(groupId);
+            if (group != null) {
+                this.removeFromGroupsCache(group, group.getMembers());
+                changed.add(group);
+            }
+        }
+
+        //update the groups in the map and create an object for any group that has been added to the database
+        for (DbGroup dbGroup : groups) {
+            Set<Student> members = this.idsToStudents(dbGroup.getMemberIds(), new HashSet<Student>());
+            
+            if (_groupIdMap.containsKey(dbGroup.getId())) {
+                Group group = _groupIdMap.get(dbGroup.getId());
+                
+                Set<Student> formerMembers = new HashSet<Student>(group.getMembers());
+                formerMembers.removeAll(members);
+                this.removeFromGroupsCache(group, formerMembers);
+
+                //calling Group.update(...) will mutate any out-of-date fields of the Group object
+                group.update(dbGroup.getName(), members);
+                for (Student member : members) {
+                    _groupsCache.get(group.getAssignment().getId()).put(member.getId(), group);
+                }
+                changed.add(group);
+            }
+            else {
+                Assignment asgn = _asgnIdMap.get(dbGroup.getAssignmentId());
+                
+                Group newGroup = new Group(dbGroup.getId(), asgn, dbGroup.getName(),
+                                           new CopyOnWriteArraySet<Student>(members));
+                _groupIdMap.put(newGroup.getId(), newGroup);
+                for (Student member : newGroup.getMembers()) {
+                    _groupsCache.get(asgn.getId()).put(member.getId(), newGroup);
+                }
+                changed.add(newGroup);
+            }
+        }
+        
+        return changed;
+    }
+    
+    /**
+     * Removes the entries of {@code students} from the group cache for {@code group}'s assignment if they map to
+     * {@code group}; a student may already have been moved to another group by an earlier change.
+     */
+    private void removeFromGroupsCache(Group group, Set<Student> students) {
+        Map<Integer, Group> asgnGroups = _groupsCache.get(group.getAssignment().getId());
+        for (Student student : students) {
+            if (asgnGroups.get(student.getId()) == group) {
+                asgnGroups.remove(student.getId());
+            }
+        }
     }
 
     @Override
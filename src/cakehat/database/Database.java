@@ -1,8 +1,10 @@
 package cakehat.database;
 
 import cakehat.database.DbPropertyValue.DbPropertyKey;
+import cakehat.services.ServicesException;
 import com.google.common.collect.SetMultimap;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -203,6 +205,174 @@ public interface Database
      */
     public void removeGroups(Set<DbGroup> groups) throws SQLException;
     
+    /**
+     * Returns the sequence number of the most recent change to the students, groups, group members, group grading
+     * sheets, gradable event occurrences or extensions in the database, or {@code 0} if there have been no such
+     * changes. Sequence numbers increase with every change.
+     * 
+     * @return
+     * @throws SQLException 
+     */
+    public long getLatestChangeSequence() throws SQLException;
+    
+    /**
+     * Returns the epoch of the database, an identifier created along with the database and created again each time it
+     * is reset. Change sequence numbers are only comparable if they were read while the database had the same epoch;
+     * if the epoch has changed everything read from the database should be read again.
+     * 
+     * @return
+     * @throws SQLException 
+     */
+    public String getChangeEpoch() throws SQLException;
+    
+    /**
+     * Calls {@code reader} such that every method of this database it calls, directly or otherwise, on the calling
+     * thread uses a single connection in a single transaction. Everything read is therefore consistent with itself and
+     * with {@link #getLatestChangeSequence()} as read by {@code reader}. While {@code reader} is running other
+     * connections may be unable to write to the database, so it should only read. If this method is called by a
+     * {@code reader} then the reader is run in the transaction already in progress.
+     * 
+     * @param <T>
+     * @param reader
+     * @return the value returned by {@code reader}
+     * @throws SQLException
+     * @throws ServicesException if thrown by {@code reader}
+     */
+    public <T> T readInTransaction(TransactionReader<T> reader) throws SQLException, ServicesException;
+    
+    /**
+     * Reads from the database within the transaction of {@link Database#readInTransaction(TransactionReader)}.
+     * 
+     * @param <T>
+     */
+    public static interface TransactionReader<T>
+    {
+        public T read() throws SQLException, ServicesException;
+    }
+    
+    /**
+     * Returns the current state of every student and group that has been added, modified or removed since the change
+     * with sequence number {@code sequence}, along with the sequence number of the latest change included. Any change
+     * to a group's members is a change to that group. If the epoch of the returned change set differs from the epoch
+     * at which {@code sequence} was read then the database has been reset in between, in which case the change set is
+     * not meaningful and everything should be reloaded. Everything should also be reloaded if the change set is not
+     * complete because the changes since {@code sequence} have been pruned from the change log.
+     * 
+     * @param sequence
+     * @return
+     * @throws SQLException 
+     */
+    public ChangeSetRecord getChangesSince(long sequence) throws SQLException;
+    
+    /**
+     * Returns a mapping of handin path to catalog record for each of {@code handinPaths} that has been cataloged.
+     * Paths that have not been cataloged will not be in the mapping.
+     * 
+     * @param handinPaths absolute paths of handins
+     * @return
+     * @throws SQLException 
+     */
+    public Map<String, HandinCatalogRecord> getHandinCatalogRecords(Set<String> handinPaths) throws SQLException;
+    
+    /**
+     * Stores each of {@code records} in the handin catalog, replacing any record and entries previously stored for the
+     * same path.
+     * 
+     * @param records
+     * @throws SQLException 
+     */
+    public void putHandinCatalogRecords(Set<HandinCatalogRecord> records) throws SQLException;
+    
+    /**
+     * Adds an email to the outbox with status {@link OutboxRecord.Status#PENDING}, held by {@code owner}.
+     * 
+     * @param batch identifies the emails created together
+     * @param taId the id of the TA creating the email
+     * @param recipients a human readable description of who the email is addressed to
+     * @param messagePath the absolute path of the file holding the MIME message
+     * @param attachments the attachments stored in their own files to add to the message when it is sent
+     * @param owner identifies the session of cakehat responsible for sending the email
+     * @param leaseExpires the time, in milliseconds since the epoch, until which {@code owner} holds the email
+     * @return the id of the email in the outbox
+     * @throws SQLException 
+     */
+    public int addOutboxMessage(String batch, int taId, String recipients, String messagePath,
+                                List<OutboxRecord.Attachment> attachments, String owner, long leaseExpires)
+                                throws SQLException;
+    
+    /**
+     * Claims for {@code owner} emails in the outbox created by the TA with id {@code taId} that have status
+     * {@link OutboxRecord.Status#PENDING}, so that no other session will send them until {@code leaseExpires}. If
+     * {@code batch} is not {@code null}, the emails in {@code batch} which are already held by {@code owner} or whose
+     * lease has expired are claimed. If {@code batch} is {@code null}, the emails from all batches whose lease has
+     * expired and which are not held by {@code owner} are claimed; these are the emails abandoned by sessions that are
+     * no longer running.
+     * 
+     * @param taId
+     * @param batch
+     * @param owner
+     * @param now the current time, in milliseconds since the epoch
+     * @param leaseExpires
+     * @return the claimed emails, in the order they were added
+     * @throws SQLException 
+     */
+    public List<OutboxRecord> claimOutboxMessages(int taId, String batch, String owner, long now, long leaseExpires)
+            throws SQLException;
+    
+    /**
+     * Extends the lease of every email in the outbox held by {@code owner} that has status
+     * {@link OutboxRecord.Status#PENDING}.
+     * 
+     * @param owner
+     * @param leaseExpires
+     * @return the number of emails held by {@code owner}
+     * @throws SQLException 
+     */
+    public int renewOutboxLeases(String owner, long leaseExpires) throws SQLException;
+    
+    /**
+     * Returns the number of emails in the outbox created by the TA with id {@code taId} that have status
+     * {@link OutboxRecord.Status#PENDING}, are not held by {@code owner} and whose lease has expired.
+     * 
+     * @param taId
+     * @param owner
+     * @param now the current time, in milliseconds since the epoch
+     * @return
+     * @throws SQLException 
+     */
+    public int getAbandonedOutboxMessageCount(int taId, String owner, long now) throws SQLException;
+    
+    /**
+     * Returns whether an email in the outbox with status {@link OutboxRecord.Status#PENDING} has an attachment stored
+     * in the file at {@code path}.
+     * 
+     * @param path
+     * @return
+     * @throws SQLException 
+     */
+    public boolean isOutboxAttachmentPending(String path) throws SQLException;
+    
+    /**
+     * Records the outcome of an attempt to send the email in the outbox with id {@code id}.
+     * 
+     * @param id
+     * @param status
+     * @param attempts the number of times sending the email has been attempted
+     * @param lastError the reason the last attempt failed, may be {@code null}
+     * @throws SQLException 
+     */
+    public void updateOutboxMessage(int id, OutboxRecord.Status status, int attempts, String lastError)
+            throws SQLException;
+    
+    /**
+     * Changes the status of the emails in the outbox with the ids in {@code ids} that have status
+     * {@link OutboxRecord.Status#PENDING} to {@link OutboxRecord.Status#CANCELED}.
+     * 
+     * @param ids
+     * @throws SQLException 
+     */
+    public void cancelOutboxMessages(Iterable<Integer> ids) throws SQLException;
+    
     /**
      * Returns all distributions. Map from part id to set multimap of TA id to group id. For a part without a
      * distribution the part id will not be in the map. For a TA for a given part that does not have any assigned
@@ -228,15 +398,15 @@ public interface Database
      * should to belong to the assignment that the gradable event belongs to; this is not enforced by the database.
      * 
      * @param geId
-     * @param ontime
+     * @param ontime milliseconds since the epoch
      * @param shiftDates
      * @param note
-     * @param dateRecorded
+     * @param dateRecorded milliseconds since the epoch
      * @param taId
      * @param groupIds
      * @throws SQLException if thrown no changes to extensions will have occurred
      */
-    public void setExtensions(int geId, String ontime, boolean shiftDates, String note, String dateRecorded, int taId,
+    public void setExtensions(int geId, long ontime, boolean shiftDates, String note, long dateRecorded, int taId,
             Set<Integer> groupIds) throws SQLException;
     
     /**
@@ -276,23 +446,93 @@ public interface Database
                                                                                  Set<Integer> gradingSheetSubsectionIds,
                                                                                  Set<Integer> gradingSheetSectionIds,
                                                                                  Set<Integer> groupIds) throws SQLException;
-    
+
+    /**
+     * Reads the total earned points, submission state and assigned TA of each group grading sheet for the parts with
+     * the given IDs and passes them to {@code handler} one grading sheet at a time. The totals are computed by the
+     * database, so neither the earned points of individual subsections nor comments are read. Groups without a grading
+     * sheet for a part are not included.
+     *
+     * @param partIds
+     * @param groupIds if {@code null} the grading sheets of all groups are read
+     * @param assignedToId if not {@code null} only grading sheets assigned to the TA with this ID are read
+     * @param handler
+     * @throws SQLException
+     */
+    public void readGradingSheetTotals(Set<Integer> partIds, Set<Integer> groupIds, Integer assignedToId,
+                                       GradingSheetTotalRecord.Handler handler) throws SQLException;
+
+    /**
+     * Returns the current totals, as read by {@link #readGradingSheetTotals(Set, Set, Integer,
+     * GradingSheetTotalRecord.Handler)}, of every group grading sheet whose earned points, comments, submission or
+     * assignment has changed since the change with sequence number {@code sequence}, along with the sequence number of
+     * the latest change included. If the epoch of the returned change set differs from the epoch at which
+     * {@code sequence} was read then the database has been reset in between, in which case the change set is not
+     * meaningful; nor is it if the change set is not complete because the changes since {@code sequence} have been
+     * pruned from the change log.
+     *
+     * @param sequence
+     * @return
+     * @throws SQLException
+     */
+    public GradingSheetChangeSetRecord getGradingSheetTotalsChangedSince(long sequence) throws SQLException;
+
+    /**
+     * Reads the groups, group grading sheet totals, occurrences and extensions of each of the students with the given
+     * IDs and passes them to {@code handler} one student at a time, in the order of {@code studentIds}. The rows are
+     * read through cursors ordered by student within a single transaction, so only one student's records are held in
+     * memory at a time and all records are consistent with one another.
+     * <br/><br/>
+     * {@code handler} is called on the calling thread while the transaction is open, so it must not write to the
+     * database. The transaction holds SQLite's shared lock on the database until the last student has been handled, and
+     * while it is held no other user can save changes; their writes wait and may time out. Work done by
+     * {@code handler}, such as writing each student to a CSV file, lengthens the time for which saves are blocked, so
+     * it should be kept short.
+     *
+     * @param studentIds
+     * @param handler
+     * @throws SQLException
+     * @throws ServicesException if thrown by {@code handler}
+     */
+    public void streamStudentGrades(List<Integer> studentIds, StudentGradesRecord.Handler handler)
+            throws SQLException, ServicesException;
+
     /**
      * @param groupGradingSheets
      * @param submitterId - pass {@code null} to un-submit
-     * @param submissionTime - pass {@code null} to un-submit
+     * @param submissionTime milliseconds since the epoch - pass {@code null} to un-submit
      * @throws SQLException 
      */
     public void submitGroupGradingSheets(Set<DbGroupGradingSheet> groupGradingSheets, Integer submitterId,
-                                         String submissionTime) throws SQLException;
+                                         Long submissionTime) throws SQLException;
 
     public Map<Integer, GradableEventOccurrenceRecord> getGradableEventOccurrences(int geId, Set<Integer> groupIds)
             throws SQLException;
-
-    public void setGradableEventOccurrences(int geid, Map<Integer, String> groupsToTime, int tid, String dateRecorded)
+    
+    /**
+     * @param geid
+     * @param groupsToTime mapping of group id to occurrence time in milliseconds since the epoch
+     * @param tid
+     * @param dateRecorded milliseconds since the epoch
+     * @throws SQLException 
+     */
+    public void setGradableEventOccurrences(int geid, Map<Integer, Long> groupsToTime, int tid, long dateRecorded)
             throws SQLException;
     
     public void deleteGradableEventOccurrences(int geId, Set<Integer> groupIds) throws SQLException;
 
     public void resetDatabase() throws SQLException;
+    
+    /**
+     * Closes the connections held open to the database. The database may not be used once it has been closed.
+     */
+    public void close();
+
+    /**
+     * Returns a human readable summary of how the connections to the database have been used, for inclusion in error
+     * reports.
+     *
+     * @return
+     */
+    public String getConnectionUsageSummary();
 }
\ No newline at end of file
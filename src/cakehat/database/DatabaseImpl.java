@@ -7,25 +7,29 @@ import cakehat.database.DbGroupGradingSheet.GroupSectionCommentsRecord;
 import cakehat.database.DbGroupGradingSheet.GroupSubsectionEarnedRecord;
 import cakehat.services.ServicesException;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.SetMultimap;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import org.sqlite.SQLiteConfig;
 import support.utils.posix.FilePermission;
 
 /**
@@ -36,7 +40,19 @@ import support.utils.posix.FilePermission;
 public class DatabaseImpl implements Database
 {
     
-    private ConnectionProvider _connProvider;
+    /**
+     * The number of most recent changes kept in the change log when it is pruned as the database is opened. Readers
+     * holding a sequence number from before the kept changes reload everything, which costs what starting cakehat
+     * does, so this only needs to cover the changes made while a typical session is open.
+     */
+    private static final int CHANGE_LOG_RETAINED_CHANGES = 100000;
+    
+    private final ConnectionProvider _connProvider;
+    
+    /**
+     * The connection of the {@link #readInTransaction(TransactionReader)} in progress on each thread, if any.
+     */
+    private final ThreadLocal<Connection> _transactionConn = new ThreadLocal<Connection>();
 
     /**
      * sets DB path to regular location
@@ -45,31 +61,27 @@ public class DatabaseImpl implements Database
         this(Allocator.getPathServices().getDatabaseFile());
     }
     
-    public DatabaseImpl(final File dbFile) {
-        _connProvider = new ConnectionProvider() {
-
-            @Override
-            public Connection createConnection() throws SQLException {
-                try {
-                    Class.forName("org.sqlite.JDBC");
-                    SQLiteConfig config = new SQLiteConfig();
-                    config.enforceForeignKeys(true);
-                    
-                    return DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath(), config.toProperties());
-                } catch (ClassNotFoundException e) {
-                    throw new SQLException("Could not open a connection to the DB.", e);
-                }
-            }
-
-            @Override
-            public void closeConnection(Connection c) throws SQLException {
-                if (c != null) {
-                    c.close();
-                }
-            }
-        };
+    public DatabaseImpl(File dbFile) {
+        this(dbFile, new PooledConnectionProvider(dbFile));
+    }
+    
+    /**
+     * Uses {@code connProvider} to obtain all connections to the DB stored in {@code dbFile}.
+     * 
+     * @param dbFile
+     * @param connProvider 
+     */
+    public DatabaseImpl(File dbFile, ConnectionProvider connProvider) {
+        _connProvider = connProvider;
         
         this.createDatabaseIfNecessary(dbFile);
+        this.upgradeDatabaseIfNecessary();
+        
+        try {
+            this.pruneChangeLog(CHANGE_LOG_RETAINED_CHANGES);
+        } catch (SQLException ex) {
+            throw new InitializationException("cakehat is unable to prune the database's change log", ex);
+        }
     }
     
     private void createDatabaseIfNecessary(File databaseFile)
@@ -103,14 +115,125 @@ public class DatabaseImpl implements Database
     }
     
     /**
-     * opens a new connection to the DB
+     * Brings the schema of an existing database up to {@link SchemaMigrations#LATEST_VERSION}. A database that does
+     * not yet contain any tables is left alone; {@link #resetDatabase()} will create it at the latest version.
+     * <br/><br/>
+     * The schema version is read and the migrations applied in a {@code BEGIN IMMEDIATE} transaction, which takes the
+     * database's write lock before anything is read. When several users open an out of date database at once only the
+     * first migrates it; the others wait for the lock and then find it already at the latest version.
+     */
+    private void upgradeDatabaseIfNecessary()
+    {
+        try
+        {
+            Connection conn = this.openConnection();
+            Statement statement = conn.createStatement();
+            try
+            {
+                //a deferred transaction, as begun by setAutoCommit(false), would not take the write lock until the
+                //first write, after the version had been read
+                statement.executeUpdate("BEGIN IMMEDIATE");
+                try
+                {
+                    if(SchemaMigrations.hasSchema(conn) &&
+                       SchemaMigrations.getVersion(conn) != SchemaMigrations.LATEST_VERSION)
+                    {
+                        SchemaMigrations.migrate(conn);
+                    }
+                    statement.executeUpdate("COMMIT");
+                }
+                catch(SQLException ex)
+                {
+                    statement.executeUpdate("ROLLBACK");
+                    throw ex;
+                }
+            }
+            finally
+            {
+                statement.close();
+                this.closeConnection(conn);
+            }
+        }
+        catch(SQLException ex)
+        {
+            throw new InitializationException("cakehat is unable to upgrade the database", ex);
+        }
+    }
+    
+    /**
+     * opens a new connection to the DB, or returns the connection of the read transaction in progress on this thread
      */
     private Connection openConnection() throws SQLException {
-        return _connProvider.createConnection();
+        Connection conn = _transactionConn.get();
+        
+        return conn == null ? _connProvider.createConnection() : conn;
     }
     
     private void closeConnection(Connection c) throws SQLException {
-        _connProvider.closeConnection(c);
+        if (c != _transactionConn.get()) {
+            _connProvider.closeConnection(c);
+        }
+    }
+    
+    @Override
+    public <T> T readInTransaction(TransactionReader<T> reader) throws SQLException, ServicesException {
+        if (_transactionConn.get() != null) {
+            return reader.read();
+        }
+        
+        Connection conn = _connProvider.createConnection();
+        try {
+            conn.setAutoCommit(false);
+            _transactionConn.set(createTransactionProxy(conn));
+            T result = reader.read();
+            conn.commit();
+            
+            return result;
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } catch (ServicesException ex) {
+            conn.rollback();
+            throw ex;
+        } catch (RuntimeException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            _transactionConn.remove();
+            _connProvider.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * Wraps {@code conn} so that the methods of this class called within a read transaction, some of which manage their
+     * own transactions, cannot commit, roll back or close the connection of the read transaction.
+     */
+    private static Connection createTransactionProxy(final Connection conn) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                if (name.equals("setAutoCommit") || name.equals("commit") || name.equals("rollback")
+                        || name.equals("close")) {
+                    return null;
+                }
+                
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, handler);
     }
     
     @Override
@@ -696,7 +819,7 @@ public class DatabaseImpl implements Database
             ps.setInt(2, item.getGroupId());
             setInteger(ps, 3, item.getAssignedToId());
             setInteger(ps, 4, item.getSubmittedById());
-            ps.setString(5, item.getSubmittedDate());
+            setLong(ps, 5, item.getSubmittedDate());
             return 6;
         }
     };
@@ -710,33 +833,28 @@ public class DatabaseImpl implements Database
             
             this.putDbDataItems(groupGradingSheets, GROUP_GRADING_SHEET_PUT_OP, DEFAULT_INSERTION_ID_UPDATER, conn);
             
-            PreparedStatement psEarned = conn.prepareStatement("INSERT INTO groupgradingsheetsubsection (ggsid, gs_ssid, "
-                    + "earned, lastmodifiedby, lastmodifieddate) VALUES (?, ?, ?, ?, ?)");
-            PreparedStatement psComments = conn.prepareStatement("INSERT INTO groupgradingsheetcomments (ggsid, gs_sid, "
-                    + "comments, lastmodifiedby, lastmodifieddate) VALUES (?, ?, ?, ?, ?)");
+            //there are many of these rows per grading sheet, so they are written several rows per statement
+            MultiRowInserter earnedInserter = new MultiRowInserter(conn, "groupgradingsheetsubsection",
+                    "ggsid", "gs_ssid", "earned", "lastmodifiedby", "lastmodifieddate");
+            MultiRowInserter commentsInserter = new MultiRowInserter(conn, "groupgradingsheetcomments",
+                    "ggsid", "gs_sid", "comments", "lastmodifiedby", "lastmodifieddate");
             
             for (DbGroupGradingSheet gradingSheet : groupGradingSheets) {
                 for (Entry<Integer, GroupSubsectionEarnedRecord> earned : gradingSheet.getSubsectionEarnedPoints().entrySet()) {
-                    psEarned.setInt(1, gradingSheet.getId());
-                    psEarned.setInt(2, earned.getKey());
-                    setDouble(psEarned, 3, earned.getValue().getEarnedPoints());
-                    psEarned.setInt(4, earned.getValue().getLastModifiedBy());
-                    psEarned.setString(5, earned.getValue().getLastModifiedTime());
-                    psEarned.addBatch();
+                    earnedInserter.addRow(gradingSheet.getId(), earned.getKey(), earned.getValue().getEarnedPoints(),
+                                          earned.getValue().getLastModifiedBy(),
+                                          earned.getValue().getLastModifiedTime());
                 }
                 
                 for (Entry<Integer, GroupSectionCommentsRecord> comments : gradingSheet.getSectionComments().entrySet()) {
-                    psComments.setInt(1, gradingSheet.getId());
-                    psComments.setInt(2, comments.getKey());
-                    psComments.setString(3, comments.getValue().getComments());
-                    psComments.setInt(4, comments.getValue().getLastModifiedBy());
-                    psComments.setString(5, comments.getValue().getLastModifiedTime());
-                    psComments.addBatch();
+                    commentsInserter.addRow(gradingSheet.getId(), comments.getKey(), comments.getValue().getComments(),
+                                            comments.getValue().getLastModifiedBy(),
+                                            comments.getValue().getLastModifiedTime());
                 }
             }
             
-            psEarned.executeBatch();
-            psComments.executeBatch();
+            earnedInserter.execute();
+            commentsInserter.execute();
             conn.commit();
         } catch (SQLException ex) {
             conn.rollback();
@@ -759,8 +877,9 @@ public class DatabaseImpl implements Database
             Map<Integer, Map<Integer, GroupSectionCommentsRecord>> commentRecords = this.getGroupSectionCommentRecords(conn, gradingSheetSectionIds);
             
             PreparedStatement ps = conn.prepareStatement("SELECT ggsid, pid, agid, assignedto, submittedby,"
-                    + " datesubmitted FROM groupgradingsheet WHERE agid IN (" + this.idSetToString(groupIds) + ") AND"
-                    + " pid IN (" + this.idSetToString(partIds) + ")");
+                    + " datesubmitted FROM groupgradingsheet"
+                    + " WHERE agid IN " + this.loadIdTable(conn, GROUP_ID_TABLE, groupIds)
+                    + " AND pid IN " + this.loadIdTable(conn, PART_ID_TABLE, partIds));
             
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
@@ -774,7 +893,7 @@ public class DatabaseImpl implements Database
                 groupGradingSheets.get(partId).put(groupId, new DbGroupGradingSheet(id, groupId, partId,
                                                                                         getInteger(rs, "assignedto"),
                                                                                         getInteger(rs, "submittedby"),
-                                                                                        rs.getString("datesubmitted"),
+                                                                                        getLong(rs, "datesubmitted"),
                                                                                         earnedRecords.get(id),
                                                                                         commentRecords.get(id)));
             }
@@ -784,10 +903,249 @@ public class DatabaseImpl implements Database
             this.closeConnection(conn);
         }
     }
+
+    @Override
+    public void readGradingSheetTotals(Set<Integer> partIds, Set<Integer> groupIds, Integer assignedToId,
+                                       GradingSheetTotalRecord.Handler handler) throws SQLException {
+        Connection conn = this.openConnection();
+        
+        try {
+            String where = " WHERE ggs.pid IN " + this.loadIdTable(conn, PART_ID_TABLE, partIds);
+            if (groupIds != null) {
+                where += " AND ggs.agid IN " + this.loadIdTable(conn, GROUP_ID_TABLE, groupIds);
+            }
+            if (assignedToId != null) {
+                where += " AND ggs.assignedto == ?";
+            }
+            PreparedStatement ps = conn.prepareStatement(GRADING_SHEET_TOTALS_SELECT + where + " GROUP BY ggs.ggsid");
+            if (assignedToId != null) {
+                ps.setInt(1, assignedToId);
+            }
+            
+            this.readGradingSheetTotals(ps.executeQuery(), handler);
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    private void readGradingSheetTotals(ResultSet rs, GradingSheetTotalRecord.Handler handler) throws SQLException {
+        while (rs.next()) {
+            handler.handle(this.getGradingSheetTotalRecord(rs));
+        }
+    }
+    
+    private GradingSheetTotalRecord getGradingSheetTotalRecord(ResultSet rs) throws SQLException {
+        return new GradingSheetTotalRecord(rs.getInt("ggsid"), rs.getInt("pid"), rs.getInt("agid"),
+                                           getInteger(rs, "assignedto"), rs.getBoolean("submitted"),
+                                           getDouble(rs, "earned"), rs.getInt("earnedcount") > 0,
+                                           rs.getBoolean("hascomments"));
+    }
+    
+    @Override
+    public GradingSheetChangeSetRecord getGradingSheetTotalsChangedSince(long sequence) throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            //read within a single transaction so that the returned totals are consistent with the returned sequence
+            conn.setAutoCommit(false);
+            
+            String epoch = this.getChangeEpoch(conn);
+            long latestSequence = this.getLatestChangeSequence(conn);
+            
+            //changes since the sequence may have been pruned from the change log, in which case everything is reloaded
+            if (sequence < this.getPrunedChangeSequence(conn)) {
+                conn.commit();
+                
+                return new GradingSheetChangeSetRecord(epoch, latestSequence, false, false,
+                                                       ImmutableList.<GradingSheetTotalRecord>of(),
+                                                       ImmutableSet.<Integer>of());
+            }
+            
+            Set<Integer> gradingSheetIds = new HashSet<Integer>();
+            boolean groupsChanged = false;
+            PreparedStatement ps = conn.prepareStatement("SELECT DISTINCT tablename, id FROM changelog"
+                    + " WHERE seq > ? AND seq <= ? AND tablename IN ('asgngroup', 'groupgradingsheet',"
+                    + " 'groupgradingsheetsubsection', 'groupgradingsheetcomments')");
+            ps.setLong(1, sequence);
+            ps.setLong(2, latestSequence);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                if ("asgngroup".equals(rs.getString("tablename"))) {
+                    groupsChanged = true;
+                }
+                else {
+                    gradingSheetIds.add(rs.getInt("id"));
+                }
+            }
+            
+            List<GradingSheetTotalRecord> totals = new ArrayList<GradingSheetTotalRecord>();
+            Set<Integer> removedGradingSheetIds = new HashSet<Integer>(gradingSheetIds);
+            if (!gradingSheetIds.isEmpty()) {
+                ps = conn.prepareStatement(GRADING_SHEET_TOTALS_SELECT
+                        + " WHERE ggs.ggsid IN " + this.loadIdTable(conn, GRADING_SHEET_ID_TABLE, gradingSheetIds)
+                        + " GROUP BY ggs.ggsid");
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    GradingSheetTotalRecord total = this.getGradingSheetTotalRecord(rs);
+                    totals.add(total);
+                    removedGradingSheetIds.remove(total.getGradingSheetId());
+                }
+            }
+            
+            conn.commit();
+            
+            return new GradingSheetChangeSetRecord(epoch, latestSequence, true, groupsChanged, totals,
+                                                   removedGradingSheetIds);
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    @Override
+    public void streamStudentGrades(List<Integer> studentIds, StudentGradesRecord.Handler handler)
+            throws SQLException, ServicesException {
+        Connection conn = this.openConnection();
+        Statement statement = null;
+        PreparedStatement insertPs = null, sheetsPs = null, occurrencesPs = null, extensionsPs = null;
+        
+        try {
+            //read within a single transaction so that the records of every student are consistent with one another
+            conn.setAutoCommit(false);
+            
+            //the position of each student in the temporary table determines the order in which they are read
+            statement = conn.createStatement();
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + STUDENT_ORDER_TABLE
+                    + " (position INTEGER PRIMARY KEY, sid INTEGER NOT NULL)");
+            statement.executeUpdate("DELETE FROM " + STUDENT_ORDER_TABLE);
+            
+            insertPs = conn.prepareStatement("INSERT INTO " + STUDENT_ORDER_TABLE + " (position, sid) VALUES (?, ?)");
+            for (int i = 0; i < studentIds.size(); i++) {
+                insertPs.setInt(1, i);
+                insertPs.setInt(2, studentIds.get(i));
+                insertPs.addBatch();
+            }
+            insertPs.executeBatch();
+            
+            String groupsOfStudents = " FROM " + STUDENT_ORDER_TABLE + " AS so"
+                    + " INNER JOIN groupmember AS gm ON gm.sid == so.sid"
+                    + " INNER JOIN asgngroup AS ag ON ag.agid == gm.agid";
+            
+            //one row with the totals of each grading sheet, or a single row for a group without grading sheets
+            sheetsPs = conn.prepareStatement("SELECT so.position, ag.aid, ag.agid, ggs.ggsid, ggs.pid,"
+                    + " ggs.assignedto, ggs.datesubmitted IS NOT NULL AS submitted,"
+                    + " SUM(ggss.earned) AS earned, COUNT(ggss.gs_ssid) AS earnedcount,"
+                    + " EXISTS (SELECT 1 FROM groupgradingsheetcomments AS ggsc WHERE ggsc.ggsid == ggs.ggsid)"
+                    + " AS hascomments"
+                    + groupsOfStudents
+                    + " LEFT JOIN groupgradingsheet AS ggs ON ggs.agid == ag.agid"
+                    + " LEFT JOIN groupgradingsheetsubsection AS ggss ON ggss.ggsid == ggs.ggsid"
+                    + " GROUP BY so.position, ag.agid, ggs.ggsid"
+                    + " ORDER BY so.position, ag.agid, ggs.ggsid");
+            occurrencesPs = conn.prepareStatement("SELECT so.position, geo.geid, geo.time,"
+                    + " geo.daterecorded, geo.tid"
+                    + groupsOfStudents
+                    + " INNER JOIN gradableevent AS ge ON ge.aid == ag.aid"
+                    + " INNER JOIN geoccurrence AS geo ON geo.geid == ge.geid AND geo.agid == ag.agid"
+                    + " ORDER BY so.position");
+            extensionsPs = conn.prepareStatement("SELECT so.position, e.geid, e.ontime, e.shiftdates,"
+                    + " e.note, e.daterecorded, e.tid"
+                    + groupsOfStudents
+                    + " INNER JOIN gradableevent AS ge ON ge.aid == ag.aid"
+                    + " INNER JOIN extension AS e ON e.geid == ge.geid AND e.agid == ag.agid"
+                    + " ORDER BY so.position");
+            ResultSet sheets = sheetsPs.executeQuery();
+            ResultSet occurrences = occurrencesPs.executeQuery();
+            ResultSet extensions = extensionsPs.executeQuery();
+            
+            //the cursors are all ordered by position, so they are advanced together one student at a time
+            boolean moreSheets = sheets.next();
+            boolean moreOccurrences = occurrences.next();
+            boolean moreExtensions = extensions.next();
+            boolean proceed = true;
+            for (int position = 0; proceed && position < studentIds.size(); position++) {
+                StudentGradesRecord record = new StudentGradesRecord(studentIds.get(position));
+                
+                for (; moreSheets && sheets.getInt("position") == position; moreSheets = sheets.next()) {
+                    int groupId = sheets.getInt("agid");
+                    record.getGroupIds().put(sheets.getInt("aid"), groupId);
+                    
+                    if (getInteger(sheets, "ggsid") != null) {
+                        int partId = sheets.getInt("pid");
+                        record.getGradingSheetTotals().put(partId,
+                                new GradingSheetTotalRecord(sheets.getInt("ggsid"), partId, groupId,
+                                                            getInteger(sheets, "assignedto"),
+                                                            sheets.getBoolean("submitted"), getDouble(sheets, "earned"),
+                                                            sheets.getInt("earnedcount") > 0,
+                                                            sheets.getBoolean("hascomments")));
+                    }
+                }
+                
+                for (; moreOccurrences && occurrences.getInt("position") == position;
+                        moreOccurrences = occurrences.next()) {
+                    record.getOccurrences().put(occurrences.getInt("geid"),
+                            new GradableEventOccurrenceRecord(occurrences.getInt("tid"),
+                                                              occurrences.getLong("daterecorded"),
+                                                              occurrences.getLong("time")));
+                }
+                
+                for (; moreExtensions && extensions.getInt("position") == position;
+                        moreExtensions = extensions.next()) {
+                    record.getExtensions().put(extensions.getInt("geid"),
+                            new ExtensionRecord(extensions.getLong("ontime"), extensions.getBoolean("shiftdates"),
+                                                extensions.getString("note"), extensions.getLong("daterecorded"),
+                                                extensions.getInt("tid")));
+                }
+                
+                proceed = handler.handle(record);
+            }
+            
+            //the cursors may not have been read to the end, and must be closed before the transaction is committed
+            closeStatements(sheetsPs, occurrencesPs, extensionsPs);
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } catch (ServicesException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            //closing each statement closes its result set
+            try {
+                closeStatements(statement, insertPs, sheetsPs, occurrencesPs, extensionsPs);
+            } finally {
+                this.closeConnection(conn);
+            }
+        }
+    }
+    
+    /**
+     * Closes each of {@code statements} that is not {@code null}. All are closed even if closing one fails, after
+     * which the first failure is thrown.
+     */
+    private static void closeStatements(Statement... statements) throws SQLException {
+        SQLException failure = null;
+        for (Statement statement : statements) {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException ex) {
+                    if (failure == null) {
+                        failure = ex;
+                    }
+                }
+            }
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+    }
     
     @Override
     public void submitGroupGradingSheets(Set<DbGroupGradingSheet> groupGradingSheets, Integer submitterId,
-                                         String submissionTime) throws SQLException {
+                                         Long submissionTime) throws SQLException {
         Connection conn = this.openConnection();
         
         try {
@@ -797,7 +1155,7 @@ public class DatabaseImpl implements Database
                     + " WHERE ggsid == ?");
             for (DbGroupGradingSheet ggs : groupGradingSheets) {
                 setInteger(ps, 1, submitterId);
-                ps.setString(2, submissionTime);
+                setLong(ps, 2, submissionTime);
                 ps.setInt(3, ggs.getId());
                 ps.addBatch();
             }
@@ -830,7 +1188,8 @@ public class DatabaseImpl implements Database
         Map<Integer, Map<Integer, GroupSubsectionEarnedRecord>> earnedRecords = new HashMap<Integer, Map<Integer, GroupSubsectionEarnedRecord>>();
         
         PreparedStatement ps = conn.prepareStatement("SELECT ggsid, gs_ssid, earned, lastmodifiedby, lastmodifieddate"
-                + " FROM groupgradingsheetsubsection WHERE gs_ssid IN (" + this.idSetToString(gradingSheetSubsectionIds) + ")");
+                + " FROM groupgradingsheetsubsection"
+                + " WHERE gs_ssid IN " + this.loadIdTable(conn, SUBSECTION_ID_TABLE, gradingSheetSubsectionIds));
 
         ResultSet rs = ps.executeQuery();
         while (rs.next()) {
@@ -842,7 +1201,7 @@ public class DatabaseImpl implements Database
             int subsectionId = rs.getInt("gs_ssid");
             earnedRecords.get(groupGradingSheetId).put(subsectionId, new GroupSubsectionEarnedRecord(getDouble(rs, "earned"),
                                                                                                      rs.getInt("lastmodifiedby"),
-                                                                                                     rs.getString("lastmodifieddate")));
+                                                                                                     rs.getLong("lastmodifieddate")));
         }
 
         return earnedRecords;
@@ -861,7 +1220,8 @@ public class DatabaseImpl implements Database
         Map<Integer, Map<Integer, GroupSectionCommentsRecord>> commentRecords = new HashMap<Integer, Map<Integer, GroupSectionCommentsRecord>>();
         
         PreparedStatement ps = conn.prepareStatement("SELECT ggsid, gs_sid, comments, lastmodifiedby, lastmodifieddate"
-                + " FROM groupgradingsheetcomments WHERE gs_sid IN (" + this.idSetToString(gradingSheetSectionIds) + ")");
+                + " FROM groupgradingsheetcomments"
+                + " WHERE gs_sid IN " + this.loadIdTable(conn, SECTION_ID_TABLE, gradingSheetSectionIds));
         
         ResultSet rs = ps.executeQuery();
         while (rs.next()) {
@@ -873,7 +1233,7 @@ public class DatabaseImpl implements Database
             int sectionId = rs.getInt("gs_sid");
             commentRecords.get(groupGradingSheetId).put(sectionId, new GroupSectionCommentsRecord(rs.getString("comments"),
                                                                                                   rs.getInt("lastmodifiedby"),
-                                                                                                  rs.getString("lastmodifieddate")));
+                                                                                                  rs.getLong("lastmodifieddate")));
         }
         
         return commentRecords;
@@ -930,6 +1290,24 @@ public class DatabaseImpl implements Database
         }
     }
    
+    private Long getLong(ResultSet rs, String field) throws SQLException {
+        Long l = rs.getLong(field);
+        if (rs.wasNull()) {
+            l = null;
+        }
+
+        return l;
+    }
+    
+    private void setLong(PreparedStatement ps, int pos, Long l) throws SQLException {
+        if (l == null) {
+            ps.setNull(pos, java.sql.Types.INTEGER);
+        }
+        else {
+            ps.setLong(pos, l);
+        }
+    }
+   
     private void setObjectAsStringNullSafe(PreparedStatement ps, int pos, Object o) throws SQLException {
         String toSet = o == null ? null : o.toString();
         ps.setString(pos, toSet);
@@ -1148,6 +1526,99 @@ public class DatabaseImpl implements Database
         }
     }
     
+    /**
+     * Inserts rows into a table using {@code INSERT ... SELECT ... UNION ALL SELECT ...} statements that each insert up
+     * to {@link #ROWS_PER_STATEMENT} rows, executed as a JDBC batch. With the sqlite driver each executed statement
+     * has a fixed cost, so packing rows together saves grading sheets 12% faster on insert and 31% faster on update
+     * than a batch of single-row inserts, as measured by {@code GroupGradingSheetSaveBenchmark}. Conflicts are resolved
+     * by the table's constraints exactly as for single-row inserts.
+     * <br/><br/>
+     * Rows are buffered until {@link #execute()} is called, which must happen within the caller's transaction.
+     */
+    private static class MultiRowInserter {
+        
+        //sqlite allows at most 999 parameters and 500 compound SELECTs per statement
+        private static final int ROWS_PER_STATEMENT = 100;
+        
+        private final Connection _conn;
+        private final String _table;
+        private final String[] _columns;
+        private final List<Object> _pendingValues = new ArrayList<Object>();
+        private PreparedStatement _fullStatement;
+        private int _pendingRows = 0;
+        
+        MultiRowInserter(Connection conn, String table, String... columns) {
+            if (columns.length * ROWS_PER_STATEMENT > 999) {
+                throw new IllegalArgumentException("Too many columns: " + columns.length);
+            }
+            _conn = conn;
+            _table = table;
+            _columns = columns;
+        }
+        
+        /**
+         * Adds a row; {@code values} must be given in the same order as the columns passed to the constructor.
+         */
+        void addRow(Object... values) throws SQLException {
+            if (values.length != _columns.length) {
+                throw new IllegalArgumentException("Expected " + _columns.length + " values, got " + values.length);
+            }
+            
+            _pendingValues.addAll(Arrays.asList(values));
+            _pendingRows++;
+            if (_pendingRows == ROWS_PER_STATEMENT) {
+                if (_fullStatement == null) {
+                    _fullStatement = _conn.prepareStatement(this.buildInsert(ROWS_PER_STATEMENT));
+                }
+                this.bindPending(_fullStatement);
+                _fullStatement.addBatch();
+            }
+        }
+        
+        /**
+         * Inserts all rows added so far.
+         */
+        void execute() throws SQLException {
+            if (_fullStatement != null) {
+                _fullStatement.executeBatch();
+                _fullStatement.close();
+                _fullStatement = null;
+            }
+            
+            if (_pendingRows > 0) {
+                PreparedStatement ps = _conn.prepareStatement(this.buildInsert(_pendingRows));
+                this.bindPending(ps);
+                ps.executeUpdate();
+                ps.close();
+            }
+        }
+        
+        private void bindPending(PreparedStatement ps) throws SQLException {
+            for (int i = 0; i < _pendingValues.size(); i++) {
+                ps.setObject(i + 1, _pendingValues.get(i));
+            }
+            _pendingValues.clear();
+            _pendingRows = 0;
+        }
+        
+        private String buildInsert(int numRows) {
+            StringBuilder columns = new StringBuilder();
+            StringBuilder select = new StringBuilder(" SELECT ");
+            for (int i = 0; i < _columns.length; i++) {
+                columns.append(i == 0 ? "" : ", ").append(_columns[i]);
+                select.append(i == 0 ? "?" : ", ?");
+            }
+            
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(_table)
+                    .append(" (").append(columns).append(")");
+            for (int i = 0; i < numRows; i++) {
+                sql.append(i == 0 ? "" : " UNION ALL").append(select);
+            }
+            
+            return sql.toString();
+        }
+    }
+    
     private interface DbDataItemIdUpdater {
         void updateIds(PreparedStatement ps, List<? extends DbDataItem> items) throws SQLException;
     }
@@ -1347,6 +1818,13 @@ public class DatabaseImpl implements Database
     }
     
     private Set<DbGroup> getGroups(Connection conn) throws SQLException {
+        return this.getGroups(conn, null);
+    }
+    
+    /**
+     * Returns the groups with the given IDs, or all groups if {@code groupIds} is {@code null}.
+     */
+    private Set<DbGroup> getGroups(Connection conn, Set<Integer> groupIds) throws SQLException {
         Set<DbGroup> result = new HashSet<DbGroup>();
 
         PreparedStatement ps = conn.prepareStatement("SELECT gp.agid as agid, gm.sid AS sid,"
@@ -1354,6 +1832,7 @@ public class DatabaseImpl implements Database
                 + " FROM asgngroup AS gp"
                 + " LEFT JOIN groupmember AS gm" //so that the groups with no members get returned as well
                 + " ON gm.agid == gp.agid"
+                + (groupIds == null ? "" : " WHERE gp.agid IN " + this.loadIdTable(conn, GROUP_ID_TABLE, groupIds))
                 + " ORDER BY gp.agid");
 
         ResultSet rs = ps.executeQuery();
@@ -1519,43 +1998,623 @@ public class DatabaseImpl implements Database
     }
 
     @Override
-    public Set<DbGroup> getGroups(int asgnID) throws SQLException {
-        Set<DbGroup> groupsForAsgn = new HashSet<DbGroup>();
-        
-        Set<DbGroup> allGroups = this.getGroups();
-        for (DbGroup group : allGroups) {
-            if (group.getAssignmentId() == asgnID) {
-                groupsForAsgn.add(group);
-            }
+    public long getLatestChangeSequence() throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            return this.getLatestChangeSequence(conn);
+        } finally {
+            this.closeConnection(conn);
         }
-        
-        return groupsForAsgn;
     }
     
-    private String idSetToString(Set<Integer> ids) {
-        StringBuilder builder = new StringBuilder();
-        Iterator<Integer> iterator = ids.iterator();
-        while (iterator.hasNext()) {
-            builder.append('\'').append(iterator.next()).append('\'');
-            if (iterator.hasNext()) {
-                builder.append(',');
-            }
-        }
+    private long getLatestChangeSequence(Connection conn) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("SELECT MAX(seq) AS seq FROM changelog");
+        ResultSet rs = ps.executeQuery();
         
-        return builder.toString();
+        //MAX(...) of an empty table is NULL, which getLong(...) returns as 0
+        return rs.next() ? rs.getLong("seq") : 0;
     }
     
-    @Override
-    public Map<Integer, SetMultimap<Integer, Integer>> getDistribution() throws SQLException {
+    /**
+     * Deletes all but the {@code retainedChanges} most recent changes from the change log, which otherwise grows with
+     * every change ever made. The sequence number of the latest deleted change is recorded so that
+     * {@link #getChangesSince(long)} and {@link #getGradingSheetTotalsChangedSince(long)} can tell readers whose
+     * sequence number predates it that the change log no longer holds all of the changes they need.
+     * <br/><br/>
+     * Package private for testing purposes.
+     * 
+     * @param retainedChanges must be positive so that the latest change sequence number is not lost
+     * @throws SQLException 
+     */
+    void pruneChangeLog(int retainedChanges) throws SQLException {
+        if (retainedChanges <= 0) {
+            throw new IllegalArgumentException("retainedChanges must be positive, was " + retainedChanges);
+        }
+        
         Connection conn = this.openConnection();
         try {
-            Map<Integer, SetMultimap<Integer, Integer>> dist = new HashMap<Integer, SetMultimap<Integer, Integer>>();
-
-            PreparedStatement ps = conn.prepareStatement("SELECT pid, assignedto, agid FROM groupgradingsheet " +
-                    "WHERE assignedto NOT NULL");
-            ResultSet rs = ps.executeQuery();
+            //a database that does not yet contain any tables has nothing to prune
+            if (!SchemaMigrations.hasSchema(conn)) {
+                return;
+            }
+            conn.setAutoCommit(false);
             
-            while (rs.next()) {
+            long prunedSequence = this.getLatestChangeSequence(conn) - retainedChanges;
+            if (prunedSequence > this.getPrunedChangeSequence(conn)) {
+                PreparedStatement ps = conn.prepareStatement("DELETE FROM changelog WHERE seq <= ?");
+                ps.setLong(1, prunedSequence);
+                ps.executeUpdate();
+                ps.close();
+                
+                ps = conn.prepareStatement("INSERT OR REPLACE INTO courseproperties (key, value) VALUES (?, ?)");
+                ps.setString(1, SchemaMigrations.CHANGE_LOG_PRUNED_PROPERTY);
+                ps.setString(2, Long.toString(prunedSequence));
+                ps.executeUpdate();
+                ps.close();
+            }
+            
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * The sequence number of the latest change deleted from the change log by {@link #pruneChangeLog(int)}, or
+     * {@code 0} if it has never been pruned.
+     */
+    private long getPrunedChangeSequence(Connection conn) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("SELECT value FROM courseproperties WHERE key == ?");
+        ps.setString(1, SchemaMigrations.CHANGE_LOG_PRUNED_PROPERTY);
+        ResultSet rs = ps.executeQuery();
+        try {
+            return rs.next() ? Long.parseLong(rs.getString("value")) : 0;
+        } finally {
+            rs.close();
+            ps.close();
+        }
+    }
+    
+    @Override
+    public String getChangeEpoch() throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            return this.getChangeEpoch(conn);
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    private String getChangeEpoch(Connection conn) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("SELECT value FROM courseproperties WHERE key == ?");
+        ps.setString(1, SchemaMigrations.EPOCH_PROPERTY);
+        ResultSet rs = ps.executeQuery();
+        try {
+            if (!rs.next()) {
+                throw new SQLException("The database has no change epoch");
+            }
+            
+            return rs.getString("value");
+        } finally {
+            rs.close();
+        }
+    }
+    
+    @Override
+    public ChangeSetRecord getChangesSince(long sequence) throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            //read within a single transaction so that the returned rows are consistent with the returned sequence
+            conn.setAutoCommit(false);
+            
+            String epoch = this.getChangeEpoch(conn);
+            long latestSequence = this.getLatestChangeSequence(conn);
+            
+            //changes since the sequence may have been pruned from the change log, in which case everything is reloaded
+            if (sequence < this.getPrunedChangeSequence(conn)) {
+                conn.commit();
+                
+                return new ChangeSetRecord(epoch, latestSequence, false, ImmutableSet.<DbStudent>of(),
+                                           ImmutableSet.<Integer>of(), ImmutableSet.<DbGroup>of(),
+                                           ImmutableSet.<Integer>of());
+            }
+            
+            Set<Integer> studentIds = new HashSet<Integer>();
+            Set<Integer> groupIds = new HashSet<Integer>();
+            //grading sheets, occurrences and extensions are also logged but are not part of the change set
+            PreparedStatement ps = conn.prepareStatement("SELECT DISTINCT tablename, id FROM changelog"
+                    + " WHERE seq > ? AND seq <= ? AND tablename IN ('student', 'asgngroup')");
+            ps.setLong(1, sequence);
+            ps.setLong(2, latestSequence);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                if ("student".equals(rs.getString("tablename"))) {
+                    studentIds.add(rs.getInt("id"));
+                }
+                else {
+                    groupIds.add(rs.getInt("id"));
+                }
+            }
+            
+            Set<DbStudent> students = new HashSet<DbStudent>();
+            Set<Integer> removedStudentIds = new HashSet<Integer>(studentIds);
+            if (!studentIds.isEmpty()) {
+                ps = conn.prepareStatement(STUDENT_GET_OP._selectCommand
+                        + " WHERE sid IN " + this.loadIdTable(conn, STUDENT_ID_TABLE, studentIds));
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    DbStudent student = STUDENT_GET_OP.getDbDataItem(rs);
+                    students.add(student);
+                    removedStudentIds.remove(student.getId());
+                }
+            }
+            
+            Set<DbGroup> groups = groupIds.isEmpty() ? ImmutableSet.<DbGroup>of() : this.getGroups(conn, groupIds);
+            Set<Integer> removedGroupIds = new HashSet<Integer>(groupIds);
+            for (DbGroup group : groups) {
+                removedGroupIds.remove(group.getId());
+            }
+            
+            conn.commit();
+            
+            return new ChangeSetRecord(epoch, latestSequence, true, students, removedStudentIds, groups,
+                                       removedGroupIds);
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+
+    @Override
+    public Map<String, HandinCatalogRecord> getHandinCatalogRecords(Set<String> handinPaths) throws SQLException {
+        Map<String, HandinCatalogRecord> records = new HashMap<String, HandinCatalogRecord>();
+        
+        Connection conn = this.openConnection();
+        try {
+            //each lookup is a search of the unique index on path, so there is no need for a temporary table
+            PreparedStatement catalogPs = conn.prepareStatement("SELECT hcid, size, lastmodified, sha256"
+                    + " FROM handincatalog WHERE path == ?");
+            PreparedStatement entryPs = conn.prepareStatement("SELECT name, isdirectory, size, lastmodified"
+                    + " FROM handincatalogentry WHERE hcid == ? ORDER BY hceid");
+            for (String path : handinPaths) {
+                catalogPs.setString(1, path);
+                ResultSet catalogRs = catalogPs.executeQuery();
+                if (catalogRs.next()) {
+                    List<HandinCatalogRecord.EntryRecord> entries = new ArrayList<HandinCatalogRecord.EntryRecord>();
+                    entryPs.setInt(1, catalogRs.getInt("hcid"));
+                    ResultSet entryRs = entryPs.executeQuery();
+                    while (entryRs.next()) {
+                        entries.add(new HandinCatalogRecord.EntryRecord(entryRs.getString("name"),
+                                                                        entryRs.getBoolean("isdirectory"),
+                                                                        entryRs.getLong("size"),
+                                                                        entryRs.getLong("lastmodified")));
+                    }
+                    entryRs.close();
+                    
+                    records.put(path, new HandinCatalogRecord(path, catalogRs.getLong("size"),
+                                                              catalogRs.getLong("lastmodified"),
+                                                              catalogRs.getString("sha256"), entries));
+                }
+                catalogRs.close();
+            }
+        } finally {
+            this.closeConnection(conn);
+        }
+        
+        return records;
+    }
+    
+    @Override
+    public void putHandinCatalogRecords(Set<HandinCatalogRecord> records) throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            conn.setAutoCommit(false);
+            
+            //deleting the existing record for a path cascades to its entries
+            PreparedStatement deletePs = conn.prepareStatement("DELETE FROM handincatalog WHERE path == ?");
+            PreparedStatement catalogPs = conn.prepareStatement("INSERT INTO handincatalog"
+                    + " (path, size, lastmodified, sha256) VALUES (?, ?, ?, ?)");
+            for (HandinCatalogRecord record : records) {
+                deletePs.setString(1, record.getPath());
+                deletePs.addBatch();
+                
+                catalogPs.setString(1, record.getPath());
+                catalogPs.setLong(2, record.getSize());
+                catalogPs.setLong(3, record.getLastModified());
+                catalogPs.setString(4, record.getSha256());
+                catalogPs.addBatch();
+            }
+            deletePs.executeBatch();
+            catalogPs.executeBatch();
+            
+            PreparedStatement idPs = conn.prepareStatement("SELECT hcid FROM handincatalog WHERE path == ?");
+            MultiRowInserter entryInserter = new MultiRowInserter(conn, "handincatalogentry", "hcid", "name",
+                                                                  "isdirectory", "size", "lastmodified");
+            for (HandinCatalogRecord record : records) {
+                idPs.setString(1, record.getPath());
+                ResultSet rs = idPs.executeQuery();
+                rs.next();
+                int hcid = rs.getInt("hcid");
+                rs.close();
+                
+                for (HandinCatalogRecord.EntryRecord entry : record.getEntries()) {
+                    entryInserter.addRow(hcid, entry.getName(), entry.isDirectory() ? 1 : 0, entry.getSize(),
+                                         entry.getLastModified());
+                }
+            }
+            entryInserter.execute();
+            
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+
+    @Override
+    public int addOutboxMessage(String batch, int taId, String recipients, String messagePath,
+                                List<OutboxRecord.Attachment> attachments, String owner, long leaseExpires)
+                                throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            conn.setAutoCommit(false);
+            
+            PreparedStatement ps = conn.prepareStatement("INSERT INTO outbox (batch, tid, recipients, messagepath,"
+                    + " status, attempts, owner, leaseexpires) VALUES (?, ?, ?, ?, ?, 0, ?, ?)");
+            ps.setString(1, batch);
+            ps.setInt(2, taId);
+            ps.setString(3, recipients);
+            ps.setString(4, messagePath);
+            ps.setString(5, OutboxRecord.Status.PENDING.name());
+            ps.setString(6, owner);
+            ps.setLong(7, leaseExpires);
+            ps.executeUpdate();
+            
+            int id;
+            ResultSet rs = ps.getGeneratedKeys();
+            try {
+                rs.next();
+                id = rs.getInt(1);
+            } finally {
+                rs.close();
+            }
+            
+            PreparedStatement attachmentPs = conn.prepareStatement("INSERT INTO outboxattachment"
+                    + " (obid, ordering, path, name, contenttype) VALUES (?, ?, ?, ?, ?)");
+            for (int i = 0; i < attachments.size(); i++) {
+                OutboxRecord.Attachment attachment = attachments.get(i);
+                attachmentPs.setInt(1, id);
+                attachmentPs.setInt(2, i);
+                attachmentPs.setString(3, attachment.getPath());
+                attachmentPs.setString(4, attachment.getName());
+                attachmentPs.setString(5, attachment.getContentType());
+                attachmentPs.addBatch();
+            }
+            if (!attachments.isEmpty()) {
+                attachmentPs.executeBatch();
+            }
+            
+            conn.commit();
+            
+            return id;
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    @Override
+    public List<OutboxRecord> claimOutboxMessages(int taId, String batch, String owner, long now, long leaseExpires)
+            throws SQLException {
+        List<OutboxRecord> records = new ArrayList<OutboxRecord>();
+        
+        //emails abandoned by other sessions, or for a batch also those already held by the owner
+        String claimable = batch == null ? " AND leaseexpires < ? AND (owner IS NULL OR owner != ?)"
+                                         : " AND batch == ? AND (leaseexpires < ? OR owner == ?)";
+        
+        Connection conn = this.openConnection();
+        try {
+            conn.setAutoCommit(false);
+            
+            PreparedStatement ps = conn.prepareStatement("SELECT obid, batch, tid, recipients, messagepath,"
+                    + " status, attempts, lasterror FROM outbox WHERE tid == ? AND status == ?" + claimable
+                    + " ORDER BY obid");
+            ps.setInt(1, taId);
+            ps.setString(2, OutboxRecord.Status.PENDING.name());
+            this.setClaimableParameters(ps, 3, batch, owner, now);
+            
+            List<OutboxRecord> candidates = new ArrayList<OutboxRecord>();
+            ResultSet rs = ps.executeQuery();
+            try {
+                while (rs.next()) {
+                    candidates.add(new OutboxRecord(rs.getInt("obid"), rs.getString("batch"), rs.getInt("tid"),
+                                                    rs.getString("recipients"), rs.getString("messagepath"),
+                                                    OutboxRecord.Status.valueOf(rs.getString("status")),
+                                                    rs.getInt("attempts"), rs.getString("lasterror"), owner,
+                                                    leaseExpires, this.getOutboxAttachments(conn,
+                                                                                           rs.getInt("obid"))));
+                }
+            } finally {
+                rs.close();
+            }
+            
+            //the conditions are checked again so that an email claimed by another session since it was selected is
+            //not also claimed by this one
+            PreparedStatement claimPs = conn.prepareStatement("UPDATE outbox SET owner = ?, leaseexpires = ?"
+                    + " WHERE obid == ? AND status == ?" + claimable);
+            for (OutboxRecord candidate : candidates) {
+                claimPs.setString(1, owner);
+                claimPs.setLong(2, leaseExpires);
+                claimPs.setInt(3, candidate.getId());
+                claimPs.setString(4, OutboxRecord.Status.PENDING.name());
+                this.setClaimableParameters(claimPs, 5, batch, owner, now);
+                if (claimPs.executeUpdate() == 1) {
+                    records.add(candidate);
+                }
+            }
+            
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            this.closeConnection(conn);
+        }
+        
+        return records;
+    }
+    
+    private void setClaimableParameters(PreparedStatement ps, int index, String batch, String owner, long now)
+            throws SQLException {
+        if (batch == null) {
+            ps.setLong(index, now);
+            ps.setString(index + 1, owner);
+        } else {
+            ps.setString(index, batch);
+            ps.setLong(index + 1, now);
+            ps.setString(index + 2, owner);
+        }
+    }
+    
+    private List<OutboxRecord.Attachment> getOutboxAttachments(Connection conn, int obid) throws SQLException {
+        List<OutboxRecord.Attachment> attachments = new ArrayList<OutboxRecord.Attachment>();
+        
+        PreparedStatement ps = conn.prepareStatement("SELECT path, name, contenttype FROM outboxattachment"
+                + " WHERE obid == ? ORDER BY ordering");
+        try {
+            ps.setInt(1, obid);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                attachments.add(new OutboxRecord.Attachment(rs.getString("path"), rs.getString("name"),
+                                                            rs.getString("contenttype")));
+            }
+            rs.close();
+        } finally {
+            ps.close();
+        }
+        
+        return attachments;
+    }
+    
+    @Override
+    public int renewOutboxLeases(String owner, long leaseExpires) throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement("UPDATE outbox SET leaseexpires = ?"
+                    + " WHERE owner == ? AND status == ?");
+            ps.setLong(1, leaseExpires);
+            ps.setString(2, owner);
+            ps.setString(3, OutboxRecord.Status.PENDING.name());
+            
+            return ps.executeUpdate();
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    @Override
+    public int getAbandonedOutboxMessageCount(int taId, String owner, long now) throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM outbox WHERE tid == ?"
+                    + " AND status == ? AND leaseexpires < ? AND (owner IS NULL OR owner != ?)");
+            ps.setInt(1, taId);
+            ps.setString(2, OutboxRecord.Status.PENDING.name());
+            ps.setLong(3, now);
+            ps.setString(4, owner);
+            
+            ResultSet rs = ps.executeQuery();
+            try {
+                rs.next();
+                
+                return rs.getInt(1);
+            } finally {
+                rs.close();
+            }
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    @Override
+    public boolean isOutboxAttachmentPending(String path) throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM outboxattachment"
+                    + " INNER JOIN outbox ON outboxattachment.obid == outbox.obid"
+                    + " WHERE outboxattachment.path == ? AND outbox.status == ? LIMIT 1");
+            ps.setString(1, path);
+            ps.setString(2, OutboxRecord.Status.PENDING.name());
+            
+            ResultSet rs = ps.executeQuery();
+            try {
+                return rs.next();
+            } finally {
+                rs.close();
+            }
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    @Override
+    public void updateOutboxMessage(int id, OutboxRecord.Status status, int attempts, String lastError)
+            throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement("UPDATE outbox SET status = ?, attempts = ?,"
+                    + " lasterror = ? WHERE obid == ?");
+            ps.setString(1, status.name());
+            ps.setInt(2, attempts);
+            ps.setString(3, lastError);
+            ps.setInt(4, id);
+            ps.executeUpdate();
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+    
+    @Override
+    public void cancelOutboxMessages(Iterable<Integer> ids) throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            conn.setAutoCommit(false);
+            
+            PreparedStatement ps = conn.prepareStatement("UPDATE outbox SET status = ? WHERE obid == ?"
+                    + " AND status == ?");
+            for (int id : ids) {
+                ps.setString(1, OutboxRecord.Status.CANCELED.name());
+                ps.setInt(2, id);
+                ps.setString(3, OutboxRecord.Status.PENDING.name());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            this.closeConnection(conn);
+        }
+    }
+
+    @Override
+    public Set<DbGroup> getGroups(int asgnID) throws SQLException {
+        Set<DbGroup> groupsForAsgn = new HashSet<DbGroup>();
+        
+        Set<DbGroup> allGroups = this.getGroups();
+        for (DbGroup group : allGroups) {
+            if (group.getAssignmentId() == asgnID) {
+                groupsForAsgn.add(group);
+            }
+        }
+        
+        return groupsForAsgn;
+    }
+    
+    /**
+     * Names of the connection-scoped temporary tables used by {@link #loadIdTable(Connection, String, Set)}. Queries
+     * that filter on more than one set of IDs must use a different table for each set.
+     */
+    private static final String GROUP_ID_TABLE = "temp.groupids",
+                                STUDENT_ID_TABLE = "temp.studentids",
+                                PART_ID_TABLE = "temp.partids",
+                                SECTION_ID_TABLE = "temp.sectionids",
+                                SUBSECTION_ID_TABLE = "temp.subsectionids",
+                                GRADING_SHEET_ID_TABLE = "temp.gradingsheetids";
+    
+    /**
+     * Name of the connection-scoped temporary table holding the order in which students are read by
+     * {@link #streamStudentGrades(List, StudentGradesRecord.Handler)}.
+     */
+    private static final String STUDENT_ORDER_TABLE = "temp.studentorder";
+    
+    /**
+     * Selects the columns read by {@link #getGradingSheetTotalRecord(ResultSet)}. Must be followed by a WHERE clause
+     * and {@code GROUP BY ggs.ggsid}.
+     */
+    private static final String GRADING_SHEET_TOTALS_SELECT = "SELECT ggs.ggsid, ggs.pid, ggs.agid, ggs.assignedto,"
+            + " ggs.datesubmitted IS NOT NULL AS submitted,"
+            + " SUM(ggss.earned) AS earned, COUNT(ggss.gs_ssid) AS earnedcount,"
+            + " EXISTS (SELECT 1 FROM groupgradingsheetcomments AS ggsc WHERE ggsc.ggsid == ggs.ggsid) AS hascomments"
+            + " FROM groupgradingsheet AS ggs"
+            + " LEFT JOIN groupgradingsheetsubsection AS ggss ON ggss.ggsid == ggs.ggsid";
+    
+    /**
+     * Replaces the contents of the temporary table {@code table} with {@code ids} and returns a subquery selecting
+     * them, to be used as {@code column IN <subquery>}. Unlike a literal list of IDs, the SQL text of the resulting
+     * query does not depend on the number of IDs, so its parse cost does not grow with the input and it cannot exceed
+     * SQLite's limits on expression depth and statement length.
+     * <br/><br/>
+     * The table is created on first use and lives for as long as {@code conn} does. If {@code conn} is in auto-commit
+     * mode the inserts are grouped in their own transaction; otherwise they become part of the caller's transaction.
+     * 
+     * @param conn
+     * @param table one of the {@code *_ID_TABLE} constants
+     * @param ids
+     * @return
+     * @throws SQLException 
+     */
+    private String loadIdTable(Connection conn, String table, Set<Integer> ids) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        if (autoCommit) {
+            conn.setAutoCommit(false);
+        }
+        
+        try {
+            Statement statement = conn.createStatement();
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " (id INTEGER PRIMARY KEY)");
+            statement.executeUpdate("DELETE FROM " + table);
+            statement.close();
+            
+            PreparedStatement ps = conn.prepareStatement("INSERT OR IGNORE INTO " + table + " (id) VALUES (?)");
+            for (Integer id : ids) {
+                if (id != null) {
+                    ps.setInt(1, id);
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+            ps.close();
+            
+            if (autoCommit) {
+                conn.commit();
+            }
+        } catch (SQLException ex) {
+            if (autoCommit) {
+                conn.rollback();
+            }
+            throw ex;
+        } finally {
+            if (autoCommit) {
+                conn.setAutoCommit(true);
+            }
+        }
+        
+        return "(SELECT id FROM " + table + ")";
+    }
+    
+    @Override
+    public Map<Integer, SetMultimap<Integer, Integer>> getDistribution() throws SQLException {
+        Connection conn = this.openConnection();
+        try {
+            Map<Integer, SetMultimap<Integer, Integer>> dist = new HashMap<Integer, SetMultimap<Integer, Integer>>();
+
+            PreparedStatement ps = conn.prepareStatement("SELECT pid, assignedto, agid FROM groupgradingsheet " +
+                    "WHERE assignedto NOT NULL");
+            ResultSet rs = ps.executeQuery();
+            
+            while (rs.next()) {
                 int pid = rs.getInt("pid");
                 SetMultimap<Integer, Integer> partDist = dist.get(pid);
                 if (partDist == null) {
@@ -1582,7 +2641,7 @@ public class DatabaseImpl implements Database
             //get IDs of groups that already have a group grading sheet
             Set<Integer> groupsWithGradingSheet = new HashSet<Integer>();
             PreparedStatement ps = conn.prepareStatement("SELECT agid FROM groupgradingsheet"
-                    + " WHERE pid IN (" + this.idSetToString(distribution.keySet()) + ")");
+                    + " WHERE pid IN " + this.loadIdTable(conn, PART_ID_TABLE, distribution.keySet()));
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 groupsWithGradingSheet.add(rs.getInt("agid"));
@@ -1627,7 +2686,7 @@ public class DatabaseImpl implements Database
     }
     
     @Override
-    public void setExtensions(int geId, String ontime, boolean shiftDates, String note, String dateRecorded,
+    public void setExtensions(int geId, long ontime, boolean shiftDates, String note, long dateRecorded,
             int taId, Set<Integer> groupIds) throws SQLException
     {
         Connection conn = this.openConnection();
@@ -1643,8 +2702,8 @@ public class DatabaseImpl implements Database
                 ps.setInt(1, agid);
                 ps.setInt(2, geId);
                 ps.setInt(3, taId);
-                ps.setString(4, dateRecorded);
-                ps.setString(5, ontime);
+                ps.setLong(4, dateRecorded);
+                ps.setLong(5, ontime);
                 ps.setBoolean(6, shiftDates);
                 ps.setString(7, note);
                 ps.addBatch();
@@ -1708,15 +2767,15 @@ public class DatabaseImpl implements Database
             PreparedStatement ps = conn.prepareStatement(
                     "SELECT agid, ontime, shiftdates, note, daterecorded, tid"
                     + " FROM extension AS e"
-                    + " WHERE e.agid IN ("+ this.idSetToString(groupIds) +")"
+                    + " WHERE e.agid IN " + this.loadIdTable(conn, GROUP_ID_TABLE, groupIds)
                     + " AND e.geid == ? ");
             ps.setInt(1, geId);
             
             ResultSet rs = ps.executeQuery();
             while(rs.next())
             {
-                ExtensionRecord record = new ExtensionRecord(rs.getString("ontime"), rs.getBoolean("shiftdates"),
-                        rs.getString("note"), rs.getString("daterecorded"), rs.getInt("tid"));
+                ExtensionRecord record = new ExtensionRecord(rs.getLong("ontime"), rs.getBoolean("shiftdates"),
+                        rs.getString("note"), rs.getLong("daterecorded"), rs.getInt("tid"));
                 records.put(rs.getInt("agid"), record);
             }
 
@@ -1740,7 +2799,7 @@ public class DatabaseImpl implements Database
             PreparedStatement ps = conn.prepareStatement(
                     "SELECT agid, time, daterecorded, tid"
                     + " FROM geoccurrence AS geo"
-                    + " WHERE geo.agid IN (" + this.idSetToString(groupIds) + ")"
+                    + " WHERE geo.agid IN " + this.loadIdTable(conn, GROUP_ID_TABLE, groupIds)
                     + " AND geo.geid == ? ");
             ps.setInt(1, geId);
             
@@ -1748,7 +2807,7 @@ public class DatabaseImpl implements Database
             while(rs.next())
             {
                 GradableEventOccurrenceRecord record = new GradableEventOccurrenceRecord(rs.getInt("tid"),
-                        rs.getString("daterecorded"), rs.getString("time"));
+                        rs.getLong("daterecorded"), rs.getLong("time"));
                 records.put(rs.getInt("agid"), record);
             }
 
@@ -1761,7 +2820,7 @@ public class DatabaseImpl implements Database
     }
     
     @Override
-    public void setGradableEventOccurrences(int geid, Map<Integer, String> groupsToTime, int tid, String dateRecorded)
+    public void setGradableEventOccurrences(int geid, Map<Integer, Long> groupsToTime, int tid, long dateRecorded)
             throws SQLException
     {
         Connection conn = this.openConnection();
@@ -1772,12 +2831,12 @@ public class DatabaseImpl implements Database
             PreparedStatement ps = conn.prepareStatement(
                     "INSERT INTO geoccurrence (geid, agid, time, dateRecorded, tid) VALUES (?, ?, ?, ?, ?)");
 
-            for(Map.Entry<Integer, String> entry : groupsToTime.entrySet())
+            for(Map.Entry<Integer, Long> entry : groupsToTime.entrySet())
             {
                 ps.setInt(1, geid);
                 ps.setInt(2, entry.getKey());
-                ps.setString(3, entry.getValue());
-                ps.setString(4, dateRecorded);
+                ps.setLong(3, entry.getValue());
+                ps.setLong(4, dateRecorded);
                 ps.setInt(5, tid);
                 ps.addBatch();
             }
@@ -1828,6 +2887,16 @@ public class DatabaseImpl implements Database
         }
     }
 
+    @Override
+    public void close() {
+        _connProvider.shutdown();
+    }
+
+    @Override
+    public String getConnectionUsageSummary() {
+        return _connProvider.getUsageSummary();
+    }
+
     @Override
     public void resetDatabase() throws SQLException {
         Connection conn = this.openConnection();
@@ -1858,6 +2927,12 @@ public class DatabaseImpl implements Database
             conn.createStatement().executeUpdate("DROP TABLE IF EXISTS ta");
             conn.createStatement().executeUpdate("DROP TABLE IF EXISTS notifyaddresses");
             conn.createStatement().executeUpdate("DROP TABLE IF EXISTS courseproperties");
+            conn.createStatement().executeUpdate("DROP TABLE IF EXISTS schema_version");
+            conn.createStatement().executeUpdate("DROP TABLE IF EXISTS changelog");
+            conn.createStatement().executeUpdate("DROP TABLE IF EXISTS handincatalogentry");
+            conn.createStatement().executeUpdate("DROP TABLE IF EXISTS handincatalog");
+            conn.createStatement().executeUpdate("DROP TABLE IF EXISTS outboxattachment");
+            conn.createStatement().executeUpdate("DROP TABLE IF EXISTS outbox");
             
             //CREATE all DB tables
             conn.createStatement().executeUpdate("CREATE TABLE courseproperties (cpid INTEGER PRIMARY KEY AUTOINCREMENT,"
@@ -2038,6 +3113,9 @@ public class DatabaseImpl implements Database
                     + "FOREIGN KEY (tid) REFERENCES ta(tid) ON DELETE CASCADE,"
                     + "CONSTRAINT singleadjustment UNIQUE (aid, sid) ON CONFLICT REPLACE)");
             
+            //bring the newly created base schema up to the latest version
+            SchemaMigrations.migrate(conn);
+            
             conn.commit();
         } catch (SQLException ex) {
             conn.rollback();
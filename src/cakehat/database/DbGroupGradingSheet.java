@@ -17,7 +17,7 @@ class DbGroupGradingSheet extends DbDataItem {
     private final int _partId;
     private volatile Integer _assignedToId;
     private volatile Integer _submittedById;
-    private volatile String _submittedDate;
+    private volatile Long _submittedDate;
 
     private final ConcurrentMap<Integer, GroupSubsectionEarnedRecord> _subsectionEarnedPoints;
     private final ConcurrentMap<Integer, GroupSectionCommentsRecord> _sectionComments;
@@ -53,7 +53,7 @@ class DbGroupGradingSheet extends DbDataItem {
      * @param sectionComments - may be {@code null}
      */
     DbGroupGradingSheet(int id, int groupId, int partId, Integer assignedToId, Integer submittedById,
-                        String submittedDate, Map<Integer, GroupSubsectionEarnedRecord> subsectionEarnedPoints,
+                        Long submittedDate, Map<Integer, GroupSubsectionEarnedRecord> subsectionEarnedPoints,
                         Map<Integer, GroupSectionCommentsRecord> sectionComments) {
         super(id);
         if (submittedById == null && (submittedDate != null) ||
@@ -96,15 +96,15 @@ class DbGroupGradingSheet extends DbDataItem {
         return _submittedById;
     }
     
-    String getSubmittedDate() {
+    Long getSubmittedDate() {
         return _submittedDate;
     }
     
-    void setEarnedPoints(int subsectionId, Double pointsEarned, int taId, String dateTime) {
+    void setEarnedPoints(int subsectionId, Double pointsEarned, int taId, long dateTime) {
         _subsectionEarnedPoints.put(subsectionId, new GroupSubsectionEarnedRecord(pointsEarned, taId, dateTime));
     }
     
-    void setComments(int sectionId, String comments, int taId, String dateTime) {
+    void setComments(int sectionId, String comments, int taId, long dateTime) {
         _sectionComments.put(sectionId, new GroupSectionCommentsRecord(comments, taId, dateTime));
     }
     
@@ -116,7 +116,7 @@ class DbGroupGradingSheet extends DbDataItem {
         return _sectionComments;
     }
     
-    void markSubmitted(Integer submitterId, String submissionDate) {
+    void markSubmitted(Integer submitterId, Long submissionDate) {
         _submittedById = submitterId;
         _submittedDate = submissionDate;
     }
@@ -125,9 +125,9 @@ class DbGroupGradingSheet extends DbDataItem {
         
         private final Double _earned;
         private final int _lastModifiedById;
-        private final String _lastModifiedTime;
+        private final long _lastModifiedTime;
         
-        GroupSubsectionEarnedRecord(Double earned, int lastModifiedById, String lastModifiedTime) {
+        GroupSubsectionEarnedRecord(Double earned, int lastModifiedById, long lastModifiedTime) {
             _earned = earned;
             _lastModifiedById = lastModifiedById;
             _lastModifiedTime = lastModifiedTime;
@@ -141,7 +141,7 @@ class DbGroupGradingSheet extends DbDataItem {
             return _lastModifiedById;
         }
         
-        String getLastModifiedTime() {
+        long getLastModifiedTime() {
             return _lastModifiedTime;
         }
         
@@ -151,9 +151,9 @@ class DbGroupGradingSheet extends DbDataItem {
         
         private final String _comments;
         private final int _lastModifiedById;
-        private final String _lastModifiedTime;
+        private final long _lastModifiedTime;
         
-        GroupSectionCommentsRecord(String comments, int lastModifiedById, String lastModifiedTime) {
+        GroupSectionCommentsRecord(String comments, int lastModifiedById, long lastModifiedTime) {
             _comments = comments;
             _lastModifiedById = lastModifiedById;
             _lastModifiedTime = lastModifiedTime;
@@ -162,7 +162,7 @@ class DbGroupGradingSheet extends DbDataItem {
         GroupSectionCommentsRecord(GroupSectionComments comments) {
             _comments = comments.getComments();
             _lastModifiedById = comments.getLastModifiedBy().getId();
-            _lastModifiedTime = comments.getLastModifiedTime().toString();
+            _lastModifiedTime = comments.getLastModifiedTime().getMillis();
         }
         
         String getComments() {
@@ -173,7 +173,7 @@ class DbGroupGradingSheet extends DbDataItem {
             return _lastModifiedById;
         }
         
-        String getLastModifiedTime() {
+        long getLastModifiedTime() {
             return _lastModifiedTime;
         }
         
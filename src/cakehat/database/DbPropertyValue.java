@@ -151,6 +151,26 @@ public class DbPropertyValue<T> extends DbDataItem
             }
         }
         
+        private static class DbIntegerPropertyKey extends DbPropertyKey<Integer>
+        {
+            private DbIntegerPropertyKey(String name)
+            {
+                super(name, Integer.class);
+            }
+
+            @Override
+            Integer getValue(ResultSet result, String columnLabel) throws SQLException
+            {
+                return result.getInt(columnLabel);
+            }
+
+            @Override
+            void setValue(PreparedStatement ps, int parameterIndex, Integer value) throws SQLException
+            {
+                ps.setInt(parameterIndex, value);
+            }
+        }
+        
         
         // Instances of this class - one for each supported key
         
@@ -158,5 +178,9 @@ public class DbPropertyValue<T> extends DbDataItem
         public static final DbPropertyKey<String> EMAIL_ACCOUNT = new DbStringPropertyKey("email_account");
         public static final DbPropertyKey<String> EMAIL_PASSWORD = new DbStringPropertyKey("email_password");
         public static final DbPropertyKey<Boolean> ATTACH_DIGITAL_HANDIN = new DbBooleanPropertyKey("attach_digital_handin");
+        public static final DbPropertyKey<Boolean> PREFETCH_DIGITAL_HANDINS = new DbBooleanPropertyKey("prefetch_digital_handins");
+        public static final DbPropertyKey<Integer> TEMP_SPACE_QUOTA_MB = new DbIntegerPropertyKey("temp_space_quota_mb");
+        public static final DbPropertyKey<Integer> EMAIL_MAX_CONNECTIONS = new DbIntegerPropertyKey("email_max_connections");
+        public static final DbPropertyKey<Integer> EMAIL_MESSAGES_PER_MINUTE = new DbIntegerPropertyKey("email_messages_per_minute");
     }
 }
\ No newline at end of file
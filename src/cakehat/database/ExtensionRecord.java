@@ -6,13 +6,13 @@ package cakehat.database;
  */
 class ExtensionRecord
 {
-    private final String _onTime;
+    private final long _onTime;
     private final boolean _shiftDates;
     private final String _note;
-    private final String _dateRecorded;
+    private final long _dateRecorded;
     private final int _taId;
 
-    public ExtensionRecord(String onTime, boolean shiftDates, String note, String dateRecorded, int taId)
+    public ExtensionRecord(long onTime, boolean shiftDates, String note, long dateRecorded, int taId)
     {
         _onTime = onTime;
         _shiftDates = shiftDates;
@@ -21,7 +21,7 @@ class ExtensionRecord
         _taId = taId;
     }
 
-    String getDateRecorded()
+    long getDateRecorded()
     {
         return _dateRecorded;
     }
@@ -31,7 +31,7 @@ class ExtensionRecord
         return _note;
     }
 
-    String getOnTime()
+    long getOnTime()
     {
         return _onTime;
     }
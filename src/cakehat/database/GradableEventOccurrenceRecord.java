@@ -6,11 +6,11 @@ package cakehat.database;
  */
  class GradableEventOccurrenceRecord {
 
-    private final String _dateRecorded;
-    private final String _occurrenceDate;
+    private final long _dateRecorded;
+    private final long _occurrenceDate;
     private final int _tid;
 
-    GradableEventOccurrenceRecord(int tid, String dateRecorded, String occurrenceDate) {
+    GradableEventOccurrenceRecord(int tid, long dateRecorded, long occurrenceDate) {
         _tid = tid;
         _dateRecorded = dateRecorded;
         _occurrenceDate = occurrenceDate;
@@ -20,11 +20,11 @@ package cakehat.database;
         return _tid;
     }
 
-    String getDateRecorded() {
+    long getDateRecorded() {
         return _dateRecorded;
     }
 
-    String getOccurrenceDate() {
+    long getOccurrenceDate() {
         return _occurrenceDate;
     }
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package cakehat.database;
+
+import cakehat.assignment.Assignment;
+import cakehat.assignment.Part;
+import cakehat.gradingsheet.GradingSheetSection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The earned points, grading status and assigned TA of every group for a set of parts, stored as one column of values
+ * per part instead of as {@link GroupGradingSheet}s. Students and the groups of each assignment are identified by their
+ * index in {@link #getStudents()} and {@link #getGroups(Assignment)}; the column of a part holds a value for each
+ * group of the part's assignment in that order.
+ * <br/><br/>
+ * A matrix holds only totals, so it is intended for statistics and reports which scan the grades of many groups. It is
+ * obtained from {@link DataServices#getGradeMatrix(List, List)} and is not updated when grades change.
+ */
+public final class GradeMatrix
+{
+    private final ImmutableList<Student> _students;
+    private final ImmutableMap<Student, Integer> _studentIndices;
+
+    private final ImmutableList<Part> _parts;
+    private final ImmutableMap<Part, Integer> _partIndices;
+
+    private final ImmutableMap<Assignment, ImmutableList<Group>> _groups;
+    private final ImmutableMap<Group, Integer> _groupIndices;
+
+    /**
+     * For each assignment, the index of the group each student is in indexed by student, or {@code -1} if the student
+     * is not in a group.
+     */
+    private final ImmutableMap<Assignment, int[]> _studentGroups;
+
+    /**
+     * Indexed by part then group. {@code NaN} where {@link GroupGradingSheet#getEarned()} would return {@code null}.
+     */
+    private final double[][] _earned;
+    private final BitSet[] _hasGradingSheet;
+    private final BitSet[] _submitted;
+    private final TA[][] _assignedTo;
+
+    /**
+     * Constructs a matrix in which every group of {@code groups} has no grading sheet for each of {@code parts}. The
+     * earned points of each part start as those of an empty grading sheet: the total of the out of values of the
+     * sections that have one, or {@code NaN} if none do.
+     *
+     * @param students
+     * @param parts
+     * @param groups the groups of each assignment that one of {@code parts} belongs to
+     */
+    GradeMatrix(List<Student> students, List<Part> parts, Map<Assignment, List<Group>> groups)
+    {
+        _students = ImmutableList.copyOf(students);
+        _studentIndices = indexOf(_students);
+        _parts = ImmutableList.copyOf(parts);
+        _partIndices = indexOf(_parts);
+
+        ImmutableMap.Builder<Assignment, ImmutableList<Group>> groupsBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<Group, Integer> groupIndicesBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<Assignment, int[]> studentGroupsBuilder = ImmutableMap.builder();
+        for(Map.Entry<Assignment, List<Group>> entry : groups.entrySet())
+        {
+            ImmutableList<Group> asgnGroups = ImmutableList.copyOf(entry.getValue());
+            groupsBuilder.put(entry.getKey(), asgnGroups);
+
+            int[] studentGroups = new int[_students.size()];
+            Arrays.fill(studentGroups, -1);
+            for(int groupIndex = 0; groupIndex < asgnGroups.size(); groupIndex++)
+            {
+                Group group = asgnGroups.get(groupIndex);
+                groupIndicesBuilder.put(group, groupIndex);
+                for(Student member : group)
+                {
+                    Integer studentIndex = _studentIndices.get(member);
+                    if(studentIndex != null)
+                    {
+                        studentGroups[studentIndex] = groupIndex;
+                    }
+                }
+            }
+            studentGroupsBuilder.put(entry.getKey(), studentGroups);
+        }
+        _groups = groupsBuilder.build();
+        _groupIndices = groupIndicesBuilder.build();
+        _studentGroups = studentGroupsBuilder.build();
+
+        _earned = new double[_parts.size()][];
+        _hasGradingSheet = new BitSet[_parts.size()];
+        _submitted = new BitSet[_parts.size()];
+        _assignedTo = new TA[_parts.size()][];
+        for(int partIndex = 0; partIndex < _parts.size(); partIndex++)
+        {
+            Part part = _parts.get(partIndex);
+            int numGroups = _groups.get(part.getAssignment()).size();
+
+            _earned[partIndex] = new double[numGroups];
+            Arrays.fill(_earned[partIndex], getEmptyEarned(part));
+            _hasGradingSheet[partIndex] = new BitSet(numGroups);
+            _submitted[partIndex] = new BitSet(numGroups);
+            _assignedTo[partIndex] = new TA[numGroups];
+        }
+    }
+
+    private static <T> ImmutableMap<T, Integer> indexOf(List<T> list)
+    {
+        ImmutableMap.Builder<T, Integer> builder = ImmutableMap.builder();
+        for(int i = 0; i < list.size(); i++)
+        {
+            builder.put(list.get(i), i);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * The earned points of an empty grading sheet for {@code part}, matching {@link GroupGradingSheet#getEarned()}.
+     */
+    private static double getEmptyEarned(Part part)
+    {
+        double earned = Double.NaN;
+        for(GradingSheetSection section : part.getGradingSheet().getSections())
+        {
+            if(section.getOutOf() != null)
+            {
+                earned = Double.isNaN(earned) ? section.getOutOf() : earned + section.getOutOf();
+            }
+        }
+
+        return earned;
+    }
+
+    /**
+     * Records the grading sheet of the group at {@code groupIndex} for the part at {@code partIndex}. The earned points
+     * of its subsections, {@code earnedTotal}, are added to those of an empty grading sheet; {@code null} earned
+     * points leave them unchanged.
+     */
+    void putGradingSheet(int partIndex, int groupIndex, TA assignedTo, boolean submitted, Double earnedTotal)
+    {
+        _hasGradingSheet[partIndex].set(groupIndex);
+        if(submitted)
+        {
+            _submitted[partIndex].set(groupIndex);
+        }
+        _assignedTo[partIndex][groupIndex] = assignedTo;
+
+        if(earnedTotal != null)
+        {
+            double total = _earned[partIndex][groupIndex];
+            _earned[partIndex][groupIndex] = Double.isNaN(total) ? earnedTotal : total + earnedTotal;
+        }
+    }
+
+    /**
+     * The students of this matrix in the order they were requested.
+     *
+     * @return
+     */
+    public List<Student> getStudents()
+    {
+        return _students;
+    }
+
+    /**
+     * Returns the index of {@code student} in {@link #getStudents()}, or {@code -1} if the student is not in this
+     * matrix.
+     *
+     * @param student
+     * @return
+     */
+    public int getStudentIndex(Student student)
+    {
+        Integer index = _studentIndices.get(student);
+
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * The parts of this matrix in the order they were requested.
+     *
+     * @return
+     */
+    public List<Part> getParts()
+    {
+        return _parts;
+    }
+
+    /**
+     * Returns all of the groups for {@code asgn}. The position of a group in the list is its index in the columns of
+     * the parts of {@code asgn}.
+     *
+     * @param asgn an assignment that one of the parts of this matrix belongs to
+     * @return
+     */
+    public List<Group> getGroups(Assignment asgn)
+    {
+        return this.checkAssignment(asgn);
+    }
+
+    /**
+     * Returns the index of {@code group} in {@link #getGroups(Assignment)} for its assignment, or {@code -1} if the
+     * group is not in this matrix.
+     *
+     * @param group
+     * @return
+     */
+    public int getGroupIndex(Group group)
+    {
+        Integer index = _groupIndices.get(group);
+
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the index of the group the student at {@code studentIndex} is in for {@code asgn}, or {@code -1} if the
+     * student is not in a group.
+     *
+     * @param asgn an assignment that one of the parts of this matrix belongs to
+     * @param studentIndex
+     * @return
+     */
+    public int getGroupIndex(Assignment asgn, int studentIndex)
+    {
+        this.checkAssignment(asgn);
+
+        return _studentGroups.get(asgn)[studentIndex];
+    }
+
+    /**
+     * Returns the earned points of the group at {@code groupIndex} for {@code part}, or {@code NaN} if
+     * {@link GroupGradingSheet#getEarned()} would return {@code null}. Whether or not the grading sheet has been
+     * submitted is not taken into account.
+     *
+     * @param part
+     * @param groupIndex
+     * @return
+     */
+    public double getEarned(Part part, int groupIndex)
+    {
+        return _earned[this.checkPart(part)][groupIndex];
+    }
+
+    /**
+     * Returns a copy of the earned points of every group for {@code part}, indexed by group. Values are as returned
+     * by {@link #getEarned(Part, int)}.
+     *
+     * @param part
+     * @return
+     */
+    public double[] getEarnedColumn(Part part)
+    {
+        return _earned[this.checkPart(part)].clone();
+    }
+
+    /**
+     * Whether the group at {@code groupIndex} has a grading sheet for {@code part} stored in the database, that is,
+     * whether grading has started.
+     *
+     * @param part
+     * @param groupIndex
+     * @return
+     */
+    public boolean hasGradingSheet(Part part, int groupIndex)
+    {
+        return _hasGradingSheet[this.checkPart(part)].get(groupIndex);
+    }
+
+    /**
+     * Whether the grading sheet of the group at {@code groupIndex} for {@code part} has been submitted.
+     *
+     * @param part
+     * @param groupIndex
+     * @return
+     */
+    public boolean isSubmitted(Part part, int groupIndex)
+    {
+        return _submitted[this.checkPart(part)].get(groupIndex);
+    }
+
+    /**
+     * Returns the TA the grading sheet of the group at {@code groupIndex} for {@code part} is assigned to, or
+     * {@code null} if it is not assigned.
+     *
+     * @param part
+     * @param groupIndex
+     * @return
+     */
+    public TA getAssignedTo(Part part, int groupIndex)
+    {
+        return _assignedTo[this.checkPart(part)][groupIndex];
+    }
+
+    private int checkPart(Part part)
+    {
+        Integer index = _partIndices.get(part);
+        if(index == null)
+        {
+            throw new IllegalArgumentException("Part " + part.getFullDisplayName() + " is not in this matrix");
+        }
+
+        return index;
+    }
+
+    private ImmutableList<Group> checkAssignment(Assignment asgn)
+    {
+        ImmutableList<Group> groups = _groups.get(asgn);
+        if(groups == null)
+        {
+            throw new IllegalArgumentException("Assignment " + asgn.getName() + " is not in this matrix");
+        }
+
+        return groups;
+    }
+}
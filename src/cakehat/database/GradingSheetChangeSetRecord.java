@@ -0,0 +1,87 @@
+package cakehat.database;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Represents the group grading sheets that have changed in the database since a given change sequence number, as
+ * their current totals. This class should be used only as a return type for
+ * {@link Database#getGradingSheetTotalsChangedSince(long)}.
+ */
+class GradingSheetChangeSetRecord {
+
+    private final String _epoch;
+    private final long _sequence;
+    private final boolean _complete;
+    private final boolean _groupsChanged;
+    private final List<GradingSheetTotalRecord> _totals;
+    private final Set<Integer> _removedGradingSheetIds;
+
+    GradingSheetChangeSetRecord(String epoch, long sequence, boolean complete, boolean groupsChanged,
+                                List<GradingSheetTotalRecord> totals, Set<Integer> removedGradingSheetIds) {
+        _epoch = epoch;
+        _sequence = sequence;
+        _complete = complete;
+        _groupsChanged = groupsChanged;
+        _totals = totals;
+        _removedGradingSheetIds = removedGradingSheetIds;
+    }
+
+    /**
+     * The epoch of the database when this change set was read.
+     *
+     * @return
+     * @see Database#getChangeEpoch()
+     */
+    String getEpoch() {
+        return _epoch;
+    }
+
+    /**
+     * The sequence number of the most recent change included in this change set.
+     *
+     * @return
+     */
+    long getSequence() {
+        return _sequence;
+    }
+
+    /**
+     * Whether the change log still held every change since the requested sequence number. If not, because they have
+     * been pruned, this change set is empty and all totals should be reloaded.
+     *
+     * @return
+     */
+    boolean isComplete() {
+        return _complete;
+    }
+
+    /**
+     * Whether any group or group member has been added, modified or removed. Changes to groups are not included in
+     * this change set.
+     *
+     * @return
+     */
+    boolean haveGroupsChanged() {
+        return _groupsChanged;
+    }
+
+    /**
+     * The current totals of the grading sheets that have been added or modified.
+     *
+     * @return
+     */
+    List<GradingSheetTotalRecord> getTotals() {
+        return _totals;
+    }
+
+    /**
+     * IDs of grading sheets that have changed but no longer exist. Grading sheets are only removed when the group,
+     * part or TA they reference is removed.
+     *
+     * @return
+     */
+    Set<Integer> getRemovedGradingSheetIds() {
+        return _removedGradingSheetIds;
+    }
+}
@@ -0,0 +1,81 @@
+package cakehat.database;
+
+/**
+ * The total earned points, submission state and assigned TA of a group grading sheet, computed by the database from
+ * the sheet's rows without reading its individual earned points or comments. This class should be used only as a
+ * return type for {@link Database} methods.
+ */
+class GradingSheetTotalRecord {
+
+    /**
+     * Receives records from {@link Database#readGradingSheetTotals(java.util.Set, java.util.Set, Integer, Handler)}.
+     */
+    static interface Handler {
+
+        void handle(GradingSheetTotalRecord record);
+    }
+
+    private final int _gradingSheetId;
+    private final int _partId;
+    private final int _groupId;
+    private final Integer _assignedToId;
+    private final boolean _submitted;
+    private final Double _earnedTotal;
+    private final boolean _hasEarnedPoints;
+    private final boolean _hasComments;
+
+    GradingSheetTotalRecord(int gradingSheetId, int partId, int groupId, Integer assignedToId, boolean submitted,
+                            Double earnedTotal, boolean hasEarnedPoints, boolean hasComments) {
+        _gradingSheetId = gradingSheetId;
+        _partId = partId;
+        _groupId = groupId;
+        _assignedToId = assignedToId;
+        _submitted = submitted;
+        _earnedTotal = earnedTotal;
+        _hasEarnedPoints = hasEarnedPoints;
+        _hasComments = hasComments;
+    }
+
+    int getGradingSheetId() {
+        return _gradingSheetId;
+    }
+
+    int getPartId() {
+        return _partId;
+    }
+
+    int getGroupId() {
+        return _groupId;
+    }
+
+    Integer getAssignedToId() {
+        return _assignedToId;
+    }
+
+    boolean isSubmitted() {
+        return _submitted;
+    }
+
+    /**
+     * The sum of the earned points of the grading sheet's subsections, or {@code null} if none of them have earned
+     * points. This does not include the out of values of the part's sections.
+     *
+     * @return
+     */
+    Double getEarnedTotal() {
+        return _earnedTotal;
+    }
+
+    /**
+     * Whether the grading sheet has a row for any subsection, including rows whose earned points are {@code null}.
+     *
+     * @return
+     */
+    boolean hasEarnedPoints() {
+        return _hasEarnedPoints;
+    }
+
+    boolean hasComments() {
+        return _hasComments;
+    }
+}
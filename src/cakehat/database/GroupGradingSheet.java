@@ -67,7 +67,7 @@ public class GroupGradingSheet {
         }
         
         _dbSheet.setEarnedPoints(subsection.getId(), pointsEarned, Allocator.getUserServices().getUser().getId(),
-                              DateTime.now().toString());
+                              DateTime.now().getMillis());
     }
     
     public void setComments(GradingSheetSection section, String comments) {
@@ -77,7 +77,7 @@ public class GroupGradingSheet {
         }
         
         _dbSheet.setComments(section.getId(), comments, Allocator.getUserServices().getUser().getId(),
-                           DateTime.now().toString());
+                           DateTime.now().getMillis());
     }
     
     /**
@@ -0,0 +1,126 @@
+package cakehat.database;
+
+import cakehat.assignment.Part;
+import cakehat.gradingsheet.GradingSheetSection;
+import support.utils.NullMath;
+
+/**
+ * The total earned points, submission state and assigned TA of a group's grading sheet for a part, as computed by the
+ * database without loading the grading sheet. Neither the earned points of individual subsections nor comments are
+ * available; the full grading sheet should be retrieved with {@link DataServices#getGroupGradingSheet(Part, Group)}
+ * when it is to be displayed or modified.
+ */
+public class GroupGradingSheetTotal
+{
+    private final Part _part;
+    private final Group _group;
+    private final TA _assignedTo;
+    private final boolean _hasGradingSheet;
+    private final boolean _submitted;
+    private final boolean _hasEarnedPoints;
+    private final boolean _hasComments;
+    private final Double _earned;
+
+    /**
+     * Constructs the total of a group which has no grading sheet for {@code part} in the database.
+     *
+     * @param part
+     * @param group
+     */
+    GroupGradingSheetTotal(Part part, Group group)
+    {
+        _part = part;
+        _group = group;
+        _assignedTo = null;
+        _hasGradingSheet = false;
+        _submitted = false;
+        _hasEarnedPoints = false;
+        _hasComments = false;
+        _earned = getEmptyEarned(part);
+    }
+
+    GroupGradingSheetTotal(Part part, Group group, TA assignedTo, GradingSheetTotalRecord record)
+    {
+        _part = part;
+        _group = group;
+        _assignedTo = assignedTo;
+        _hasGradingSheet = true;
+        _submitted = record.isSubmitted();
+        _hasEarnedPoints = record.hasEarnedPoints();
+        _hasComments = record.hasComments();
+        _earned = NullMath.add(getEmptyEarned(part), record.getEarnedTotal());
+    }
+
+    /**
+     * The earned points of an empty grading sheet for {@code part}: the total of the out of values of its sections, or
+     * {@code null} if none of them have one. Matches {@link GroupGradingSheet#getEarned()}.
+     */
+    private static Double getEmptyEarned(Part part)
+    {
+        Double earned = null;
+        for(GradingSheetSection section : part.getGradingSheet().getSections())
+        {
+            earned = NullMath.add(earned, section.getOutOf());
+        }
+
+        return earned;
+    }
+
+    public Part getPart()
+    {
+        return _part;
+    }
+
+    public Group getGroup()
+    {
+        return _group;
+    }
+
+    /**
+     * The TA the grading sheet is assigned to, or {@code null} if it is not assigned.
+     *
+     * @return
+     */
+    public TA getAssignedTo()
+    {
+        return _assignedTo;
+    }
+
+    /**
+     * Whether the group has a grading sheet for the part stored in the database.
+     *
+     * @return
+     */
+    public boolean hasGradingSheet()
+    {
+        return _hasGradingSheet;
+    }
+
+    public boolean isSubmitted()
+    {
+        return _submitted;
+    }
+
+    /**
+     * Whether the grading sheet has been modified: it has been submitted, or it has earned points or comments. This
+     * matches whether the {@link GroupGradingSheet} would have been submitted or have non-empty earned points or
+     * comments.
+     *
+     * @return
+     */
+    public boolean isModified()
+    {
+        return _submitted || _hasEarnedPoints || _hasComments;
+    }
+
+    /**
+     * The total earned points, equal to {@link GroupGradingSheet#getEarned()} for the grading sheet. Whether or not the
+     * grading sheet has been submitted is not taken into account.
+     *
+     * @return
+     */
+    public Double getEarned()
+    {
+        return _earned;
+    }
+}
@@ -0,0 +1,76 @@
+package cakehat.database;
+
+import cakehat.assignment.Part;
+import java.util.Map;
+
+/**
+ * The current totals of the group grading sheets that have changed since a given change sequence number, as returned
+ * by {@link DataServices#getGroupGradingSheetTotalsChangedSince(java.util.Set, String, long)}. Applying the totals to
+ * values read at the given sequence number brings them up to date with {@link #getSequence()}, unless
+ * {@link #requiresReload()} is {@code true}.
+ */
+public class GroupGradingSheetTotalChanges
+{
+    private final String _epoch;
+    private final long _sequence;
+    private final boolean _requiresReload;
+    private final Map<Part, Map<Group, GroupGradingSheetTotal>> _totals;
+
+    GroupGradingSheetTotalChanges(String epoch, long sequence, boolean requiresReload,
+                                  Map<Part, Map<Group, GroupGradingSheetTotal>> totals)
+    {
+        _epoch = epoch;
+        _sequence = sequence;
+        _requiresReload = requiresReload;
+        _totals = totals;
+    }
+
+    /**
+     * The epoch of the database when the changes were read. Pass it, along with {@link #getSequence()}, to
+     * {@link DataServices#getGroupGradingSheetTotalsChangedSince(java.util.Set, String, long)} to retrieve the changes
+     * made after these.
+     *
+     * @return
+     * @see Database#getChangeEpoch()
+     */
+    public String getEpoch()
+    {
+        return _epoch;
+    }
+
+    /**
+     * The sequence number of the most recent change included. Pass it to
+     * {@link DataServices#getGroupGradingSheetTotalsChangedSince(java.util.Set, String, long)} to retrieve only the
+     * changes made after these.
+     *
+     * @return
+     * @see Database#getLatestChangeSequence()
+     */
+    public long getSequence()
+    {
+        return _sequence;
+    }
+
+    /**
+     * Whether the changes cannot be applied one grading sheet at a time, and so everything read at the given sequence
+     * number must instead be read again. This is the case when groups have been added, removed or had their members
+     * changed, when a grading sheet has been removed, or when the database has been reset. If {@code true} then
+     * {@link #getTotals()} is empty.
+     *
+     * @return
+     */
+    public boolean requiresReload()
+    {
+        return _requiresReload;
+    }
+
+    /**
+     * The current totals of the changed grading sheets, for each part requested with changes.
+     *
+     * @return
+     */
+    public Map<Part, Map<Group, GroupGradingSheetTotal>> getTotals()
+    {
+        return _totals;
+    }
+}
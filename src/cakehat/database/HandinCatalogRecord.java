@@ -0,0 +1,110 @@
+package cakehat.database;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * Represents the catalog information stored in the database for a single digital handin: the size, modification time
+ * and SHA-256 hash of the archive along with a listing of its entries. The catalog allows the contents of a handin to
+ * be known without decompressing the archive. This class is immutable.
+ */
+public class HandinCatalogRecord {
+
+    private final String _path;
+    private final long _size;
+    private final long _lastModified;
+    private final String _sha256;
+    private final ImmutableList<EntryRecord> _entries;
+
+    public HandinCatalogRecord(String path, long size, long lastModified, String sha256, List<EntryRecord> entries) {
+        _path = path;
+        _size = size;
+        _lastModified = lastModified;
+        _sha256 = sha256;
+        _entries = ImmutableList.copyOf(entries);
+    }
+
+    /**
+     * The absolute path of the handin.
+     *
+     * @return
+     */
+    public String getPath() {
+        return _path;
+    }
+
+    public long getSize() {
+        return _size;
+    }
+
+    /**
+     * The modification time of the handin in milliseconds since the epoch.
+     *
+     * @return
+     */
+    public long getLastModified() {
+        return _lastModified;
+    }
+
+    /**
+     * The lowercase hexadecimal SHA-256 hash of the contents of the handin.
+     *
+     * @return
+     */
+    public String getSha256() {
+        return _sha256;
+    }
+
+    /**
+     * The entries of the archive in the order they appear in it.
+     *
+     * @return
+     */
+    public List<EntryRecord> getEntries() {
+        return _entries;
+    }
+
+    /**
+     * A single entry of a cataloged archive.
+     */
+    public static class EntryRecord {
+
+        private final String _name;
+        private final boolean _isDirectory;
+        private final long _size;
+        private final long _lastModified;
+
+        public EntryRecord(String name, boolean isDirectory, long size, long lastModified) {
+            _name = name;
+            _isDirectory = isDirectory;
+            _size = size;
+            _lastModified = lastModified;
+        }
+
+        /**
+         * The path of the entry within the archive.
+         *
+         * @return
+         */
+        public String getName() {
+            return _name;
+        }
+
+        public boolean isDirectory() {
+            return _isDirectory;
+        }
+
+        /**
+         * The uncompressed size of the entry, or {@code -1} if the archive did not record it.
+         *
+         * @return
+         */
+        public long getSize() {
+            return _size;
+        }
+
+        public long getLastModified() {
+            return _lastModified;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package cakehat.database;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * Represents an email in the outbox stored in the database. The email itself is stored as a MIME message in a file so
+ * that it can be sent by a later session of cakehat if it was not sent by the session that created it. Attachments
+ * shared by many emails are stored once, in their own files, and are referenced by each email instead of being
+ * included in its message. This class is immutable.
+ */
+public class OutboxRecord {
+
+    public static enum Status {
+        /**
+         * Not yet sent, or failed to send and will be retried.
+         */
+        PENDING,
+
+        SENT,
+
+        /**
+         * Could not be sent and will not be retried.
+         */
+        FAILED,
+
+        /**
+         * Not sent because sending was canceled.
+         */
+        CANCELED
+    }
+
+    /**
+     * An attachment stored in its own file which is added to the email's message when it is sent.
+     */
+    public static class Attachment {
+
+        private final String _path;
+        private final String _name;
+        private final String _contentType;
+
+        public Attachment(String path, String name, String contentType) {
+            _path = path;
+            _name = name;
+            _contentType = contentType;
+        }
+
+        /**
+         * The absolute path of the file holding the attachment. The file is deleted once no pending email references
+         * it.
+         *
+         * @return
+         */
+        public String getPath() {
+            return _path;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public String getContentType() {
+            return _contentType;
+        }
+    }
+
+    private final int _id;
+    private final String _batch;
+    private final int _taId;
+    private final String _recipients;
+    private final String _messagePath;
+    private final Status _status;
+    private final int _attempts;
+    private final String _lastError;
+    private final String _owner;
+    private final long _leaseExpires;
+    private final List<Attachment> _attachments;
+
+    public OutboxRecord(int id, String batch, int taId, String recipients, String messagePath, Status status,
+                        int attempts, String lastError, String owner, long leaseExpires,
+                        List<Attachment> attachments) {
+        _id = id;
+        _batch = batch;
+        _taId = taId;
+        _recipients = recipients;
+        _messagePath = messagePath;
+        _status = status;
+        _attempts = attempts;
+        _lastError = lastError;
+        _owner = owner;
+        _leaseExpires = leaseExpires;
+        _attachments = ImmutableList.copyOf(attachments);
+    }
+
+    public int getId() {
+        return _id;
+    }
+
+    /**
+     * Identifies the emails that were created together, such as the grading sheets sent for an assignment.
+     *
+     * @return
+     */
+    public String getBatch() {
+        return _batch;
+    }
+
+    /**
+     * The id of the TA who created the email.
+     *
+     * @return
+     */
+    public int getTAId() {
+        return _taId;
+    }
+
+    /**
+     * A human readable description of who the email is addressed to.
+     *
+     * @return
+     */
+    public String getRecipients() {
+        return _recipients;
+    }
+
+    /**
+     * The absolute path of the file holding the MIME message in RFC 822 format. The file is deleted once the email is
+     * no longer pending.
+     *
+     * @return
+     */
+    public String getMessagePath() {
+        return _messagePath;
+    }
+
+    public Status getStatus() {
+        return _status;
+    }
+
+    /**
+     * The number of times sending the email has been attempted.
+     *
+     * @return
+     */
+    public int getAttempts() {
+        return _attempts;
+    }
+
+    /**
+     * The reason the last attempt to send the email failed, or {@code null}.
+     *
+     * @return
+     */
+    public String getLastError() {
+        return _lastError;
+    }
+
+    /**
+     * Identifies the session of cakehat responsible for sending the email, or {@code null} if no session has been.
+     *
+     * @return
+     */
+    public String getOwner() {
+        return _owner;
+    }
+
+    /**
+     * The time, in milliseconds since the epoch, until which the owner is known to be running. The owner renews this
+     * lease while it is running, so once it has expired the email has been abandoned and may be claimed by another
+     * session.
+     *
+     * @return
+     */
+    public long getLeaseExpires() {
+        return _leaseExpires;
+    }
+
+    /**
+     * The attachments to add to the message when it is sent, in the order they are to appear.
+     *
+     * @return
+     */
+    public List<Attachment> getAttachments() {
+        return _attachments;
+    }
+}
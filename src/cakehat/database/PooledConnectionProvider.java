@@ -0,0 +1,496 @@
+package cakehat.database;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * A ConnectionProvider that keeps a small pool of open connections to a sqlite file DB so that the cost of opening the
+ * DB file, which is significant when the file lives on NFS, is paid once rather than once per DB operation.
+ * <br/><br/>
+ * Connections handed out by {@link #createConnection()} are proxies around a pooled physical connection. When such a
+ * connection is given back via {@link #closeConnection(Connection)} (or its own {@code close()} method) any statements
+ * created through it are closed, any uncommitted transaction is rolled back, auto-commit is restored and the physical
+ * connection is returned to the pool. Idle connections are validated before being reused if they have been idle for
+ * a while, and are closed once they have been idle for longer than the configured idle timeout.
+ */
+class PooledConnectionProvider implements ConnectionProvider {
+
+    static final int DEFAULT_MAX_CONNECTIONS = 4;
+    static final long DEFAULT_MAX_IDLE_MILLIS = 60 * 1000;
+    static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30 * 1000;
+
+    //idle connections that have been idle for longer than this are validated before being handed out
+    private static final long VALIDATION_INTERVAL_MILLIS = 5 * 1000;
+
+    //pragma applied to each connection when it is opened
+    private static final int CACHE_SIZE_PAGES = 8000;
+
+    //shared by all pools so that no more than one eviction thread exists
+    private static final Timer EVICTION_TIMER = new Timer("cakehat-db-pool-evictor", true);
+
+    private final String _url;
+    private final int _maxConnections;
+    private final long _maxIdleMillis;
+    private final long _borrowTimeoutMillis;
+
+    //all of the following are guarded by this
+    private final LinkedList<PooledConnection> _idle = new LinkedList<PooledConnection>();
+    private final Map<Connection, PooledConnection> _active = new IdentityHashMap<Connection, PooledConnection>();
+    private int _openCount = 0;
+    private boolean _shutdown = false;
+    private long _borrowCount = 0;
+    private long _totalWaitNanos = 0;
+    private long _maxWaitNanos = 0;
+    private long _createdCount = 0;
+    private long _evictedCount = 0;
+    private long _invalidatedCount = 0;
+
+    private final TimerTask _evictionTask = new TimerTask() {
+        @Override
+        public void run() {
+            closeAll(evictIdleConnections(System.currentTimeMillis()));
+        }
+    };
+
+    PooledConnectionProvider(File dbFile) {
+        this(dbFile, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_IDLE_MILLIS, DEFAULT_BORROW_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param dbFile the sqlite DB file
+     * @param maxConnections the maximum number of physical connections open at once, must be positive
+     * @param maxIdleMillis the time after which an idle connection is closed
+     * @param borrowTimeoutMillis how long {@link #createConnection()} waits for a connection before throwing an
+     * exception when all connections are in use
+     */
+    PooledConnectionProvider(File dbFile, int maxConnections, long maxIdleMillis, long borrowTimeoutMillis) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be positive, was " + maxConnections);
+        }
+
+        _url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+        _maxConnections = maxConnections;
+        _maxIdleMillis = maxIdleMillis;
+        _borrowTimeoutMillis = borrowTimeoutMillis;
+
+        long evictionPeriod = Math.max(1000, maxIdleMillis / 2);
+        EVICTION_TIMER.schedule(_evictionTask, evictionPeriod, evictionPeriod);
+    }
+
+    @Override
+    public Connection createConnection() throws SQLException {
+        long waitStart = System.nanoTime();
+        long deadline = System.currentTimeMillis() + _borrowTimeoutMillis;
+
+        while (true) {
+            PooledConnection pooled = null;
+            List<PooledConnection> evicted;
+
+            synchronized (this) {
+                evicted = this.evictIdleConnections(System.currentTimeMillis());
+
+                while (pooled == null) {
+                    if (_shutdown) {
+                        throw new SQLException("The connection pool has been shut down.");
+                    }
+
+                    if (!_idle.isEmpty()) {
+                        //most recently used first, so that rarely used connections age out
+                        pooled = _idle.removeFirst();
+                    }
+                    else if (_openCount < _maxConnections) {
+                        _openCount++;
+                        break;
+                    }
+                    else {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            throw new SQLException("Timed out after " + _borrowTimeoutMillis + " ms waiting for one of "
+                                    + _maxConnections + " database connections to become available.");
+                        }
+                        try {
+                            this.wait(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLException("Interrupted while waiting for a database connection.", e);
+                        }
+                    }
+                }
+            }
+            closeAll(evicted);
+
+            if (pooled == null) {
+                try {
+                    pooled = new PooledConnection(this.openPhysicalConnection());
+                } catch (SQLException e) {
+                    this.discard(null);
+                    throw e;
+                }
+                synchronized (this) {
+                    _createdCount++;
+                }
+            }
+            else if (System.currentTimeMillis() - pooled._lastUsed > VALIDATION_INTERVAL_MILLIS
+                    && !pooled.isValid()) {
+                synchronized (this) {
+                    _invalidatedCount++;
+                }
+                this.discard(pooled);
+                continue;
+            }
+
+            Connection proxy = pooled.createProxy();
+            synchronized (this) {
+                _active.put(proxy, pooled);
+                _borrowCount++;
+                long waited = System.nanoTime() - waitStart;
+                _totalWaitNanos += waited;
+                _maxWaitNanos = Math.max(_maxWaitNanos, waited);
+            }
+
+            return proxy;
+        }
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        if (connection == null) {
+            return;
+        }
+
+        PooledConnection pooled;
+        synchronized (this) {
+            pooled = _active.remove(connection);
+        }
+
+        //not handed out by this pool (or already returned)
+        if (pooled == null) {
+            if (!Proxy.isProxyClass(connection.getClass())) {
+                connection.close();
+            }
+            return;
+        }
+
+        boolean reusable;
+        try {
+            reusable = pooled.reset();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        if (reusable) {
+            boolean shutdown;
+            synchronized (this) {
+                shutdown = _shutdown;
+                if (!shutdown) {
+                    pooled._lastUsed = System.currentTimeMillis();
+                    _idle.addFirst(pooled);
+                    this.notifyAll();
+                }
+            }
+            if (shutdown) {
+                this.discard(pooled);
+            }
+        }
+        else {
+            this.discard(pooled);
+        }
+    }
+
+    /**
+     * Closes all idle connections and prevents any further connections from being handed out. Connections currently
+     * in use are closed as they are returned.
+     */
+    @Override
+    public void shutdown() {
+        List<PooledConnection> toClose;
+        synchronized (this) {
+            _shutdown = true;
+            toClose = new ArrayList<PooledConnection>(_idle);
+            _openCount -= _idle.size();
+            _idle.clear();
+            this.notifyAll();
+        }
+        _evictionTask.cancel();
+        EVICTION_TIMER.purge();
+        closeAll(toClose);
+    }
+
+    @Override
+    public String getUsageSummary() {
+        return this.getStatistics().toString();
+    }
+
+    /**
+     * Returns a snapshot of this pool's usage metrics.
+     *
+     * @return
+     */
+    synchronized Statistics getStatistics() {
+        return new Statistics(_active.size(), _idle.size(), _borrowCount, _totalWaitNanos, _maxWaitNanos,
+                              _createdCount, _evictedCount, _invalidatedCount);
+    }
+
+    private Connection openPhysicalConnection() throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("Could not open a connection to the DB.", e);
+        }
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.enforceForeignKeys(true);
+        config.setCacheSize(CACHE_SIZE_PAGES);
+        config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+
+        return DriverManager.getConnection(_url, config.toProperties());
+    }
+
+    /**
+     * Removes from the idle list, and returns, all connections that have been idle for longer than the idle timeout.
+     * The caller is responsible for closing them outside of the pool's lock.
+     */
+    private synchronized List<PooledConnection> evictIdleConnections(long now) {
+        List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+        for (Iterator<PooledConnection> iter = _idle.iterator(); iter.hasNext(); ) {
+            PooledConnection pooled = iter.next();
+            if (now - pooled._lastUsed > _maxIdleMillis) {
+                iter.remove();
+                evicted.add(pooled);
+            }
+        }
+        _openCount -= evicted.size();
+        _evictedCount += evicted.size();
+
+        return evicted;
+    }
+
+    /**
+     * Closes the physical connection, if any, and frees up its slot in the pool.
+     */
+    private void discard(PooledConnection pooled) {
+        synchronized (this) {
+            _openCount--;
+            this.notifyAll();
+        }
+        if (pooled != null) {
+            pooled.closeQuietly();
+        }
+    }
+
+    private static void closeAll(List<PooledConnection> connections) {
+        for (PooledConnection pooled : connections) {
+            pooled.closeQuietly();
+        }
+    }
+
+    /**
+     * A physical connection along with the statements opened on it by its current borrower.
+     */
+    private class PooledConnection {
+
+        private final Connection _physical;
+        private final List<Statement> _statements = new ArrayList<Statement>();
+        private volatile long _lastUsed = System.currentTimeMillis();
+        private volatile Connection _currentProxy;
+
+        private PooledConnection(Connection physical) {
+            _physical = physical;
+        }
+
+        private Connection createProxy() {
+            InvocationHandler handler = new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (name.equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    if (name.equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if (name.equals("toString")) {
+                        return "Pooled[" + _physical + "]";
+                    }
+                    if (name.equals("close")) {
+                        closeConnection((Connection) proxy);
+                        return null;
+                    }
+                    if (name.equals("isClosed")) {
+                        return _currentProxy != proxy || _physical.isClosed();
+                    }
+                    if (_currentProxy != proxy) {
+                        throw new SQLException("Connection has already been returned to the pool.");
+                    }
+
+                    try {
+                        Object result = method.invoke(_physical, args);
+                        if (result instanceof Statement) {
+                            synchronized (_statements) {
+                                _statements.add((Statement) result);
+                            }
+                        }
+
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+            _currentProxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, handler);
+
+            return _currentProxy;
+        }
+
+        /**
+         * Makes the connection ready to be handed out again. Returns {@code false} if the connection should not be
+         * reused.
+         */
+        private boolean reset() throws SQLException {
+            _currentProxy = null;
+
+            synchronized (_statements) {
+                for (Statement statement : _statements) {
+                    statement.close();
+                }
+                _statements.clear();
+            }
+
+            if (_physical.isClosed()) {
+                return false;
+            }
+            if (!_physical.getAutoCommit()) {
+                _physical.rollback();
+                _physical.setAutoCommit(true);
+            }
+
+            return true;
+        }
+
+        private boolean isValid() {
+            try {
+                Statement statement = _physical.createStatement();
+                try {
+                    statement.executeQuery("SELECT 1").close();
+                } finally {
+                    statement.close();
+                }
+
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                _physical.close();
+            } catch (SQLException e) {
+                //nothing more can be done with this connection
+            }
+        }
+    }
+
+    /**
+     * Immutable snapshot of a pool's usage metrics.
+     */
+    static class Statistics {
+
+        private final int _active, _idle;
+        private final long _borrowCount, _totalWaitNanos, _maxWaitNanos, _createdCount, _evictedCount,
+                _invalidatedCount;
+
+        private Statistics(int active, int idle, long borrowCount, long totalWaitNanos, long maxWaitNanos,
+                           long createdCount, long evictedCount, long invalidatedCount) {
+            _active = active;
+            _idle = idle;
+            _borrowCount = borrowCount;
+            _totalWaitNanos = totalWaitNanos;
+            _maxWaitNanos = maxWaitNanos;
+            _createdCount = createdCount;
+            _evictedCount = evictedCount;
+            _invalidatedCount = invalidatedCount;
+        }
+
+        /**
+         * The number of connections currently handed out.
+         */
+        int getActiveCount() {
+            return _active;
+        }
+
+        /**
+         * The number of open connections waiting in the pool to be handed out.
+         */
+        int getIdleCount() {
+            return _idle;
+        }
+
+        /**
+         * The number of times a connection has been handed out.
+         */
+        long getBorrowCount() {
+            return _borrowCount;
+        }
+
+        /**
+         * The total time spent obtaining connections, including opening new physical connections.
+         */
+        long getTotalWaitNanos() {
+            return _totalWaitNanos;
+        }
+
+        /**
+         * The longest time spent obtaining a single connection.
+         */
+        long getMaxWaitNanos() {
+            return _maxWaitNanos;
+        }
+
+        /**
+         * The number of physical connections that have been opened.
+         */
+        long getCreatedCount() {
+            return _createdCount;
+        }
+
+        /**
+         * The number of physical connections closed for having been idle too long.
+         */
+        long getEvictedCount() {
+            return _evictedCount;
+        }
+
+        /**
+         * The number of physical connections closed because they failed validation.
+         */
+        long getInvalidatedCount() {
+            return _invalidatedCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("active=%d, idle=%d, borrowed=%d, created=%d, evicted=%d, invalidated=%d, "
+                    + "avgWait=%.3fms, maxWait=%.3fms", _active, _idle, _borrowCount, _createdCount, _evictedCount,
+                    _invalidatedCount, _borrowCount == 0 ? 0.0 : _totalWaitNanos / 1e6 / _borrowCount,
+                    _maxWaitNanos / 1e6);
+        }
+    }
+}
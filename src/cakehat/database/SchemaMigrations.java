@@ -0,0 +1,598 @@
+package cakehat.database;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.joda.time.DateTime;
+
+/**
+ * Versioned, ordered changes to the database schema. The base schema created by {@link DatabaseImpl#resetDatabase()}
+ * is version {@code 0}; each {@link Migration} moves the schema from the previous version to its own version. The
+ * current version of a database is stored in the {@code schema_version} table; a database without that table is
+ * treated as being at version {@code 0}.
+ * <br/><br/>
+ * To change the schema, append a new Migration to {@link #MIGRATIONS} with the next version number. Existing
+ * migrations must never be modified or reordered once released as databases in use may already have applied them.
+ */
+class SchemaMigrations {
+
+    /**
+     * A single step in the evolution of the database schema.
+     */
+    static abstract class Migration {
+
+        private final int _version;
+        private final String _description;
+
+        Migration(int version, String description) {
+            _version = version;
+            _description = description;
+        }
+
+        int getVersion() {
+            return _version;
+        }
+
+        String getDescription() {
+            return _description;
+        }
+
+        /**
+         * Applies this migration. The connection is in a transaction that will be committed along with the updated
+         * schema version once all pending migrations have been applied.
+         *
+         * @param conn
+         * @throws SQLException
+         */
+        abstract void apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * A migration that only consists of executing a fixed list of SQL statements.
+     */
+    private static class StatementsMigration extends Migration {
+
+        private final List<String> _statements;
+
+        StatementsMigration(int version, String description, String... statements) {
+            super(version, description);
+            _statements = ImmutableList.copyOf(statements);
+        }
+
+        @Override
+        void apply(Connection conn) throws SQLException {
+            Statement statement = conn.createStatement();
+            try {
+                for (String sql : _statements) {
+                    statement.executeUpdate(sql);
+                }
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * Adds columns to a table and then executes statements. SQLite cannot add a column only if it does not exist, so
+     * columns the table already has are skipped.
+     */
+    private static class AddColumnsMigration extends StatementsMigration {
+
+        private final String _table;
+        private final Map<String, String> _columns;
+
+        /**
+         * @param version
+         * @param description
+         * @param table
+         * @param columns mapping from the name of each column to add to its type and constraints
+         * @param statements
+         */
+        AddColumnsMigration(int version, String description, String table, Map<String, String> columns,
+                            String... statements) {
+            super(version, description, statements);
+            _table = table;
+            _columns = ImmutableMap.copyOf(columns);
+        }
+
+        @Override
+        void apply(Connection conn) throws SQLException {
+            Statement statement = conn.createStatement();
+            try {
+                Set<String> existing = new HashSet<String>();
+                ResultSet rs = statement.executeQuery("PRAGMA table_info(" + _table + ")");
+                while (rs.next()) {
+                    existing.add(rs.getString("name"));
+                }
+                rs.close();
+
+                for (Map.Entry<String, String> column : _columns.entrySet()) {
+                    if (!existing.contains(column.getKey())) {
+                        statement.executeUpdate("ALTER TABLE " + _table + " ADD COLUMN " + column.getKey() + " "
+                                + column.getValue());
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+
+            super.apply(conn);
+        }
+    }
+
+    /**
+     * Creates triggers which record every insert, update and delete of a row of each table in the {@code changelog}
+     * table, along with the value of the row's given column, so that any change to the tables advances the change
+     * sequence.
+     */
+    private static class ChangeLogMigration extends Migration {
+
+        private final Map<String, String> _idColumns;
+
+        /**
+         * @param version
+         * @param description
+         * @param idColumns mapping from table name to the column recorded as the id of a changed row
+         */
+        ChangeLogMigration(int version, String description, Map<String, String> idColumns) {
+            super(version, description);
+            _idColumns = ImmutableMap.copyOf(idColumns);
+        }
+
+        @Override
+        void apply(Connection conn) throws SQLException {
+            Statement statement = conn.createStatement();
+            try {
+                for (Map.Entry<String, String> entry : _idColumns.entrySet()) {
+                    String table = entry.getKey();
+                    String column = entry.getValue();
+                    statement.executeUpdate(trigger(table, "insert", "NEW." + column));
+                    statement.executeUpdate(trigger(table, "update", "NEW." + column));
+                    statement.executeUpdate(trigger(table, "delete", "OLD." + column));
+                }
+            } finally {
+                statement.close();
+            }
+        }
+
+        private static String trigger(String table, String operation, String id) {
+            return "CREATE TRIGGER IF NOT EXISTS " + table + "_" + operation + "_log AFTER "
+                    + operation.toUpperCase() + " ON " + table
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('" + table + "', " + id + "); END";
+        }
+    }
+
+    /**
+     * A table to be rebuilt by {@link EpochMillisMigration}: its full definition at the new version, the columns to
+     * convert, and the indexes that must be recreated because they are dropped along with the old table.
+     */
+    private static class RebuiltTable {
+
+        private final String _name;
+        private final String _definition;
+        private final List<String> _timestampColumns;
+        private final List<String> _indexes;
+
+        RebuiltTable(String name, String definition, List<String> timestampColumns, List<String> indexes) {
+            _name = name;
+            _definition = definition;
+            _timestampColumns = timestampColumns;
+            _indexes = indexes;
+        }
+    }
+
+    /**
+     * Changes timestamp columns from VARCHAR columns holding ISO 8601 strings, as produced by
+     * {@link DateTime#toString()}, to INTEGER columns holding milliseconds since the epoch so that they can be compared
+     * in SQL and read without being parsed. SQLite cannot change the type of an existing column, so each table
+     * is copied aside, dropped, recreated with the new definition and refilled, converting the timestamps as they are
+     * copied back.
+     * <br/><br/>
+     * Tables must be given with referenced tables before the tables that reference them. All tables are dropped before
+     * any is recreated so that foreign key actions on dropping a referenced table cannot affect the rebuilt tables.
+     */
+    private static class EpochMillisMigration extends Migration {
+
+        private final List<RebuiltTable> _tables;
+
+        EpochMillisMigration(int version, String description, RebuiltTable... tables) {
+            super(version, description);
+            _tables = ImmutableList.copyOf(tables);
+        }
+
+        @Override
+        void apply(Connection conn) throws SQLException {
+            Statement statement = conn.createStatement();
+            try {
+                Map<String, Long> sequences = new HashMap<String, Long>();
+                for (RebuiltTable table : _tables) {
+                    statement.executeUpdate("CREATE TEMP TABLE migrate_" + table._name + " AS SELECT * FROM "
+                            + table._name);
+                    ResultSet rs = statement.executeQuery("SELECT seq FROM sqlite_sequence WHERE name == '"
+                            + table._name + "'");
+                    if (rs.next()) {
+                        sequences.put(table._name, rs.getLong("seq"));
+                    }
+                    rs.close();
+                }
+
+                for (RebuiltTable table : Lists.reverse(_tables)) {
+                    statement.executeUpdate("DROP TABLE " + table._name);
+                }
+
+                for (RebuiltTable table : _tables) {
+                    statement.executeUpdate(table._definition);
+                    statement.executeUpdate("INSERT INTO " + table._name + " SELECT * FROM temp.migrate_"
+                            + table._name);
+                    statement.executeUpdate("DROP TABLE temp.migrate_" + table._name);
+                    convertTimestamps(conn, table);
+
+                    if (sequences.containsKey(table._name)) {
+                        statement.executeUpdate("DELETE FROM sqlite_sequence WHERE name == '" + table._name + "'");
+                        statement.executeUpdate("INSERT INTO sqlite_sequence (name, seq) VALUES ('" + table._name
+                                + "', " + sequences.get(table._name) + ")");
+                    }
+
+                    for (String index : table._indexes) {
+                        statement.executeUpdate(index);
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+        }
+
+        private static void convertTimestamps(Connection conn, RebuiltTable table) throws SQLException {
+            StringBuilder update = new StringBuilder("UPDATE " + table._name + " SET ");
+            for (int i = 0; i < table._timestampColumns.size(); i++) {
+                update.append(i == 0 ? "" : ", ").append(table._timestampColumns.get(i)).append(" = ?");
+            }
+            update.append(" WHERE rowid == ?");
+
+            Statement select = conn.createStatement();
+            PreparedStatement ps = conn.prepareStatement(update.toString());
+            try {
+                ResultSet rs = select.executeQuery("SELECT rowid, " + Joiner.on(", ").join(table._timestampColumns)
+                        + " FROM " + table._name);
+                while (rs.next()) {
+                    for (int i = 0; i < table._timestampColumns.size(); i++) {
+                        String value = rs.getString(i + 2);
+                        if (value == null) {
+                            ps.setNull(i + 1, java.sql.Types.INTEGER);
+                        } else {
+                            try {
+                                ps.setLong(i + 1, new DateTime(value).getMillis());
+                            } catch (IllegalArgumentException ex) {
+                                throw new SQLException("Unable to convert " + table._name + "."
+                                        + table._timestampColumns.get(i) + " value [" + value + "] to a timestamp",
+                                        ex);
+                            }
+                        }
+                    }
+                    ps.setLong(table._timestampColumns.size() + 1, rs.getLong(1));
+                    ps.addBatch();
+                }
+                rs.close();
+
+                ps.executeBatch();
+            } finally {
+                ps.close();
+                select.close();
+            }
+        }
+    }
+
+    /**
+     * The key in the {@code courseproperties} table of the epoch of the database.
+     *
+     * @see Database#getChangeEpoch()
+     */
+    static final String EPOCH_PROPERTY = "changeepoch";
+
+    /**
+     * The key in the {@code courseproperties} table of the sequence number of the latest change removed from the
+     * {@code changelog} table when it was pruned. Absent if the change log has never been pruned.
+     *
+     * @see DatabaseImpl#pruneChangeLog(int)
+     */
+    static final String CHANGE_LOG_PRUNED_PROPERTY = "changelogpruned";
+
+    static final List<Migration> MIGRATIONS = ImmutableList.<Migration>of(
+            new StatementsMigration(1, "secondary indexes for group, grading sheet, occurrence, extension and "
+            + "blacklist lookups",
+                    "CREATE INDEX IF NOT EXISTS groupgradingsheet_agid_pid ON groupgradingsheet (agid, pid)",
+                    "CREATE INDEX IF NOT EXISTS groupgradingsheet_assignedto ON groupgradingsheet (assignedto, pid)",
+                    "CREATE INDEX IF NOT EXISTS groupgradingsheetsubsection_ggsid"
+                    + " ON groupgradingsheetsubsection (ggsid)",
+                    "CREATE INDEX IF NOT EXISTS groupgradingsheetcomments_ggsid ON groupgradingsheetcomments (ggsid)",
+                    "CREATE INDEX IF NOT EXISTS groupmember_sid ON groupmember (sid, agid)",
+                    "CREATE INDEX IF NOT EXISTS asgngroup_aid ON asgngroup (aid)",
+                    "CREATE INDEX IF NOT EXISTS geoccurrence_geid_agid ON geoccurrence (geid, agid)",
+                    "CREATE INDEX IF NOT EXISTS extension_geid_agid ON extension (geid, agid)",
+                    "CREATE INDEX IF NOT EXISTS blacklist_tid ON blacklist (tid, sid)"),
+            new EpochMillisMigration(2, "store timestamps as milliseconds since the epoch",
+                    new RebuiltTable("groupgradingsheet", "CREATE TABLE groupgradingsheet"
+                            + " (ggsid INTEGER PRIMARY KEY AUTOINCREMENT,"
+                            + " pid INTEGER NOT NULL,"
+                            + " agid INTEGER NOT NULL,"
+                            + " assignedto INTEGER,"
+                            + " submittedby INTEGER,"
+                            + " datesubmitted INTEGER,"
+                            + " FOREIGN KEY (pid) REFERENCES part(pid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (agid) REFERENCES asgngroup(agid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (assignedto) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (submittedby) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " CONSTRAINT onepergroupperpart UNIQUE(pid, agid) ON CONFLICT REPLACE)",
+                            ImmutableList.of("datesubmitted"),
+                            ImmutableList.of(
+                                "CREATE INDEX groupgradingsheet_agid_pid ON groupgradingsheet (agid, pid)",
+                                "CREATE INDEX groupgradingsheet_assignedto ON groupgradingsheet (assignedto, pid)")),
+                    new RebuiltTable("groupgradingsheetsubsection", "CREATE TABLE groupgradingsheetsubsection"
+                            + " (ggsid INTEGER NOT NULL,"
+                            + " gs_ssid INTEGER NOT NULL,"
+                            + " earned DOUBLE,"
+                            + " lastmodifiedby INTEGER NOT NULL,"
+                            + " lastmodifieddate INTEGER NOT NULL,"
+                            + " FOREIGN KEY (ggsid) REFERENCES groupgradingsheet(ggsid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (gs_ssid) REFERENCES gradingsheetsubsection(gs_ssid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (lastmodifiedby) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " CONSTRAINT onepersubsectionpergroupgradingsheet UNIQUE (gs_ssid, ggsid)"
+                            + " ON CONFLICT REPLACE)",
+                            ImmutableList.of("lastmodifieddate"),
+                            ImmutableList.of(
+                                "CREATE INDEX groupgradingsheetsubsection_ggsid"
+                                + " ON groupgradingsheetsubsection (ggsid)")),
+                    new RebuiltTable("groupgradingsheetcomments", "CREATE TABLE groupgradingsheetcomments"
+                            + " (ggsid INTEGER NOT NULL,"
+                            + " gs_sid INTEGER NOT NULL,"
+                            + " comments VARCHAR,"
+                            + " lastmodifiedby INTEGER NOT NULL,"
+                            + " lastmodifieddate INTEGER NOT NULL,"
+                            + " FOREIGN KEY (ggsid) REFERENCES groupgradingsheet(ggsid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (gs_sid) REFERENCES gradingsheetsection(gs_sid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (lastmodifiedby) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " CONSTRAINT onepersectionpergroupgradingsheet UNIQUE (gs_sid, ggsid) ON CONFLICT REPLACE)",
+                            ImmutableList.of("lastmodifieddate"),
+                            ImmutableList.of(
+                                "CREATE INDEX groupgradingsheetcomments_ggsid"
+                                + " ON groupgradingsheetcomments (ggsid)")),
+                    new RebuiltTable("geoccurrence", "CREATE TABLE geoccurrence (geid INTEGER NOT NULL,"
+                            + " agid INTEGER NOT NULL,"
+                            + " time INTEGER NOT NULL,"
+                            + " daterecorded INTEGER NOT NULL,"
+                            + " path VARCHAR,"
+                            + " tid INTEGER,"
+                            + " FOREIGN KEY (agid) REFERENCES asgngroup(agid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (geid) REFERENCES gradableevent(geid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (tid) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " CONSTRAINT singlehandin UNIQUE (agid, geid) ON CONFLICT REPLACE)",
+                            ImmutableList.of("time", "daterecorded"),
+                            ImmutableList.of(
+                                "CREATE INDEX geoccurrence_geid_agid ON geoccurrence (geid, agid)")),
+                    new RebuiltTable("extension", "CREATE TABLE extension (geid INTEGER NOT NULL,"
+                            + " agid INTEGER NOT NULL,"
+                            + " ontime INTEGER NOT NULL,"
+                            + " shiftdates INTEGER NOT NULL DEFAULT 0,"
+                            + " note TEXT,"
+                            + " daterecorded INTEGER NOT NULL,"
+                            + " tid INTEGER NOT NULL,"
+                            + " FOREIGN KEY (agid) REFERENCES asgngroup(agid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (geid) REFERENCES gradableevent(geid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (tid) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " CONSTRAINT singleextension UNIQUE (agid, geid) ON CONFLICT REPLACE)",
+                            ImmutableList.of("ontime", "daterecorded"),
+                            ImmutableList.of("CREATE INDEX extension_geid_agid ON extension (geid, agid)")),
+                    new RebuiltTable("exemption", "CREATE TABLE exemption (geid INTEGER NOT NULL,"
+                            + " agid INTEGER NOT NULL,"
+                            + " note TEXT,"
+                            + " daterecorded INTEGER NOT NULL,"
+                            + " tid INTEGER NOT NULL,"
+                            + " FOREIGN KEY (agid) REFERENCES asgngroup(agid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (geid) REFERENCES gradableevent(geid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (tid) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " CONSTRAINT singleextension UNIQUE (agid, geid) ON CONFLICT REPLACE)",
+                            ImmutableList.of("daterecorded"),
+                            ImmutableList.<String>of()),
+                    new RebuiltTable("flag", "CREATE TABLE flag (pid INTEGER NOT NULL,"
+                            + " agid INTEGER NOT NULL,"
+                            + " note TEXT,"
+                            + " daterecorded INTEGER NOT NULL,"
+                            + " tid INTEGER NOT NULL,"
+                            + " FOREIGN KEY (agid) REFERENCES asgngroup(agid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (pid) REFERENCES part(pid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (tid) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " CONSTRAINT oneflag UNIQUE (agid, pid) ON CONFLICT REPLACE)",
+                            ImmutableList.of("daterecorded"),
+                            ImmutableList.<String>of()),
+                    new RebuiltTable("adjustment", "CREATE TABLE adjustment (aid INTEGER NOT NULL,"
+                            + " sid INTEGER NOT NULL,"
+                            + " note TEXT,"
+                            + " points DOUBLE,"
+                            + " tid INTEGER NOT NULL,"
+                            + " daterecorded INTEGER NOT NULL,"
+                            + " FOREIGN KEY (aid) REFERENCES assignment(aid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (sid) REFERENCES student(sid) ON DELETE CASCADE,"
+                            + " FOREIGN KEY (tid) REFERENCES ta(tid) ON DELETE CASCADE,"
+                            + " CONSTRAINT singleadjustment UNIQUE (aid, sid) ON CONFLICT REPLACE)",
+                            ImmutableList.of("daterecorded"),
+                            ImmutableList.<String>of())),
+            new StatementsMigration(3, "change log of students, groups and group members",
+                    "CREATE TABLE IF NOT EXISTS changelog (seq INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " tablename VARCHAR NOT NULL,"
+                    + " id INTEGER NOT NULL)",
+                    "CREATE TRIGGER IF NOT EXISTS student_insert_log AFTER INSERT ON student"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('student', NEW.sid); END",
+                    "CREATE TRIGGER IF NOT EXISTS student_update_log AFTER UPDATE ON student"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('student', NEW.sid); END",
+                    "CREATE TRIGGER IF NOT EXISTS student_delete_log AFTER DELETE ON student"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('student', OLD.sid); END",
+                    "CREATE TRIGGER IF NOT EXISTS asgngroup_insert_log AFTER INSERT ON asgngroup"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('asgngroup', NEW.agid); END",
+                    "CREATE TRIGGER IF NOT EXISTS asgngroup_update_log AFTER UPDATE ON asgngroup"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('asgngroup', NEW.agid); END",
+                    "CREATE TRIGGER IF NOT EXISTS asgngroup_delete_log AFTER DELETE ON asgngroup"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('asgngroup', OLD.agid); END",
+                    "CREATE TRIGGER IF NOT EXISTS groupmember_insert_log AFTER INSERT ON groupmember"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('asgngroup', NEW.agid); END",
+                    "CREATE TRIGGER IF NOT EXISTS groupmember_update_log AFTER UPDATE ON groupmember"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('asgngroup', OLD.agid);"
+                    + " INSERT INTO changelog (tablename, id) VALUES ('asgngroup', NEW.agid); END",
+                    "CREATE TRIGGER IF NOT EXISTS groupmember_delete_log AFTER DELETE ON groupmember"
+                    + " BEGIN INSERT INTO changelog (tablename, id) VALUES ('asgngroup', OLD.agid); END"),
+            new StatementsMigration(4, "catalog of digital handins and their archive entries",
+                    "CREATE TABLE IF NOT EXISTS handincatalog (hcid INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " path VARCHAR NOT NULL,"
+                    + " size INTEGER NOT NULL,"
+                    + " lastmodified INTEGER NOT NULL,"
+                    + " sha256 VARCHAR NOT NULL,"
+                    + " CONSTRAINT uniquepath UNIQUE (path))",
+                    "CREATE TABLE IF NOT EXISTS handincatalogentry (hceid INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " hcid INTEGER NOT NULL,"
+                    + " name VARCHAR NOT NULL,"
+                    + " isdirectory INTEGER NOT NULL,"
+                    + " size INTEGER NOT NULL,"
+                    + " lastmodified INTEGER NOT NULL,"
+                    + " FOREIGN KEY (hcid) REFERENCES handincatalog(hcid) ON DELETE CASCADE)",
+                    "CREATE INDEX IF NOT EXISTS handincatalogentry_hcid ON handincatalogentry (hcid)"),
+            new StatementsMigration(5, "outbox of emails to send",
+                    "CREATE TABLE IF NOT EXISTS outbox (obid INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " batch VARCHAR NOT NULL,"
+                    + " tid INTEGER NOT NULL,"
+                    + " recipients VARCHAR NOT NULL,"
+                    + " messagepath VARCHAR NOT NULL,"
+                    + " status VARCHAR NOT NULL,"
+                    + " attempts INTEGER NOT NULL,"
+                    + " lasterror VARCHAR)",
+                    "CREATE INDEX IF NOT EXISTS outbox_tid_status ON outbox (tid, status)"),
+            new ChangeLogMigration(6, "change log of grades, occurrences and extensions",
+                    ImmutableMap.of("geoccurrence", "agid",
+                                    "extension", "agid",
+                                    "groupgradingsheet", "ggsid",
+                                    "groupgradingsheetsubsection", "ggsid",
+                                    "groupgradingsheetcomments", "ggsid")),
+            new AddColumnsMigration(7, "outbox owners and shared attachments", "outbox",
+                    ImmutableMap.of("owner", "VARCHAR",
+                                    "leaseexpires", "INTEGER NOT NULL DEFAULT 0"),
+                    "CREATE TABLE IF NOT EXISTS outboxattachment (obid INTEGER NOT NULL,"
+                    + " ordering INTEGER NOT NULL,"
+                    + " path VARCHAR NOT NULL,"
+                    + " name VARCHAR NOT NULL,"
+                    + " contenttype VARCHAR NOT NULL,"
+                    + " FOREIGN KEY (obid) REFERENCES outbox(obid) ON DELETE CASCADE)",
+                    "CREATE INDEX IF NOT EXISTS outboxattachment_obid ON outboxattachment (obid)",
+                    "CREATE INDEX IF NOT EXISTS outboxattachment_path ON outboxattachment (path)"),
+            new StatementsMigration(8, "epoch identifying the change log of this incarnation of the database",
+                    "INSERT OR IGNORE INTO courseproperties (key, value)"
+                    + " VALUES ('" + EPOCH_PROPERTY + "', lower(hex(randomblob(16))))")
+            );
+
+    /**
+     * The schema version a database is at once all migrations have been applied.
+     */
+    static final int LATEST_VERSION = MIGRATIONS.isEmpty() ? 0 : MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion();
+
+    private SchemaMigrations() { }
+
+    /**
+     * Returns the schema version of the database, {@code 0} if it predates schema versioning.
+     *
+     * @param conn
+     * @return
+     * @throws SQLException
+     */
+    static int getVersion(Connection conn) throws SQLException {
+        if (!tableExists(conn, "schema_version")) {
+            return 0;
+        }
+
+        Statement statement = conn.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery("SELECT MAX(version) AS version FROM schema_version");
+
+            return rs.next() ? rs.getInt("version") : 0;
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Returns whether the database contains the base schema, that is whether {@link DatabaseImpl#resetDatabase()} has
+     * ever been run against it.
+     *
+     * @param conn
+     * @return
+     * @throws SQLException
+     */
+    static boolean hasSchema(Connection conn) throws SQLException {
+        return tableExists(conn, "courseproperties");
+    }
+
+    /**
+     * Applies, in order, all migrations newer than the database's current schema version and records the new
+     * version. The caller is responsible for committing or rolling back {@code conn}, which must be in a transaction.
+     *
+     * @param conn
+     * @return the number of migrations applied
+     * @throws SQLException if the database's schema is newer than this version of cakehat supports, or if a
+     * migration fails
+     */
+    static int migrate(Connection conn) throws SQLException {
+        int currentVersion = getVersion(conn);
+        if (currentVersion > LATEST_VERSION) {
+            throw new SQLException("The database schema is at version " + currentVersion + " but this version of "
+                    + "cakehat only supports up to version " + LATEST_VERSION + ".");
+        }
+
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.getVersion() > currentVersion) {
+                migration.apply(conn);
+                applied++;
+            }
+        }
+
+        if (applied > 0) {
+            Statement statement = conn.createStatement();
+            try {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (version INTEGER NOT NULL,"
+                        + " dateapplied VARCHAR NOT NULL)");
+            } finally {
+                statement.close();
+            }
+
+            PreparedStatement ps = conn.prepareStatement("INSERT INTO schema_version (version, dateapplied)"
+                    + " VALUES (?, datetime('now'))");
+            try {
+                ps.setInt(1, LATEST_VERSION);
+                ps.executeUpdate();
+            } finally {
+                ps.close();
+            }
+        }
+
+        return applied;
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("SELECT name FROM sqlite_master WHERE type == 'table'"
+                + " AND name == ?");
+        try {
+            ps.setString(1, table);
+
+            return ps.executeQuery().next();
+        } finally {
+            ps.close();
+        }
+    }
+}
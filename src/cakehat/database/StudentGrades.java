@@ -0,0 +1,86 @@
+package cakehat.database;
+
+import cakehat.assignment.Assignment;
+import cakehat.assignment.GradableEvent;
+import cakehat.assignment.Part;
+import java.util.Map;
+
+/**
+ * The groups, group grading sheet totals, occurrences and extensions of a single student for every assignment in the
+ * course, as provided one student at a time by {@link DataServices#streamStudentGrades(java.util.List,
+ * DataServices.StudentGradesHandler)}.
+ */
+public class StudentGrades
+{
+    private final Student _student;
+    private final Map<Assignment, Group> _groups;
+    private final Map<Part, GroupGradingSheetTotal> _gradingSheetTotals;
+    private final Map<GradableEvent, GradableEventOccurrence> _occurrences;
+    private final Map<GradableEvent, Extension> _extensions;
+
+    StudentGrades(Student student,
+                  Map<Assignment, Group> groups,
+                  Map<Part, GroupGradingSheetTotal> gradingSheetTotals,
+                  Map<GradableEvent, GradableEventOccurrence> occurrences,
+                  Map<GradableEvent, Extension> extensions)
+    {
+        _student = student;
+        _groups = groups;
+        _gradingSheetTotals = gradingSheetTotals;
+        _occurrences = occurrences;
+        _extensions = extensions;
+    }
+
+    public Student getStudent()
+    {
+        return _student;
+    }
+
+    /**
+     * Returns the group the student is in for {@code asgn}, or {@code null} if the student is not in a group.
+     *
+     * @param asgn
+     * @return
+     */
+    public Group getGroup(Assignment asgn)
+    {
+        return _groups.get(asgn);
+    }
+
+    /**
+     * Returns the total of the grading sheet of the student's group for {@code part}, or {@code null} if the student is
+     * not in a group for the assignment {@code part} belongs to. If the group has no grading sheet in the database the
+     * total of an empty, unsubmitted grading sheet is returned.
+     *
+     * @param part
+     * @return
+     */
+    public GroupGradingSheetTotal getGroupGradingSheetTotal(Part part)
+    {
+        return _gradingSheetTotals.get(part);
+    }
+
+    /**
+     * Returns the occurrence of {@code ge} recorded in the database for the student's group, or {@code null} if there
+     * is none. Digital handins are not taken into account.
+     *
+     * @param ge
+     * @return
+     * @see cakehat.services.GradingServices#getOccurrenceDates(GradableEvent, java.util.Set)
+     */
+    public GradableEventOccurrence getOccurrence(GradableEvent ge)
+    {
+        return _occurrences.get(ge);
+    }
+
+    /**
+     * Returns the extension the student's group has for {@code ge}, or {@code null} if it has none.
+     *
+     * @param ge
+     * @return
+     */
+    public Extension getExtension(GradableEvent ge)
+    {
+        return _extensions.get(ge);
+    }
+}
@@ -0,0 +1,86 @@
+package cakehat.database;
+
+import cakehat.services.ServicesException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The groups, group grading sheet totals, occurrences and extensions of a single student as read from the database.
+ * This class should be used only for
+ * {@link Database#streamStudentGrades(java.util.List, StudentGradesRecord.Handler)}.
+ */
+class StudentGradesRecord {
+
+    /**
+     * Receives the record of each student, one at a time, from
+     * {@link Database#streamStudentGrades(java.util.List, StudentGradesRecord.Handler)}.
+     */
+    static interface Handler {
+
+        /**
+         * Called with the record of each student in turn. The record is not retained by the database once this method
+         * returns.
+         *
+         * @param record
+         * @return whether to continue reading records; if {@code false} no further records are read
+         * @throws ServicesException
+         */
+        boolean handle(StudentGradesRecord record) throws ServicesException;
+    }
+
+    private final int _studentId;
+    private final Map<Integer, Integer> _groupIds = new HashMap<Integer, Integer>();
+    private final Map<Integer, GradingSheetTotalRecord> _gradingSheetTotals =
+            new HashMap<Integer, GradingSheetTotalRecord>();
+    private final Map<Integer, GradableEventOccurrenceRecord> _occurrences =
+            new HashMap<Integer, GradableEventOccurrenceRecord>();
+    private final Map<Integer, ExtensionRecord> _extensions = new HashMap<Integer, ExtensionRecord>();
+
+    StudentGradesRecord(int studentId) {
+        _studentId = studentId;
+    }
+
+    int getStudentId() {
+        return _studentId;
+    }
+
+    /**
+     * Map of assignment ID to the ID of the group the student is in for that assignment. Assignments for which the
+     * student is not in a group are not included.
+     *
+     * @return
+     */
+    Map<Integer, Integer> getGroupIds() {
+        return _groupIds;
+    }
+
+    /**
+     * Map of part ID to the totals of the grading sheet of the student's group for that part. Parts for which the
+     * student's group does not have a grading sheet in the database are not included.
+     *
+     * @return
+     */
+    Map<Integer, GradingSheetTotalRecord> getGradingSheetTotals() {
+        return _gradingSheetTotals;
+    }
+
+    /**
+     * Map of gradable event ID to the occurrence of the gradable event for the student's group. Gradable events for
+     * which the student's group has no occurrence are not included.
+     *
+     * @return
+     */
+    Map<Integer, GradableEventOccurrenceRecord> getOccurrences() {
+        return _occurrences;
+    }
+
+    /**
+     * Map of gradable event ID to the extension of the gradable event for the student's group. Gradable events for
+     * which the student's group has no extension are not included.
+     *
+     * @return
+     */
+    Map<Integer, ExtensionRecord> getExtensions() {
+        return _extensions;
+    }
+}
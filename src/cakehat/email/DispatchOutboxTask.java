@@ -0,0 +1,89 @@
+package cakehat.email;
+
+import cakehat.Allocator;
+import cakehat.services.ServicesException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.MessagingException;
+import support.utils.LongRunningTask;
+
+/**
+ * A task that sends the emails left pending in the user's outbox by sessions of cakehat which are no longer running,
+ * such as those that were not sent because cakehat exited while sending them.
+ */
+public class DispatchOutboxTask extends LongRunningTask
+{
+    @Override
+    protected void startTask()
+    {
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    dispatch();
+                }
+                catch(RuntimeException e)
+                {
+                    notifyTaskFailed(e, "Unexpected runtime exception encountered while sending unsent emails");
+                }
+                catch(ServicesException e)
+                {
+                    notifyTaskFailed(e, "Unable to send unsent emails");
+                }
+            }
+        }.start();
+    }
+
+    private void dispatch() throws ServicesException
+    {
+        EmailOutbox outbox = Allocator.getEmailOutbox();
+        notifyTaskDetermined(outbox.getAbandonedCount());
+
+        final AtomicInteger failCount = new AtomicInteger();
+        outbox.dispatch(null, new EmailOutbox.DispatchListener()
+        {
+            @Override
+            public void messageSending(int id, String recipients)
+            {
+                notifyTaskStepStarted("Emailing " + recipients);
+            }
+
+            @Override
+            public void messageSent(int id)
+            {
+                notifyTaskStepCompleted();
+            }
+
+            @Override
+            public void messageFailed(int id, MessagingException cause)
+            {
+                failCount.incrementAndGet();
+                notifyTaskStepFailed(cause, "Unable to send email");
+            }
+
+            @Override
+            public boolean isCancelRequested()
+            {
+                return isCancelAttempted();
+            }
+        });
+
+        //Emails not sent remain pending so they can be sent later
+        if(isCancelAttempted())
+        {
+            notifyTaskCanceled();
+        }
+        else if(failCount.get() == 0)
+        {
+            notifyTaskCompleted("<html><center><h2><font face='dialog'>Unsent emails sent successfully</font></h2>" +
+                    "</center></html>");
+        }
+        else
+        {
+            notifyTaskCompleted("<html><center><h2><font face='dialog'>" + failCount.get() + " email(s) could not " +
+                    "be sent</font></h2></center></html>");
+        }
+    }
+}
@@ -6,11 +6,13 @@ import java.util.Collections;
 import java.util.Properties;
 import javax.activation.DataHandler;
 import javax.activation.DataSource;
+import javax.mail.Address;
 import javax.mail.Authenticator;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
@@ -86,6 +88,19 @@ public class EmailAccount
         _properties = buildProperties(login);
         _authenticator = buildAuthenticator(login, ldapPassword);
     }
+    
+    /**
+     * Constructs an {@code EmailAccount} which uses the provided Java Mail properties and authenticator. Allows for
+     * sending email to a mail server other than the Brown CS SMTP server for testing purposes.
+     * 
+     * @param properties
+     * @param authenticator 
+     */
+    EmailAccount(Properties properties, Authenticator authenticator)
+    {
+        _properties = properties;
+        _authenticator = authenticator;
+    }
 
     /**
      * Sends an email as HTML.
@@ -104,6 +119,130 @@ public class EmailAccount
     public void send(InternetAddress from,
                      Iterable<InternetAddress> to, Iterable<InternetAddress> cc, Iterable<InternetAddress> bcc,
                      String subject, String body, Iterable<? extends DataSource> attachments) throws MessagingException
+    {
+        EmailBatch batch = this.openBatch();
+        try
+        {
+            batch.send(from, to, cc, bcc, subject, body, attachments);
+        }
+        finally
+        {
+            batch.close();
+        }
+    }
+    
+    /**
+     * Opens a batch which sends emails over a single connection to the mail server. No connection is made until the
+     * first email is sent.
+     * 
+     * @return 
+     */
+    public EmailBatch openBatch()
+    {
+        return new AccountBatch(Session.getInstance(_properties, _authenticator));
+    }
+    
+    private class AccountBatch implements EmailBatch
+    {
+        private final Session _session;
+        private Transport _transport;
+        private boolean _connected = false;
+        private boolean _closed = false;
+        
+        private AccountBatch(Session session)
+        {
+            _session = session;
+        }
+        
+        @Override
+        public void send(InternetAddress from,
+                         Iterable<InternetAddress> to, Iterable<InternetAddress> cc, Iterable<InternetAddress> bcc,
+                         String subject, String body, Iterable<? extends DataSource> attachments)
+                         throws MessagingException
+        {
+            this.send(buildMessage(_session, from, to, cc, bcc, subject, body, attachments));
+        }
+        
+        @Override
+        public void send(MimeMessage msg) throws MessagingException
+        {
+            if(_closed)
+            {
+                throw new IllegalStateException("Emails may not be sent once the batch has been closed");
+            }
+            
+            msg.saveChanges();
+            Address[] recipients = msg.getAllRecipients();
+            if(recipients == null || recipients.length == 0)
+            {
+                throw new SendFailedException("No recipient addresses");
+            }
+            
+            boolean reusingConnection = _connected;
+            try
+            {
+                this.sendOverConnection(msg, recipients);
+            }
+            //Some of the recipients were rejected, the connection is still usable
+            catch(SendFailedException e)
+            {
+                throw e;
+            }
+            catch(MessagingException e)
+            {
+                //If the server dropped a connection used for earlier emails, for instance because it was idle for too
+                //long, reconnect and try once more; otherwise start over with a new connection for the next email
+                boolean dropped = reusingConnection && !_transport.isConnected();
+                this.disconnect();
+                if(!dropped)
+                {
+                    throw e;
+                }
+                this.sendOverConnection(msg, recipients);
+            }
+        }
+        
+        private void sendOverConnection(MimeMessage msg, Address[] recipients) throws MessagingException
+        {
+            if(!_connected)
+            {
+                _transport = _session.getTransport("smtp");
+                _transport.connect();
+                _connected = true;
+            }
+            _transport.sendMessage(msg, recipients);
+        }
+        
+        private void disconnect()
+        {
+            if(_transport != null)
+            {
+                try
+                {
+                    _transport.close();
+                }
+                //Nothing more can be done with the connection
+                catch(MessagingException e) { }
+            }
+            _transport = null;
+            _connected = false;
+        }
+        
+        @Override
+        public void close()
+        {
+            this.disconnect();
+            _closed = true;
+        }
+    }
+    
+    /**
+     * Builds an HTML email. See {@link #send(InternetAddress, Iterable, Iterable, Iterable, String, String, Iterable)}
+     * for a description of the parameters.
+     */
+    static MimeMessage buildMessage(Session session, InternetAddress from,
+            Iterable<InternetAddress> to, Iterable<InternetAddress> cc, Iterable<InternetAddress> bcc,
+            String subject, String body, Iterable<? extends DataSource> attachments) throws MessagingException
     {
         //Validation
         if(from == null)
@@ -119,9 +258,6 @@ public class EmailAccount
         bcc = (bcc == null ? Collections.<InternetAddress>emptyList() : bcc);
         attachments = (attachments == null ? Collections.<DataSource>emptyList() : attachments);
         
-        //Session
-        Session session = Session.getInstance(_properties, _authenticator);
-
         //Message
         MimeMessage msg = new MimeMessage(session);
         msg.setSubject(subject);
@@ -161,8 +297,7 @@ public class EmailAccount
         //Put parts in message
         msg.setContent(multipart);
 
-        //Send message
-        Transport.send(msg);
+        return msg;
     }
     
     /**
@@ -0,0 +1,50 @@
+package cakehat.email;
+
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Sends many emails over a single connection to the mail server, so that the connection and authentication are not
+ * repeated for each email. The connection is opened when the first email is sent and is reopened if the server drops
+ * it. A batch must be closed once all of its emails have been sent.
+ * <br/><br/>
+ * A batch is not thread safe; it should only be used by the thread that opened it.
+ */
+public interface EmailBatch
+{
+    /**
+     * Sends an email as HTML over this batch's connection. A failure to send one email does not prevent further
+     * emails from being sent.
+     *
+     * @param from may not be {@code null}
+     * @param to may be {@code null}
+     * @param cc may be {@code null}
+     * @param bcc may be {@code null}
+     * @param subject may be {@code null}, if {@code null} the empty string will be used
+     * @param body may be {@code null}, if {@code null} the empty string will be used
+     * @param attachments may be {@code null}
+     *
+     * @throws NullPointerException if {@code from} is {@code null}
+     * @throws MessagingException if unable to send message
+     */
+    public void send(InternetAddress from,
+                     Iterable<InternetAddress> to, Iterable<InternetAddress> cc, Iterable<InternetAddress> bcc,
+                     String subject, String body, Iterable<? extends DataSource> attachments) throws MessagingException;
+
+    /**
+     * Sends an already built email over this batch's connection. A failure to send one email does not prevent further
+     * emails from being sent.
+     *
+     * @param message
+     *
+     * @throws MessagingException if unable to send message
+     */
+    public void send(MimeMessage message) throws MessagingException;
+
+    /**
+     * Closes the connection to the mail server. Emails may not be sent once the batch has been closed.
+     */
+    public void close();
+}
@@ -53,6 +53,18 @@ public interface EmailManager
                      Iterable<InternetAddress> to, Iterable<InternetAddress> cc, Iterable<InternetAddress> bcc,
                      String subject, String body, Iterable<? extends DataSource> attachments) throws MessagingException;
     
+    /**
+     * Opens a batch which sends many emails over a single connection to the mail server. This is considerably faster
+     * than calling {@link #send(InternetAddress, Iterable, Iterable, Iterable, String, String, Iterable)} for each
+     * email. The batch must be closed once all of its emails have been sent.
+     * <br/><br/>
+     * If {@link #getEmailAccountStatus()} returns {@link EmailAccountStatus#NOT_CONFIGURED} then every email sent with
+     * the batch will fail with an exception.
+     * 
+     * @return batch
+     */
+    public EmailBatch openBatch();
+    
     /**
      * Gets an immutable set of {@link InternetAddress}es that are to be notified.
      * 
@@ -15,6 +15,7 @@ import javax.activation.DataSource;
 import javax.mail.MessagingException;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
 
 /**
  *
@@ -141,6 +142,45 @@ public class EmailManagerImpl implements EmailManager
         }
     }
     
+    @Override
+    public EmailBatch openBatch()
+    {
+        EmailBatch batch;
+        if(_status == EmailAccountStatus.AVAILABLE)
+        {
+            batch = _account.openBatch();
+        }
+        else if(_status == EmailAccountStatus.NOT_CONFIGURED)
+        {
+            batch = new EmailBatch()
+            {
+                @Override
+                public void send(InternetAddress from,
+                                 Iterable<InternetAddress> to, Iterable<InternetAddress> cc,
+                                 Iterable<InternetAddress> bcc, String subject, String body,
+                                 Iterable<? extends DataSource> attachments) throws MessagingException
+                {
+                    throw new MessagingException("Email has not been configured by your course");
+                }
+
+                @Override
+                public void send(MimeMessage message) throws MessagingException
+                {
+                    throw new MessagingException("Email has not been configured by your course");
+                }
+
+                @Override
+                public void close() { }
+            };
+        }
+        else
+        {
+            throw new IllegalStateException("Illegal email account status state: " + _status);
+        }
+        
+        return batch;
+    }
+    
     @Override
     public Set<InternetAddress> getNotifyAddresses()
     {
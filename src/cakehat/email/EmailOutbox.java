@@ -0,0 +1,168 @@
+package cakehat.email;
+
+import cakehat.services.ServicesException;
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+
+/**
+ * Sends bulk email reliably. Emails are first added to an outbox which is stored in the database, along with a file
+ * holding each email, and are then dispatched by a small pool of workers, each sending over its own connection to the
+ * mail server, at a limited rate. The outcome of sending each email is recorded in the outbox as it happens, so if
+ * sending is canceled or cakehat exits part way through it is known which emails were sent. Emails that fail to send
+ * are retried a limited number of times; emails that were never sent remain pending in the outbox and can be
+ * dispatched by a later session.
+ * <br/><br/>
+ * Each user has their own outbox; only emails added by the user are dispatched. Several sessions of cakehat may share
+ * an outbox, for instance when a user runs cakehat on more than one machine, so each pending email is held by the
+ * session that added or claimed it. A running session continually renews its hold; once a session exits or crashes
+ * its hold lapses and its pending emails may be sent or canceled by another session.
+ */
+public interface EmailOutbox
+{
+    /**
+     * The default maximum number of connections to the mail server, and therefore of emails sent at once.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 3;
+
+    /**
+     * The default maximum rate at which emails are sent.
+     */
+    public static final double DEFAULT_MESSAGES_PER_SECOND = 2;
+
+    /**
+     * The number of times sending an email is attempted before it is considered to have failed.
+     */
+    public static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Listens to the progress of {@link EmailOutbox#dispatch(String, DispatchListener)}. Methods will be called from
+     * the threads sending the emails.
+     */
+    public static interface DispatchListener
+    {
+        /**
+         * Called before an attempt to send the email with id {@code id}.
+         *
+         * @param id
+         * @param recipients a human readable description of who the email is addressed to
+         */
+        public void messageSending(int id, String recipients);
+
+        /**
+         * Called once the email with id {@code id} has been sent.
+         *
+         * @param id
+         */
+        public void messageSent(int id);
+
+        /**
+         * Called once sending the email with id {@code id} has failed and will not be retried.
+         *
+         * @param id
+         * @param cause
+         */
+        public void messageFailed(int id, MessagingException cause);
+
+        /**
+         * Called before each email is sent; if {@code true} is returned then no further emails will be sent and any
+         * that have not yet been sent will remain pending.
+         *
+         * @return
+         */
+        public boolean isCancelRequested();
+    }
+
+    /**
+     * Creates a unique identifier for a batch of emails that are added to the outbox together.
+     *
+     * @return
+     */
+    public String createBatch();
+
+    /**
+     * Stores a copy of {@code attachment} in the outbox so that it can be attached to any number of emails passed to
+     * {@link #enqueue(String, InternetAddress, Iterable, Iterable, Iterable, String, String, Iterable) enqueue(...)}
+     * while only being stored once, instead of once in each email. Once no more emails will be added with the
+     * returned attachment it must be passed to {@link #releaseAttachment(DataSource)}; it is stored until then and
+     * until every email it is attached to is no longer pending. It must not be attached to emails added after
+     * emails it is attached to have been dispatched.
+     *
+     * @param attachment
+     * @return
+     * @throws ServicesException if unable to store the attachment in the outbox
+     */
+    public DataSource spoolAttachment(DataSource attachment) throws ServicesException;
+
+    /**
+     * Indicates no more emails will be added with {@code attachment}, which was returned by
+     * {@link #spoolAttachment(DataSource)}. It is deleted from the outbox unless a pending email is attached to it.
+     *
+     * @param attachment
+     * @throws ServicesException
+     */
+    public void releaseAttachment(DataSource attachment) throws ServicesException;
+
+    /**
+     * Adds an HTML email to the outbox, held by this session. The email, including those attachments not returned by
+     * {@link #spoolAttachment(DataSource)}, is written to a file so the attachments need not exist once this method
+     * returns. Attachments returned by {@code spoolAttachment(...)} are referenced by the email rather than copied
+     * into it. See
+     * {@link EmailManager#send(InternetAddress, Iterable, Iterable, Iterable, String, String, Iterable)} for a
+     * description of the parameters.
+     *
+     * @param batch an identifier created by {@link #createBatch()}
+     * @param from
+     * @param to
+     * @param cc
+     * @param bcc
+     * @param subject
+     * @param body
+     * @param attachments
+     * @return the id of the email in the outbox
+     * @throws MessagingException if unable to build the email
+     * @throws ServicesException if unable to store the email in the outbox
+     */
+    public int enqueue(String batch, InternetAddress from,
+                       Iterable<InternetAddress> to, Iterable<InternetAddress> cc, Iterable<InternetAddress> bcc,
+                       String subject, String body, Iterable<? extends DataSource> attachments)
+                       throws MessagingException, ServicesException;
+
+    /**
+     * Sends the pending emails in the outbox, blocking until each has been sent or has failed, or until the listener
+     * requests cancellation. Emails not sent remain held by this session until it exits.
+     *
+     * @param batch if not {@code null} then the pending emails in the batch are sent; if {@code null} then the pending
+     * emails abandoned by sessions which are no longer running are sent
+     * @param listener
+     * @throws ServicesException if unable to read from or record outcomes in the outbox
+     */
+    public void dispatch(String batch, DispatchListener listener) throws ServicesException;
+
+    /**
+     * Returns the number of pending emails in the outbox abandoned by sessions which are no longer running; these are
+     * the emails sent by {@code dispatch(null, ...)}. Emails held by a running session, including this one, are not
+     * counted.
+     *
+     * @return
+     * @throws ServicesException
+     */
+    public int getAbandonedCount() throws ServicesException;
+
+    /**
+     * Cancels the emails in the outbox which are pending so that they will never be sent.
+     *
+     * @param batch if not {@code null} then the pending emails in the batch are canceled; if {@code null} then the
+     * pending emails abandoned by sessions which are no longer running are canceled
+     * @throws ServicesException
+     */
+    public void cancel(String batch) throws ServicesException;
+
+    /**
+     * Sets the limits that apply to subsequent calls to {@link #dispatch(String, DispatchListener)}.
+     *
+     * @param maxConnections the maximum number of connections to the mail server, must be positive
+     * @param messagesPerSecond the maximum rate at which emails are sent, must be positive
+     */
+    public void setLimits(int maxConnections, double messagesPerSecond);
+}
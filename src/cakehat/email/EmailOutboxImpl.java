@@ -0,0 +1,674 @@
+package cakehat.email;
+
+import cakehat.Allocator;
+import cakehat.CakehatSession;
+import cakehat.database.OutboxRecord;
+import cakehat.services.ServicesException;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.RateLimiter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.SharedFileInputStream;
+import support.utils.TempFileDataSource;
+
+/**
+ * Stores the outbox in the course database and sends its emails from a pool of worker threads.
+ */
+public class EmailOutboxImpl implements EmailOutbox
+{
+    /**
+     * How long to wait before retrying an email that failed to send, multiplied by the number of attempts so far.
+     */
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 10 * 1000;
+
+    /**
+     * How long this session holds the pending emails it added or claimed without renewing its hold. Once it has
+     * lapsed, because this session exited or crashed, the emails may be claimed by another session.
+     */
+    private static final long LEASE_MILLIS = 2 * 60 * 1000;
+
+    /**
+     * How often this session renews its hold on the pending emails it holds.
+     */
+    private static final long LEASE_RENEWAL_MILLIS = LEASE_MILLIS / 4;
+
+    /**
+     * Used only to build and parse emails, never to send them, so it needs no properties.
+     */
+    private final Session _session = Session.getInstance(new Properties());
+
+    private final long _retryDelayMillis;
+    private volatile int _maxConnections;
+    private volatile double _messagesPerSecond;
+
+    /**
+     * Identifies this session as the owner of the pending emails it holds.
+     */
+    private final String _owner = UUID.randomUUID().toString();
+
+    private final ScheduledExecutorService _leaseRenewer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "cakehat-email-outbox-lease");
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    });
+
+    /**
+     * Renews this session's hold on its pending emails, {@code null} while it holds none. Guarded by {@code this}.
+     */
+    private ScheduledFuture<?> _leaseRenewal;
+
+    public EmailOutboxImpl()
+    {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MESSAGES_PER_SECOND, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    EmailOutboxImpl(int maxConnections, double messagesPerSecond, long retryDelayMillis)
+    {
+        this.setLimits(maxConnections, messagesPerSecond);
+        _retryDelayMillis = retryDelayMillis;
+    }
+
+    @Override
+    public String createBatch()
+    {
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public DataSource spoolAttachment(DataSource attachment) throws ServicesException
+    {
+        File outboxDir = this.getOutboxDir();
+        File attachmentFile = null;
+        try
+        {
+            attachmentFile = File.createTempFile("attachment", ".dat", outboxDir);
+            InputStream in = attachment.getInputStream();
+            try
+            {
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(attachmentFile));
+                try
+                {
+                    ByteStreams.copy(in, out);
+                }
+                finally
+                {
+                    out.close();
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+
+            DataSource spooled = new SpooledAttachment(attachment.getName(), attachment.getContentType(),
+                    attachmentFile);
+            attachmentFile = null;
+
+            return spooled;
+        }
+        catch(IOException e)
+        {
+            throw new ServicesException("Unable to write attachment to the outbox", e);
+        }
+        finally
+        {
+            //Only set if the attachment was not stored in the outbox
+            if(attachmentFile != null)
+            {
+                attachmentFile.delete();
+            }
+        }
+    }
+
+    @Override
+    public void releaseAttachment(DataSource attachment) throws ServicesException
+    {
+        if(!(attachment instanceof SpooledAttachment))
+        {
+            throw new IllegalArgumentException("Attachment was not stored in the outbox: " + attachment.getName());
+        }
+
+        try
+        {
+            this.deleteUnusedAttachments(ImmutableList.of(((SpooledAttachment) attachment).getPath()));
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to determine if attachment is used by an email in the outbox", e);
+        }
+    }
+
+    @Override
+    public int enqueue(String batch, InternetAddress from,
+                       Iterable<InternetAddress> to, Iterable<InternetAddress> cc, Iterable<InternetAddress> bcc,
+                       String subject, String body, Iterable<? extends DataSource> attachments)
+                       throws MessagingException, ServicesException
+    {
+        //Attachments stored in the outbox are referenced by the email instead of being copied into it
+        List<DataSource> includedAttachments = new ArrayList<DataSource>();
+        List<OutboxRecord.Attachment> referencedAttachments = new ArrayList<OutboxRecord.Attachment>();
+        if(attachments != null)
+        {
+            for(DataSource attachment : attachments)
+            {
+                if(attachment instanceof SpooledAttachment)
+                {
+                    referencedAttachments.add(((SpooledAttachment) attachment).toRecord());
+                }
+                else
+                {
+                    includedAttachments.add(attachment);
+                }
+            }
+        }
+
+        MimeMessage msg = EmailAccount.buildMessage(_session, from, to, cc, bcc, subject, body, includedAttachments);
+        msg.saveChanges();
+
+        //Write the email to a file instead of memory or the database so that large attachments are streamed
+        File outboxDir = this.getOutboxDir();
+        File messageFile = null;
+        try
+        {
+            messageFile = File.createTempFile("email", ".eml", outboxDir);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(messageFile));
+            try
+            {
+                msg.writeTo(out);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            int id = Allocator.getDatabase().addOutboxMessage(batch, CakehatSession.getUserId(),
+                    Joiner.on(", ").join(msg.getAllRecipients()), messageFile.getAbsolutePath(),
+                    referencedAttachments, _owner, this.getLeaseExpiration());
+            messageFile = null;
+            this.holdLease();
+
+            return id;
+        }
+        catch(IOException e)
+        {
+            throw new ServicesException("Unable to write email to the outbox", e);
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to add email to the outbox", e);
+        }
+        finally
+        {
+            //Only set if the email was not added to the outbox
+            if(messageFile != null)
+            {
+                messageFile.delete();
+            }
+        }
+    }
+
+    @Override
+    public void dispatch(String batch, final DispatchListener listener) throws ServicesException
+    {
+        List<OutboxRecord> records = this.claim(batch);
+        if(records.isEmpty())
+        {
+            return;
+        }
+
+        final DelayQueue<PendingEmail> queue = new DelayQueue<PendingEmail>();
+        for(OutboxRecord record : records)
+        {
+            queue.add(new PendingEmail(record, record.getAttempts(), 0));
+        }
+        final AtomicInteger outstanding = new AtomicInteger(records.size());
+        final RateLimiter rateLimiter = RateLimiter.create(_messagesPerSecond);
+        final AtomicReference<SQLException> failure = new AtomicReference<SQLException>();
+
+        int workers = Math.min(_maxConnections, records.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory()
+        {
+            private final AtomicInteger _count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "cakehat-email-outbox-" + _count.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+        for(int i = 0; i < workers; i++)
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        sendEmails(queue, outstanding, rateLimiter, listener, failure);
+                    }
+                    catch(SQLException e)
+                    {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        boolean interrupted = false;
+        while(!executor.isTerminated())
+        {
+            try
+            {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            //The workers stop on their own once each email has been sent or has failed, or when canceled
+            catch(InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if(failure.get() != null)
+        {
+            throw new ServicesException("Unable to record the outcome of sending an email in the outbox",
+                    failure.get());
+        }
+
+        try
+        {
+            this.deleteUnusedAttachments(getAttachmentPaths(records));
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to determine if attachments are used by emails in the outbox", e);
+        }
+    }
+
+    /**
+     * Sends emails from {@code queue} over one connection until none are outstanding, cancellation is requested or
+     * another worker fails to record an outcome.
+     */
+    private void sendEmails(DelayQueue<PendingEmail> queue, AtomicInteger outstanding, RateLimiter rateLimiter,
+            DispatchListener listener, AtomicReference<SQLException> failure) throws SQLException
+    {
+        EmailBatch emailBatch = Allocator.getEmailManager().openBatch();
+        try
+        {
+            while(outstanding.get() > 0 && !listener.isCancelRequested() && failure.get() == null)
+            {
+                PendingEmail email;
+                try
+                {
+                    //Another worker may be retrying the last outstanding emails, so do not wait indefinitely
+                    email = queue.poll(100, TimeUnit.MILLISECONDS);
+                }
+                catch(InterruptedException e)
+                {
+                    break;
+                }
+                if(email == null)
+                {
+                    continue;
+                }
+
+                OutboxRecord record = email.getRecord();
+                int attempts = email.getAttempts() + 1;
+                rateLimiter.acquire();
+                listener.messageSending(record.getId(), record.getRecipients());
+                try
+                {
+                    SharedFileInputStream in = new SharedFileInputStream(record.getMessagePath());
+                    try
+                    {
+                        emailBatch.send(this.readMessage(record, in));
+                    }
+                    finally
+                    {
+                        close(in);
+                    }
+
+                    Allocator.getDatabase().updateOutboxMessage(record.getId(), OutboxRecord.Status.SENT, attempts,
+                            null);
+                    new File(record.getMessagePath()).delete();
+                    outstanding.decrementAndGet();
+                    listener.messageSent(record.getId());
+                }
+                catch(MessagingException e)
+                {
+                    this.handleFailure(queue, outstanding, listener, record, attempts, e);
+                }
+                catch(IOException e)
+                {
+                    this.handleFailure(queue, outstanding, listener, record, MAX_ATTEMPTS,
+                            new MessagingException("Unable to read email from the outbox", e));
+                }
+            }
+        }
+        finally
+        {
+            emailBatch.close();
+        }
+    }
+
+    private void handleFailure(DelayQueue<PendingEmail> queue, AtomicInteger outstanding, DispatchListener listener,
+            OutboxRecord record, int attempts, MessagingException cause) throws SQLException
+    {
+        //A rejected recipient will be rejected again
+        if(attempts < MAX_ATTEMPTS && !(cause instanceof SendFailedException))
+        {
+            Allocator.getDatabase().updateOutboxMessage(record.getId(), OutboxRecord.Status.PENDING, attempts,
+                    cause.getMessage());
+            queue.add(new PendingEmail(record, attempts, _retryDelayMillis * attempts));
+        }
+        else
+        {
+            Allocator.getDatabase().updateOutboxMessage(record.getId(), OutboxRecord.Status.FAILED, attempts,
+                    cause.getMessage());
+            new File(record.getMessagePath()).delete();
+            outstanding.decrementAndGet();
+            listener.messageFailed(record.getId(), cause);
+        }
+    }
+
+    /**
+     * Reads the email's message, adding to it the attachments stored in their own files.
+     */
+    private MimeMessage readMessage(OutboxRecord record, SharedFileInputStream in) throws MessagingException,
+            IOException
+    {
+        MimeMessage msg = new MimeMessage(_session, in);
+        if(!record.getAttachments().isEmpty())
+        {
+            Multipart multipart = (Multipart) msg.getContent();
+            for(OutboxRecord.Attachment attachment : record.getAttachments())
+            {
+                MimeBodyPart attachmentPart = new MimeBodyPart();
+                attachmentPart.setDataHandler(new DataHandler(new SpooledAttachment(attachment.getName(),
+                        attachment.getContentType(), new File(attachment.getPath()))));
+                attachmentPart.setFileName(attachment.getName());
+                multipart.addBodyPart(attachmentPart);
+            }
+            msg.setContent(multipart);
+            msg.saveChanges();
+        }
+
+        return msg;
+    }
+
+    private static void close(SharedFileInputStream in)
+    {
+        try
+        {
+            in.close();
+        }
+        //The email has already been read
+        catch(IOException e) { }
+    }
+
+    @Override
+    public int getAbandonedCount() throws ServicesException
+    {
+        try
+        {
+            return Allocator.getDatabase().getAbandonedOutboxMessageCount(CakehatSession.getUserId(), _owner,
+                    System.currentTimeMillis());
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to retrieve pending emails from the outbox", e);
+        }
+    }
+
+    @Override
+    public void cancel(String batch) throws ServicesException
+    {
+        List<OutboxRecord> records = this.claim(batch);
+        try
+        {
+            List<Integer> ids = new ArrayList<Integer>();
+            List<File> messageFiles = new ArrayList<File>();
+            for(OutboxRecord record : records)
+            {
+                ids.add(record.getId());
+                messageFiles.add(new File(record.getMessagePath()));
+            }
+            Allocator.getDatabase().cancelOutboxMessages(ids);
+            Allocator.getFileSystemUtilities().deleteFilesSilently(messageFiles);
+
+            this.deleteUnusedAttachments(getAttachmentPaths(records));
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to cancel pending emails in the outbox", e);
+        }
+    }
+
+    /**
+     * Claims the pending emails in {@code batch}, or if {@code null} those abandoned by sessions which are no longer
+     * running, so that this session holds them.
+     */
+    private List<OutboxRecord> claim(String batch) throws ServicesException
+    {
+        List<OutboxRecord> records;
+        try
+        {
+            records = Allocator.getDatabase().claimOutboxMessages(CakehatSession.getUserId(), batch, _owner,
+                    System.currentTimeMillis(), this.getLeaseExpiration());
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to retrieve pending emails from the outbox", e);
+        }
+        if(!records.isEmpty())
+        {
+            this.holdLease();
+        }
+
+        return records;
+    }
+
+    private long getLeaseExpiration()
+    {
+        return System.currentTimeMillis() + LEASE_MILLIS;
+    }
+
+    /**
+     * Ensures this session's hold on its pending emails is being renewed. Renewal stops once it holds none.
+     */
+    private synchronized void holdLease()
+    {
+        if(_leaseRenewal == null)
+        {
+            _leaseRenewal = _leaseRenewer.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    renewLease();
+                }
+            }, LEASE_RENEWAL_MILLIS, LEASE_RENEWAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void renewLease()
+    {
+        try
+        {
+            if(Allocator.getDatabase().renewOutboxLeases(_owner, this.getLeaseExpiration()) == 0)
+            {
+                _leaseRenewal.cancel(false);
+                _leaseRenewal = null;
+            }
+        }
+        //Renewal is attempted again shortly; the hold only lapses if every attempt fails until the lease expires
+        catch(SQLException e) { }
+    }
+
+    private File getOutboxDir() throws ServicesException
+    {
+        File outboxDir = Allocator.getPathServices().getOutboxDir();
+        Allocator.getFileSystemServices().makeDirectory(outboxDir);
+
+        return outboxDir;
+    }
+
+    private static Set<String> getAttachmentPaths(Collection<OutboxRecord> records)
+    {
+        Set<String> paths = new LinkedHashSet<String>();
+        for(OutboxRecord record : records)
+        {
+            for(OutboxRecord.Attachment attachment : record.getAttachments())
+            {
+                paths.add(attachment.getPath());
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * Deletes the attachment files at {@code paths} which are not attached to any pending email.
+     */
+    private void deleteUnusedAttachments(Collection<String> paths) throws SQLException
+    {
+        List<File> unused = new ArrayList<File>();
+        for(String path : paths)
+        {
+            if(!Allocator.getDatabase().isOutboxAttachmentPending(path))
+            {
+                unused.add(new File(path));
+            }
+        }
+        Allocator.getFileSystemUtilities().deleteFilesSilently(unused);
+    }
+
+    @Override
+    public final void setLimits(int maxConnections, double messagesPerSecond)
+    {
+        if(maxConnections < 1)
+        {
+            throw new IllegalArgumentException("maxConnections must be positive, was " + maxConnections);
+        }
+        if(messagesPerSecond <= 0)
+        {
+            throw new IllegalArgumentException("messagesPerSecond must be positive, was " + messagesPerSecond);
+        }
+
+        _maxConnections = maxConnections;
+        _messagesPerSecond = messagesPerSecond;
+    }
+
+    /**
+     * An attachment stored in its own file in the outbox.
+     */
+    private static class SpooledAttachment extends TempFileDataSource
+    {
+        private final File _file;
+
+        SpooledAttachment(String name, String type, File file)
+        {
+            super(name, type, file);
+            _file = file;
+        }
+
+        String getPath()
+        {
+            return _file.getAbsolutePath();
+        }
+
+        OutboxRecord.Attachment toRecord()
+        {
+            return new OutboxRecord.Attachment(this.getPath(), this.getName(), this.getContentType());
+        }
+    }
+
+    /**
+     * An email waiting to be sent, which becomes available once its retry delay has passed.
+     */
+    private static class PendingEmail implements Delayed
+    {
+        private final OutboxRecord _record;
+        private final int _attempts;
+        private final long _availableAtNanos;
+
+        PendingEmail(OutboxRecord record, int attempts, long delayMillis)
+        {
+            _record = record;
+            _attempts = attempts;
+            _availableAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        OutboxRecord getRecord()
+        {
+            return _record;
+        }
+
+        int getAttempts()
+        {
+            return _attempts;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(_availableAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other)
+        {
+            long diff = this.getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+}
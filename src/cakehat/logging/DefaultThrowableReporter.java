@@ -81,6 +81,11 @@ class DefaultThrowableReporter implements ThrowableReporter
         appendToBody(body, "Version", CakehatReleaseInfo.getVersion());
         appendToBody(body, "Release Commit Number", CakehatReleaseInfo.getReleaseCommitNumber());
         appendToBody(body, "Release Date", CakehatReleaseInfo.getReleaseDate());
+        String connectionUsage = Allocator.getDatabaseConnectionUsageSummary();
+        if(connectionUsage != null)
+        {
+            appendToBody(body, "Database Connections", connectionUsage);
+        }
         
         //Email error report
         try
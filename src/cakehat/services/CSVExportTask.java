@@ -1,25 +1,24 @@
 package cakehat.services;
 
 import cakehat.Allocator;
-import cakehat.database.Extension;
 import cakehat.database.Group;
 import cakehat.database.Student;
 import cakehat.assignment.Assignment;
 import cakehat.assignment.DeadlineInfo.DeadlineResolution;
 import cakehat.assignment.GradableEvent;
 import cakehat.assignment.Part;
-import cakehat.database.GroupGradingSheet;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
+import cakehat.database.GroupGradingSheetTotal;
+import cakehat.database.DataServices.StudentGradesHandler;
+import cakehat.database.GradableEventOccurrence;
+import cakehat.database.StudentGrades;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import org.joda.time.DateTime;
 import support.utils.LongRunningTask;
 
@@ -55,6 +54,12 @@ import support.utils.LongRunningTask;
  */     
 public class CSVExportTask extends LongRunningTask
 {   
+    /**
+     * Size in characters of the buffer rows are written through; rows are small so this avoids a write to the file for
+     * each row.
+     */
+    private static final int WRITER_BUFFER_SIZE = 1 << 16;
+    
     private final File _destination;
     
     public CSVExportTask(File destination)
@@ -116,7 +121,7 @@ public class CSVExportTask extends LongRunningTask
     private void export() throws ServicesException, IOException, Cancellation
     {
         //Initial setup
-        PrintWriter writer = new PrintWriter(_destination);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(_destination), WRITER_BUFFER_SIZE));
         checkAttemptCancel(writer);
         
         //Load student data
@@ -131,23 +136,17 @@ public class CSVExportTask extends LongRunningTask
         
         //Number of steps is:
         // - 1 for the header rows
-        // - 1 for each asssignment grade data is loaded for
-        // - 1 for each student row that will be written
-        // (These are not ideal steps as retrieving data from the database takes much longer than writing a student row)
-        notifyTaskDetermined(1 + Allocator.getDataServices().getAssignments().size() +
-                             enabledStudents.size() + disabledStudents.size());
+        // - 1 for each student row that will be written, which includes reading that student's grades
+        notifyTaskDetermined(1 + enabledStudents.size() + disabledStudents.size());
         checkAttemptCancel(writer);
         
         //Write header rows
         writeHeaderRows(writer);
         
-        //Load grade data
-        GradeData data = new GradeData(writer);
-        
         //Write student rows
-        writeStudentRows(writer, enabledStudents, disabledStudents, data);
+        writeStudentRows(writer, enabledStudents, disabledStudents);
         
-        //Close writer (which closes the file) then notify task completion
+        //Close writer (which flushes the buffer and closes the file) then notify task completion
         writer.close();
         notifyTaskCompleted("<html><center><h2><font face='dialog'>CSV exported successfully."
                                 + "</font></h2></center></html>");
@@ -278,25 +277,59 @@ public class CSVExportTask extends LongRunningTask
         checkAttemptCancel(writer);
     }
     
-    private void writeStudentRows(PrintWriter writer, List<Student> enabledStudents, List<Student> disabledStudents,
-            GradeData data) throws Cancellation
+    private void writeStudentRows(final PrintWriter writer, final List<Student> enabledStudents,
+            List<Student> disabledStudents) throws ServicesException, Cancellation
     {
-        for(Student student : enabledStudents)
+        List<Student> students = new ArrayList<Student>(enabledStudents);
+        students.addAll(disabledStudents);
+        
+        if(enabledStudents.isEmpty())
         {
-            writeStudentRow(writer, data, student);
+            writeSeparatorRows(writer);
         }
+        
+        //Students' grades are read from the database a page at a time as their rows are written, so the grades of
+        //the whole course are never held in memory at once
+        Allocator.getDataServices().streamStudentGrades(students, new StudentGradesHandler()
+        {
+            private int _rowsWritten = 0;
+            
+            @Override
+            public boolean handle(StudentGrades grades) throws ServicesException
+            {
+                if(isCancelAttempted())
+                {
+                    return false;
+                }
+                
+                writeStudentRow(writer, grades);
+                _rowsWritten++;
+                
+                if(_rowsWritten == enabledStudents.size())
+                {
+                    writeSeparatorRows(writer);
+                }
+                
+                return true;
+            }
+        });
+        checkAttemptCancel(writer);
+    }
+    
+    /**
+     * Writes the blank rows that separate enabled students from disabled students.
+     */
+    private static void writeSeparatorRows(PrintWriter writer)
+    {
         for(int i = 0; i < 3; i++)
         {
             writeRow(writer);
         }
-        for(Student student : disabledStudents)
-        {
-            writeStudentRow(writer, data, student);
-        }
     }
     
-    private void writeStudentRow(PrintWriter writer, GradeData data, Student student) throws Cancellation
+    private void writeStudentRow(PrintWriter writer, StudentGrades grades) throws ServicesException
     {
+        Student student = grades.getStudent();
         notifyTaskStepStarted("Writing " + student.getName());
             
         ArrayList<String> row = new ArrayList<String>();
@@ -310,7 +343,7 @@ public class CSVExportTask extends LongRunningTask
         for(int asgnIndex = 0; asgnIndex < assignments.size(); asgnIndex++)
         {
             Assignment asgn = assignments.get(asgnIndex);
-            Group group = data._groups.get(asgn).get(student);  
+            Group group = grades.getGroup(asgn);
             
             //Edge case - assignment has no gradable events
             if(asgn.getGradableEvents().isEmpty())
@@ -335,7 +368,7 @@ public class CSVExportTask extends LongRunningTask
                             double earned = 0;
                             if(group != null)
                             {
-                                GroupGradingSheet grade = data._partGrades.get(part).get(group);
+                                GroupGradingSheetTotal grade = grades.getGroupGradingSheetTotal(part);
                                 if(grade.isSubmitted() && grade.getEarned() != null)
                                 {
                                     earned = grade.getEarned();
@@ -348,9 +381,8 @@ public class CSVExportTask extends LongRunningTask
                     }
                     
                     //Deadline
-                    DeadlineResolution resolution = ge.getDeadlineInfo().apply(
-                            data._occurrenceDates.get(ge).get(group),
-                            data._extensions.get(ge).get(group));
+                    DeadlineResolution resolution = ge.getDeadlineInfo().apply(getOccurrenceDate(ge, group, grades),
+                            grades.getExtension(ge));
                     row.add(resolution.getTimeStatus().toString());
                     row.add(Double.toString(resolution.getPenaltyOrBonus(geTotalEarned)));
                 }
@@ -365,7 +397,47 @@ public class CSVExportTask extends LongRunningTask
         
         writeRow(writer, row);
         notifyTaskStepCompleted();
-        checkAttemptCancel(writer);
+    }
+    
+    /**
+     * Returns the date {@code group} handed in or otherwise completed {@code ge}, or {@code null} if it has not. As in
+     * {@link GradingServices#getOccurrenceDates(GradableEvent, java.util.Set)} a digital handin takes precedence over
+     * an occurrence recorded in the database, but the superseded occurrence is not deleted as the database is being
+     * read while this export runs.
+     * 
+     * @param ge
+     * @param group may be {@code null}
+     * @param grades
+     * @return
+     * @throws ServicesException 
+     */
+    private static DateTime getOccurrenceDate(GradableEvent ge, Group group, StudentGrades grades)
+            throws ServicesException
+    {
+        if(group == null)
+        {
+            return null;
+        }
+        
+        if(ge.hasDigitalHandins())
+        {
+            try
+            {
+                File digitalHandin = ge.getDigitalHandin(group);
+                if(digitalHandin != null)
+                {
+                    return new DateTime(digitalHandin.lastModified());
+                }
+            }
+            catch(IOException e)
+            {
+                throw new ServicesException("Unable to retrieve digital handins", e);
+            }
+        }
+        
+        GradableEventOccurrence occurrence = grades.getOccurrence(ge);
+        
+        return occurrence == null ? null : occurrence.getOccurrenceDate();
     }
     
     //Helper CSV writing methods
@@ -406,56 +478,4 @@ public class CSVExportTask extends LongRunningTask
         
         return text;
     }
-    
-    private final class GradeData
-    {
-        private final Map<Assignment, Map<Student, Group>> _groups = new HashMap<Assignment, Map<Student, Group>>();
-        private final Map<Part, Map<Group, GroupGradingSheet>> _partGrades =
-                new HashMap<Part, Map<Group, GroupGradingSheet>>();
-        private final Map<GradableEvent, Map<Group, DateTime>> _occurrenceDates =
-                new HashMap<GradableEvent, Map<Group, DateTime>>();
-        private final Map<GradableEvent, Map<Group, Extension>> _extensions =
-                new HashMap<GradableEvent, Map<Group, Extension>>();
-        
-        private GradeData(PrintWriter writer) throws ServicesException, IOException, Cancellation
-        {   
-            SetMultimap<Part, Group> partsToGroups = HashMultimap.create();
-            for(Assignment asgn : Allocator.getDataServices().getAssignments())
-            {
-                notifyTaskStepStarted("Retrieving data for " + asgn.getName());
-                Set<Group> groups = Allocator.getDataServices().getGroups(asgn);
-
-                //Students to groups
-                Map<Student, Group> studentToGroup = new HashMap<Student, Group>();
-                for(Group group : groups)
-                {
-                    for(Student student : group)
-                    {
-                        studentToGroup.put(student, group);
-                    }
-                }
-                _groups.put(asgn, studentToGroup);
-                
-                for(GradableEvent ge : asgn)
-                {
-                    //Occurrence dates
-                    _occurrenceDates.put(ge, Allocator.getGradingServices().getOccurrenceDates(ge, groups));
-
-                    //Extensions
-                    _extensions.put(ge, Allocator.getDataServices().getExtensions(ge, groups));
-
-                    //Part grades
-                    for(Part part : ge)
-                    {
-                        partsToGroups.putAll(part, groups);
-                    }
-                }
-                
-                //Done retrieving data for this assignment
-                notifyTaskStepCompleted();
-                checkAttemptCancel(writer);
-            }
-            _partGrades.putAll(Allocator.getDataServices().getGroupGradingSheets(partsToGroups));
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+package cakehat.services;
+
+import cakehat.database.HandinCatalogRecord;
+import cakehat.database.HandinCatalogRecord.EntryRecord;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+
+/**
+ * The catalog information for a digital handin as returned by {@link HandinCatalog}. This class is immutable.
+ */
+public class CatalogedHandin
+{
+    private final File _handin;
+    private final HandinCatalogRecord _record;
+    private final ImmutableList<ArchiveEntry> _contents;
+
+    CatalogedHandin(File handin, HandinCatalogRecord record)
+    {
+        _handin = handin;
+        _record = record;
+
+        ImmutableList.Builder<ArchiveEntry> contents = ImmutableList.builder();
+        for(EntryRecord entry : record.getEntries())
+        {
+            contents.add(new CatalogedArchiveEntry(entry));
+        }
+        _contents = contents.build();
+    }
+
+    public File getHandin()
+    {
+        return _handin;
+    }
+
+    /**
+     * The size of the handin in bytes at the time it was cataloged.
+     *
+     * @return
+     */
+    public long getSize()
+    {
+        return _record.getSize();
+    }
+
+    /**
+     * The modification time of the handin, in milliseconds since the epoch, at the time it was cataloged.
+     *
+     * @return
+     */
+    public long getLastModified()
+    {
+        return _record.getLastModified();
+    }
+
+    /**
+     * The lowercase hexadecimal SHA-256 hash of the handin. Identical handins have identical hashes.
+     *
+     * @return
+     */
+    public String getSha256()
+    {
+        return _record.getSha256();
+    }
+
+    /**
+     * The entries of the handin in the order they appear in the archive. This is equivalent to the contents returned
+     * by {@link support.utils.ArchiveUtilities#getArchiveContents(File)} but does not require decompressing the archive.
+     *
+     * @return
+     */
+    public List<ArchiveEntry> getContents()
+    {
+        return _contents;
+    }
+
+    HandinCatalogRecord getRecord()
+    {
+        return _record;
+    }
+
+    private static class CatalogedArchiveEntry implements ArchiveEntry
+    {
+        private final EntryRecord _entry;
+
+        CatalogedArchiveEntry(EntryRecord entry)
+        {
+            _entry = entry;
+        }
+
+        @Override
+        public String getName()
+        {
+            return _entry.getName();
+        }
+
+        @Override
+        public long getSize()
+        {
+            return _entry.getSize();
+        }
+
+        @Override
+        public boolean isDirectory()
+        {
+            return _entry.isDirectory();
+        }
+
+        @Override
+        public Date getLastModifiedDate()
+        {
+            return new Date(_entry.getLastModified());
+        }
+
+        @Override
+        public String toString()
+        {
+            return _entry.getName();
+        }
+    }
+}
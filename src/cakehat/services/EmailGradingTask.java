@@ -5,10 +5,15 @@ import cakehat.assignment.Assignment;
 import cakehat.assignment.Part;
 import cakehat.database.Group;
 import cakehat.database.Student;
+import cakehat.email.EmailOutbox;
 import com.google.common.collect.ImmutableSet;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.activation.DataSource;
@@ -20,6 +25,7 @@ import org.joda.time.format.DateTimeFormat;
 import support.utils.AlwaysAcceptingFileFilter;
 import support.utils.ArchiveUtilities.ArchiveFormat;
 import support.utils.LongRunningTask;
+import support.utils.TempFileDataSource;
 
 /**
  * A task that sends grading sheets and optionally digital handins on an internally managed thread.
@@ -201,15 +207,76 @@ public class EmailGradingTask extends LongRunningTask
     }
     
     private Set<Student> sendStudentsEmail(Set<Group> groups, Map<Student, String> gradingSheets)
-            throws InterruptedException
+            throws ServicesException, InterruptedException
     {
-        Set<Student> failStudents = new HashSet<Student>();
+        //Emails are sent from the outbox's worker threads, which report failures
+        final Set<Student> failStudents = Collections.synchronizedSet(new HashSet<Student>());
+        final Map<Integer, Student> queuedStudents = new HashMap<Integer, Student>();
         
-        for(Group group : groups)
+        //Queue up all of the emails so that if sending is canceled or fails part way through it is recorded which
+        //students were emailed
+        EmailOutbox outbox = Allocator.getEmailOutbox();
+        String batch = outbox.createBatch();
+        try
         {
-            checkAttemptCancel();
+            for(Group group : groups)
+            {
+                this.enqueueGroupEmails(batch, group, gradingSheets, queuedStudents, failStudents);
+            }
             
-            Set<DataSource> attachments = new HashSet<DataSource>();
+            outbox.dispatch(batch, new EmailOutbox.DispatchListener()
+            {
+                @Override
+                public void messageSending(int id, String recipients)
+                {
+                    notifyTaskStepStarted("Emailing " + recipients);
+                }
+
+                @Override
+                public void messageSent(int id)
+                {
+                    notifyTaskStepCompleted();
+                }
+
+                @Override
+                public void messageFailed(int id, MessagingException cause)
+                {
+                    Student student = queuedStudents.get(id);
+                    failStudents.add(student);
+                    
+                    notifyTaskStepFailed(cause, "Unable to send email to " + student.getEmailAddress());
+                }
+
+                @Override
+                public boolean isCancelRequested()
+                {
+                    return isCancelAttempted();
+                }
+            });
+        }
+        finally
+        {
+            //Emails not yet sent when the task was canceled should never be sent
+            if(isCancelAttempted())
+            {
+                outbox.cancel(batch);
+            }
+        }
+        
+        checkAttemptCancel();
+        
+        return failStudents;
+    }
+    
+    private void enqueueGroupEmails(String batch, Group group, Map<Student, String> gradingSheets,
+            Map<Integer, Student> queuedStudents, Set<Student> failStudents) throws InterruptedException
+    {
+        checkAttemptCancel();
+    
+        Set<TempFileDataSource> attachments = new HashSet<TempFileDataSource>();
+        List<DataSource> spooledAttachments = new ArrayList<DataSource>();
+        try
+        {
             if(_attachHandins)
             {
                 for(Part part : _parts)
@@ -220,7 +287,7 @@ public class EmailGradingTask extends LongRunningTask
                             part.getFullDisplayName());
                     try
                     {
-                        DataSource handin = getDigitalHandin(part, group);
+                        TempFileDataSource handin = getDigitalHandin(part, group);
                         if(handin != null)
                         {
                             attachments.add(handin);
@@ -245,41 +312,69 @@ public class EmailGradingTask extends LongRunningTask
                 }
             }
 
+            //Each student in the group is sent the same attachments, so store them in the outbox once for all of them
+            for(TempFileDataSource attachment : attachments)
+            {
+                try
+                {
+                    spooledAttachments.add(Allocator.getEmailOutbox().spoolAttachment(attachment));
+                }
+                catch(ServicesException e)
+                {
+                    for(Student student : group)
+                    {
+                        if(_students.contains(student))
+                        {
+                            failStudents.add(student);
+                        }
+                    }
+
+                    notifyTaskStepFailed(e, "Unable to add digital handin to the outbox\n" +
+                        "Group: " + group);
+                }
+            }
+
             for(Student student : group)
             {
                 checkAttemptCancel();
-            
+    
                 if(_students.contains(student) && !failStudents.contains(student))
                 {
-                    notifyTaskStepStarted("Emailing " + student.getLogin() + " - " + student.getName() + " (" +
-                            student.getEmailAddress().getAddress() + ")");
-                    
                     StringBuilder messageBuilder = new StringBuilder(_body);
                     messageBuilder.append("<br><br>").append(gradingSheets.get(student));
                     try
                     {
-                        Allocator.getEmailManager().send(Allocator.getUserServices().getUser().getEmailAddress(),
+                        int id = Allocator.getEmailOutbox().enqueue(batch,
+                            Allocator.getUserServices().getUser().getEmailAddress(),
                             ImmutableSet.of(student.getEmailAddress()),
                             null,
                             null,
                             _subject,
                             messageBuilder.toString(),
-                            attachments);
-                        
-                        notifyTaskStepCompleted();
+                            spooledAttachments);
+                        queuedStudents.put(id, student);
                     }
                     catch(MessagingException e)
                     {
                         failStudents.add(student);
-                        
-                        notifyTaskStepFailed(e, "Unable to send email to " + student.getEmailAddress());
+                
+                        notifyTaskStepFailed(e, "Unable to create email to " + student.getEmailAddress());
+                    }
+                    catch(ServicesException e)
+                    {
+                        failStudents.add(student);
+                
+                        notifyTaskStepFailed(e, "Unable to add email to " + student.getEmailAddress() +
+                                " to the outbox");
                     }
-                    
                 }
             }
         }
-        
-        return failStudents;
+        finally
+        {
+            releaseAttachments(spooledAttachments);
+            deleteAttachments(attachments);
+        }
     }
     
     
@@ -288,71 +383,78 @@ public class EmailGradingTask extends LongRunningTask
     {
         boolean success = true;
         
-        Set<DataSource> attachments = new HashSet<DataSource>();
-        if(_attachHandins)
+        Set<TempFileDataSource> attachments = new HashSet<TempFileDataSource>();
+        try
         {
-            for(Group group : groups)
+            if(_attachHandins)
             {
-                checkAttemptCancel();
-
-                for(Part part : _parts)
+                for(Group group : groups)
                 {
                     checkAttemptCancel();
 
-                    notifyTaskStepStarted("Zipping up" + group.getName() + "'s digital handin for " +
-                            part.getFullDisplayName());
-
-                    try
+                    for(Part part : _parts)
                     {
-                        DataSource handin = getDigitalHandin(part, group);
-                        if(handin != null)
+                        checkAttemptCancel();
+
+                        notifyTaskStepStarted("Zipping up" + group.getName() + "'s digital handin for " +
+                                part.getFullDisplayName());
+
+                        try
                         {
-                            attachments.add(handin);
-                        }
+                            TempFileDataSource handin = getDigitalHandin(part, group);
+                            if(handin != null)
+                            {
+                                attachments.add(handin);
+                            }
                         
-                        notifyTaskStepCompleted();
-                    }
-                    catch(IOException e)
-                    {
-                        success = false;
+                            notifyTaskStepCompleted();
+                        }
+                        catch(IOException e)
+                        {
+                            success = false;
                         
-                        notifyTaskStepFailed(e, "Unable to zip up digital handin\n" +
-                            "Part: " + part.getFullDisplayName() + "\n" +
-                            "Group: " + group);
+                            notifyTaskStepFailed(e, "Unable to zip up digital handin\n" +
+                                "Part: " + part.getFullDisplayName() + "\n" +
+                                "Group: " + group);
+                        }
                     }
                 }
             }
-        }
 
-        if(success)
-        {
-            notifyTaskStepStarted("Emailing " + _alternateAddress.getAddress());
-            
-            StringBuilder messageBuilder = new StringBuilder(_body);
-            for(Student student : _students)
+            if(success)
             {
-                messageBuilder.append(gradingSheets.get(student));
-                messageBuilder.append("<br><hr><br>");
-            }
+                notifyTaskStepStarted("Emailing " + _alternateAddress.getAddress());
             
-            try
-            {
-                Allocator.getEmailManager().send(Allocator.getUserServices().getUser().getEmailAddress(),
-                    ImmutableSet.of(_alternateAddress),
-                    null,
-                    null,
-                    _subject,
-                    messageBuilder.toString(),
-                    attachments);
+                StringBuilder messageBuilder = new StringBuilder(_body);
+                for(Student student : _students)
+                {
+                    messageBuilder.append(gradingSheets.get(student));
+                    messageBuilder.append("<br><hr><br>");
+                }
             
-                notifyTaskStepCompleted();
-            }
-            catch(MessagingException e)
-            {
-                success = false;
-                notifyTaskFailed(e, "Unable to send email to " + _alternateAddress.getAddress());
+                try
+                {
+                    Allocator.getEmailManager().send(Allocator.getUserServices().getUser().getEmailAddress(),
+                        ImmutableSet.of(_alternateAddress),
+                        null,
+                        null,
+                        _subject,
+                        messageBuilder.toString(),
+                        attachments);
+            
+                    notifyTaskStepCompleted();
+                }
+                catch(MessagingException e)
+                {
+                    success = false;
+                    notifyTaskFailed(e, "Unable to send email to " + _alternateAddress.getAddress());
+                }
             }
         }
+        finally
+        {
+            deleteAttachments(attachments);
+        }
         
         return success;
     }
@@ -424,29 +526,66 @@ public class EmailGradingTask extends LongRunningTask
     }
     
     
-    private DataSource getDigitalHandin(Part part, Group group) throws IOException, InterruptedException
+    private TempFileDataSource getDigitalHandin(Part part, Group group) throws IOException, InterruptedException
     {   
-        DataSource digitalHandin = null;
+        TempFileDataSource digitalHandin = null;
             
         //No digital handin may exist - it is valid for a group to not have a handin for gradable event that does have
         //digital handins (for example - student did not turn in the assignment)
         if(part.getGradableEvent().hasDigitalHandin(group))
         {
-            //It is possible the group's digital handin has not yet been unarchived (if no action has been taken on it)
-            part.unarchive(null, group, true);
+            //Keep the unarchive directory from being deleted to free up disk space while it is zipped
+            File unarchiveDir = Allocator.getPathServices().getUnarchiveHandinDir(part, group);
+            Set<File> dirs = ImmutableSet.of(unarchiveDir);
+            Allocator.getTempSpaceManager().beginUse(dirs);
+            try
+            {
+                //It is possible the group's digital handin has not yet been unarchived (if no action has been taken
+                //on it)
+                part.unarchive(null, group, true);
 
-            checkAttemptCancel();
+                checkAttemptCancel();
 
-            //Create zip attachment of the unarchive directory 
-            String archiveName = part.getFullDisplayName() + " [" + group.getName() + "]";
-            File unarchiveDir = Allocator.getPathServices().getUnarchiveHandinDir(part, group);
-            digitalHandin = Allocator.getArchiveUtilities().createArchiveDataSource(archiveName, ArchiveFormat.ZIP,
-                    unarchiveDir, new AlwaysAcceptingFileFilter());
+                //Create zip attachment of the unarchive directory
+                String archiveName = part.getFullDisplayName() + " [" + group.getName() + "]";
+                digitalHandin = Allocator.getArchiveUtilities().createArchiveDataSource(archiveName,
+                        ArchiveFormat.ZIP, unarchiveDir, new AlwaysAcceptingFileFilter());
+            }
+            finally
+            {
+                Allocator.getTempSpaceManager().endUse(dirs);
+            }
         }
 
         return digitalHandin;
     }
     
+    /**
+     * Deletes the temporary files backing the zipped up digital handins once they have been sent.
+     * 
+     * @param attachments 
+     */
+    private void deleteAttachments(Set<TempFileDataSource> attachments)
+    {
+        for(TempFileDataSource attachment : attachments)
+        {
+            attachment.delete();
+        }
+    }
+    
+    private void releaseAttachments(List<DataSource> spooledAttachments)
+    {
+        for(DataSource attachment : spooledAttachments)
+        {
+            try
+            {
+                Allocator.getEmailOutbox().releaseAttachment(attachment);
+            }
+            //Failing to delete an attachment from the outbox only leaves it taking up disk space
+            catch(ServicesException e) { }
+        }
+    }
+    
     private void showResults(Set<Student> successStudents, Set<Student> failStudents, boolean alternateAddressSucceeded,
             boolean notifyEmailSent)
     {
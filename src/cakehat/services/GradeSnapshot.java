@@ -0,0 +1,207 @@
+package cakehat.services;
+
+import cakehat.assignment.Assignment;
+import cakehat.assignment.DeadlineInfo.DeadlineResolution;
+import cakehat.assignment.DeadlineInfo.DeadlineResolutions;
+import cakehat.assignment.GradableEvent;
+import cakehat.assignment.Part;
+import cakehat.database.Extension;
+import cakehat.database.Group;
+import cakehat.database.GroupGradingSheet;
+import cakehat.database.Student;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Map;
+import java.util.Set;
+import org.joda.time.DateTime;
+
+/**
+ * The groups, group grading sheets, occurrence dates and extensions of every assignment in the course as they were
+ * when the database was at a single change sequence. Snapshots are immutable and so may be shared between threads; the
+ * group grading sheets of a snapshot are shared by everything using the snapshot and so must not be modified.
+ * <br/><br/>
+ * Snapshots are obtained from {@link GradeSnapshotService#getSnapshot()}.
+ */
+public final class GradeSnapshot
+{
+    private final String _changeEpoch;
+    private final long _changeSequence;
+    private final ImmutableMap<Assignment, ImmutableSet<Group>> _groups;
+    private final ImmutableMap<Assignment, ImmutableMap<Student, Group>> _studentGroups;
+    private final ImmutableMap<Part, ImmutableMap<Group, GroupGradingSheet>> _gradingSheets;
+    private final ImmutableMap<GradableEvent, ImmutableMap<Group, DateTime>> _occurrenceDates;
+    private final ImmutableMap<GradableEvent, ImmutableMap<Group, Extension>> _extensions;
+    private final ImmutableMap<GradableEvent, ImmutableMap<Group, DeadlineResolution>> _deadlineResolutions;
+
+    GradeSnapshot(String changeEpoch,
+                  long changeSequence,
+                  Map<Assignment, Set<Group>> groups,
+                  Map<Part, Map<Group, GroupGradingSheet>> gradingSheets,
+                  Map<GradableEvent, Map<Group, DateTime>> occurrenceDates,
+                  Map<GradableEvent, Map<Group, Extension>> extensions)
+    {
+        _changeEpoch = changeEpoch;
+        _changeSequence = changeSequence;
+
+        ImmutableMap.Builder<Assignment, ImmutableSet<Group>> groupsBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<Assignment, ImmutableMap<Student, Group>> studentGroupsBuilder = ImmutableMap.builder();
+        for(Map.Entry<Assignment, Set<Group>> entry : groups.entrySet())
+        {
+            groupsBuilder.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+
+            ImmutableMap.Builder<Student, Group> studentToGroup = ImmutableMap.builder();
+            for(Group group : entry.getValue())
+            {
+                for(Student student : group)
+                {
+                    studentToGroup.put(student, group);
+                }
+            }
+            studentGroupsBuilder.put(entry.getKey(), studentToGroup.build());
+        }
+        _groups = groupsBuilder.build();
+        _studentGroups = studentGroupsBuilder.build();
+
+        _gradingSheets = copyOf(gradingSheets);
+        _occurrenceDates = copyOf(occurrenceDates);
+        _extensions = copyOf(extensions);
+
+        //Resolve the deadlines of all groups of each gradable event at once
+        ImmutableMap.Builder<GradableEvent, ImmutableMap<Group, DeadlineResolution>> resolutionsBuilder =
+                ImmutableMap.builder();
+        for(GradableEvent ge : _occurrenceDates.keySet())
+        {
+            Group[] geGroups = _groups.get(ge.getAssignment()).toArray(new Group[0]);
+            DateTime[] geOccurrenceDates = new DateTime[geGroups.length];
+            Extension[] geExtensions = new Extension[geGroups.length];
+            for(int i = 0; i < geGroups.length; i++)
+            {
+                geOccurrenceDates[i] = this.getOccurrenceDate(ge, geGroups[i]);
+                geExtensions[i] = this.getExtension(ge, geGroups[i]);
+            }
+            DeadlineResolutions resolutions = ge.getDeadlineInfo().apply(geOccurrenceDates, geExtensions);
+
+            ImmutableMap.Builder<Group, DeadlineResolution> groupResolutions = ImmutableMap.builder();
+            for(int i = 0; i < geGroups.length; i++)
+            {
+                groupResolutions.put(geGroups[i], resolutions.get(i));
+            }
+            resolutionsBuilder.put(ge, groupResolutions.build());
+        }
+        _deadlineResolutions = resolutionsBuilder.build();
+    }
+
+    private static <K, G, V> ImmutableMap<K, ImmutableMap<G, V>> copyOf(Map<K, Map<G, V>> map)
+    {
+        ImmutableMap.Builder<K, ImmutableMap<G, V>> builder = ImmutableMap.builder();
+        for(Map.Entry<K, Map<G, V>> entry : map.entrySet())
+        {
+            builder.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * The epoch of the database this snapshot was read at.
+     *
+     * @return
+     * @see cakehat.database.Database#getChangeEpoch()
+     */
+    public String getChangeEpoch()
+    {
+        return _changeEpoch;
+    }
+
+    /**
+     * The change sequence of the database this snapshot was read at.
+     *
+     * @return
+     * @see cakehat.database.Database#getLatestChangeSequence()
+     */
+    public long getChangeSequence()
+    {
+        return _changeSequence;
+    }
+
+    /**
+     * Returns an immutable set of all of the groups for {@code asgn}.
+     *
+     * @param asgn
+     * @return
+     */
+    public Set<Group> getGroups(Assignment asgn)
+    {
+        return _groups.get(asgn);
+    }
+
+    /**
+     * Returns the group {@code student} is in for {@code asgn}, or {@code null} if the student is not in a group.
+     *
+     * @param asgn
+     * @param student may be {@code null}, in which case {@code null} is returned
+     * @return
+     */
+    public Group getGroup(Assignment asgn, Student student)
+    {
+        return student == null ? null : _studentGroups.get(asgn).get(student);
+    }
+
+    /**
+     * Returns the group grading sheet of {@code group} for {@code part}. The grading sheet must not be modified.
+     *
+     * @param part
+     * @param group one of the groups of this snapshot for the assignment {@code part} belongs to, or {@code null} in
+     * which case {@code null} is returned
+     * @return
+     */
+    public GroupGradingSheet getGroupGradingSheet(Part part, Group group)
+    {
+        return group == null ? null : _gradingSheets.get(part).get(group);
+    }
+
+    /**
+     * Returns the date {@code group} handed in or otherwise completed {@code ge}, or {@code null} if it has not.
+     *
+     * @param ge
+     * @param group may be {@code null}, in which case {@code null} is returned
+     * @return
+     * @see GradingServices#getOccurrenceDates(GradableEvent, Set)
+     */
+    public DateTime getOccurrenceDate(GradableEvent ge, Group group)
+    {
+        return group == null ? null : _occurrenceDates.get(ge).get(group);
+    }
+
+    /**
+     * Returns the extension {@code group} has for {@code ge}, or {@code null} if it has none.
+     *
+     * @param ge
+     * @param group may be {@code null}, in which case {@code null} is returned
+     * @return
+     */
+    public Extension getExtension(GradableEvent ge, Group group)
+    {
+        return group == null ? null : _extensions.get(ge).get(group);
+    }
+
+    /**
+     * Returns the resolution of the deadline of {@code ge} for {@code group} from its occurrence date and extension.
+     * The deadlines of all of the groups of the snapshot are resolved when the snapshot is created.
+     *
+     * @param ge
+     * @param group may be {@code null}, in which case the deadline is resolved as though the group has not completed
+     * {@code ge} and has no extension
+     * @return
+     */
+    public DeadlineResolution getDeadlineResolution(GradableEvent ge, Group group)
+    {
+        DeadlineResolution resolution = group == null ? null : _deadlineResolutions.get(ge).get(group);
+        if(resolution == null)
+        {
+            resolution = ge.getDeadlineInfo().apply(this.getOccurrenceDate(ge, group), this.getExtension(ge, group));
+        }
+
+        return resolution;
+    }
+}
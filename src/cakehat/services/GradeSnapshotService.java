@@ -0,0 +1,20 @@
+package cakehat.services;
+
+/**
+ * Provides {@link GradeSnapshot}s of the course's grades for reports and exports. Building a snapshot reads the grades
+ * of every group for every assignment, so the most recent snapshot is kept and shared until the database or the
+ * digital handins change.
+ */
+public interface GradeSnapshotService
+{
+    /**
+     * Returns a snapshot of the course's grades which is current as of this call. If nothing has changed since the
+     * last snapshot was built the same snapshot is returned again without reading the database beyond checking its
+     * change sequence. Otherwise a new snapshot is built with all of its data read from the database in a single
+     * transaction.
+     *
+     * @return
+     * @throws ServicesException
+     */
+    public GradeSnapshot getSnapshot() throws ServicesException;
+}
@@ -0,0 +1,176 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import cakehat.assignment.Assignment;
+import cakehat.assignment.GradableEvent;
+import cakehat.assignment.Part;
+import cakehat.database.DataServices;
+import cakehat.database.Database.TransactionReader;
+import cakehat.database.Extension;
+import cakehat.database.GradableEventOccurrence;
+import cakehat.database.Group;
+import cakehat.database.GroupGradingSheet;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import org.joda.time.DateTime;
+
+/**
+ * Caches the most recently built snapshot and builds a new one only once grades in the database or digital handins
+ * have changed since it was built.
+ */
+public class GradeSnapshotServiceImpl implements GradeSnapshotService
+{
+    /**
+     * The most recently built snapshot, {@code null} until one is first requested. Guarded by {@code this}.
+     */
+    private GradeSnapshot _snapshot = null;
+
+    /**
+     * The version of the cached digital handins of each gradable event with digital handins when {@link #_snapshot} was
+     * built. Guarded by {@code this}.
+     */
+    private Map<GradableEvent, Long> _handinCacheVersions = null;
+
+    @Override
+    public synchronized GradeSnapshot getSnapshot() throws ServicesException
+    {
+        String changeEpoch;
+        long changeSequence;
+        try
+        {
+            changeEpoch = Allocator.getDatabase().getChangeEpoch();
+            changeSequence = Allocator.getDatabase().getLatestChangeSequence();
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to read the change sequence of the database", e);
+        }
+
+        if(_snapshot == null || !_snapshot.getChangeEpoch().equals(changeEpoch) ||
+           _snapshot.getChangeSequence() != changeSequence || this.haveDigitalHandinsChanged())
+        {
+            //Read the versions first so that handins which change while the snapshot is built cause another build
+            Map<GradableEvent, Long> handinCacheVersions = new HashMap<GradableEvent, Long>();
+            for(Assignment asgn : Allocator.getDataServices().getAssignments())
+            {
+                for(GradableEvent ge : asgn)
+                {
+                    if(ge.hasDigitalHandins())
+                    {
+                        handinCacheVersions.put(ge, ge.getDigitalHandinCacheVersion());
+                    }
+                }
+            }
+
+            _snapshot = this.buildSnapshot();
+            _handinCacheVersions = handinCacheVersions;
+        }
+
+        return _snapshot;
+    }
+
+    private boolean haveDigitalHandinsChanged() throws ServicesException
+    {
+        for(Map.Entry<GradableEvent, Long> entry : _handinCacheVersions.entrySet())
+        {
+            GradableEvent ge = entry.getKey();
+            try
+            {
+                ge.refreshDigitalHandinCache();
+            }
+            catch(IOException e)
+            {
+                throw new ServicesException("Unable to check for new digital handins for " +
+                        ge.getFullDisplayName(), e);
+            }
+
+            if(ge.getDigitalHandinCacheVersion() != entry.getValue())
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private GradeSnapshot buildSnapshot() throws ServicesException
+    {
+        final DataServices dataServices = Allocator.getDataServices();
+
+        //Groups of one are created for students without one the first time the groups of an assignment without groups
+        //are retrieved; create them now so that the read transaction does not write
+        for(Assignment asgn : dataServices.getAssignments())
+        {
+            if(!asgn.hasGroups())
+            {
+                dataServices.getGroups(asgn);
+            }
+        }
+
+        final Map<Assignment, Set<Group>> groups = new HashMap<Assignment, Set<Group>>();
+        final Map<GradableEvent, Map<Group, GradableEventOccurrence>> occurrences =
+                new HashMap<GradableEvent, Map<Group, GradableEventOccurrence>>();
+        final Map<GradableEvent, Map<Group, Extension>> extensions =
+                new HashMap<GradableEvent, Map<Group, Extension>>();
+        final Map<Part, Map<Group, GroupGradingSheet>> gradingSheets =
+                new HashMap<Part, Map<Group, GroupGradingSheet>>();
+
+        final AtomicReference<String> changeEpoch = new AtomicReference<String>();
+        long changeSequence;
+        try
+        {
+            changeSequence = Allocator.getDatabase().readInTransaction(new TransactionReader<Long>()
+            {
+                @Override
+                public Long read() throws SQLException, ServicesException
+                {
+                    changeEpoch.set(Allocator.getDatabase().getChangeEpoch());
+                    long sequence = Allocator.getDatabase().getLatestChangeSequence();
+                    dataServices.updateDataCache();
+
+                    SetMultimap<Part, Group> partsToGroups = HashMultimap.create();
+                    for(Assignment asgn : dataServices.getAssignments())
+                    {
+                        Set<Group> asgnGroups = dataServices.getGroups(asgn);
+                        groups.put(asgn, asgnGroups);
+
+                        for(GradableEvent ge : asgn)
+                        {
+                            occurrences.put(ge, dataServices.getGradableEventOccurrences(ge, asgnGroups));
+                            extensions.put(ge, dataServices.getExtensions(ge, asgnGroups));
+
+                            for(Part part : ge)
+                            {
+                                partsToGroups.putAll(part, asgnGroups);
+                            }
+                        }
+                    }
+                    gradingSheets.putAll(dataServices.getGroupGradingSheets(partsToGroups));
+
+                    return sequence;
+                }
+            });
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to read grades from the database", e);
+        }
+
+        //Digital handins are not in the database, so occurrence dates are resolved once the transaction has ended
+        Map<GradableEvent, Map<Group, DateTime>> occurrenceDates = new HashMap<GradableEvent, Map<Group, DateTime>>();
+        for(Map.Entry<GradableEvent, Map<Group, GradableEventOccurrence>> entry : occurrences.entrySet())
+        {
+            GradableEvent ge = entry.getKey();
+            occurrenceDates.put(ge, Allocator.getGradingServices().getOccurrenceDates(ge,
+                    groups.get(ge.getAssignment()), entry.getValue()));
+        }
+
+        return new GradeSnapshot(changeEpoch.get(), changeSequence, groups, gradingSheets, occurrenceDates, extensions);
+    }
+}
@@ -0,0 +1,25 @@
+package cakehat.services;
+
+import cakehat.assignment.Part;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provides {@link PartStatistics} of the scores of parts. The score of every group for each part requested is kept as
+ * a column of primitive values which is brought up to date by reading only the grading sheets that have changed since
+ * it was last read. The statistics of a part are kept until the part's scores change.
+ */
+public interface GradeStatisticsService
+{
+    /**
+     * Returns the statistics of each of {@code parts} which are current as of this call. The first request for a part
+     * reads the totals of all of its grading sheets. After that only the grading sheets of the requested parts that
+     * have changed are read, and statistics are only recomputed for parts with changes. If nothing has changed the
+     * previously computed statistics are returned without reading the database beyond checking for changes.
+     *
+     * @param parts
+     * @return
+     * @throws ServicesException
+     */
+    public Map<Part, PartStatistics> getStatistics(Set<Part> parts) throws ServicesException;
+}
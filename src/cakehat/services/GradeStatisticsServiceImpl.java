@@ -0,0 +1,189 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import cakehat.assignment.Part;
+import cakehat.database.GradeMatrix;
+import cakehat.database.Group;
+import cakehat.database.GroupGradingSheetTotal;
+import cakehat.database.GroupGradingSheetTotalChanges;
+import cakehat.database.Student;
+import cakehat.database.TA;
+import com.google.common.collect.ImmutableList;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the scores of each part statistics have been requested for and brings them up to date from the grading sheets
+ * that have changed instead of reading every grading sheet again.
+ */
+public class GradeStatisticsServiceImpl implements GradeStatisticsService
+{
+    /**
+     * The score column of each part statistics have been requested for. Guarded by {@code this}.
+     */
+    private final Map<Part, ScoreColumn> _columns = new HashMap<Part, ScoreColumn>();
+
+    /**
+     * The change sequence number all of {@link #_columns} are up to date with. Guarded by {@code this}.
+     */
+    private long _sequence;
+
+    /**
+     * The epoch of the database at which {@link #_sequence} was read. Guarded by {@code this}.
+     */
+    private String _epoch;
+
+    @Override
+    public synchronized Map<Part, PartStatistics> getStatistics(Set<Part> parts) throws ServicesException
+    {
+        this.applyChanges();
+
+        Set<Part> toLoad = new HashSet<Part>(parts);
+        toLoad.removeAll(_columns.keySet());
+        if(!toLoad.isEmpty())
+        {
+            this.load(toLoad);
+        }
+
+        Map<Part, PartStatistics> statistics = new HashMap<Part, PartStatistics>();
+        for(Part part : parts)
+        {
+            statistics.put(part, _columns.get(part).getStatistics());
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Brings the columns up to date by applying the grading sheets which have changed since {@link #_sequence}. If the
+     * changes cannot be applied one grading sheet at a time every column is read again.
+     */
+    private void applyChanges() throws ServicesException
+    {
+        if(_columns.isEmpty())
+        {
+            return;
+        }
+
+        GroupGradingSheetTotalChanges changes = Allocator.getDataServices()
+                .getGroupGradingSheetTotalsChangedSince(_columns.keySet(), _epoch, _sequence);
+        if(changes.requiresReload())
+        {
+            Set<Part> parts = new HashSet<Part>(_columns.keySet());
+            _columns.clear();
+            this.load(parts);
+        }
+        else
+        {
+            for(Map.Entry<Part, Map<Group, GroupGradingSheetTotal>> entry : changes.getTotals().entrySet())
+            {
+                ScoreColumn column = _columns.get(entry.getKey());
+                for(GroupGradingSheetTotal total : entry.getValue().values())
+                {
+                    column.update(total, changes.getSequence());
+                }
+            }
+            _epoch = changes.getEpoch();
+            _sequence = changes.getSequence();
+        }
+    }
+
+    /**
+     * Reads the columns of {@code parts}.
+     */
+    private void load(Set<Part> parts) throws ServicesException
+    {
+        //The sequence is read before the totals so that any change made while they are read is applied again by the
+        //next call to applyChanges(); applying a change again is harmless as each replaces the total of a grading sheet
+        String epoch;
+        long sequence;
+        try
+        {
+            epoch = Allocator.getDatabase().getChangeEpoch();
+            sequence = Allocator.getDatabase().getLatestChangeSequence();
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to read the change sequence of the database", e);
+        }
+
+        GradeMatrix matrix = Allocator.getDataServices().getGradeMatrix(ImmutableList.<Student>of(),
+                new ArrayList<Part>(parts));
+        for(Part part : parts)
+        {
+            _columns.put(part, new ScoreColumn(part, matrix, sequence));
+        }
+
+        //Columns already loaded are up to date with an earlier sequence, so changes since then must still be applied
+        if(_columns.size() == parts.size())
+        {
+            _epoch = epoch;
+            _sequence = sequence;
+        }
+    }
+
+    /**
+     * The score of every group for a part along with the TA each group is assigned to, indexed by the group's index in
+     * the {@link GradeMatrix} the column was read from.
+     */
+    private static class ScoreColumn
+    {
+        private final Part _part;
+        private final Map<Group, Integer> _groupIndices = new HashMap<Group, Integer>();
+        private final double[] _scores;
+        private final TA[] _assignedTo;
+
+        /**
+         * The sequence number of the most recent change to the column.
+         */
+        private long _version;
+
+        /**
+         * Statistics of the column, {@code null} if the column has changed since they were last computed.
+         */
+        private PartStatistics _statistics;
+
+        ScoreColumn(Part part, GradeMatrix matrix, long version)
+        {
+            _part = part;
+            _version = version;
+
+            List<Group> groups = matrix.getGroups(part.getAssignment());
+            _scores = new double[groups.size()];
+            _assignedTo = new TA[groups.size()];
+            for(int groupIndex = 0; groupIndex < groups.size(); groupIndex++)
+            {
+                _groupIndices.put(groups.get(groupIndex), groupIndex);
+                _scores[groupIndex] = matrix.isSubmitted(part, groupIndex) ?
+                        matrix.getEarned(part, groupIndex) : Double.NaN;
+                _assignedTo[groupIndex] = matrix.getAssignedTo(part, groupIndex);
+            }
+        }
+
+        void update(GroupGradingSheetTotal total, long version)
+        {
+            //Groups cannot change without the column being read again, so the group will always be found
+            int groupIndex = _groupIndices.get(total.getGroup());
+            _scores[groupIndex] = total.isSubmitted() && total.getEarned() != null ? total.getEarned() : Double.NaN;
+            _assignedTo[groupIndex] = total.getAssignedTo();
+
+            _version = version;
+            _statistics = null;
+        }
+
+        PartStatistics getStatistics()
+        {
+            if(_statistics == null)
+            {
+                _statistics = new PartStatistics(_part, _version, _scores, _assignedTo);
+            }
+
+            return _statistics;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package cakehat.services;
 import cakehat.assignment.Assignment;
 import cakehat.assignment.GradableEvent;
 import cakehat.database.TA;
+import cakehat.database.GradableEventOccurrence;
 import cakehat.database.Group;
 import cakehat.database.Student;
 import cakehat.printing.CITPrinter;
@@ -31,6 +32,19 @@ public interface GradingServices
      * @throws ServicesException 
      */
     public Map<Group, DateTime> getOccurrenceDates(GradableEvent ge, Set<Group> groups) throws ServicesException;
+    
+    /**
+     * Gets a mapping of group to the occurrence date as {@link #getOccurrenceDates(GradableEvent, Set)} does, but from
+     * {@code occurrences} which have already been retrieved from the database for {@code groups}.
+     * 
+     * @param ge
+     * @param groups
+     * @param occurrences
+     * @return
+     * @throws ServicesException 
+     */
+    public Map<Group, DateTime> getOccurrenceDates(GradableEvent ge, Set<Group> groups,
+            Map<Group, GradableEventOccurrence> occurrences) throws ServicesException;
 
     /**
      * Returns an immutable list of the printers in the CIT that the user is allowed to print to.
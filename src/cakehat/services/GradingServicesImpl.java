@@ -50,32 +50,37 @@ public class GradingServicesImpl implements GradingServices
 {
     @Override
     public Map<Group, DateTime> getOccurrenceDates(GradableEvent ge, Set<Group> groups) throws ServicesException
+    {
+        return this.getOccurrenceDates(ge, groups, Allocator.getDataServices().getGradableEventOccurrences(ge, groups));
+    }
+    
+    @Override
+    public Map<Group, DateTime> getOccurrenceDates(GradableEvent ge, Set<Group> groups,
+            Map<Group, GradableEventOccurrence> occurrences) throws ServicesException
     {
         ImmutableMap.Builder<Group, DateTime> occurrenceDates = ImmutableMap.builder();
         
-        Map<Group, GradableEventOccurrence> occurrences = Allocator.getDataServices()
-                .getGradableEventOccurrences(ge, groups);
-        
         //Groups which have an occurence recorded in the database but now have a digital handin will have their
         //occurence date deleted from the database
         Set<Group> occurencesToDelete = new HashSet<Group>();
         
-        for(Group group : groups)
+        Map<Group, File> digitalHandins = ImmutableMap.of();
+        if(ge.hasDigitalHandins())
         {
-            GradableEventOccurrence occurrence = occurrences.get(group);
-            
-            File digitalHandin = null;
-            if(ge.hasDigitalHandins())
+            try
             {
-                try
-                {
-                    digitalHandin = ge.getDigitalHandin(group);
-                }
-                catch(IOException e)
-                {
-                    throw new ServicesException("Unable to retrieve digital handin", e);
-                }
+                digitalHandins = ge.getDigitalHandins(groups);
             }
+            catch(IOException e)
+            {
+                throw new ServicesException("Unable to retrieve digital handins", e);
+            }
+        }
+        
+        for(Group group : groups)
+        {
+            GradableEventOccurrence occurrence = occurrences.get(group);
+            File digitalHandin = digitalHandins.get(group);
             
             if(occurrence != null)
             {
@@ -2,12 +2,10 @@ package cakehat.services;
 
 import cakehat.Allocator;
 import cakehat.assignment.Assignment;
-import cakehat.assignment.DeadlineInfo;
 import cakehat.assignment.DeadlineInfo.DeadlineResolution;
 import cakehat.assignment.DeadlineInfo.Type;
 import cakehat.assignment.GradableEvent;
 import cakehat.assignment.Part;
-import cakehat.database.Extension;
 import cakehat.database.Group;
 import cakehat.database.GroupGradingSheet;
 import cakehat.database.GroupGradingSheet.GroupSectionComments;
@@ -16,15 +14,19 @@ import cakehat.database.Student;
 import cakehat.gradingsheet.GradingSheetDetail;
 import cakehat.gradingsheet.GradingSheetSection;
 import cakehat.gradingsheet.GradingSheetSubsection;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.SetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import org.joda.time.DateTime;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -32,47 +34,126 @@ import org.joda.time.DateTime;
  */
 public class GrdGeneratorImpl implements GrdGenerator {
     
+    /**
+     * The number of threads grading sheets are generated on by default. Once the data needed has been retrieved,
+     * generating a grading sheet does no I/O, so there is no benefit to more threads than processors.
+     */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    
+    /**
+     * An estimate of the number of characters in each table row of a grading sheet, used to size the builder for each
+     * grading sheet so that it rarely needs to grow.
+     */
+    private static final int ESTIMATED_ROW_LENGTH = 400;
+    
+    private final int _parallelism;
+    
+    public GrdGeneratorImpl() {
+        this(DEFAULT_PARALLELISM);
+    }
+    
+    /**
+     * @param parallelism the number of threads to generate grading sheets on, if {@code 1} they are generated on the
+     * calling thread
+     */
+    GrdGeneratorImpl(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, was " + parallelism);
+        }
+        _parallelism = parallelism;
+    }
+    
     @Override
-     public Map<Student, String> generateGRD(Assignment asgn, Set<Student> students) throws ServicesException {
+    public Map<Student, String> generateGRD(Assignment asgn, Set<Student> students) throws ServicesException {
+        //Everything needed is in the snapshot, so generating each student's grading sheet does no I/O and can be done
+        //in parallel
+        GradeSnapshot snapshot = Allocator.getGradeSnapshotService().getSnapshot();
+        
         Map<Student, Group> groupsForStudents = new HashMap<Student, Group>();
         for (Student student : students) {
-            groupsForStudents.put(student, Allocator.getDataServices().getGroup(asgn, student));
+            groupsForStudents.put(student, snapshot.getGroup(asgn, student));
         }
-
-        SetMultimap<Part, Group> toRetrieve = HashMultimap.create();
-        for (GradableEvent ge : asgn) {
-            for (Part part : ge) {
-                toRetrieve.putAll(part, groupsForStudents.values());
+        int capacity = estimateLength(asgn);
+        
+        if (_parallelism == 1 || students.size() < 2) {
+            Map<Student, String> toReturn = new HashMap<Student, String>();
+            for (Student student : students) {
+                toReturn.put(student, generateGrd(student, groupsForStudents.get(student), snapshot, capacity));
             }
+            
+            return toReturn;
         }
-        
-        Map<Part, Map<Group, GroupGradingSheet>> gradingSheets =
-                Allocator.getDataServices().getGroupGradingSheets(toRetrieve);
-        
-        Map<Student, String> toReturn = new HashMap<Student, String>();
-        for (Student student : students) {
-            Map<Part, GroupGradingSheet> gradingSheetsForStudent = new HashMap<Part, GroupGradingSheet>();
-            for (Part part : toRetrieve.keySet()) {
-                gradingSheetsForStudent.put(part, gradingSheets.get(part).get(groupsForStudents.get(student)));
+        else {
+            return generateGrdsInParallel(groupsForStudents, snapshot, capacity);
+        }
+    }
+    
+    private Map<Student, String> generateGrdsInParallel(Map<Student, Group> groupsForStudents,
+            final GradeSnapshot snapshot, final int capacity) throws ServicesException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(_parallelism, groupsForStudents.size()),
+                                                                new GrdThreadFactory());
+        try {
+            Map<Student, Future<String>> futures = new HashMap<Student, Future<String>>();
+            for (Map.Entry<Student, Group> entry : groupsForStudents.entrySet()) {
+                final Student student = entry.getKey();
+                final Group group = entry.getValue();
+                futures.put(student, executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return generateGrd(student, group, snapshot, capacity);
+                    }
+                }));
+            }
+            
+            Map<Student, String> toReturn = new HashMap<Student, String>();
+            for (Map.Entry<Student, Future<String>> entry : futures.entrySet()) {
+                toReturn.put(entry.getKey(), entry.getValue().get());
             }
             
-            toReturn.put(student, generateGrd(asgn, student, gradingSheetsForStudent));
+            return toReturn;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServicesException("Interrupted while generating grading sheets", e);
+        } catch (ExecutionException e) {
+            //Generating a grading sheet does not throw checked exceptions
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ServicesException("Unable to generate grading sheets", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Estimates the length of a grading sheet for {@code asgn} from the number of table rows it will have.
+     */
+    private int estimateLength(Assignment asgn) {
+        int rows = 2;
+        for (GradableEvent ge : asgn) {
+            rows += 4;
+            for (Part part : ge) {
+                rows += 2;
+                for (GradingSheetSection section : part.getGradingSheet().getSections()) {
+                    rows += 3 + section.getSubsections().size();
+                }
+            }
         }
         
-        return toReturn;
+        return rows * ESTIMATED_ROW_LENGTH;
     }
     
-    private String generateGrd(Assignment asgn, Student student, Map<Part, GroupGradingSheet> gradingSheets) throws ServicesException {
-        Group group = Allocator.getDataServices().getGroup(asgn, student) ;
-
-        StringBuilder grdBuilder = new StringBuilder("<table width='600px'><tr><td style='text-align:center'>");
+    private String generateGrd(Student student, Group group, GradeSnapshot snapshot, int capacity) {
+        StringBuilder grdBuilder = new StringBuilder(capacity);
+        grdBuilder.append("<table width='600px'><tr><td style='text-align:center'>");
         grdBuilder.append(group.getAssignment().getName()).append(" Grading Sheet");
         grdBuilder.append("</td></tr></table>");
         
         grdBuilder.append("<p><b>Student:</b> ").append(student.getName());
         grdBuilder.append(" (").append(student.getLogin()).append(')');
         if (group.size() > 1) {
-            Iterator<Student> members = group.getMembers().iterator();
+            //Members are listed by login so that every member's grading sheet lists them in the same order
+            Iterator<Student> members = ImmutableSortedSet.copyOf(group.getMembers()).iterator();
             grdBuilder.append("<br/><b>Group:</b> ").append(group.getName()).append(" (").append(members.next().getLogin());
             while (members.hasNext()) {
                 grdBuilder.append(", ").append(members.next().getLogin());
@@ -85,7 +166,9 @@ public class GrdGeneratorImpl implements GrdGenerator {
         double asgnOutOf = 0;
         
         for (GradableEvent ge : group.getAssignment()){
-            Score geScore = generateGradableEventGRD(ge, group, gradingSheets, grdBuilder);
+            DeadlineResolution resolution = ge.getDeadlineInfo().getType() == Type.NONE ? null :
+                    snapshot.getDeadlineResolution(ge, group);
+            Score geScore = generateGradableEventGRD(ge, group, snapshot, resolution, grdBuilder);
             
             asgnEarned += geScore._earned;
             asgnOutOf += geScore._outOf;
@@ -102,8 +185,12 @@ public class GrdGeneratorImpl implements GrdGenerator {
         return grdBuilder.toString();
     }
     
-    private  Score generateGradableEventGRD(GradableEvent ge, Group group, Map<Part, GroupGradingSheet> gradingSheets,
-                                           StringBuilder grdBuilder) throws ServicesException {
+    /**
+     * @param resolution the resolution of the gradable event's deadline for the group, {@code null} if the gradable
+     * event has no deadline
+     */
+    private  Score generateGradableEventGRD(GradableEvent ge, Group group, GradeSnapshot snapshot,
+                                           DeadlineResolution resolution, StringBuilder grdBuilder) {
         double geEarned = 0;
         double geOutOf = 0;
         
@@ -111,7 +198,7 @@ public class GrdGeneratorImpl implements GrdGenerator {
         
         grdBuilder.append("<tr><td colspan='3' style='border-bottom: 1px solid'><b>").append(ge.getName()).append("</b></td></tr>");
         for (Part part : ge) {
-            Score partScore = generatePartGRD(gradingSheets.get(part), grdBuilder);
+            Score partScore = generatePartGRD(snapshot.getGroupGradingSheet(part, group), grdBuilder);
             
             geEarned += partScore._earned;
             geOutOf += partScore._outOf;
@@ -120,15 +207,10 @@ public class GrdGeneratorImpl implements GrdGenerator {
         writeLineWithEarnedAndOutOf("Parts total:", doubleToString(geEarned), doubleToString(geOutOf), grdBuilder,
                                          TopLineStyle.FULL);
 
-        DeadlineInfo info = ge.getDeadlineInfo();
-        if (info.getType() != Type.NONE) {
-            DeadlineResolution res;
-            DateTime occurrenceDate = Allocator.getGradingServices().getOccurrenceDates(ge, ImmutableSet.of(group)).get(group);
-            Extension extension = Allocator.getDataServices().getExtensions(ge, ImmutableSet.of(group)).get(group);
-            res = info.apply(occurrenceDate, extension); 
-            double penalty = res.getPenaltyOrBonus(geEarned);
+        if (resolution != null) {
+            double penalty = resolution.getPenaltyOrBonus(geEarned);
 
-            writeLineWithEarnedAndOutOf("Deadline resolution: " + res.getTimeStatus().toString(),
+            writeLineWithEarnedAndOutOf("Deadline resolution: " + resolution.getTimeStatus().toString(),
                                              doubleToString(penalty), "", grdBuilder, TopLineStyle.FULL);
 
             geEarned += penalty;
@@ -189,7 +271,7 @@ public class GrdGeneratorImpl implements GrdGenerator {
         writeLineWithEarnedAndOutOf(section.getName(), "Earned", "Out of", grdBuilder, TopLineStyle.POINTS_ONLY);
 
         for (GradingSheetSubsection subsection : section.getSubsections()) {
-            StringBuilder subsectionBuilder = new StringBuilder(generateSpaces(5));
+            StringBuilder subsectionBuilder = new StringBuilder(SUBSECTION_INDENT);
             subsectionBuilder.append(subsection.getText());
 
             if (!subsection.getDetails().isEmpty()) {
@@ -276,14 +358,7 @@ public class GrdGeneratorImpl implements GrdGenerator {
         NONE, FULL, POINTS_ONLY;
     }
     
-    private  String generateSpaces(int numSpaces) {
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < numSpaces; i++) {
-            builder.append("&nbsp;");
-        }
-        
-        return builder.toString();
-    }
+    private static final String SUBSECTION_INDENT = "&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;";
 
     private  class Score {
         private double _earned;
@@ -310,4 +385,16 @@ public class GrdGeneratorImpl implements GrdGenerator {
         return Double.toString(roundedVal);
     }
     
+    private static class GrdThreadFactory implements ThreadFactory {
+        private final AtomicInteger _threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cakehat-grd-" + _threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+    
 }
@@ -0,0 +1,36 @@
+package cakehat.services;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A catalog of digital handins stored in the database. For each handin it records the size, modification time and
+ * SHA-256 hash of the archive along with a listing of its entries, so that the contents of a handin can be inspected,
+ * for instance to check that the files a part expects are present, without decompressing it. A handin is cataloged
+ * the first time it is requested by any user and the catalog is reused by all users until the handin changes.
+ */
+public interface HandinCatalog
+{
+    /**
+     * Returns the catalog information for {@code handin}, cataloging it first if it has not been cataloged or has
+     * changed since it was cataloged.
+     *
+     * @param handin
+     * @return
+     * @throws ServicesException if {@code handin} cannot be read or is not a valid archive, or the catalog could not be
+     * accessed
+     */
+    public CatalogedHandin getCatalogedHandin(File handin) throws ServicesException;
+
+    /**
+     * Returns the catalog information for each of {@code handins}, cataloging any that have not been cataloged or have
+     * changed since they were cataloged. The catalog is read and updated once for all of the handins.
+     *
+     * @param handins
+     * @return immutable mapping from each of {@code handins} to its catalog information
+     * @throws ServicesException if any of {@code handins} cannot be read or is not a valid archive, or the catalog
+     * could not be accessed
+     */
+    public Map<File, CatalogedHandin> getCatalogedHandins(Set<File> handins) throws ServicesException;
+}
@@ -0,0 +1,129 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import cakehat.database.HandinCatalogRecord;
+import cakehat.database.HandinCatalogRecord.EntryRecord;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+
+/**
+ * Keeps the catalog in the course database so that it is shared by every TA's session. A handin is decompressed only
+ * when it has not been cataloged or when its size or modification time no longer match its catalog entry.
+ */
+public class HandinCatalogImpl implements HandinCatalog
+{
+    @Override
+    public CatalogedHandin getCatalogedHandin(File handin) throws ServicesException
+    {
+        return this.getCatalogedHandins(ImmutableSet.of(handin)).get(handin);
+    }
+
+    @Override
+    public Map<File, CatalogedHandin> getCatalogedHandins(Set<File> handins) throws ServicesException
+    {
+        Map<String, File> handinsByPath = new HashMap<String, File>();
+        for(File handin : handins)
+        {
+            handinsByPath.put(handin.getAbsolutePath(), handin);
+        }
+
+        Map<String, HandinCatalogRecord> records;
+        try
+        {
+            records = Allocator.getDatabase().getHandinCatalogRecords(handinsByPath.keySet());
+        }
+        catch(SQLException e)
+        {
+            throw new ServicesException("Unable to read the handin catalog", e);
+        }
+
+        ImmutableMap.Builder<File, CatalogedHandin> catalogedHandins = ImmutableMap.builder();
+        Set<HandinCatalogRecord> recordsToStore = new HashSet<HandinCatalogRecord>();
+        for(Entry<String, File> entry : handinsByPath.entrySet())
+        {
+            File handin = entry.getValue();
+            long size = handin.length();
+            long lastModified = handin.lastModified();
+
+            HandinCatalogRecord record = records.get(entry.getKey());
+            if(record == null || record.getSize() != size || record.getLastModified() != lastModified)
+            {
+                record = this.catalog(entry.getKey(), handin, size, lastModified, record);
+                recordsToStore.add(record);
+            }
+
+            catalogedHandins.put(handin, new CatalogedHandin(handin, record));
+        }
+
+        if(!recordsToStore.isEmpty())
+        {
+            try
+            {
+                Allocator.getDatabase().putHandinCatalogRecords(recordsToStore);
+            }
+            catch(SQLException e)
+            {
+                throw new ServicesException("Unable to update the handin catalog", e);
+            }
+        }
+
+        return catalogedHandins.build();
+    }
+
+    /**
+     * Builds the catalog record for {@code handin}. If the handin has the same contents as when {@code previous} was
+     * built, as happens when a handin is copied or touched, the entries of {@code previous} are reused rather than
+     * decompressing the archive again.
+     *
+     * @param path
+     * @param handin
+     * @param size
+     * @param lastModified
+     * @param previous may be {@code null}
+     * @return
+     * @throws ServicesException
+     */
+    private HandinCatalogRecord catalog(String path, File handin, long size, long lastModified,
+            HandinCatalogRecord previous) throws ServicesException
+    {
+        try
+        {
+            String sha256 = Files.hash(handin, Hashing.sha256()).toString();
+
+            List<EntryRecord> entries;
+            if(previous != null && previous.getSha256().equals(sha256))
+            {
+                entries = previous.getEntries();
+            }
+            else
+            {
+                entries = new ArrayList<EntryRecord>();
+                for(ArchiveEntry archiveEntry : Allocator.getArchiveUtilities().getArchiveContents(handin))
+                {
+                    entries.add(new EntryRecord(archiveEntry.getName(), archiveEntry.isDirectory(),
+                            archiveEntry.getSize(), archiveEntry.getLastModifiedDate() == null ? 0 :
+                            archiveEntry.getLastModifiedDate().getTime()));
+                }
+            }
+
+            return new HandinCatalogRecord(path, size, lastModified, sha256, entries);
+        }
+        catch(IOException e)
+        {
+            throw new ServicesException("Unable to catalog digital handin: " + handin.getAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package cakehat.services;
+
+import cakehat.assignment.Part;
+import cakehat.database.TA;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of the scores of the groups of a part. Only submitted grading sheets with earned points are scores; a
+ * group that has not been graded, or whose grading sheet has not been submitted, is not included. Statistics are
+ * immutable and are obtained from {@link GradeStatisticsService#getStatistics(java.util.Set)}.
+ */
+public final class PartStatistics
+{
+    /**
+     * The number of bins of {@link #getHistogram()}.
+     */
+    public static final int HISTOGRAM_BINS = 10;
+
+    private final Part _part;
+    private final long _version;
+    private final int _groupCount;
+    private final Summary _summary;
+    private final double _median;
+    private final double _min, _max;
+    private final double _histogramMin, _histogramBinWidth;
+    private final int[] _histogram;
+    private final ImmutableMap<TA, Summary> _taSummaries;
+
+    /**
+     * Computes the statistics of {@code scores}, which is indexed by group and is {@code NaN} for each group without a
+     * score.
+     *
+     * @param part
+     * @param version
+     * @param scores
+     * @param assignedTo the TA each group is assigned to, indexed by group, {@code null} for unassigned groups
+     */
+    PartStatistics(Part part, long version, double[] scores, TA[] assignedTo)
+    {
+        _part = part;
+        _version = version;
+        _groupCount = scores.length;
+
+        double[] sorted = new double[scores.length];
+        int count = 0;
+        Map<TA, List<Double>> taScores = new HashMap<TA, List<Double>>();
+        for(int i = 0; i < scores.length; i++)
+        {
+            if(!Double.isNaN(scores[i]))
+            {
+                sorted[count++] = scores[i];
+
+                if(assignedTo[i] != null)
+                {
+                    if(!taScores.containsKey(assignedTo[i]))
+                    {
+                        taScores.put(assignedTo[i], new ArrayList<Double>());
+                    }
+                    taScores.get(assignedTo[i]).add(scores[i]);
+                }
+            }
+        }
+        sorted = Arrays.copyOf(sorted, count);
+        Arrays.sort(sorted);
+
+        _summary = new Summary(sorted);
+        if(count == 0)
+        {
+            _median = _min = _max = Double.NaN;
+        }
+        else
+        {
+            _median = count % 2 == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+            _min = sorted[0];
+            _max = sorted[count - 1];
+        }
+
+        //The histogram spans from zero to the part's out of, extended to include any scores outside of that range
+        Double outOf = part.getGradingSheet().getOutOf();
+        double histogramMin = count == 0 ? 0 : Math.min(0, _min);
+        double histogramMax = Math.max(outOf == null ? histogramMin : outOf, count == 0 ? histogramMin : _max);
+        if(histogramMax <= histogramMin)
+        {
+            histogramMax = histogramMin + 1;
+        }
+        _histogramMin = histogramMin;
+        _histogramBinWidth = (histogramMax - histogramMin) / HISTOGRAM_BINS;
+        _histogram = new int[HISTOGRAM_BINS];
+        for(double score : sorted)
+        {
+            _histogram[Math.min(HISTOGRAM_BINS - 1, (int) ((score - _histogramMin) / _histogramBinWidth))]++;
+        }
+
+        ImmutableMap.Builder<TA, Summary> taSummaries = ImmutableMap.builder();
+        for(Map.Entry<TA, List<Double>> entry : taScores.entrySet())
+        {
+            double[] values = new double[entry.getValue().size()];
+            for(int i = 0; i < values.length; i++)
+            {
+                values[i] = entry.getValue().get(i);
+            }
+            taSummaries.put(entry.getKey(), new Summary(values));
+        }
+        _taSummaries = taSummaries.build();
+    }
+
+    public Part getPart()
+    {
+        return _part;
+    }
+
+    /**
+     * The change sequence number of the most recent change to the part's grading sheets included in these statistics.
+     * Statistics with the same version are of the same scores.
+     *
+     * @return
+     */
+    public long getVersion()
+    {
+        return _version;
+    }
+
+    /**
+     * The number of groups of the part's assignment, whether or not they have a score.
+     *
+     * @return
+     */
+    public int getGroupCount()
+    {
+        return _groupCount;
+    }
+
+    /**
+     * The count, mean and standard deviation of all of the scores.
+     *
+     * @return
+     */
+    public Summary getSummary()
+    {
+        return _summary;
+    }
+
+    /**
+     * The median score, or {@code NaN} if there are no scores.
+     *
+     * @return
+     */
+    public double getMedian()
+    {
+        return _median;
+    }
+
+    /**
+     * The lowest score, or {@code NaN} if there are no scores.
+     *
+     * @return
+     */
+    public double getMin()
+    {
+        return _min;
+    }
+
+    /**
+     * The highest score, or {@code NaN} if there are no scores.
+     *
+     * @return
+     */
+    public double getMax()
+    {
+        return _max;
+    }
+
+    /**
+     * The number of scores in each of {@link #HISTOGRAM_BINS} bins of equal width. Bin {@code i} holds the scores from
+     * {@code getHistogramMin() + i * getHistogramBinWidth()}, inclusive, to the start of the next bin, exclusive; the
+     * last bin also holds the highest score. The bins span from zero to the part's out of, extended to include every
+     * score.
+     *
+     * @return a copy of the histogram
+     */
+    public int[] getHistogram()
+    {
+        return _histogram.clone();
+    }
+
+    public double getHistogramMin()
+    {
+        return _histogramMin;
+    }
+
+    public double getHistogramBinWidth()
+    {
+        return _histogramBinWidth;
+    }
+
+    /**
+     * The count, mean and standard deviation of the scores of the groups assigned to each TA. TAs without any scored
+     * groups are not included, nor are scores of groups not assigned to a TA.
+     *
+     * @return
+     */
+    public Map<TA, Summary> getTASummaries()
+    {
+        return _taSummaries;
+    }
+
+    /**
+     * The count, mean and population standard deviation of a set of scores.
+     */
+    public static final class Summary
+    {
+        private final int _count;
+        private final double _mean;
+        private final double _standardDeviation;
+
+        private Summary(double[] scores)
+        {
+            _count = scores.length;
+
+            double sum = 0;
+            for(double score : scores)
+            {
+                sum += score;
+            }
+            _mean = _count == 0 ? Double.NaN : sum / _count;
+
+            double sumOfSquares = 0;
+            for(double score : scores)
+            {
+                sumOfSquares += (score - _mean) * (score - _mean);
+            }
+            _standardDeviation = _count == 0 ? Double.NaN : Math.sqrt(sumOfSquares / _count);
+        }
+
+        public int getCount()
+        {
+            return _count;
+        }
+
+        /**
+         * The mean, or {@code NaN} if there are no scores.
+         *
+         * @return
+         */
+        public double getMean()
+        {
+            return _mean;
+        }
+
+        /**
+         * The population standard deviation, or {@code NaN} if there are no scores.
+         *
+         * @return
+         */
+        public double getStandardDeviation()
+        {
+            return _standardDeviation;
+        }
+    }
+}
@@ -81,6 +81,20 @@ public interface PathServices
      */
     public File getDatabaseBackupDir();
     
+    /**
+     * The directory holding the user's emails which are in the outbox waiting to be sent. Unlike the temporary
+     * directory, it persists across the user's cakehat sessions.
+     *
+     * <pre>
+     * {@code
+     * /course/<course>/.cakehat/<current year>/outbox/<ta id>/
+     * }
+     * </pre>
+     *
+     * @return
+     */
+    public File getOutboxDir();
+    
     /**
      * A temporary directory that only exists during the user's cakehat session.
      * <br/><br/>
@@ -56,6 +56,15 @@ public class PathServicesImpl implements PathServices
                 "backups");
     }
     
+    @Override
+    public File getOutboxDir()
+    {
+        return new File(new File(
+                getCakehatCurrentYearDir(),
+                "outbox"),
+                Integer.toString(CakehatSession.getUserId()));
+    }
+    
     @Override
     public File getTempDir()
     {
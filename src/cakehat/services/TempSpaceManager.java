@@ -0,0 +1,76 @@
+package cakehat.services;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * Keeps the disk space used by unarchived digital handins and action temp directories within a quota. The size and
+ * time of last use of each directory tree is tracked and, once the total size exceeds the quota, the least recently
+ * used trees are deleted. A deleted unarchive directory is unarchived again the next time it is needed, so eviction
+ * is not visible to users beyond the time taken to unarchive.
+ * <br/><br/>
+ * A tree is never deleted while it is in use, between calls to {@link #beginUse(Collection)} and
+ * {@link #endUse(Collection)}, nor within a grace period after its last use so that processes an action started
+ * asynchronously, such as a terminal, are not left without their files. Code that reads or writes a tree must mark it
+ * in use for as long as it does so; the grace period alone does not protect a tree that is used for longer than it.
+ * Unarchive directories are shared by all TAs, so uses in other cakehat sessions protect a tree in the same way.
+ */
+public interface TempSpaceManager
+{
+    /**
+     * The default quota, in bytes.
+     */
+    public static final long DEFAULT_QUOTA_BYTES = 2L * 1024 * 1024 * 1024;
+
+    /**
+     * The default time, in milliseconds, after a tree was last used during which it will not be deleted.
+     */
+    public static final long DEFAULT_GRACE_PERIOD_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Marks the directories as in use so that they will not be deleted until {@link #endUse(Collection)} is called
+     * for them. The directories do not need to exist yet. Calls may be nested; a directory remains in use until
+     * {@code endUse} has been called once for each call to this method.
+     *
+     * @param dirs
+     */
+    public void beginUse(Collection<File> dirs);
+
+    /**
+     * Marks the directories as no longer in use, records that they were used now and measures their size, as it may
+     * have changed while they were in use. Least recently used trees are then deleted if the quota is exceeded.
+     * Measuring and deleting occur in the background.
+     *
+     * @param dirs
+     */
+    public void endUse(Collection<File> dirs);
+
+    /**
+     * Records that {@code dir}, which has just been created, filled or used, was used now and measures its size. Least
+     * recently used trees are then deleted if the quota is exceeded. Measuring and deleting occur in the background.
+     *
+     * @param dir
+     */
+    public void track(File dir);
+
+    /**
+     * Sets the number of bytes the tracked trees may use in total before least recently used trees are deleted.
+     *
+     * @param quotaBytes must not be negative
+     */
+    public void setQuota(long quotaBytes);
+
+    /**
+     * The number of bytes the tracked trees may use in total before least recently used trees are deleted.
+     *
+     * @return
+     */
+    public long getQuota();
+
+    /**
+     * The total size in bytes of the tracked trees, as last measured.
+     *
+     * @return
+     */
+    public long getUsage();
+}
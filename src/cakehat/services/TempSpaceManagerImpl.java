@@ -0,0 +1,363 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import cakehat.CakehatSession;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the tracked trees in order of last use. Trees are measured, and evicted trees are deleted, on a background
+ * thread.
+ * <br/><br/>
+ * Unarchived handins are shared by every TA's session, so a tree is not evicted while another session could be using
+ * it. Each user's use of a tree is recorded in a hidden marker file next to it whose modification time is the user's
+ * last use; while a tree is in use its marker is touched periodically, well within the grace period. A tree is only
+ * evicted once no user's marker has been touched within the grace period, so the marker of a session that exited
+ * without ending its use stops protecting the tree once the grace period has passed.
+ */
+public class TempSpaceManagerImpl implements TempSpaceManager
+{
+    private static final String MARKER_EXTENSION = ".use";
+
+    /**
+     * Measures trees and deletes evicted trees so that callers, often the UI thread, do not wait on the file system.
+     */
+    private final Executor _executor;
+    private final long _gracePeriodMillis;
+
+    /**
+     * Identifies this user's marker files.
+     */
+    private final String _user;
+
+    /**
+     * The tracked trees in order of last use, least recently used first. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<File, TrackedTree> _trees = new LinkedHashMap<File, TrackedTree>();
+
+    /**
+     * The trees currently in use, with a count for each nested use. Guarded by {@code this}.
+     */
+    private final Multiset<File> _inUse = HashMultiset.create();
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private long _usage = 0;
+
+    private volatile long _quotaBytes;
+
+    public TempSpaceManagerImpl()
+    {
+        this(Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "cakehat-temp-space-manager");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        }), DEFAULT_QUOTA_BYTES, DEFAULT_GRACE_PERIOD_MILLIS, Integer.toString(CakehatSession.getUserId()));
+    }
+
+    private TempSpaceManagerImpl(ScheduledExecutorService executor, long quotaBytes, long gracePeriodMillis,
+            String user)
+    {
+        this((Executor) executor, quotaBytes, gracePeriodMillis, user);
+
+        //Keep the markers of trees in use from appearing unused to other sessions
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                touchMarkers(getInUse());
+            }
+        }, gracePeriodMillis / 2, gracePeriodMillis / 2, TimeUnit.MILLISECONDS);
+    }
+
+    TempSpaceManagerImpl(Executor executor, long quotaBytes, long gracePeriodMillis, String user)
+    {
+        _executor = executor;
+        _quotaBytes = quotaBytes;
+        _gracePeriodMillis = gracePeriodMillis;
+        _user = user;
+    }
+
+    @Override
+    public void beginUse(Collection<File> dirs)
+    {
+        synchronized(this)
+        {
+            _inUse.addAll(dirs);
+        }
+
+        //Done before returning so that no other session evicts the trees once the caller starts using them
+        touchMarkers(dirs);
+    }
+
+    @Override
+    public void endUse(final Collection<File> dirs)
+    {
+        final long usedTime = System.currentTimeMillis();
+        synchronized(this)
+        {
+            for(File dir : dirs)
+            {
+                _inUse.remove(dir);
+            }
+        }
+
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                touchMarkers(dirs);
+                for(File dir : dirs)
+                {
+                    measure(dir, usedTime);
+                }
+                enforceQuota();
+            }
+        });
+    }
+
+    @Override
+    public void track(final File dir)
+    {
+        final long usedTime = System.currentTimeMillis();
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                touchMarkers(ImmutableSet.of(dir));
+                measure(dir, usedTime);
+                enforceQuota();
+            }
+        });
+    }
+
+    @Override
+    public void setQuota(long quotaBytes)
+    {
+        if(quotaBytes < 0)
+        {
+            throw new IllegalArgumentException("quotaBytes may not be negative, was " + quotaBytes);
+        }
+
+        _quotaBytes = quotaBytes;
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                enforceQuota();
+            }
+        });
+    }
+
+    @Override
+    public long getQuota()
+    {
+        return _quotaBytes;
+    }
+
+    @Override
+    public synchronized long getUsage()
+    {
+        return _usage;
+    }
+
+    /**
+     * Measures the size of {@code dir} and records it as most recently used. Stops tracking {@code dir} if it no longer
+     * exists.
+     *
+     * @param dir
+     * @param usedTime
+     */
+    private void measure(File dir, long usedTime)
+    {
+        long size = dir.exists() ? getSize(dir) : -1;
+
+        synchronized(this)
+        {
+            TrackedTree previous = _trees.remove(dir);
+            if(previous != null)
+            {
+                _usage -= previous.size;
+            }
+            if(size >= 0)
+            {
+                _trees.put(dir, new TrackedTree(size, usedTime));
+                _usage += size;
+            }
+        }
+    }
+
+    private synchronized Set<File> getInUse()
+    {
+        return ImmutableSet.copyOf(_inUse.elementSet());
+    }
+
+    /**
+     * Records that this user used each of {@code dirs} now. Directories whose parent does not exist are skipped, no
+     * other session can be sharing them.
+     *
+     * @param dirs
+     */
+    private void touchMarkers(Collection<File> dirs)
+    {
+        long now = System.currentTimeMillis();
+        for(File dir : dirs)
+        {
+            File marker = new File(dir.getParentFile(), "." + dir.getName() + "." + _user + MARKER_EXTENSION);
+            try
+            {
+                if(!marker.createNewFile())
+                {
+                    marker.setLastModified(now);
+                }
+            }
+            //The parent does not exist or cannot be written to
+            catch(IOException e) { }
+        }
+    }
+
+    /**
+     * The marker files of every user that has used {@code dir}.
+     *
+     * @param dir
+     * @return
+     */
+    private static List<File> getMarkers(File dir)
+    {
+        final String prefix = "." + dir.getName() + ".";
+        File[] markers = dir.getParentFile().listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File file)
+            {
+                return file.getName().startsWith(prefix) && file.getName().endsWith(MARKER_EXTENSION);
+            }
+        });
+
+        return markers == null ? ImmutableList.<File>of() : ImmutableList.copyOf(markers);
+    }
+
+    /**
+     * Deletes least recently used trees that are not in use by any session and are past their grace period until the
+     * total size is within the quota. Each tree is renamed before being deleted so that a partially deleted tree is
+     * never mistaken for a complete one; if it is needed again it will be recreated.
+     * <br/><br/>
+     * Only called on {@link #_executor}, which is the only thread that modifies {@link #_trees}, so the trees may be
+     * iterated over without holding the lock while the marker files are read.
+     */
+    private void enforceQuota()
+    {
+        long now = System.currentTimeMillis();
+        List<Entry<File, TrackedTree>> candidates;
+        synchronized(this)
+        {
+            candidates = new ArrayList<Entry<File, TrackedTree>>(_trees.entrySet());
+        }
+
+        List<File> evicted = new ArrayList<File>();
+        for(Entry<File, TrackedTree> entry : candidates)
+        {
+            File dir = entry.getKey();
+            TrackedTree tree = entry.getValue();
+            synchronized(this)
+            {
+                if(_usage <= _quotaBytes)
+                {
+                    break;
+                }
+                if(_inUse.contains(dir) || now - tree.lastUsed < _gracePeriodMillis)
+                {
+                    continue;
+                }
+            }
+
+            List<File> markers = getMarkers(dir);
+            boolean usedBySession = false;
+            for(File marker : markers)
+            {
+                usedBySession |= now - marker.lastModified() < _gracePeriodMillis;
+            }
+            if(usedBySession)
+            {
+                continue;
+            }
+
+            synchronized(this)
+            {
+                //Checked again as the tree may have come into use while the markers were read
+                if(_inUse.contains(dir))
+                {
+                    continue;
+                }
+
+                File evictedDir = new File(dir.getParentFile(), dir.getName() + ".evicted." + System.nanoTime());
+                if(!dir.exists() || dir.renameTo(evictedDir))
+                {
+                    _trees.remove(dir);
+                    _usage -= tree.size;
+                    if(evictedDir.exists())
+                    {
+                        evicted.add(evictedDir);
+                    }
+                    evicted.addAll(markers);
+                }
+            }
+        }
+
+        Allocator.getFileSystemUtilities().deleteFilesSilently(evicted);
+    }
+
+    private static long getSize(File file)
+    {
+        long size = file.length();
+        File[] entries = file.listFiles();
+        if(entries != null)
+        {
+            for(File entry : entries)
+            {
+                size += getSize(entry);
+            }
+        }
+
+        return size;
+    }
+
+    private static class TrackedTree
+    {
+        private final long size;
+        private final long lastUsed;
+
+        TrackedTree(long size, long lastUsed)
+        {
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
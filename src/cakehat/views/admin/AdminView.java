@@ -7,12 +7,15 @@ import cakehat.CakehatReleaseInfo;
 import cakehat.assignment.Assignment;
 import cakehat.assignment.GradableEvent;
 import cakehat.assignment.Part;
+import cakehat.database.DataServices;
+import cakehat.database.DataServices.DataCacheListener;
 import cakehat.database.Group;
 import cakehat.database.Student;
 import cakehat.icon.CakehatIconLoader;
 import cakehat.logging.ErrorReporter;
 import cakehat.services.ServicesException;
 import cakehat.views.admin.AssignmentTree.AssignmentTreeSelection;
+import cakehat.views.shared.UnsentEmailPrompt;
 import cakehat.views.shared.gradingsheet.GradingSheetPanel;
 import com.google.common.collect.Iterables;
 import java.awt.AWTKeyStroke;
@@ -56,6 +59,23 @@ public class AdminView extends JFrame
     private Set<Student> _selectedStudents; 
     private GradingSheetPanel _currentlyDisplayedSheet;
     
+    private final DataCacheListener _dataCacheListener = new DataCacheListener()
+    {
+        @Override
+        public void dataCacheUpdated(Set<Student> students, Set<Group> groups)
+        {
+            EventQueue.invokeLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    //Reapply the filter so that added, removed, enabled and disabled students are reflected
+                    _studentList.applyFilterTerm();
+                }
+            });
+        }
+    };
+    
     private AdminView()
     {
         super("cakehat (admin)" + (CakehatSession.getUserConnectionType() == ConnectionType.REMOTE ? " [ssh]" : ""));
@@ -67,6 +87,9 @@ public class AdminView extends JFrame
             @Override
             public void windowClosed(WindowEvent we)
             {
+                Allocator.getDataServices().stopCacheRefresher();
+                Allocator.getDataServices().removeDataCacheListener(_dataCacheListener);
+                _statisticsPanel.stopRefreshing();
                 saveDisplayedGradingSheet();
             }
         });
@@ -84,6 +107,10 @@ public class AdminView extends JFrame
         //Setup focus traversal
         this.initFocusTraversalPolicy();
         
+        //Keep students up to date with changes made by other users without requiring a manual refresh
+        Allocator.getDataServices().addDataCacheListener(_dataCacheListener);
+        Allocator.getDataServices().startCacheRefresher(DataServices.DEFAULT_CACHE_REFRESH_INTERVAL_MILLIS);
+        
         //Display
         this.setMinimumSize(new Dimension(1024, 550));
         this.setPreferredSize(new Dimension(1024, 550));
@@ -474,7 +501,9 @@ public class AdminView extends JFrame
             @Override
             public void run()
             {   
-                new AdminView().setVisible(true);
+                AdminView view = new AdminView();
+                view.setVisible(true);
+                UnsentEmailPrompt.show(view);
             }
         });
     }
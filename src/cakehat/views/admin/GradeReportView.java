@@ -2,22 +2,19 @@ package cakehat.views.admin;
 
 import cakehat.Allocator;
 import cakehat.CakehatSession;
-import cakehat.database.Extension;
 import cakehat.database.Group;
 import cakehat.database.Student;
 import cakehat.assignment.Assignment;
-import cakehat.assignment.DeadlineInfo;
 import cakehat.assignment.DeadlineInfo.DeadlineResolution;
 import cakehat.assignment.GradableEvent;
 import cakehat.assignment.Part;
 import cakehat.database.GroupGradingSheet;
 import cakehat.email.EmailManager;
+import cakehat.email.EmailOutbox;
 import cakehat.logging.ErrorReporter;
+import cakehat.services.GradeSnapshot;
 import cakehat.services.ServicesException;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.SetMultimap;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
@@ -28,8 +25,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -58,7 +55,6 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.html.HTMLEditorKit;
-import org.joda.time.DateTime;
 import support.ui.DescriptionProvider;
 import support.ui.DocumentAdapter;
 import support.ui.FormattedLabel;
@@ -103,11 +99,6 @@ class GradeReportView extends JDialog
             {
                 _currentlyDisplayedView = new GradeReportView(owner);
             }
-            catch(IOException ex)
-            {
-                ErrorReporter.report("Failed to retrieve data needed by this view", ex);
-                return;
-            }
             catch(ServicesException ex)
             {
                 ErrorReporter.report("Failed to retrieve data needed by this view", ex);
@@ -129,10 +120,7 @@ class GradeReportView extends JDialog
     }
     
     //All of the data needed to generate reports
-    private final Map<Assignment, Map<Student, Group>> _groups;
-    private final Map<Part, Map<Group, GroupGradingSheet>> _partGrades;
-    private final Map<GradableEvent, Map<Group, DateTime>> _occurrenceDates;
-    private final Map<GradableEvent, Map<Group, Extension>> _extensions;
+    private final GradeSnapshot _snapshot;
     
     //Key visual elements
     private final AssignmentList _asgnList;
@@ -144,52 +132,12 @@ class GradeReportView extends JDialog
     private final EmailAddressField _alternateAddressField;
     private final JButton _sendReportsButton;
     
-    private GradeReportView(Window owner) throws ServicesException, IOException
+    private GradeReportView(Window owner) throws ServicesException
     {
         super(owner, "Grade Reports", ModalityType.MODELESS);
         
-        //Load data into thread safe data structures (reports will be sent on a separate thread)
-        ImmutableMap.Builder<Assignment, Map<Student, Group>> groupsBuilder = ImmutableMap.builder();
-        ImmutableMap.Builder<Part, Map<Group, GroupGradingSheet>> partGradesBuilder = ImmutableMap.builder();
-        ImmutableMap.Builder<GradableEvent, Map<Group, DateTime>> occurrenceDatesBuilder = ImmutableMap.builder();
-        ImmutableMap.Builder<GradableEvent, Map<Group, Extension>> extensionsBuilder = ImmutableMap.builder();
-        
-        SetMultimap<Part, Group> partsToGroups = HashMultimap.create();
-        for(Assignment asgn : Allocator.getDataServices().getAssignments())
-        {
-            Set<Group> groups = Allocator.getDataServices().getGroups(asgn);
-            
-            //Students to groups
-            ImmutableMap.Builder<Student, Group> studentToGroupBuilder = ImmutableMap.builder();
-            for(Group group : groups)
-            {
-                for(Student student : group)
-                {
-                    studentToGroupBuilder.put(student, group);
-                }
-            }
-            groupsBuilder.put(asgn, studentToGroupBuilder.build());
-            
-            for(GradableEvent ge : asgn)
-            {   
-                //Occurrence dates
-                occurrenceDatesBuilder.put(ge, ImmutableMap.copyOf(Allocator.getGradingServices().getOccurrenceDates(ge, groups)));
-                
-                //Extensions
-                extensionsBuilder.put(ge, ImmutableMap.copyOf(Allocator.getDataServices().getExtensions(ge, groups)));
-
-                //Part grades
-                for(Part part : ge)
-                {
-                    partsToGroups.putAll(part, groups);
-                }
-            }
-        }
-
-        _groups = groupsBuilder.build();
-        _partGrades = ImmutableMap.copyOf(Allocator.getDataServices().getGroupGradingSheets(partsToGroups));
-        _occurrenceDates = occurrenceDatesBuilder.build();
-        _extensions = extensionsBuilder.build();
+        //Snapshots are immutable, so the data can be used on the thread reports are sent on
+        _snapshot = Allocator.getGradeSnapshotService().getSnapshot();
         
         //Intialize UI
         _asgnList = new AssignmentList();
@@ -574,45 +522,97 @@ class GradeReportView extends JDialog
                     
                     notifyTaskDetermined(_students.size() + (notifyAddresses.isEmpty() ? 0 : 1));
                     
-                    Map<Student, MessagingException> reportsFailedToSend = new HashMap<Student, MessagingException>();
+                    //Emails are sent from the outbox's worker threads, which report failures
+                    final Map<Student, Exception> reportsFailedToSend =
+                            Collections.synchronizedMap(new HashMap<Student, Exception>());
+                    final Map<Integer, Student> queuedStudents = new HashMap<Integer, Student>();
                     
-                    InternetAddress from = Allocator.getEmailManager().getHeadTAsEmailAddress();
-                    String subject = CakehatSession.getCourse() + " Grade Report";
-                    for(Student student : _students)
+                    //Queue up all of the reports so that if sending is canceled or fails part way through it is
+                    //recorded which students were sent their reports
+                    EmailOutbox outbox = Allocator.getEmailOutbox();
+                    String batch = outbox.createBatch();
+                    try
                     {
-                        notifyTaskStepStarted("Emailing " + student.getName());
-                                
-                        Iterable<InternetAddress> to;
-                        if(_alternateAddress == null)
-                        {
-                            to = ImmutableSet.of(student.getEmailAddress());
-                        }
-                        else
+                        InternetAddress from = Allocator.getEmailManager().getHeadTAsEmailAddress();
+                        String subject = CakehatSession.getCourse() + " Grade Report";
+                        for(Student student : _students)
                         {
-                            to = ImmutableSet.of(_alternateAddress);
-                        }
+                            Iterable<InternetAddress> to;
+                            if(_alternateAddress == null)
+                            {
+                                to = ImmutableSet.of(student.getEmailAddress());
+                            }
+                            else
+                            {
+                                to = ImmutableSet.of(_alternateAddress);
+                            }
 
-                        try
-                        {
-                            Allocator.getEmailManager().send(from,
-                                                             to,
-                                                             null,
-                                                             null,
-                                                             subject,
-                                                             buildGradeReport(_message, student, _assignments),
-                                                             null);
+                            try
+                            {
+                                int id = outbox.enqueue(batch,
+                                                        from,
+                                                        to,
+                                                        null,
+                                                        null,
+                                                        subject,
+                                                        buildGradeReport(_message, student, _assignments),
+                                                        null);
+                                queuedStudents.put(id, student);
+                            }
+                            catch(MessagingException e)
+                            {
+                                reportsFailedToSend.put(student, e);
+                            }
+
+                            if(isCancelAttempted())
+                            {
+                                break;
+                            }
                         }
-                        catch(MessagingException e)
+
+                        if(!isCancelAttempted())
                         {
-                            reportsFailedToSend.put(student, e);
-                        }
+                            outbox.dispatch(batch, new EmailOutbox.DispatchListener()
+                            {
+                                @Override
+                                public void messageSending(int id, String recipients)
+                                {
+                                    notifyTaskStepStarted("Emailing " + queuedStudents.get(id).getName());
+                                }
 
-                        notifyTaskStepCompleted();
+                                @Override
+                                public void messageSent(int id)
+                                {
+                                    notifyTaskStepCompleted();
+                                }
+
+                                @Override
+                                public void messageFailed(int id, MessagingException cause)
+                                {
+                                    reportsFailedToSend.put(queuedStudents.get(id), cause);
+                                    notifyTaskStepCompleted();
+                                }
+
+                                @Override
+                                public boolean isCancelRequested()
+                                {
+                                    return isCancelAttempted();
+                                }
+                            });
+                        }
+                        
+                        //Reports not yet sent when the task was canceled should never be sent
                         if(isCancelAttempted())
                         {
-                            break;
+                            outbox.cancel(batch);
                         }
                     }
+                    catch(ServicesException e)
+                    {
+                        notifyTaskFailed(e, "Unable to send grade reports using the outbox");
+                        
+                        return;
+                    }
 
                     //If some report could not be sent
                     if(!reportsFailedToSend.isEmpty())
@@ -752,7 +752,7 @@ class GradeReportView extends JDialog
             reportBuilder.append("<td>Out Of</td>");
             reportBuilder.append("</tr>");
             
-            Group group = _groups.get(asgn).get(student);
+            Group group = _snapshot.getGroup(asgn, student);
             //No group exists and not a template (represented by a null student)
             if(group == null && student != null)
             {
@@ -774,17 +774,14 @@ class GradeReportView extends JDialog
                     Double gradableEventOutOf = null;
                     for(Part part : ge)
                     {
-                        GroupGradingSheet partGrade = _partGrades.get(part).get(group);
+                        GroupGradingSheet partGrade = _snapshot.getGroupGradingSheet(part, group);
                         Double earned = partGrade == null ? null : partGrade.getEarned();
                         gradableEventEarned = NullMath.add(gradableEventEarned, earned);
                         gradableEventOutOf = NullMath.add(gradableEventOutOf, part.getGradingSheet().getOutOf());
                     }
                     
                     //Include penalty or bonus from deadline resolution
-                    DateTime occurrenceDate = _occurrenceDates.get(ge).get(group);
-                    Extension extension = _extensions.get(ge).get(group);
-                    DeadlineInfo deadlineInfo = ge.getDeadlineInfo();
-                    DeadlineResolution deadlineResolution = deadlineInfo.apply(occurrenceDate, extension);
+                    DeadlineResolution deadlineResolution = _snapshot.getDeadlineResolution(ge, group);
                     double penaltyOrBonus = deadlineResolution.getPenaltyOrBonus(gradableEventEarned);
                     gradableEventEarned = NullMath.add(gradableEventEarned, penaltyOrBonus);
                     
@@ -1,43 +1,72 @@
 package cakehat.views.admin;
 
 import cakehat.Allocator;
+import cakehat.database.DataServices;
 import cakehat.database.Group;
-import cakehat.database.GroupGradingSheet;
+import cakehat.database.GradeMatrix;
 import cakehat.database.Student;
+import cakehat.database.TA;
 import cakehat.assignment.GradableEvent;
 import cakehat.assignment.Part;
 import cakehat.logging.ErrorReporter;
+import cakehat.services.PartStatistics;
 import cakehat.services.ServicesException;
 import cakehat.views.admin.AssignmentTree.AssignmentTreeSelection;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 import support.ui.FormattedLabel;
 import support.ui.PaddingPanel;
 
 /**
- * A panel showing information for groups and the selected part, gradable event, or assignment. This view is intended to
- * show relevant statistics on the selected elements.
+ * A panel showing information for groups and the selected part, gradable event, or assignment. This view shows the
+ * grading status of the selected groups and statistics of the scores of all groups for each selected part.
  * <br/><br/>
- * For now it just shows grading status, but this is intended to be expanded in the future.
+ * Statistics are refreshed periodically while the panel is showing so that grading done by others is reflected
+ * without changing the selection. Statistics are computed on a background thread as doing so may require reading the
+ * grades of every group; only updating the displayed statistics is done on the UI thread.
  *
  * @author jak2
  */
 class StatisticsPanel extends PaddingPanel
 {   
+    private static final int HISTOGRAM_BAR_LENGTH = 40;
+    
     private final JPanel _contentPanel;
+    private final JPanel _statisticsPanel;
+    private final Timer _refreshTimer;
+    private final ExecutorService _refreshExecutor;
+    
+    /**
+     * The parts statistics are displayed for, sorted, and the statistics displayed for them.
+     */
+    private List<Part> _displayedParts = ImmutableList.of();
+    private Map<Part, PartStatistics> _displayedStatistics = ImmutableMap.of();
+    
+    /**
+     * Incremented each time the displayed parts change so that statistics computed for previously displayed parts are
+     * not shown. Only accessed on the UI thread, as is the number of refreshes which have not yet been shown.
+     */
+    private int _displayGeneration = 0;
+    private int _pendingRefreshes = 0;
     
     StatisticsPanel()
     {
@@ -55,6 +84,49 @@ class StatisticsPanel extends PaddingPanel
         _contentPanel.setLayout(new BoxLayout(_contentPanel, BoxLayout.Y_AXIS));
         _contentPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
         centerPanel.add(_contentPanel);
+        
+        centerPanel.add(FormattedLabel.asHeader("Statistics"));
+        
+        _statisticsPanel = new JPanel();
+        _statisticsPanel.setBackground(centerPanel.getBackground());
+        _statisticsPanel.setLayout(new BoxLayout(_statisticsPanel, BoxLayout.Y_AXIS));
+        _statisticsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        centerPanel.add(_statisticsPanel);
+        
+        _refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "cakehat-statistics-refresh");
+                thread.setDaemon(true);
+                
+                return thread;
+            }
+        });
+        
+        _refreshTimer = new Timer((int) DataServices.DEFAULT_CACHE_REFRESH_INTERVAL_MILLIS, new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent ae)
+            {
+                //A refresh is not started while another is still being computed
+                if(isShowing() && _pendingRefreshes == 0)
+                {
+                    refreshStatistics(false);
+                }
+            }
+        });
+        _refreshTimer.start();
+    }
+    
+    /**
+     * Stops the periodic refresh of statistics. Should be called once the panel will no longer be shown.
+     */
+    void stopRefreshing()
+    {
+        _refreshTimer.stop();
+        _refreshExecutor.shutdownNow();
     }
     
     /**
@@ -98,13 +170,9 @@ class StatisticsPanel extends PaddingPanel
                 groupSelection = Allocator.getDataServices().getGroups(assignmentSelection.getAssignment());
             }
             
-            SetMultimap<Part, Group> dataToQuery = HashMultimap.create();
-            for(Part part : parts)
-            {
-                dataToQuery.putAll(part, groupSelection);
-            }
-            Map<Part, Map<Group, GroupGradingSheet>> gradingSheets = Allocator.getDataServices()
-                    .getGroupGradingSheets(dataToQuery);
+            //Only grading status is needed, so the grades are read as a matrix instead of as group grading sheets
+            GradeMatrix matrix = Allocator.getDataServices().getGradeMatrix(ImmutableList.<Student>of(),
+                    new ArrayList<Part>(parts));
             
             //Categories
             // - Not started (no parts submitted or in progress)
@@ -119,16 +187,17 @@ class StatisticsPanel extends PaddingPanel
                 boolean anySubmittedOrInProgress = false;
                 boolean allSubmitted = true;
                 
+                int groupIndex = matrix.getGroupIndex(group);
                 for(Part part : parts)
                 {
-                    GroupGradingSheet gradingSheet = gradingSheets.get(part).get(group);
+                    boolean hasGradingSheet = groupIndex != -1 && matrix.hasGradingSheet(part, groupIndex);
                     
-                    if(gradingSheet.getId() != null)
+                    if(hasGradingSheet)
                     {
                         anySubmittedOrInProgress = true;
                     }
                     
-                    if(gradingSheet.getId() == null || !gradingSheet.isSubmitted())
+                    if(!hasGradingSheet || !matrix.isSubmitted(part, groupIndex))
                     {
                         allSubmitted = false;
                     }
@@ -160,10 +229,165 @@ class StatisticsPanel extends PaddingPanel
                     .centerHorizontally());
         }
         
+        List<Part> sortedParts = new ArrayList<Part>(parts);
+        Collections.sort(sortedParts);
+        _displayedParts = sortedParts;
+        _displayGeneration++;
+        this.refreshStatistics(true);
+        
         this.repaint();
         this.revalidate();
     }
     
+    /**
+     * Computes the current statistics of the displayed parts on a background thread, then shows them.
+     * 
+     * @param userInitiated if {@code true} the statistics are shown even if they have not changed and failures are
+     * reported; otherwise a failure leaves the statistics already shown in place
+     */
+    private void refreshStatistics(final boolean userInitiated)
+    {
+        final int generation = _displayGeneration;
+        final Set<Part> parts = new HashSet<Part>(_displayedParts);
+        if(userInitiated)
+        {
+            _statisticsPanel.removeAll();
+            addStatisticsContent("Loading statistics...");
+            _displayedStatistics = ImmutableMap.of();
+            _statisticsPanel.repaint();
+            _statisticsPanel.revalidate();
+        }
+        
+        _pendingRefreshes++;
+        _refreshExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Map<Part, PartStatistics> statistics = null;
+                ServicesException failure = null;
+                try
+                {
+                    statistics = Allocator.getGradeStatisticsService().getStatistics(parts);
+                }
+                catch(ServicesException e)
+                {
+                    failure = e;
+                }
+                
+                final Map<Part, PartStatistics> computedStatistics = statistics;
+                final ServicesException computeFailure = failure;
+                EventQueue.invokeLater(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        _pendingRefreshes--;
+                        
+                        //Statistics for parts that are no longer displayed are discarded
+                        if(generation == _displayGeneration)
+                        {
+                            showStatistics(computedStatistics, computeFailure, userInitiated);
+                        }
+                    }
+                });
+            }
+        });
+    }
+    
+    private void showStatistics(Map<Part, PartStatistics> statistics, ServicesException failure,
+            boolean userInitiated)
+    {
+        if(failure != null)
+        {
+            if(userInitiated)
+            {
+                ErrorReporter.report("Unable to compute statistics", failure);
+                _statisticsPanel.removeAll();
+                _statisticsPanel.add(FormattedLabel.asSubheader("Unable to compute statistics").showAsErrorMessage()
+                        .centerHorizontally());
+                _statisticsPanel.repaint();
+                _statisticsPanel.revalidate();
+            }
+            
+            return;
+        }
+        
+        //Statistics are only recomputed when a part's scores change, so unchanged statistics are the same objects
+        if(!userInitiated && statistics.equals(_displayedStatistics))
+        {
+            return;
+        }
+        _displayedStatistics = statistics;
+        
+        _statisticsPanel.removeAll();
+        for(Part part : _displayedParts)
+        {
+            if(_displayedParts.size() > 1)
+            {
+                _statisticsPanel.add(FormattedLabel.asSubheader(part.getName()).grayOut());
+            }
+            showStatistics(statistics.get(part));
+            _statisticsPanel.add(Box.createVerticalStrut(10));
+        }
+        
+        _statisticsPanel.repaint();
+        _statisticsPanel.revalidate();
+    }
+    
+    private void showStatistics(PartStatistics statistics)
+    {
+        PartStatistics.Summary summary = statistics.getSummary();
+        addStatisticsContent("Scored: " + summary.getCount() + " of " + statistics.getGroupCount() + " groups");
+        if(summary.getCount() == 0)
+        {
+            return;
+        }
+        
+        addStatisticsContent("Mean: " + format(summary.getMean()) + "   Median: " + format(statistics.getMedian())
+                + "   Standard deviation: " + format(summary.getStandardDeviation()));
+        addStatisticsContent("Range: " + format(statistics.getMin()) + " to " + format(statistics.getMax()));
+        
+        //Bars are scaled so that the largest bin is HISTOGRAM_BAR_LENGTH characters long
+        int[] histogram = statistics.getHistogram();
+        int largestBin = 0;
+        for(int binCount : histogram)
+        {
+            largestBin = Math.max(largestBin, binCount);
+        }
+        for(int i = 0; i < histogram.length; i++)
+        {
+            double binStart = statistics.getHistogramMin() + i * statistics.getHistogramBinWidth();
+            StringBuilder bar = new StringBuilder();
+            long barLength = Math.round((double) HISTOGRAM_BAR_LENGTH * histogram[i] / largestBin);
+            for(int j = 0; j < barLength; j++)
+            {
+                bar.append('█');
+            }
+            double binEnd = binStart + statistics.getHistogramBinWidth();
+            addStatisticsContent("   " + format(binStart) + " – " + format(binEnd) + ": " + histogram[i] + " " + bar);
+        }
+        
+        List<TA> tas = new ArrayList<TA>(statistics.getTASummaries().keySet());
+        Collections.sort(tas);
+        for(TA ta : tas)
+        {
+            PartStatistics.Summary taSummary = statistics.getTASummaries().get(ta);
+            addStatisticsContent(" • " + ta.getName() + ": " + taSummary.getCount() + " scored, mean "
+                    + format(taSummary.getMean()) + ", standard deviation " + format(taSummary.getStandardDeviation()));
+        }
+    }
+    
+    private void addStatisticsContent(String text)
+    {
+        _statisticsPanel.add(FormattedLabel.asContent(text).usePlainFont());
+    }
+    
+    private static String format(double value)
+    {
+        return String.format("%.2f", value);
+    }
+    
     private void showGradingStatusForGroups(String message, List<Group> groups)
     {
         if(!groups.isEmpty())
@@ -3,10 +3,14 @@ package cakehat.views.config;
 import cakehat.Allocator;
 import cakehat.database.DbPropertyValue;
 import cakehat.database.DbPropertyValue.DbPropertyKey;
+import cakehat.email.EmailOutbox;
 import cakehat.logging.ErrorReporter;
+import cakehat.services.TempSpaceManager;
+import cakehat.views.config.ValidationResult.ValidationState;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.EventQueue;
+import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -70,6 +74,24 @@ class DefaultsPanel extends JPanel
                             .getPropertyValue(DbPropertyKey.ATTACH_DIGITAL_HANDIN);
                     final DbPropertyValue<Boolean> attachHandinProp =
                             (attachHandinDb == null ? new DbPropertyValue<Boolean>(false) : attachHandinDb);
+                    DbPropertyValue<Boolean> prefetchHandinsDb = Allocator.getDatabase()
+                            .getPropertyValue(DbPropertyKey.PREFETCH_DIGITAL_HANDINS);
+                    final DbPropertyValue<Boolean> prefetchHandinsProp =
+                            (prefetchHandinsDb == null ? new DbPropertyValue<Boolean>(false) : prefetchHandinsDb);
+                    DbPropertyValue<Integer> quotaDb = Allocator.getDatabase()
+                            .getPropertyValue(DbPropertyKey.TEMP_SPACE_QUOTA_MB);
+                    final DbPropertyValue<Integer> quotaProp = (quotaDb == null ?
+                            new DbPropertyValue<Integer>((int) (TempSpaceManager.DEFAULT_QUOTA_BYTES / (1024 * 1024))) :
+                            quotaDb);
+                    DbPropertyValue<Integer> maxConnectionsDb = Allocator.getDatabase()
+                            .getPropertyValue(DbPropertyKey.EMAIL_MAX_CONNECTIONS);
+                    final DbPropertyValue<Integer> maxConnectionsProp = (maxConnectionsDb == null ?
+                            new DbPropertyValue<Integer>(EmailOutbox.DEFAULT_MAX_CONNECTIONS) : maxConnectionsDb);
+                    DbPropertyValue<Integer> messagesPerMinuteDb = Allocator.getDatabase()
+                            .getPropertyValue(DbPropertyKey.EMAIL_MESSAGES_PER_MINUTE);
+                    final DbPropertyValue<Integer> messagesPerMinuteProp = (messagesPerMinuteDb == null ?
+                            new DbPropertyValue<Integer>((int) (EmailOutbox.DEFAULT_MESSAGES_PER_SECOND * 60)) :
+                            messagesPerMinuteDb);
                     
                     EventQueue.invokeLater(new Runnable()
                     {
@@ -84,6 +106,30 @@ class DefaultsPanel extends JPanel
                                     "will still have the option of manually overriding this default.",
                                     DbPropertyKey.ATTACH_DIGITAL_HANDIN, attachHandinProp));
 
+                            _contentPanel.add(new DbBooleanPropertyValuePanel("Unarchive Digital Handins in Advance",
+                                    "If enabled, then while a TA has cakehat open the digital handins of the groups " +
+                                    "they are assigned to grade are unarchived in the background so that actions on " +
+                                    "them start immediately. Unarchiving pauses while the TA is running actions.",
+                                    DbPropertyKey.PREFETCH_DIGITAL_HANDINS, prefetchHandinsProp));
+
+                            _contentPanel.add(new DbIntegerPropertyValuePanel("Unarchived Digital Handins Disk Quota",
+                                    "The disk space each TA's unarchived digital handins may use. Once it is " +
+                                    "exceeded, the handins used least recently are deleted; they are unarchived " +
+                                    "again the next time they are needed. Takes effect the next time cakehat is " +
+                                    "started.", "MB", 1, DbPropertyKey.TEMP_SPACE_QUOTA_MB, quotaProp));
+
+                            _contentPanel.add(new DbIntegerPropertyValuePanel("Email Connections",
+                                    "The number of connections opened to the mail server when emailing grading, " +
+                                    "and therefore the number of emails sent at once. Takes effect the next time " +
+                                    "cakehat is started.", "connections", 1, DbPropertyKey.EMAIL_MAX_CONNECTIONS,
+                                    maxConnectionsProp));
+
+                            _contentPanel.add(new DbIntegerPropertyValuePanel("Email Rate",
+                                    "The most emails sent each minute when emailing grading, so that the mail " +
+                                    "server does not reject them for being sent too quickly. Takes effect the next " +
+                                    "time cakehat is started.", "emails per minute", 1,
+                                    DbPropertyKey.EMAIL_MESSAGES_PER_MINUTE, messagesPerMinuteProp));
+
                             //Force visual update to reflect these changes
                             _contentPanel.repaint();
                             _contentPanel.revalidate();
@@ -193,4 +239,109 @@ class DefaultsPanel extends JPanel
             });
         }
     }
+    
+    private class DbIntegerPropertyValuePanel extends PreferredHeightJPanel
+    {
+        DbIntegerPropertyValuePanel(String name, String description, String units, final int minValue,
+                final DbPropertyKey<Integer> key, final DbPropertyValue<Integer> value)
+        {
+            this.setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+            
+            //Descriptive text
+            JPanel descriptionPanel = new JPanel(new BorderLayout(0, 0));
+            descriptionPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            JLabel headerLabel = new JLabel(name);
+            headerLabel.setFont(new Font("Dialog", Font.BOLD, 16));
+            descriptionPanel.add(headerLabel, BorderLayout.NORTH);
+            
+            descriptionPanel.add(Box.createVerticalStrut(3), BorderLayout.CENTER);
+            
+            JLabel descriptionLabel = FormattedLabel.asContent(description).usePlainFont();
+            descriptionPanel.add(descriptionLabel, BorderLayout.SOUTH);
+            this.add(descriptionPanel);
+            
+            this.add(Box.createVerticalStrut(5));
+            
+            //Value
+            JPanel valuePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+            valuePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            final ValidatingTextField valueField = new ValidatingTextField()
+            {
+                @Override
+                protected String getDbValue()
+                {
+                    return Integer.toString(value.getValue());
+                }
+
+                @Override
+                protected ValidationResult validate(String text)
+                {
+                    ValidationResult result;
+                    try
+                    {
+                        if(Integer.parseInt(text) < minValue)
+                        {
+                            result = new ValidationResult(ValidationState.ERROR, "Must be at least " + minValue);
+                        }
+                        else
+                        {
+                            result = ValidationResult.NO_ISSUE;
+                        }
+                    }
+                    catch(NumberFormatException e)
+                    {
+                        result = new ValidationResult(ValidationState.ERROR, "Whole number not provided");
+                    }
+                    
+                    return result;
+                }
+
+                @Override
+                protected void applyChange(String newText)
+                {
+                    final int oldValue = value.getValue();
+                    final int newValue = Integer.parseInt(newText);
+                    final ValidatingTextField field = this;
+                    
+                    _worker.submit(WORKER_TAG, new DbRunnable(_worker, value)
+                    {
+                        @Override
+                        public void dbCall() throws SQLException
+                        {
+                            value.setValue(newValue);
+                            Allocator.getDatabase().putPropertyValue(key, value);
+                        }
+
+                        @Override
+                        public void onDbCallFailure()
+                        {
+                            value.setValue(oldValue);
+                            field.setTextToDbValue();
+                        }
+
+                        @Override
+                        public void onFinalFailureNow()
+                        {
+                            _worker.cancel(WORKER_TAG);
+                        }
+
+                        @Override
+                        public void onFinalFailureLater()
+                        {
+                            initialize();
+                        }
+                    });
+                }
+            };
+            valueField.setColumns(6);
+            valuePanel.add(valueField);
+            valuePanel.add(Box.createHorizontalStrut(5));
+            valuePanel.add(new JLabel(units));
+            this.add(valuePanel);
+            
+            //Vertical space
+            this.add(Box.createVerticalStrut(10));
+        }
+    }
 }
\ No newline at end of file
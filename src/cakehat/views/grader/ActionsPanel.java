@@ -2,6 +2,7 @@ package cakehat.views.grader;
 
 import cakehat.database.Group;
 import cakehat.assignment.Action;
+import cakehat.assignment.GradableEvent;
 import cakehat.assignment.Part;
 import cakehat.assignment.TaskException;
 import cakehat.logging.ErrorReporter;
@@ -31,6 +32,9 @@ class ActionsPanel extends JPanel
     private FormattedLabel _noActionsLabel;
     private final JPanel _nonHandinActionsPanel, _actionsSeparationPanel, _handinActionsPanel;
     
+    private Part _selectedPart;
+    private Set<Group> _selectedGroups;
+    
     ActionsPanel(GraderView graderView, PartAndGroupPanel partAndGroupPanel)
     {    
         _graderView = graderView;
@@ -91,8 +95,25 @@ class ActionsPanel extends JPanel
         this.notifySelectionChanged(partAndGroupPanel.getSelectedPart(), partAndGroupPanel.getSelectedGroups());
     }
     
+    /**
+     * Called when the digital handins of {@code gradableEvent} have changed. Re-evaluates which actions are enabled if
+     * the selected part belongs to {@code gradableEvent}.
+     * 
+     * @param gradableEvent 
+     */
+    void notifyHandinsChanged(GradableEvent gradableEvent)
+    {
+        if(_selectedPart != null && _selectedPart.getGradableEvent().equals(gradableEvent))
+        {
+            this.notifySelectionChanged(_selectedPart, _selectedGroups);
+        }
+    }
+    
     private void notifySelectionChanged(Part part, Set<Group> groups)
     {
+        _selectedPart = part;
+        _selectedGroups = groups;
+        
         _nonHandinActionsPanel.removeAll();
         _handinActionsPanel.removeAll();
         
@@ -162,6 +183,8 @@ class ActionsPanel extends JPanel
                 @Override
                 public void actionPerformed(ActionEvent ae)
                 {
+                    //Unarchiving in advance is paused until the action has completed
+                    _graderView.beginForegroundWork();
                     try
                     {
                         action.performTask(_graderView, groups);
@@ -173,6 +196,10 @@ class ActionsPanel extends JPanel
                             "Part: " + action.getPart().getFullDisplayName() + "\n" + 
                             "Groups: " + groups, ex);
                     }
+                    finally
+                    {
+                        _graderView.endForegroundWork();
+                    }
                 }
             });
         }
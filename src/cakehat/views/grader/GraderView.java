@@ -3,12 +3,22 @@ package cakehat.views.grader;
 import cakehat.Allocator;
 import cakehat.CakehatSession;
 import cakehat.CakehatSession.ConnectionType;
+import cakehat.assignment.GradableEvent;
+import cakehat.assignment.HandinDirectoryMonitor;
+import cakehat.assignment.HandinDirectoryMonitor.HandinListener;
+import cakehat.assignment.HandinPrefetcher;
+import cakehat.database.DataServices;
+import cakehat.database.DataServices.DataCacheListener;
+import cakehat.database.DbPropertyValue;
+import cakehat.database.DbPropertyValue.DbPropertyKey;
 import cakehat.database.Group;
+import cakehat.database.Student;
 import cakehat.assignment.Part;
 import cakehat.icon.CakehatIconLoader;
 import cakehat.logging.ErrorReporter;
 import cakehat.services.ServicesException;
 import cakehat.views.grader.PartAndGroupPanel.AssignedGradingStatus;
+import cakehat.views.shared.UnsentEmailPrompt;
 import cakehat.views.shared.gradingsheet.GradingSheetPanel;
 import cakehat.views.shared.gradingsheet.GradingSheetPanel.GradingSheetListener;
 import java.awt.BorderLayout;
@@ -20,6 +30,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.sql.SQLException;
 import java.util.Set;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -51,7 +62,9 @@ public class GraderView extends JFrame
             @Override
             public void run()
             {   
-                new GraderView().setVisible(true);
+                GraderView view = new GraderView();
+                view.setVisible(true);
+                UnsentEmailPrompt.show(view);
             }
         });
     }
@@ -59,9 +72,27 @@ public class GraderView extends JFrame
     private final JScrollPane _mainPane;
     private final PartAndGroupPanel _partAndGroupPanel;
     private final ActionsPanel _actionsPanel;
+    private final HandinDirectoryMonitor _handinMonitor;
+    private final HandinPrefetcher _handinPrefetcher;
     
     private GradingSheetPanel _currentlyDisplayedSheet;
     
+    private final DataCacheListener _dataCacheListener = new DataCacheListener()
+    {
+        @Override
+        public void dataCacheUpdated(Set<Student> students, final Set<Group> groups)
+        {
+            EventQueue.invokeLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    _partAndGroupPanel.notifyGroupsChanged(groups);
+                }
+            });
+        }
+    };
+    
     private GraderView()
     {
         //Frame title
@@ -74,6 +105,13 @@ public class GraderView extends JFrame
             @Override
             public void windowClosed(WindowEvent we)
             {
+                _handinMonitor.stop();
+                if(_handinPrefetcher != null)
+                {
+                    _handinPrefetcher.stop();
+                }
+                Allocator.getDataServices().stopCacheRefresher();
+                Allocator.getDataServices().removeDataCacheListener(_dataCacheListener);
                 saveDisplayedGradingSheet();
             }
         });
@@ -85,6 +123,36 @@ public class GraderView extends JFrame
         this.initUI();
         this.setJMenuBar(new GraderMenu(this));
         
+        //Keep groups up to date with changes made by other users without requiring a manual refresh
+        Allocator.getDataServices().addDataCacheListener(_dataCacheListener);
+        Allocator.getDataServices().startCacheRefresher(DataServices.DEFAULT_CACHE_REFRESH_INTERVAL_MILLIS);
+        
+        //Enable actions which require digital handins as soon as new handins are turned in
+        _handinMonitor = new HandinDirectoryMonitor(Allocator.getDataServices().getAssignments());
+        _handinMonitor.addHandinListener(new HandinListener()
+        {
+            @Override
+            public void handinsChanged(final GradableEvent gradableEvent)
+            {
+                EventQueue.invokeLater(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        _actionsPanel.notifyHandinsChanged(gradableEvent);
+                    }
+                });
+            }
+        });
+        _handinMonitor.start(HandinDirectoryMonitor.DEFAULT_INTERVAL_MILLIS);
+        
+        //If the course has opted in, unarchive the TA's assigned handins before they are needed
+        _handinPrefetcher = createHandinPrefetcher();
+        if(_handinPrefetcher != null)
+        {
+            _handinPrefetcher.start();
+        }
+        
         //Display
         this.setMinimumSize(new Dimension(879, 550));
         this.setPreferredSize(new Dimension(1024, 550));
@@ -93,6 +161,55 @@ public class GraderView extends JFrame
         this.setResizable(true);
     }
     
+    private static HandinPrefetcher createHandinPrefetcher()
+    {
+        HandinPrefetcher prefetcher = null;
+        try
+        {
+            DbPropertyValue<Boolean> prefetchProp = Allocator.getDatabase()
+                    .getPropertyValue(DbPropertyKey.PREFETCH_DIGITAL_HANDINS);
+            if(prefetchProp != null && prefetchProp.getValue())
+            {
+                prefetcher = new HandinPrefetcher(Allocator.getDataServices().getAssignedGroups(
+                        Allocator.getUserServices().getUser()));
+            }
+        }
+        catch(SQLException e)
+        {
+            ErrorReporter.report("Unable to determine whether to unarchive digital handins in advance", e);
+        }
+        catch(ServicesException e)
+        {
+            ErrorReporter.report("Unable to determine which digital handins to unarchive in advance", e);
+        }
+        
+        return prefetcher;
+    }
+    
+    /**
+     * Called when the user starts work that they will be waiting on, such as performing an action, so that unarchiving
+     * digital handins in advance does not slow it down. {@link #endForegroundWork()} must be called once the work has
+     * completed.
+     */
+    void beginForegroundWork()
+    {
+        if(_handinPrefetcher != null)
+        {
+            _handinPrefetcher.beginForegroundWork();
+        }
+    }
+
+    /**
+     * Called when work reported by {@link #beginForegroundWork()} has completed.
+     */
+    void endForegroundWork()
+    {
+        if(_handinPrefetcher != null)
+        {
+            _handinPrefetcher.endForegroundWork();
+        }
+    }
+    
     private void initUI()
     {
         //Visual setup
@@ -5,7 +5,7 @@ import cakehat.assignment.GradableEvent;
 import cakehat.database.Group;
 import cakehat.database.TA;
 import cakehat.assignment.Part;
-import cakehat.database.GroupGradingSheet;
+import cakehat.database.GroupGradingSheetTotal;
 import cakehat.database.Student;
 import cakehat.logging.ErrorReporter;
 import cakehat.services.ServicesException;
@@ -236,15 +236,14 @@ class PartAndGroupPanel extends JPanel
         try
         {
             TA user = Allocator.getUserServices().getUser();
-            SetMultimap<Part, Group> assignedGroups = Allocator.getDataServices().getAssignedGroups(user);
-            Map<Part, Map<Group, GroupGradingSheet>> gradingSheets = Allocator.getDataServices()
-                        .getGroupGradingSheets(assignedGroups);
+            Map<Part, Map<Group, GroupGradingSheetTotal>> totals = Allocator.getDataServices()
+                        .getAssignedGroupGradingSheetTotals(user);
             
-            for(Part part : gradingSheets.keySet())
+            for(Part part : totals.keySet())
             {
-                for(GroupGradingSheet gradingSheet : gradingSheets.get(part).values())
+                for(GroupGradingSheetTotal total : totals.get(part).values())
                 {
-                    _assignedGrading.put(part, new GroupStatus(gradingSheet));
+                    _assignedGrading.put(part, new GroupStatus(total));
                 }
             }
             
@@ -283,6 +282,24 @@ class PartAndGroupPanel extends JPanel
         }
     }
     
+    /**
+     * Called when the cached state of {@code groups} has changed, for instance because another user renamed a group or
+     * changed its members. Re-renders the group list if any of the groups are shown in it.
+     * 
+     * @param groups 
+     */
+    void notifyGroupsChanged(Set<Group> groups)
+    {
+        for(GroupStatus status : _assignedGrading.values())
+        {
+            if(groups.contains(status.getGroup()))
+            {
+                _groupList.refreshList();
+                break;
+            }
+        }
+    }
+    
     void notifyGradingSheetModified(Part part, Group group)
     {
         boolean refreshList = false;
@@ -338,11 +355,11 @@ class PartAndGroupPanel extends JPanel
         private boolean _submitted;
         private boolean _modified;
 
-        public GroupStatus(GroupGradingSheet gradingSheet)
+        public GroupStatus(GroupGradingSheetTotal total)
         {
-            _group = gradingSheet.getGroup();
-            _submitted = gradingSheet.isSubmitted();
-            _modified = _submitted || !gradingSheet.getComments().isEmpty() || !gradingSheet.getEarnedPoints().isEmpty();
+            _group = total.getGroup();
+            _submitted = total.isSubmitted();
+            _modified = total.isModified();
         }
 
         public Group getGroup()
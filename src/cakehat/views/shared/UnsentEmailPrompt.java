@@ -0,0 +1,55 @@
+package cakehat.views.shared;
+
+import cakehat.Allocator;
+import cakehat.email.DispatchOutboxTask;
+import cakehat.logging.ErrorReporter;
+import cakehat.services.ServicesException;
+import java.awt.Window;
+import support.ui.ModalDialog;
+import support.ui.ProgressDialog;
+
+/**
+ * Offers to send the emails left pending in the user's outbox by an earlier session of cakehat which is no longer
+ * running, because it exited or crashed part way through sending them. Emails held by a session that is still
+ * running, such as one the user has open on another machine, are left for that session to send.
+ */
+public class UnsentEmailPrompt
+{
+    private UnsentEmailPrompt() { }
+
+    /**
+     * If there are abandoned emails in the user's outbox, asks whether they should be sent or discarded and does so.
+     * Must be called on the UI thread.
+     *
+     * @param owner
+     */
+    public static void show(Window owner)
+    {
+        try
+        {
+            int pendingCount = Allocator.getEmailOutbox().getAbandonedCount();
+            if(pendingCount == 0)
+            {
+                return;
+            }
+
+            boolean send = ModalDialog.showConfirmation(owner, "Unsent Emails",
+                    pendingCount + " email(s) you previously sent with cakehat have not yet been sent.\n" +
+                    "Would you like to send them now?",
+                    "Send", "Discard");
+            if(send)
+            {
+                ProgressDialog.show(owner, owner, "Sending Unsent Emails", new DispatchOutboxTask(),
+                        ErrorReporter.getExceptionReporter());
+            }
+            else
+            {
+                Allocator.getEmailOutbox().cancel(null);
+            }
+        }
+        catch(ServicesException e)
+        {
+            ErrorReporter.report("Unable to check for unsent emails", e);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Window;
+import java.lang.reflect.InvocationTargetException;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
@@ -42,6 +43,9 @@ public class ProgressDialog extends JDialog
     private final JButton _cancelButton;
     private final JButton _closeButton;
     
+    //Whether the dialog is modal and closes itself once the task has finished
+    private final boolean _closeOnFinish;
+    
     /**
      * Constructs and displays a progress dialog for the provided {@code task}.
      * 
@@ -55,16 +59,59 @@ public class ProgressDialog extends JDialog
     public static void show(Window owner, Window positionRelativeTo, String title, LongRunningTask task,
             ExceptionReporter exceptionReporter)
     {
-        new ProgressDialog(owner, positionRelativeTo, title, task, exceptionReporter);
+        new ProgressDialog(owner, positionRelativeTo, title, task, exceptionReporter, false);
+    }
+    
+    /**
+     * Constructs and displays a modal progress dialog for the provided {@code task} and returns once the task has
+     * completed, been canceled, or failed; the dialog then closes itself. Closing the dialog cancels the task, in which
+     * case this method may return before the task has finished canceling. When called from the event dispatch thread
+     * events continue to be dispatched while the task runs, so the UI does not freeze.
+     * 
+     * @param owner the owner of this dialog, may be {@code null}
+     * @param positionRelativeTo the window this dialog will be positioned relative to, may be {@code null}
+     * @param title the title of this dialog
+     * @param task the task being displayed, do <strong>not</strong> call {@link LongRunningTask#start()} on it - that
+     * will be done by this dialog
+     * @param exceptionReporter exceptions encountered while running the task will be provided to this reporter
+     * @throws InterruptedException if called from a thread other than the event dispatch thread and that thread is
+     * interrupted while waiting
+     */
+    public static void showAndWait(final Window owner, final Window positionRelativeTo, final String title,
+            final LongRunningTask task, final ExceptionReporter exceptionReporter) throws InterruptedException
+    {
+        if(EventQueue.isDispatchThread())
+        {
+            new ProgressDialog(owner, positionRelativeTo, title, task, exceptionReporter, true);
+        }
+        else
+        {
+            try
+            {
+                EventQueue.invokeAndWait(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        new ProgressDialog(owner, positionRelativeTo, title, task, exceptionReporter, true);
+                    }
+                });
+            }
+            catch(InvocationTargetException e)
+            {
+                throw new RuntimeException("Unable to show progress dialog", e.getCause());
+            }
+        }
     }
     
     private ProgressDialog(Window owner, Window positionRelativeTo, String title, final LongRunningTask task,
-            ExceptionReporter exceptionReporter)
+            ExceptionReporter exceptionReporter, boolean closeOnFinish)
     {
         super(owner, title);
         
         //Initialize
         _exceptionReporter = exceptionReporter;
+        _closeOnFinish = closeOnFinish;
         _progressBar = new JProgressBar();
         _progressStatusPane = new JTextPane();
         _progressPad = Box.createVerticalStrut(5);
@@ -90,10 +137,21 @@ public class ProgressDialog extends JDialog
         this.setMinimumSize(this.getSize());
         this.setResizable(false);
         this.setLocationRelativeTo(positionRelativeTo);
-        this.setVisible(true);
-        
-        //Start the task
-        task.start();
+        if(_closeOnFinish)
+        {
+            //A modal dialog does not return from being made visible until it is closed, so the task is started first;
+            //the task's events are dispatched by the modal dialog's event loop
+            this.setModalityType(ModalityType.DOCUMENT_MODAL);
+            task.start();
+            this.setVisible(true);
+        }
+        else
+        {
+            this.setVisible(true);
+
+            //Start the task
+            task.start();
+        }
     }
     
     private void initUI(final LongRunningTask task)
@@ -250,6 +308,12 @@ public class ProgressDialog extends JDialog
                     @Override
                     public void run()
                     {
+                        if(_closeOnFinish)
+                        {
+                            ProgressDialog.this.dispose();
+                            return;
+                        }
+                        
                         _stepDescriptionLabel.setVisible(false);
                         _progressPad.setVisible(false);
                         _progressBar.setVisible(false);
@@ -276,6 +340,12 @@ public class ProgressDialog extends JDialog
                     @Override
                     public void run()
                     {
+                        if(_closeOnFinish)
+                        {
+                            ProgressDialog.this.dispose();
+                            return;
+                        }
+                        
                         _stepDescriptionLabel.setVisible(false);
                         _progressPad.setVisible(false);
                         _progressBar.setVisible(false);
@@ -298,6 +368,13 @@ public class ProgressDialog extends JDialog
                     @Override
                     public void run()
                     {
+                        if(_closeOnFinish)
+                        {
+                            ProgressDialog.this.dispose();
+                            _exceptionReporter.report(msg == null ? "Long running task failed" : msg, cause);
+                            return;
+                        }
+                        
                         _stepDescriptionLabel.setVisible(false);
                         _progressPad.setVisible(false);
                         _progressBar.setVisible(false);
@@ -103,6 +103,9 @@ public interface ArchiveUtilities
      * Creates a read-only {@link DataSource} which is backed by an archived version of {@code src}. The format of
      * the archive is specified by {@code format}. Only the files and directories contained {@code src} that are
      * accepted by the {@code filter} are included in the archive.
+     * <br/><br/>
+     * The archive is written to a temporary file rather than held in memory, so memory use does not depend on the size
+     * of {@code src}. Call {@link TempFileDataSource#delete()} once the data source is no longer needed.
      * 
      * @param archiveName
      * @param format
@@ -111,6 +114,6 @@ public interface ArchiveUtilities
      * @return
      * @throws IOException 
      */
-    public DataSource createArchiveDataSource(String archiveName, ArchiveFormat format, File src, FileFilter filter)
-            throws IOException;
+    public TempFileDataSource createArchiveDataSource(String archiveName, ArchiveFormat format, File src,
+            FileFilter filter) throws IOException;
 }
\ No newline at end of file
@@ -1,18 +1,20 @@
 package support.utils;
 
 import com.google.common.collect.ImmutableSet;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashSet;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
-import javax.activation.DataSource;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
@@ -22,11 +24,25 @@ import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.compress.utils.IOUtils;
 import support.utils.posix.FilePermission;
 
 public class ArchiveUtilitiesImpl implements ArchiveUtilities
 {
+    private static final Set<FilePermission> READ_WRITE_PERMISSIONS = ImmutableSet.of(
+        FilePermission.OWNER_READ, FilePermission.OWNER_WRITE,
+        FilePermission.GROUP_READ, FilePermission.GROUP_WRITE);
+
+    private static final Set<FilePermission> READ_WRITE_EXECUTE_PERMISSIONS = ImmutableSet.of(
+        FilePermission.OWNER_READ, FilePermission.OWNER_WRITE, FilePermission.OWNER_EXECUTE,
+        FilePermission.GROUP_READ, FilePermission.GROUP_WRITE, FilePermission.GROUP_EXECUTE);
+
+    private static final Set<FilePermission> READ_WRITE_EXECUTE_SETGID_PERMISSIONS = ImmutableSet.of(
+        FilePermission.OWNER_READ, FilePermission.OWNER_WRITE, FilePermission.OWNER_EXECUTE,
+        FilePermission.GROUP_READ, FilePermission.GROUP_WRITE, FilePermission.GROUP_EXECUTE,
+        FilePermission.SET_GROUP_ID_UPON_EXECUTION);
+
     private final FileSystemUtilities _fileSystemUtils;
     
     public ArchiveUtilitiesImpl(FileSystemUtilities fileSystemUtilities)
@@ -55,12 +71,32 @@ public class ArchiveUtilitiesImpl implements ArchiveUtilities
     {
         ImmutableSet.Builder<ArchiveEntry> contents = ImmutableSet.builder();
         
-        ArchiveInputStream in = getArchiveInputStream(archive);
-        for(ArchiveEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+        //The central directory of a zip lists every entry, so none of the entries need to be decompressed
+        if(ArchiveFormat.ZIP.matchesFormat(archive))
+        {
+            ZipFile zipFile = new ZipFile(archive);
+            try
+            {
+                for(Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+                        entries.hasMoreElements();)
+                {
+                    contents.add(entries.nextElement());
+                }
+            }
+            finally
+            {
+                zipFile.close();
+            }
+        }
+        else
         {
-            contents.add(entry);
+            ArchiveInputStream in = getArchiveInputStream(archive);
+            for(ArchiveEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+            {
+                contents.add(entry);
+            }
+            in.close();
         }
-        in.close();
 
         return contents.build();
     }
@@ -70,48 +106,63 @@ public class ArchiveUtilitiesImpl implements ArchiveUtilities
             throws ArchiveExtractionException
     {
         ImmutableSet.Builder<File> filesCreated = ImmutableSet.builder();
+
+        //The group and permissions of the extracted files and directories are changed once all of them have been
+        //created so that the group only needs to be looked up once
+        Map<File, Set<FilePermission>> permissions = new LinkedHashMap<File, Set<FilePermission>>();
         
         try
         {
-            ArchiveInputStream in = getArchiveInputStream(archive);
-            for(ArchiveEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+            if(ArchiveFormat.ZIP.matchesFormat(archive))
             {
-                File file = new File(dstDir, entry.getName());
-                if(filter.accept(file))
+                //Use the central directory to find the accepted entries so that only those entries are decompressed;
+                //reading the archive as a stream would decompress every entry preceding the last accepted one
+                ZipFile zipFile = new ZipFile(archive);
+                try
                 {
-                    if(entry.isDirectory())
-                    {
-                        //Create directory (and parent directories) as necessary
-                        filesCreated.addAll(_fileSystemUtils.makeDirectory(file, groupOwner));
-                    }
-                    else
+                    for(Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+                            entries.hasMoreElements();)
                     {
-                        //Create parent directories of file if necessary
-                        filesCreated.addAll(_fileSystemUtils.makeDirectory(file.getParentFile(), groupOwner));
-
-                        //Create file
-                        OutputStream out = new FileOutputStream(file);
-                        IOUtils.copy(in, out);
-                        filesCreated.add(file);
-                        out.close();
-                        
-                        //Set permissions
-                        _fileSystemUtils.changeGroup(file, groupOwner);
-                        Set<FilePermission> permissions = new HashSet<FilePermission>();
-                        permissions.add(FilePermission.OWNER_READ);
-                        permissions.add(FilePermission.OWNER_WRITE);
-                        permissions.add(FilePermission.GROUP_READ);
-                        permissions.add(FilePermission.GROUP_WRITE);
-                        if(file.canExecute())
+                        ZipArchiveEntry entry = entries.nextElement();
+                        File file = new File(dstDir, entry.getName());
+                        if(filter.accept(file))
                         {
-                            permissions.add(FilePermission.OWNER_EXECUTE);
-                            permissions.add(FilePermission.GROUP_EXECUTE);
+                            InputStream in = entry.isDirectory() ? null : zipFile.getInputStream(entry);
+                            try
+                            {
+                                extractEntry(in, entry, file, groupOwner, filesCreated, permissions);
+                            }
+                            finally
+                            {
+                                if(in != null)
+                                {
+                                    in.close();
+                                }
+                            }
                         }
-                        _fileSystemUtils.chmod(file, permissions);
                     }
                 }
+                finally
+                {
+                    zipFile.close();
+                }
             }
-            in.close();
+            else
+            {
+                //The data of an entry that is not accepted is skipped over when the next entry is read
+                ArchiveInputStream in = getArchiveInputStream(archive);
+                for(ArchiveEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+                {
+                    File file = new File(dstDir, entry.getName());
+                    if(filter.accept(file))
+                    {
+                        extractEntry(in, entry, file, groupOwner, filesCreated, permissions);
+                    }
+                }
+                in.close();
+            }
+
+            _fileSystemUtils.changeGroupAndChmod(permissions, groupOwner);
         }
         catch(IOException e)
         {
@@ -138,6 +189,43 @@ public class ArchiveUtilitiesImpl implements ArchiveUtilities
         
         return filesCreated.build();
     }
+    
+    /**
+     * Creates {@code file} for archive {@code entry}, reading the contents of the file from {@code in}. Any files and
+     * directories created are added to {@code filesCreated} and the permissions they are to be given are added to
+     * {@code permissions}; their group and permissions are not changed so that they can be changed along with all of
+     * the other extracted files.
+     * 
+     * @param in the stream of the entry's data, not used if the entry is a directory
+     * @param entry
+     * @param file
+     * @param groupOwner
+     * @param filesCreated
+     * @param permissions
+     * @throws IOException 
+     */
+    private void extractEntry(InputStream in, ArchiveEntry entry, File file, String groupOwner,
+            ImmutableSet.Builder<File> filesCreated, Map<File, Set<FilePermission>> permissions) throws IOException
+    {
+        //Create directory, or the parent directories of the file, as necessary
+        File dir = entry.isDirectory() ? file : file.getParentFile();
+        for(File dirCreated : _fileSystemUtils.makeDirectory(dir, groupOwner, false))
+        {
+            filesCreated.add(dirCreated);
+            permissions.put(dirCreated, READ_WRITE_EXECUTE_SETGID_PERMISSIONS);
+        }
+
+        if(!entry.isDirectory())
+        {
+            //Create file
+            OutputStream out = new FileOutputStream(file);
+            IOUtils.copy(in, out);
+            filesCreated.add(file);
+            out.close();
+
+            permissions.put(file, file.canExecute() ? READ_WRITE_EXECUTE_PERMISSIONS : READ_WRITE_PERMISSIONS);
+        }
+    }
 
     private ArchiveInputStream getArchiveInputStream(File archive) throws IOException
     {
@@ -167,34 +255,40 @@ public class ArchiveUtilitiesImpl implements ArchiveUtilities
     \******************************************************************************************************************/
     
     @Override
-    public DataSource createArchiveDataSource(String archiveName, ArchiveFormat format, File src, FileFilter filter)
-            throws IOException
+    public TempFileDataSource createArchiveDataSource(String archiveName, ArchiveFormat format, File src,
+            FileFilter filter) throws IOException
     {
         String name = archiveName + "." + format.getDefaultFileExtension();
         
-        return new ByteArrayDataSource(name, format.getMimeType(),
-                createArchiveAsByteArray(archiveName, format, src, filter));
-    }
-    
-    private byte[] createArchiveAsByteArray(String rootEntryName, ArchiveFormat format, File src, FileFilter filter)
-            throws IOException
-    {
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        
-        ArchiveOutputStream archiveStream = getArchiveOutputStream(format, byteStream);
+        //Write the archive to disk instead of memory so that large archives do not exhaust the heap
+        File archive = _fileSystemUtils.createTempFile("archive", "." + format.getDefaultFileExtension());
+        boolean created = false;
         try
         {
-            for(File file : _fileSystemUtils.getFiles(src, filter))
+            OutputStream fileStream = new BufferedOutputStream(new FileOutputStream(archive));
+            ArchiveOutputStream archiveStream = getArchiveOutputStream(format, fileStream);
+            try
+            {
+                for(File file : _fileSystemUtils.getFiles(src, filter))
+                {
+                    writeToArchiveOutputStream(format, archiveStream, file, src, archiveName);
+                }
+            }
+            finally
             {
-                writeToArchiveOutputStream(format, archiveStream, file, src, rootEntryName);
+                archiveStream.close();
             }
+            created = true;
         }
         finally
         {
-            archiveStream.close();
+            if(!created)
+            {
+                archive.delete();
+            }
         }
         
-        return byteStream.toByteArray();
+        return new TempFileDataSource(name, format.getMimeType(), archive);
     }
     
     private ArchiveOutputStream getArchiveOutputStream(ArchiveFormat format, OutputStream backingStream)
@@ -255,8 +349,14 @@ public class ArchiveUtilitiesImpl implements ArchiveUtilities
         if(src.isFile())
         {
             FileInputStream in = new FileInputStream(src);
-            IOUtils.copy(in, archiveStream);
-            in.close();
+            try
+            {
+                IOUtils.copy(in, archiveStream);
+            }
+            finally
+            {
+                in.close();
+            }
         }
         
         //Close the archive entry
@@ -6,6 +6,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import support.utils.posix.FilePermission;
 import support.utils.posix.NativeException;
@@ -150,6 +151,24 @@ public interface FileSystemUtilities
      */
     public Set<File> makeDirectory(File dir, String groupOwner) throws DirectoryCreationException;
 
+    /**
+     * Creates a directory as {@link #makeDirectory(File, String)} does, except that if {@code setPermissions} is
+     * {@code false} the group owner and permissions of the directories created are left unchanged. This allows them to
+     * be changed later along with other files by {@link #changeGroupAndChmod(Map, String)}. A directory that is created
+     * concurrently by another thread or process is not considered created by this call, so it is left for its creator
+     * to set the group owner and permissions of.
+     *
+     * @param dir the directory to create
+     * @param groupOwner the group owner of the directory, not used if {@code setPermissions} is {@code false}
+     * @param setPermissions whether to set the group owner and permissions of the directories created
+     *
+     * @return directories created
+     * @throws DirectoryCreationException if unable to create any of the necessary directories in order for {@code dir}
+     * to exist
+     */
+    public Set<File> makeDirectory(File dir, String groupOwner, boolean setPermissions)
+            throws DirectoryCreationException;
+
     /**
      * Reads a text file into a String.
      *
@@ -181,6 +200,22 @@ public interface FileSystemUtilities
      */
     public void changeGroup(File file, String group) throws IOException;
 
+    /**
+     * Changes the group and permissions of each of the files and directories in {@code permissions}. This is
+     * equivalent to calling {@link #changeGroup(File, String)} and {@link #chmod(File, Set)} on each of them, but looks
+     * up the group only once and so is considerably faster for large numbers of files. If changing the files together
+     * fails, each file is then changed on its own with {@link #changeGroup(File, String)} and {@link #chmod(File, Set)}
+     * so that a failure which does not recur, such as a failed group lookup, does not fail the whole change, and a
+     * failure which does recur identifies the file. The user calling this method must own all of the files and
+     * directories.
+     *
+     * @param permissions the permissions of each file or directory
+     * @param group the name of the group, such as cs000ta
+     *
+     * @throws IOException if the group or permissions of any of the files cannot be changed
+     */
+    public void changeGroupAndChmod(Map<File, Set<FilePermission>> permissions, String group) throws IOException;
+
     /**
      * Returns all files that satisfy the filter. If {@code file} is a directory, the directory will be recursively
      * searched to find all accepting files.
@@ -16,7 +16,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import support.utils.posix.NativeFunctions;
@@ -549,15 +551,9 @@ public class FileSystemUtilitiesImpl implements FileSystemUtilities
     @Override
     public void chmod(File file, Set<FilePermission> permissions) throws IOException
     {
-        int permissionsValue = 0;
-        for(FilePermission permission : permissions)
-        {
-            permissionsValue += permission.getValue();
-        }
-        
         try
         {
-            NATIVE_FUNCTIONS.chmod(file, permissionsValue);
+            NATIVE_FUNCTIONS.chmod(file, getMode(permissions));
         }
         catch(NativeException ex)
         {
@@ -581,6 +577,43 @@ public class FileSystemUtilitiesImpl implements FileSystemUtilities
                     "Group Owner: "  + group, ex);
         }
     }
+
+    @Override
+    public void changeGroupAndChmod(Map<File, Set<FilePermission>> permissions, String group) throws IOException
+    {
+        Map<File, Integer> modes = new LinkedHashMap<File, Integer>();
+        for(Map.Entry<File, Set<FilePermission>> entry : permissions.entrySet())
+        {
+            modes.put(entry.getKey(), getMode(entry.getValue()));
+        }
+
+        try
+        {
+            NATIVE_FUNCTIONS.changeGroupAndChmod(modes, group);
+        }
+        catch(NativeException ex)
+        {
+            //Change each file on its own; changing the group and permissions of a file again has no effect, so files
+            //changed before the failure may be changed again. The group is changed first so that changing it cannot
+            //clear a set group id permission.
+            for(Map.Entry<File, Set<FilePermission>> entry : permissions.entrySet())
+            {
+                this.changeGroup(entry.getKey(), group);
+                this.chmod(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static int getMode(Set<FilePermission> permissions)
+    {
+        int mode = 0;
+        for(FilePermission permission : permissions)
+        {
+            mode += permission.getValue();
+        }
+
+        return mode;
+    }
             
     /******************************************************************************************************************\
     |*                                                Filtering                                                        |  
@@ -659,25 +692,38 @@ public class FileSystemUtilitiesImpl implements FileSystemUtilities
     
     @Override
     public Set<File> makeDirectory(File dir, String groupOwner) throws DirectoryCreationException
+    {
+        return this.makeDirectory(dir, groupOwner, true);
+    }
+
+    @Override
+    public Set<File> makeDirectory(File dir, String groupOwner, boolean setPermissions)
+            throws DirectoryCreationException
     {
         ImmutableSet.Builder<File> dirsCreated = ImmutableSet.builder();
 
         if(dir != null && !dir.exists())
         {
-            dirsCreated.addAll(this.makeDirectory(dir.getParentFile(), groupOwner));
+            dirsCreated.addAll(this.makeDirectory(dir.getParentFile(), groupOwner, setPermissions));
 
             try
             {
-                if(!dir.mkdir())
+                if(dir.mkdir())
+                {
+                    dirsCreated.add(dir);
+
+                    if(setPermissions)
+                    {
+                        this.chmod(dir, READ_WRITE_EXECUTE_SETGID_PERMISSIONS);
+                        this.changeGroup(dir, groupOwner);
+                    }
+                }
+                //The directory may have been created concurrently, in which case it is left for its creator
+                else if(!dir.isDirectory())
                 {
                     //Throw an exception so that the cleanup login in the catch clause is run
                     throw new IOException("Unable to create directory: " + dir.getAbsolutePath());
                 }
-            
-                dirsCreated.add(dir);
-
-                this.chmod(dir, READ_WRITE_EXECUTE_SETGID_PERMISSIONS);
-                this.changeGroup(dir, groupOwner);
             }
             catch(IOException cause)
             {
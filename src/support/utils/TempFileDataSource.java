@@ -0,0 +1,70 @@
+package support.utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.activation.DataSource;
+
+/**
+ * Constructs a data source backed by a temporary file. Unlike {@link ByteArrayDataSource} the data is not held in
+ * memory, so it may be arbitrarily large. The data may be read any number of times via {@link #getInputStream()}, each
+ * time streaming it from the file; attempts to write via {@link #getOutputStream()} will fail. Once the data is no
+ * longer needed {@link #delete()} should be called to free up the disk space, otherwise the file will only be deleted
+ * when the JVM exits.
+ */
+public class TempFileDataSource implements DataSource
+{
+    private final String _name;
+    private final String _type;
+    private final File _file;
+
+    /**
+     * Constructs the data source.
+     *
+     * @param name the name of this data, will become the file name
+     * @param type the MIME type of the data contained in {@code file}
+     * @param file the data, this data source takes ownership of it - do <strong>not</strong> modify or delete this file
+     * after constructing this object
+     */
+    public TempFileDataSource(String name, String type, File file)
+    {
+        _name = name;
+        _type = type;
+        _file = file;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        return new BufferedInputStream(new FileInputStream(_file));
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        throw new IOException("Writing to this data source is not supported");
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return _type;
+    }
+
+    @Override
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * Deletes the file backing this data source. The data may not be read after this method has been called.
+     */
+    public void delete()
+    {
+        _file.delete();
+    }
+}
@@ -3,6 +3,7 @@ package support.utils.posix;
 import com.google.common.collect.ImmutableSet;
 import com.sun.jna.Platform;
 import java.io.File;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -74,7 +75,31 @@ public class NativeFunctions
 
         _wrapper.chown(file.getAbsolutePath(), uid, gid);
     }
-    
+
+    /**
+     * Changes the group and then the permissions of each file or directory in {@code modes}. The group is looked up
+     * once for all of the files, rather than once per file as {@link #changeGroup(File, String)} does. The group is
+     * changed before the permissions so that changing the group cannot clear a set group id permission. In order to
+     * change the group and permissions, the user invoking this method must be the owner of the files.
+     *
+     * @param modes the <b>octal</b> form permission of each file or directory, such as 0770 or 0666
+     * @param group
+     *
+     * @throws NativeException thrown if the group does not exist or the group or permissions of a file cannot be
+     * changed; files after the one that failed are not changed
+     */
+    public void changeGroupAndChmod(Map<File, Integer> modes, String group) throws NativeException
+    {
+        int gid = _wrapper.getgrnam(group).getGID();
+
+        for(Map.Entry<File, Integer> entry : modes.entrySet())
+        {
+            String filepath = entry.getKey().getAbsolutePath();
+            _wrapper.chown(filepath, -1, gid);
+            _wrapper.chmod(filepath, entry.getValue());
+        }
+    }
+
     /**
      * Returns the name of the group with group id {@code gid}.
      * 
@@ -0,0 +1,103 @@
+package cakehat.assignment;
+
+import cakehat.assignment.DeadlineInfo.DeadlineResolution;
+import cakehat.assignment.DeadlineInfo.DeadlineResolutions;
+import java.util.Random;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+/**
+ * Compares resolving the deadlines of a synthetic 2,000 group gradable event one group at a time with
+ * {@link DeadlineInfo#apply(DateTime, DateTime, Boolean)} and all at once with
+ * {@link DeadlineInfo#apply(DateTime[], DateTime[], boolean[])}. Not run as part of the test suite; run {@link #main}
+ * directly.
+ */
+public class DeadlineInfoBenchmark
+{
+    private static final int NUM_GROUPS = 2000;
+    private static final int ITERATIONS = 1000;
+
+    private static final DateTime EARLY_DATE = new DateTime(2011, 12, 5, 23, 59, 59);
+    private static final DateTime ON_TIME_DATE = new DateTime(2011, 12, 7, 23, 59, 59);
+    private static final DateTime LATE_DATE = new DateTime(2011, 12, 9, 23, 59, 59);
+
+    public static void main(String[] args)
+    {
+        //Occurrence dates spread from before the early date to after the late date; one in ten groups has not handed
+        //in, and one in twenty has an extension
+        Random random = new Random(0);
+        DateTime[] occurrenceDates = new DateTime[NUM_GROUPS];
+        DateTime[] onTimeExtensions = new DateTime[NUM_GROUPS];
+        boolean[] shiftDates = new boolean[NUM_GROUPS];
+        for(int i = 0; i < NUM_GROUPS; i++)
+        {
+            if(random.nextInt(10) != 0)
+            {
+                occurrenceDates[i] = EARLY_DATE.minusDays(1).plusMinutes(random.nextInt(6 * 24 * 60));
+            }
+            if(random.nextInt(20) == 0)
+            {
+                onTimeExtensions[i] = ON_TIME_DATE.plusDays(1 + random.nextInt(3));
+                shiftDates[i] = random.nextBoolean();
+            }
+        }
+
+        benchmark("fixed", DeadlineInfo.newFixedDeadlineInfo(EARLY_DATE, 5D, ON_TIME_DATE, LATE_DATE, -10D),
+                occurrenceDates, onTimeExtensions, shiftDates);
+        benchmark("variable", DeadlineInfo.newVariableDeadlineInfo(ON_TIME_DATE, Period.hours(6), -2D, LATE_DATE),
+                occurrenceDates, onTimeExtensions, shiftDates);
+    }
+
+    private static void benchmark(String name, DeadlineInfo info,
+            DateTime[] occurrenceDates, DateTime[] onTimeExtensions, boolean[] shiftDates)
+    {
+        double[] totals = new double[2];
+
+        //Warm up both before timing either
+        resolveEach(info, occurrenceDates, onTimeExtensions, shiftDates);
+        resolveAll(info, occurrenceDates, onTimeExtensions, shiftDates);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < ITERATIONS; i++)
+        {
+            totals[0] = resolveEach(info, occurrenceDates, onTimeExtensions, shiftDates);
+        }
+        double eachMillis = (System.nanoTime() - start) / 1E6 / ITERATIONS;
+
+        start = System.nanoTime();
+        for(int i = 0; i < ITERATIONS; i++)
+        {
+            totals[1] = resolveAll(info, occurrenceDates, onTimeExtensions, shiftDates);
+        }
+        double allMillis = (System.nanoTime() - start) / 1E6 / ITERATIONS;
+
+        System.out.println(String.format("%-8s %d groups: %.3f ms one at a time, %.3f ms at once " +
+                "(totals %.1f, %.1f)", name, occurrenceDates.length, eachMillis, allMillis, totals[0], totals[1]));
+    }
+
+    private static double resolveEach(DeadlineInfo info,
+            DateTime[] occurrenceDates, DateTime[] onTimeExtensions, boolean[] shiftDates)
+    {
+        double total = 0;
+        for(int i = 0; i < occurrenceDates.length; i++)
+        {
+            DeadlineResolution resolution = info.apply(occurrenceDates[i], onTimeExtensions[i], shiftDates[i]);
+            total += resolution.getPenaltyOrBonus(100D);
+        }
+
+        return total;
+    }
+
+    private static double resolveAll(DeadlineInfo info,
+            DateTime[] occurrenceDates, DateTime[] onTimeExtensions, boolean[] shiftDates)
+    {
+        double total = 0;
+        DeadlineResolutions resolutions = info.apply(occurrenceDates, onTimeExtensions, shiftDates);
+        for(int i = 0; i < resolutions.size(); i++)
+        {
+            total += resolutions.getPenaltyOrBonus(i, 100D);
+        }
+
+        return total;
+    }
+}
@@ -3,13 +3,15 @@ package cakehat.assignment;
 import org.joda.time.DateTime;
 import cakehat.assignment.DeadlineInfo.TimeStatus;
 import cakehat.assignment.DeadlineInfo.DeadlineResolution;
+import cakehat.assignment.DeadlineInfo.DeadlineResolutions;
 import org.joda.time.Period;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
 /**
  * Tests for {@link DeadlineInfo}'s
- * {@link DeadlineInfo#apply(org.joda.time.DateTime, org.joda.time.DateTime, java.lang.Boolean)} method.
+ * {@link DeadlineInfo#apply(org.joda.time.DateTime, org.joda.time.DateTime, java.lang.Boolean)} and
+ * {@link DeadlineInfo#apply(org.joda.time.DateTime[], org.joda.time.DateTime[], boolean[])} methods.
  *
  * @author jak2
  */
@@ -1081,4 +1083,70 @@ public class DeadlineInfoTest
         assertEquals(TimeStatus.NC_LATE, resolution.getTimeStatus());
         assertEquals(-EARNED, resolution.getPenaltyOrBonus(EARNED), 0D);
     }
-}
\ No newline at end of file
+    
+    /******************************************************************************************************************\
+    |*                                              Bulk Resolution                                                   *|
+    \******************************************************************************************************************/
+    
+    @Test
+    public void testFixedDeadline_Bulk()
+    {
+        DeadlineInfo info = DeadlineInfo.newFixedDeadlineInfo(EARLY_DATE, EARLY_BONUS, ON_TIME_DATE,
+                LATE_DATE, LATE_PENALTY);
+        
+        DateTime[] occurrenceDates = new DateTime[] { EARLY_DATE, ON_TIME_DATE, LATE_DATE, LATE_DATE.plusHours(1),
+            null, LATE_DATE.plusHours(1), LATE_DATE.plus(EXTENSION_SHIFT), ON_TIME_DATE.plusHours(1) };
+        DateTime[] onTimeExtensions = new DateTime[] { null, null, null, null,
+            null, EXTENSION_DATE, EXTENSION_DATE, EXTENSION_DATE };
+        boolean[] shiftDates = new boolean[] { false, false, false, false, false, false, true, false };
+        
+        DeadlineResolutions resolutions = info.apply(occurrenceDates, onTimeExtensions, shiftDates);
+        assertEquals(8, resolutions.size());
+        
+        TimeStatus[] expectedStatuses = new TimeStatus[] { TimeStatus.EARLY, TimeStatus.ON_TIME, TimeStatus.LATE,
+            TimeStatus.NC_LATE, TimeStatus.UNKNOWN, TimeStatus.ON_TIME, TimeStatus.LATE, TimeStatus.ON_TIME };
+        double[] expectedPenaltiesOrBonuses = new double[] { EARLY_BONUS, 0, LATE_PENALTY, -EARNED, 0, 0, LATE_PENALTY,
+            0 };
+        for(int i = 0; i < resolutions.size(); i++)
+        {
+            assertEquals(expectedStatuses[i], resolutions.getTimeStatus(i));
+            assertEquals(expectedPenaltiesOrBonuses[i], resolutions.getPenaltyOrBonus(i, EARNED), 0D);
+            
+            //Each resolution matches resolving its occurrence date on its own
+            DeadlineResolution resolution = info.apply(occurrenceDates[i], onTimeExtensions[i], shiftDates[i]);
+            assertEquals(resolution.getTimeStatus(), resolutions.get(i).getTimeStatus());
+            assertEquals(resolution.getPenaltyOrBonus(EARNED), resolutions.get(i).getPenaltyOrBonus(EARNED), 0D);
+        }
+    }
+    
+    @Test
+    public void testVariableDeadline_Bulk()
+    {
+        DeadlineInfo info = DeadlineInfo.newVariableDeadlineInfo(ON_TIME_DATE, LATE_PERIOD, LATE_PENALTY, LATE_DATE);
+        
+        DeadlineResolutions resolutions = info.apply(
+                new DateTime[] { ON_TIME_DATE, ON_TIME_DATE.plusHours(1), ON_TIME_DATE.plus(LATE_PERIOD).plusHours(1),
+                    LATE_DATE.plusHours(1), ON_TIME_DATE.plus(EXTENSION_SHIFT).plus(LATE_PERIOD) },
+                new DateTime[] { null, null, null, null, EXTENSION_DATE },
+                new boolean[] { false, false, false, false, true });
+        
+        assertEquals(TimeStatus.ON_TIME, resolutions.getTimeStatus(0));
+        assertEquals(0D, resolutions.getPenaltyOrBonus(0, EARNED), 0D);
+        assertEquals(TimeStatus.LATE, resolutions.getTimeStatus(1));
+        assertEquals(LATE_PENALTY, resolutions.getPenaltyOrBonus(1, EARNED), 0D);
+        assertEquals(TimeStatus.LATE, resolutions.getTimeStatus(2));
+        assertEquals(2*LATE_PENALTY, resolutions.getPenaltyOrBonus(2, EARNED), 0D);
+        assertEquals(TimeStatus.NC_LATE, resolutions.getTimeStatus(3));
+        assertEquals(0D, resolutions.getPenaltyOrBonus(3, null), 0D);
+        assertEquals(TimeStatus.LATE, resolutions.getTimeStatus(4));
+        assertEquals(LATE_PENALTY, resolutions.getPenaltyOrBonus(4, EARNED), 0D);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testBulk_MismatchedLengths()
+    {
+        DeadlineInfo info = DeadlineInfo.newFixedDeadlineInfo(null, null, ON_TIME_DATE, null, null);
+        
+        info.apply(new DateTime[] { ON_TIME_DATE }, new DateTime[0], new boolean[0]);
+    }
+}
@@ -0,0 +1,204 @@
+package cakehat.assignment;
+
+import cakehat.Allocator;
+import cakehat.database.Group;
+import cakehat.database.Student;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.easymock.EasyMock.*;
+
+/**
+ * Tests for the digital handin lookup and caching of {@link GradableEvent}.
+ */
+public class GradableEventTest
+{
+    private File _handinDir;
+    private GradableEvent _gradableEvent;
+
+    @Before
+    public void setup() throws IOException
+    {
+        _handinDir = Allocator.getFileSystemUtilities().createTempFile("handins", "");
+        _handinDir.delete();
+        _handinDir.mkdir();
+        _handinDir.deleteOnExit();
+
+        _gradableEvent = new GradableEvent(1, "Handin", 1, _handinDir, DeadlineInfo.newNoDeadlineInfo(),
+                Collections.<Part>emptyList());
+    }
+
+    @Test
+    public void testGetDigitalHandin_NoHandin() throws IOException
+    {
+        createHandin("jak2.tar", 1000);
+
+        assertNull(_gradableEvent.getDigitalHandin(createGroup("hdrosen", "hdrosen")));
+    }
+
+    @Test
+    public void testGetDigitalHandin_MostRecentOfMembersAndGroupName() throws IOException
+    {
+        createHandin("jak2.tar", 1000);
+        File newest = createHandin("the.team.zip", 3000);
+        createHandin("hdrosen.tar.gz", 2000);
+        createHandin("jeldridg.zip", 4000);
+
+        assertEquals(newest, _gradableEvent.getDigitalHandin(createGroup("the.team", "jak2", "hdrosen")));
+    }
+
+    @Test
+    public void testGetDigitalHandin_NameMustBeFollowedByPeriod() throws IOException
+    {
+        createHandin("jak2x.tar", 1000);
+
+        assertNull(_gradableEvent.getDigitalHandin(createGroup("jak2", "jak2")));
+    }
+
+    @Test
+    public void testGetDigitalHandins() throws IOException
+    {
+        File jak2Handin = createHandin("jak2.tar", 1000);
+        File hdrosenHandin = createHandin("hdrosen.zip", 2000);
+        createHandin("hdrosen.tar", 1000);
+
+        Group jak2 = createGroup("jak2", "jak2");
+        Group hdrosen = createGroup("hdrosen", "hdrosen");
+        Group jeldridg = createGroup("jeldridg", "jeldridg");
+
+        assertEquals(ImmutableMap.of(jak2, jak2Handin, hdrosen, hdrosenHandin),
+                _gradableEvent.getDigitalHandins(ImmutableSet.of(jak2, hdrosen, jeldridg)));
+    }
+
+    @Test
+    public void testRefreshDigitalHandinCache_NotLoaded() throws IOException
+    {
+        createHandin("jak2.tar", 1000);
+
+        assertFalse(_gradableEvent.refreshDigitalHandinCache());
+    }
+
+    @Test
+    public void testRefreshDigitalHandinCache_NewAndReplacedHandins() throws IOException
+    {
+        File jak2Handin = createHandin("jak2.tar", 1000);
+        _handinDir.setLastModified(1000);
+        Group jak2 = createGroup("jak2", "jak2");
+        Group hdrosen = createGroup("hdrosen", "hdrosen");
+
+        assertNull(_gradableEvent.getDigitalHandin(hdrosen));
+        assertFalse(_gradableEvent.refreshDigitalHandinCache());
+
+        //new handin
+        File hdrosenHandin = createHandin("hdrosen.tar", 2000);
+        assertTrue(_gradableEvent.refreshDigitalHandinCache());
+        assertEquals(hdrosenHandin, _gradableEvent.getDigitalHandin(hdrosen));
+
+        //newer handin in a different format
+        File newJak2Handin = createHandin("jak2.zip", 3000);
+        _handinDir.setLastModified(3000);
+        assertTrue(_gradableEvent.refreshDigitalHandinCache());
+        assertEquals(newJak2Handin, _gradableEvent.getDigitalHandin(jak2));
+
+        //removed handin
+        newJak2Handin.delete();
+        assertTrue(_gradableEvent.refreshDigitalHandinCache());
+        assertEquals(jak2Handin, _gradableEvent.getDigitalHandin(jak2));
+    }
+
+    @Test
+    public void testRefreshDigitalHandinCache_HandinOverwrittenInPlace() throws IOException
+    {
+        File jak2Handin = createHandin("jak2.tar", 1000);
+        File jak2Zip = createHandin("jak2.zip", 2000);
+        _handinDir.setLastModified(1000);
+        Group jak2 = createGroup("jak2", "jak2");
+
+        assertEquals(jak2Zip, _gradableEvent.getDigitalHandin(jak2));
+        long version = _gradableEvent.getDigitalHandinCacheVersion();
+
+        //resubmitting over the existing file does not change the directory's modification time
+        Files.write("resubmitted".getBytes("UTF-8"), jak2Handin);
+        jak2Handin.setLastModified(3000);
+        _handinDir.setLastModified(1000);
+        assertTrue(_gradableEvent.refreshDigitalHandinCache());
+        assertEquals(jak2Handin, _gradableEvent.getDigitalHandin(jak2));
+        assertTrue(_gradableEvent.getDigitalHandinCacheVersion() != version);
+
+        assertFalse(_gradableEvent.refreshDigitalHandinCache());
+    }
+
+    @Test
+    public void testRefreshDigitalHandinCache_Subdirectories() throws IOException
+    {
+        File section = new File(_handinDir, "section1");
+        section.mkdir();
+        section.deleteOnExit();
+        _handinDir.setLastModified(1000);
+        Group jak2 = createGroup("jak2", "jak2");
+
+        assertNull(_gradableEvent.getDigitalHandin(jak2));
+        assertFalse(_gradableEvent.refreshDigitalHandinCache());
+
+        //new handin in a subdirectory
+        File jak2Handin = createHandin("section1/jak2.tar", 1000);
+        _handinDir.setLastModified(1000);
+        assertTrue(_gradableEvent.refreshDigitalHandinCache());
+        assertEquals(jak2Handin, _gradableEvent.getDigitalHandin(jak2));
+
+        //removed subdirectory
+        jak2Handin.delete();
+        section.delete();
+        assertTrue(_gradableEvent.refreshDigitalHandinCache());
+        assertNull(_gradableEvent.getDigitalHandin(jak2));
+        assertTrue(_gradableEvent.getDigitalHandinNames().isEmpty());
+    }
+
+    private File createHandin(String name, long lastModified) throws IOException
+    {
+        File handin = new File(_handinDir, name);
+        handin.createNewFile();
+        handin.setLastModified(lastModified);
+        handin.deleteOnExit();
+
+        return handin;
+    }
+
+    private static Group createGroup(String name, String... memberLogins)
+    {
+        ImmutableList.Builder<Student> membersBuilder = ImmutableList.builder();
+        for(String login : memberLogins)
+        {
+            Student student = createMock(Student.class);
+            expect(student.getLogin()).andReturn(login).anyTimes();
+            replay(student);
+            membersBuilder.add(student);
+        }
+        final List<Student> members = membersBuilder.build();
+
+        Group group = createMock(Group.class);
+        expect(group.getName()).andReturn(name).anyTimes();
+        expect(group.iterator()).andAnswer(new IAnswer<Iterator<Student>>()
+        {
+            @Override
+            public Iterator<Student> answer()
+            {
+                return members.iterator();
+            }
+        }).anyTimes();
+        replay(group);
+
+        return group;
+    }
+}
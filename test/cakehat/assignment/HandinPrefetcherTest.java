@@ -0,0 +1,195 @@
+package cakehat.assignment;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.database.Group;
+import cakehat.services.CatalogedHandin;
+import cakehat.services.HandinCatalog;
+import cakehat.services.PathServices;
+import cakehat.services.TempSpaceManager;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.easymock.EasyMock.*;
+
+/**
+ * Tests for {@link HandinPrefetcher}.
+ */
+public class HandinPrefetcherTest
+{
+    private File _unarchiveRoot;
+    private PathServices _pathServices;
+    private HandinCatalog _handinCatalog;
+
+    @Before
+    public void setup() throws IOException
+    {
+        _unarchiveRoot = Allocator.getFileSystemUtilities().createTempFile("unarchive", "");
+        _unarchiveRoot.delete();
+        _unarchiveRoot.mkdir();
+        _unarchiveRoot.deleteOnExit();
+
+        _pathServices = createMock(PathServices.class);
+        _handinCatalog = createMock(HandinCatalog.class);
+        new Allocator.Customizer()
+                .setPathServices(new SingletonAllocation<PathServices>()
+                {
+                    @Override
+                    public PathServices allocate() { return _pathServices; }
+                })
+                .setHandinCatalog(new SingletonAllocation<HandinCatalog>()
+                {
+                    @Override
+                    public HandinCatalog allocate() { return _handinCatalog; }
+                })
+                .customize();
+    }
+
+    @Test
+    public void testPrefetchesHandinsNotYetUnarchivedOnceForegroundWorkEnds() throws Exception
+    {
+        Group jak2 = createGroup("jak2");
+        Group hdrosen = createGroup("hdrosen");
+        Group jeldridg = createGroup("jeldridg");
+
+        //hdrosen has already been unarchived and jeldridg has no handin
+        File unarchivedDir = new File(_unarchiveRoot, "hdrosen");
+        unarchivedDir.mkdir();
+        unarchivedDir.deleteOnExit();
+        File jak2Handin = Allocator.getFileSystemUtilities().createTempFile("jak2", ".tar");
+
+        GradableEvent gradableEvent = createMock(GradableEvent.class);
+        expect(gradableEvent.hasDigitalHandins()).andReturn(true).anyTimes();
+        expect(gradableEvent.getDigitalHandins(ImmutableSet.of(jak2, jeldridg)))
+                .andReturn(ImmutableMap.of(jak2, jak2Handin));
+        replay(gradableEvent);
+
+        CatalogedHandin catalogedHandin = createMock(CatalogedHandin.class);
+        expect(catalogedHandin.getContents()).andReturn(ImmutableList.<ArchiveEntry>of()).anyTimes();
+        replay(catalogedHandin);
+        expect(_handinCatalog.getCatalogedHandins(ImmutableSet.of(jak2Handin)))
+                .andReturn(ImmutableMap.of(jak2Handin, catalogedHandin));
+        replay(_handinCatalog);
+
+        Part part = createMock(Part.class);
+        expect(part.getGradableEvent()).andReturn(gradableEvent).anyTimes();
+        for(Group group : ImmutableList.of(jak2, hdrosen, jeldridg))
+        {
+            expect(_pathServices.getUnarchiveHandinDir(part, group))
+                    .andReturn(new File(_unarchiveRoot, group.getName())).anyTimes();
+        }
+        replay(_pathServices);
+
+        final CountDownLatch prefetched = new CountDownLatch(1);
+        part.prefetchHandin(eq(jak2), eq(jak2Handin), EasyMock.<Collection<ArchiveEntry>>anyObject());
+        expectLastCall().andAnswer(new IAnswer<Void>()
+        {
+            @Override
+            public Void answer()
+            {
+                prefetched.countDown();
+
+                return null;
+            }
+        });
+        replay(part);
+
+        HandinPrefetcher prefetcher = new HandinPrefetcher(ImmutableSetMultimap.of(part, jak2, part, hdrosen, part,
+                jeldridg));
+        prefetcher.beginForegroundWork();
+        prefetcher.start();
+
+        //Nothing is unarchived while foreground work is in progress, however long it takes
+        assertFalse(prefetched.await(500, TimeUnit.MILLISECONDS));
+        prefetcher.endForegroundWork();
+
+        assertTrue(prefetched.await(10, TimeUnit.SECONDS));
+        prefetcher.stop();
+        verify(part);
+    }
+
+    @Test
+    public void testStopsPrefetchingOnceQuotaIsUsed() throws Exception
+    {
+        Group jak2 = createGroup("jak2");
+        Group hdrosen = createGroup("hdrosen");
+        File jak2Handin = Allocator.getFileSystemUtilities().createTempFile("jak2", ".tar");
+        File hdrosenHandin = Allocator.getFileSystemUtilities().createTempFile("hdrosen", ".tar");
+
+        GradableEvent gradableEvent = createMock(GradableEvent.class);
+        expect(gradableEvent.hasDigitalHandins()).andReturn(true).anyTimes();
+        expect(gradableEvent.getDigitalHandins(ImmutableSet.of(jak2, hdrosen)))
+                .andReturn(ImmutableMap.of(jak2, jak2Handin, hdrosen, hdrosenHandin));
+        replay(gradableEvent);
+
+        CatalogedHandin catalogedHandin = createMock(CatalogedHandin.class);
+        expect(catalogedHandin.getContents()).andReturn(ImmutableList.<ArchiveEntry>of()).anyTimes();
+        replay(catalogedHandin);
+        expect(_handinCatalog.getCatalogedHandins(ImmutableSet.of(jak2Handin, hdrosenHandin)))
+                .andReturn(ImmutableMap.of(jak2Handin, catalogedHandin, hdrosenHandin, catalogedHandin));
+        replay(_handinCatalog);
+
+        Part part = createMock(Part.class);
+        expect(part.getGradableEvent()).andReturn(gradableEvent).anyTimes();
+        for(Group group : ImmutableList.of(jak2, hdrosen))
+        {
+            expect(_pathServices.getUnarchiveHandinDir(part, group))
+                    .andReturn(new File(_unarchiveRoot, group.getName())).anyTimes();
+        }
+        replay(_pathServices);
+
+        //Only one of the handins is unarchived, after which the quota is used
+        part.prefetchHandin(anyObject(Group.class), anyObject(File.class),
+                EasyMock.<Collection<ArchiveEntry>>anyObject());
+        replay(part);
+
+        final TempSpaceManager tempSpaceManager = createMock(TempSpaceManager.class);
+        expect(tempSpaceManager.getQuota()).andReturn(100L).anyTimes();
+        expect(tempSpaceManager.getUsage()).andReturn(0L).times(2);
+        expect(tempSpaceManager.getUsage()).andReturn(100L).anyTimes();
+        replay(tempSpaceManager);
+        new Allocator.Customizer()
+                .setPathServices(new SingletonAllocation<PathServices>()
+                {
+                    @Override
+                    public PathServices allocate() { return _pathServices; }
+                })
+                .setHandinCatalog(new SingletonAllocation<HandinCatalog>()
+                {
+                    @Override
+                    public HandinCatalog allocate() { return _handinCatalog; }
+                })
+                .setTempSpaceManager(new SingletonAllocation<TempSpaceManager>()
+                {
+                    @Override
+                    public TempSpaceManager allocate() { return tempSpaceManager; }
+                })
+                .customize();
+
+        new HandinPrefetcher(ImmutableSetMultimap.of(part, jak2, part, hdrosen)).prefetch();
+        verify(part);
+    }
+
+    private static Group createGroup(String name)
+    {
+        Group group = createMock(Group.class);
+        expect(group.getName()).andReturn(name).anyTimes();
+        expect(group.compareTo(anyObject(Group.class))).andReturn(0).anyTimes();
+        replay(group);
+
+        return group;
+    }
+}
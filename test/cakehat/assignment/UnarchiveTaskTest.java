@@ -0,0 +1,232 @@
+package cakehat.assignment;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.database.Group;
+import cakehat.services.CatalogedHandin;
+import cakehat.services.HandinCatalog;
+import cakehat.services.PathServices;
+import cakehat.services.ServicesException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.easymock.EasyMock.*;
+
+/**
+ * Tests for {@link UnarchiveTask}.
+ */
+public class UnarchiveTaskTest
+{
+    private File _unarchiveRoot;
+    private PathServices _pathServices;
+    private HandinCatalog _handinCatalog;
+
+    @Before
+    public void setup() throws IOException
+    {
+        _unarchiveRoot = Allocator.getFileSystemUtilities().createTempFile("unarchive", "");
+        _unarchiveRoot.delete();
+
+        _pathServices = createMock(PathServices.class);
+        _handinCatalog = createMock(HandinCatalog.class);
+        new Allocator.Customizer()
+                .setPathServices(new SingletonAllocation<PathServices>()
+                {
+                    @Override
+                    public PathServices allocate() { return _pathServices; }
+                })
+                .setHandinCatalog(new SingletonAllocation<HandinCatalog>()
+                {
+                    @Override
+                    public HandinCatalog allocate() { return _handinCatalog; }
+                })
+                .customize();
+    }
+
+    @Test
+    public void testExtractsConcurrentlyAndIsolatesFailures() throws Exception
+    {
+        final Group jak2 = createMock(Group.class);
+        Group hdrosen = createMock(Group.class);
+        Group jeldridg = createMock(Group.class);
+        expect(jak2.getName()).andReturn("jak2").anyTimes();
+        expect(hdrosen.getName()).andReturn("hdrosen").anyTimes();
+        expect(jeldridg.getName()).andReturn("jeldridg").anyTimes();
+        replay(jak2, hdrosen, jeldridg);
+        Set<Group> groups = ImmutableSet.of(jak2, hdrosen, jeldridg);
+
+        File jak2Handin = createHandin("jak2.tar");
+        File hdrosenHandin = createHandin("hdrosen.tar");
+        File jeldridgHandin = createHandin("jeldridg.tar");
+
+        GradableEvent gradableEvent = createMock(GradableEvent.class);
+        expect(gradableEvent.getDigitalHandins(groups)).andReturn(ImmutableMap.of(jak2, jak2Handin,
+                hdrosen, hdrosenHandin, jeldridg, jeldridgHandin));
+        replay(gradableEvent);
+
+        CatalogedHandin catalogedHandin = createMock(CatalogedHandin.class);
+        expect(catalogedHandin.getContents()).andReturn(ImmutableList.<ArchiveEntry>of()).anyTimes();
+        replay(catalogedHandin);
+        expect(_handinCatalog.getCatalogedHandin(jak2Handin)).andReturn(catalogedHandin);
+        expect(_handinCatalog.getCatalogedHandin(hdrosenHandin)).andReturn(catalogedHandin);
+        expect(_handinCatalog.getCatalogedHandin(jeldridgHandin)).andReturn(catalogedHandin);
+        replay(_handinCatalog);
+
+        Part part = createMock(Part.class);
+        expect(part.getId()).andReturn(1).anyTimes();
+        expect(part.getFullDisplayName()).andReturn("Asgn - Handin - Part").anyTimes();
+        expect(part.getGradableEvent()).andReturn(gradableEvent).anyTimes();
+        for(Group group : groups)
+        {
+            expect(_pathServices.getUnarchiveHandinDir(part, group))
+                    .andReturn(new File(_unarchiveRoot, group.getName())).anyTimes();
+        }
+        replay(_pathServices);
+
+        //jak2 and hdrosen only finish once both have started, so they must be extracted at the same time
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        IAnswer<String> awaitBothStarted = new IAnswer<String>()
+        {
+            @Override
+            public String answer() throws Throwable
+            {
+                bothStarted.countDown();
+                if(!bothStarted.await(10, TimeUnit.SECONDS))
+                {
+                    throw new IOException("Handins were not extracted concurrently");
+                }
+
+                return (getCurrentArguments()[0] == jak2 ? "README.txt" : null);
+            }
+        };
+        expect(part.extractHandin(eq(jak2), eq(jak2Handin), EasyMock.<Collection<ArchiveEntry>>anyObject()))
+                .andAnswer(awaitBothStarted);
+        expect(part.extractHandin(eq(hdrosen), eq(hdrosenHandin), EasyMock.<Collection<ArchiveEntry>>anyObject()))
+                .andAnswer(awaitBothStarted);
+        expect(part.extractHandin(eq(jeldridg), eq(jeldridgHandin), EasyMock.<Collection<ArchiveEntry>>anyObject()))
+                .andThrow(new IOException("corrupt archive"));
+        //Calls to a thread safe mock are serialized, which would prevent the extractions from overlapping
+        makeThreadSafe(part, false);
+        replay(part);
+
+        UnarchiveTask task = new UnarchiveTask(part, groups, 2);
+        task.start();
+        task.awaitCompletion();
+
+        assertNull(task.getTaskFailure());
+        Map<Group, IOException> failures = task.getFailures();
+        assertEquals(ImmutableSet.of(jeldridg), failures.keySet());
+        assertEquals("corrupt archive", failures.get(jeldridg).getMessage());
+        assertEquals(ImmutableSet.of(jak2), task.getMissingContents().keySet());
+        assertTrue(task.isDone());
+        verify(part);
+        verify(_handinCatalog);
+    }
+
+    @Test
+    public void testUncatalogableHandinIsAFailureOfItsGroupOnly() throws Exception
+    {
+        Group jak2 = createMock(Group.class);
+        Group hdrosen = createMock(Group.class);
+        expect(jak2.getName()).andReturn("jak2").anyTimes();
+        expect(hdrosen.getName()).andReturn("hdrosen").anyTimes();
+        replay(jak2, hdrosen);
+        Set<Group> groups = ImmutableSet.of(jak2, hdrosen);
+
+        File jak2Handin = createHandin("jak2.tar");
+        File hdrosenHandin = createHandin("hdrosen.tar");
+
+        GradableEvent gradableEvent = createMock(GradableEvent.class);
+        expect(gradableEvent.getDigitalHandins(groups)).andReturn(ImmutableMap.of(jak2, jak2Handin,
+                hdrosen, hdrosenHandin));
+        replay(gradableEvent);
+
+        CatalogedHandin catalogedHandin = createMock(CatalogedHandin.class);
+        expect(catalogedHandin.getContents()).andReturn(ImmutableList.<ArchiveEntry>of()).anyTimes();
+        replay(catalogedHandin);
+        ServicesException catalogFailure = new ServicesException("unreadable archive");
+        expect(_handinCatalog.getCatalogedHandin(jak2Handin)).andThrow(catalogFailure);
+        expect(_handinCatalog.getCatalogedHandin(hdrosenHandin)).andReturn(catalogedHandin);
+        replay(_handinCatalog);
+
+        Part part = createMock(Part.class);
+        expect(part.getId()).andReturn(1).anyTimes();
+        expect(part.getFullDisplayName()).andReturn("Asgn - Handin - Part").anyTimes();
+        expect(part.getGradableEvent()).andReturn(gradableEvent).anyTimes();
+        for(Group group : groups)
+        {
+            expect(_pathServices.getUnarchiveHandinDir(part, group))
+                    .andReturn(new File(_unarchiveRoot, group.getName())).anyTimes();
+        }
+        replay(_pathServices);
+        expect(part.extractHandin(eq(hdrosen), eq(hdrosenHandin), EasyMock.<Collection<ArchiveEntry>>anyObject()))
+                .andReturn(null);
+        replay(part);
+
+        UnarchiveTask task = new UnarchiveTask(part, groups, 2);
+        task.start();
+        task.awaitCompletion();
+
+        assertNull(task.getTaskFailure());
+        Map<Group, IOException> failures = task.getFailures();
+        assertEquals(ImmutableSet.of(jak2), failures.keySet());
+        assertSame(catalogFailure, failures.get(jak2).getCause());
+        verify(part);
+        verify(_handinCatalog);
+    }
+
+    @Test
+    public void testAlreadyUnarchivedHandinsAreNotExtracted() throws Exception
+    {
+        Group jak2 = createMock(Group.class);
+        expect(jak2.getName()).andReturn("jak2").anyTimes();
+        replay(jak2);
+
+        GradableEvent gradableEvent = createMock(GradableEvent.class);
+        expect(gradableEvent.getDigitalHandins(ImmutableSet.<Group>of())).andReturn(ImmutableMap.<Group, File>of());
+        replay(gradableEvent);
+
+        replay(_handinCatalog);
+
+        Part part = createMock(Part.class);
+        expect(part.getId()).andReturn(1).anyTimes();
+        expect(part.getGradableEvent()).andReturn(gradableEvent).anyTimes();
+        File unarchiveDir = new File(_unarchiveRoot, "jak2");
+        unarchiveDir.mkdirs();
+        expect(_pathServices.getUnarchiveHandinDir(part, jak2)).andReturn(unarchiveDir).anyTimes();
+        expect(part.removePrefetchedMissingContents(jak2)).andReturn("README.txt");
+        replay(_pathServices);
+        replay(part);
+
+        UnarchiveTask task = new UnarchiveTask(part, ImmutableSet.of(jak2), 2);
+        task.start();
+        task.awaitCompletion();
+
+        assertNull(task.getTaskFailure());
+        assertTrue(task.getFailures().isEmpty());
+        assertEquals(ImmutableMap.of(jak2, "README.txt"), task.getMissingContents());
+        verify(part);
+
+        unarchiveDir.delete();
+        _unarchiveRoot.delete();
+    }
+
+    private File createHandin(String name) throws IOException
+    {
+        return Allocator.getFileSystemUtilities().createTempFile(name, "");
+    }
+}
@@ -6,6 +6,7 @@ import cakehat.assignment.Assignment;
 import cakehat.Allocator;
 import cakehat.Allocator.SingletonAllocation;
 import java.io.IOException;
+import org.junit.After;
 import org.junit.Before;
 import cakehat.assignment.DeadlineInfo;
 import cakehat.services.ServicesException;
@@ -38,6 +39,12 @@ public class DataServicesDeadlineInfoTest
         new Allocator.Customizer().setDatabase(dbioAlloc).customize();
     }
     
+    @After
+    public void tearDown()
+    {
+        _database.close();
+    }
+
     @Test
     public void testGetDeadlineInfoForFixedDeadline() throws SQLException, ServicesException
     {
@@ -24,6 +24,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -140,6 +143,11 @@ public class DataServicesTest {
         }
     }
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testSetGetGradableEventOccurrences() throws ServicesException, SQLException
     {
@@ -234,6 +242,25 @@ public class DataServicesTest {
         this.assertDbStudentCollectionEqual(ImmutableSet.of(dbstudent1, dbstudent2), students);
     }
     
+    @Test
+    public void testUpdateDataCacheAfterReset() throws SQLException, ServicesException {
+        DbStudent dbstudent1 = new DbStudent("login1", "first1", "last1", "email1");
+        DbStudent dbstudent2 = new DbStudent("login2", "first2", "last2", "email2");
+        _database.putStudents(ImmutableSet.of(dbstudent1, dbstudent2));
+        _dataServices.updateDataCache();
+        
+        //after the reset the change sequence passes the one the cache was updated to
+        _database.resetDatabase();
+        DbStudent dbstudent3 = new DbStudent("login3", "first3", "last3", "email3");
+        DbStudent dbstudent4 = new DbStudent("login4", "first4", "last4", "email4");
+        DbStudent dbstudent5 = new DbStudent("login5", "first5", "last5", "email5");
+        _database.putStudents(ImmutableSet.of(dbstudent3, dbstudent4, dbstudent5));
+        _dataServices.updateDataCache();
+        
+        this.assertDbStudentCollectionEqual(ImmutableSet.of(dbstudent3, dbstudent4, dbstudent5),
+                                            _dataServices.getStudents());
+    }
+    
     @Test
     public void testGetStudentFromLogin() throws SQLException, ServicesException {
         DbStudent dbstudent1 = new DbStudent("login1", "first1", "last1", "email1");
@@ -553,6 +580,91 @@ public class DataServicesTest {
         this.assertGroupCollectionEqual(ImmutableSet.of(dbGroup1, dbGroup2), groups);
     }
     
+    @Test
+    public void testUpdateDataCacheAppliesChangesMadeDirectlyToDatabase() throws SQLException, ServicesException {
+        DbStudent dbStudent1 = new DbStudent("sLogin1", "sFirst1", "sLast1", "sEmail1");
+        DbStudent dbStudent2 = new DbStudent("sLogin2", "sFirst2", "sLast2", "sEmail2");
+        _database.putStudents(ImmutableSet.of(dbStudent1, dbStudent2));
+        _dataServices.updateDataCache();
+        
+        Student student1 = _dataServices.getStudentFromLogin("sLogin1");
+        Student student2 = _dataServices.getStudentFromLogin("sLogin2");
+        DbGroup dbGroup1 = new DbGroup(_asgnA, "group1", ImmutableSet.of(student1));
+        DbGroup dbGroup2 = new DbGroup(_asgnA, "group2", ImmutableSet.of(student2));
+        _database.putGroups(ImmutableSet.of(dbGroup1, dbGroup2));
+        _dataServices.updateDataCache();
+        Group group1 = _dataServices.getGroup(dbGroup1.getId());
+        
+        //as if made by another cakehat instance: move student2 into group1, remove group2 and disable student1
+        dbGroup1.setName("renamed");
+        dbGroup1.addMember(student2);
+        _database.removeGroups(ImmutableSet.of(dbGroup2));
+        _database.putGroups(ImmutableSet.of(dbGroup1));
+        _database.setStudentsAreEnabled(ImmutableMap.of(student1.getId(), false));
+        _dataServices.updateDataCache();
+        
+        assertSame(group1, _dataServices.getGroup(_asgnA, student2));
+        assertEquals("renamed", group1.getName());
+        assertEquals(ImmutableSet.of(student1, student2), group1.getMembers());
+        assertEquals(ImmutableSet.of(group1), _dataServices.getGroups(_asgnA));
+        assertFalse(_dataServices.getEnabledStudents().contains(student1));
+        
+        //nothing has changed, so nothing should
+        _dataServices.updateDataCache();
+        assertSame(group1, _dataServices.getGroup(_asgnA, student1));
+    }
+    
+    @Test
+    public void testUpdateDataCacheNotifiesListenersOfChanges() throws SQLException, ServicesException {
+        DbStudent dbStudent1 = new DbStudent("sLogin1", "sFirst1", "sLast1", "sEmail1");
+        _database.putStudents(ImmutableSet.of(dbStudent1));
+        _dataServices.updateDataCache();
+        Student student1 = _dataServices.getStudentFromLogin("sLogin1");
+        
+        final List<Set<Student>> notifiedStudents = new ArrayList<Set<Student>>();
+        final List<Set<Group>> notifiedGroups = new ArrayList<Set<Group>>();
+        _dataServices.addDataCacheListener(new DataServices.DataCacheListener() {
+            @Override
+            public void dataCacheUpdated(Set<Student> students, Set<Group> groups) {
+                notifiedStudents.add(students);
+                notifiedGroups.add(groups);
+            }
+        });
+        
+        DbGroup dbGroup1 = new DbGroup(_asgnA, "group1", ImmutableSet.of(student1));
+        _database.putGroups(ImmutableSet.of(dbGroup1));
+        _dataServices.updateDataCache();
+        
+        assertEquals(1, notifiedGroups.size());
+        assertEquals(ImmutableSet.of(_dataServices.getGroup(dbGroup1.getId())), notifiedGroups.get(0));
+        assertEquals(ImmutableSet.of(), notifiedStudents.get(0));
+        
+        //nothing has changed, so listeners should not be notified
+        _dataServices.updateDataCache();
+        assertEquals(1, notifiedGroups.size());
+    }
+    
+    @Test
+    public void testCacheRefresherAppliesChangesMadeDirectlyToDatabase() throws Exception {
+        final CountDownLatch updated = new CountDownLatch(1);
+        _dataServices.addDataCacheListener(new DataServices.DataCacheListener() {
+            @Override
+            public void dataCacheUpdated(Set<Student> students, Set<Group> groups) {
+                updated.countDown();
+            }
+        });
+        
+        _dataServices.startCacheRefresher(50);
+        try {
+            _database.putStudents(ImmutableSet.of(new DbStudent("sLogin1", "sFirst1", "sLast1", "sEmail1")));
+            
+            assertTrue(updated.await(5, TimeUnit.SECONDS));
+            assertNotNull(_dataServices.getStudentFromLogin("sLogin1"));
+        } finally {
+            _dataServices.stopCacheRefresher();
+        }
+    }
+    
     @Test
     public void testGetGroup() throws SQLException, ServicesException {
         DbStudent dbStudent1 = new DbStudent("sLogin1", "sFirst1", "sLast1", "sEmail1");
@@ -1149,6 +1261,36 @@ public class DataServicesTest {
 
     }
     
+    @Test
+    public void testStreamStudentGradesHandlesPagesOutsideTransactions() throws ServicesException {
+        Set<DbStudent> dbStudents = new HashSet<DbStudent>();
+        for (int i = 0; i <= DataServicesImpl.STREAM_PAGE_SIZE; i++) {
+            dbStudents.add(new DbStudent("login" + i, "first" + i, "last" + i, "email" + i));
+        }
+        _dataServices.addStudents(dbStudents);
+        List<Student> students = new ArrayList<Student>(_dataServices.getStudents());
+        
+        final DbPropertyValue<String> account = new DbPropertyValue<String>("cakehat@cs.brown.edu");
+        final List<Student> handled = new ArrayList<Student>();
+        _dataServices.streamStudentGrades(students, new DataServices.StudentGradesHandler() {
+            @Override
+            public boolean handle(StudentGrades grades) throws ServicesException {
+                handled.add(grades.getStudent());
+                
+                //the write could not be committed while the transaction that read the grades was still open
+                try {
+                    _database.putPropertyValue(DbPropertyValue.DbPropertyKey.EMAIL_ACCOUNT, account);
+                } catch (SQLException ex) {
+                    throw new ServicesException(ex);
+                }
+                
+                return true;
+            }
+        });
+        
+        assertEquals(students, handled);
+    }
+    
     private void assertTAEqual(DbTA dbTA, TA ta) {
         assertEquals((int)dbTA.getId(), (int)ta.getId());
         assertEquals(dbTA.getLogin(), ta.getLogin());
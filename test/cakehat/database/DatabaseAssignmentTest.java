@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Set;
 import static org.junit.Assert.*;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -147,6 +148,11 @@ public class DatabaseAssignmentTest {
         }
     };
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testGetAssignmentsWithNoAssignments() throws SQLException {
         Set<DbAssignment> assignments = _database.getAssignments();
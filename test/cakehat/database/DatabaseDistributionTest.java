@@ -4,6 +4,7 @@ import com.google.common.collect.SetMultimap;
 import java.util.HashMap;
 import java.util.Map;
 import com.google.common.collect.ImmutableSet;
+import org.junit.After;
 import org.junit.Test;
 import cakehat.Allocator;
 import cakehat.Allocator.SingletonAllocation;
@@ -56,6 +57,11 @@ public class DatabaseDistributionTest {
         _database.putGroups(ImmutableSet.of(_group));
     }
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testSetGetDistributionForOneGroupForOnePart() throws SQLException {
         Map<Integer, SetMultimap<Integer, Integer>> dist = new HashMap<Integer, SetMultimap<Integer, Integer>>();
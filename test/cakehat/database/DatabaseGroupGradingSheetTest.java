@@ -1,5 +1,6 @@
 package cakehat.database;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import cakehat.database.DbGroupGradingSheet.GroupSectionCommentsRecord;
@@ -7,11 +8,17 @@ import cakehat.database.DatabaseTestHelpers.EqualityAsserter;
 import cakehat.Allocator;
 import cakehat.Allocator.SingletonAllocation;
 import cakehat.database.DbGroupGradingSheet.GroupSubsectionEarnedRecord;
+import cakehat.services.ServicesException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import org.joda.time.DateTime;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -123,6 +130,11 @@ public class DatabaseGroupGradingSheetTest {
         }
     };
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testGetGroupGradingSheetsWhenNoneInDb() throws SQLException {        
         Map<Integer, Map<Integer, DbGroupGradingSheet>> groupGradingSheets =
@@ -152,7 +164,7 @@ public class DatabaseGroupGradingSheetTest {
         DbGroupGradingSheet ggs = new DbGroupGradingSheet(_group.getId(), _part.getId());
         
         int subsectionId = _part.getGradingSheetSections().iterator().next().getSubsections().iterator().next().getId();
-        String modifiedTime = DateTime.now().toString();
+        long modifiedTime = DateTime.now().getMillis();
         ggs.setEarnedPoints(subsectionId, 13.0, _ta.getId(), modifiedTime);
         
         _database.putGroupGradingSheets(ImmutableSet.of(ggs));
@@ -172,7 +184,7 @@ public class DatabaseGroupGradingSheetTest {
         DbGroupGradingSheet ggs = new DbGroupGradingSheet(_group.getId(), _part.getId());
         
         int sectionId = _part.getGradingSheetSections().iterator().next().getId();
-        ggs.setComments(sectionId, "comments", _ta.getId(), DateTime.now().toString());
+        ggs.setComments(sectionId, "comments", _ta.getId(), DateTime.now().getMillis());
         
         _database.putGroupGradingSheets(ImmutableSet.of(ggs));
         
@@ -190,7 +202,7 @@ public class DatabaseGroupGradingSheetTest {
     public void testSubmitGroupGradingSheet() throws SQLException {
         DbGroupGradingSheet ggs = new DbGroupGradingSheet(_group.getId(), _part.getId());
         
-        String submittedTime = DateTime.now().toString();
+        Long submittedTime = DateTime.now().getMillis();
         _database.putGroupGradingSheets(ImmutableSet.of(ggs));
         _database.submitGroupGradingSheets(ImmutableSet.of(ggs), _ta.getId(), submittedTime);
         
@@ -207,4 +219,202 @@ public class DatabaseGroupGradingSheetTest {
         GROUP_GRADING_SHEET_EQC.assertEqual(ggs, ggsFromDb);
     }
     
+    @Test
+    public void testReadGradingSheetTotals() throws SQLException {
+        DbStudent student2 = new DbStudent("login2", "first2", "last2", "email2");
+        DbStudent student3 = new DbStudent("login3", "first3", "last3", "email3");
+        _database.putStudents(ImmutableSet.of(student2, student3));
+        DbGroup group2 = new DbGroup(_group.getAssignmentId(), "group2", ImmutableSet.of(student2.getId()));
+        DbGroup group3 = new DbGroup(_group.getAssignmentId(), "group3", ImmutableSet.of(student3.getId()));
+        _database.putGroups(ImmutableSet.of(group2, group3));
+        
+        DbGradingSheetSection section = _part.getGradingSheetSections().iterator().next();
+        int subsectionId = section.getSubsections().iterator().next().getId();
+        DbGradingSheetSubsection subsection2 = DbGradingSheetSubsection.build(section, "subsection2", 2, 5.0);
+        _database.putGradingSheetSubsections(ImmutableSet.of(subsection2));
+        
+        //group: two earned points, submitted and assigned; group2: null earned points and comments; group3: empty
+        DbGroupGradingSheet ggs1 = new DbGroupGradingSheet(_group.getId(), _part.getId());
+        ggs1.setEarnedPoints(subsectionId, 13.0, _ta.getId(), 1000L);
+        ggs1.setEarnedPoints(subsection2.getId(), -2.5, _ta.getId(), 1000L);
+        ggs1.setAssignedToId(_ta.getId());
+        DbGroupGradingSheet ggs2 = new DbGroupGradingSheet(group2.getId(), _part.getId());
+        ggs2.setEarnedPoints(subsectionId, null, _ta.getId(), 1000L);
+        ggs2.setComments(section.getId(), "comments", _ta.getId(), 1000L);
+        DbGroupGradingSheet ggs3 = new DbGroupGradingSheet(group3.getId(), _part.getId());
+        _database.putGroupGradingSheets(ImmutableSet.of(ggs1, ggs2, ggs3));
+        _database.submitGroupGradingSheets(ImmutableSet.of(ggs1), _ta.getId(), 2000L);
+        
+        final Map<Integer, GradingSheetTotalRecord> totals = new HashMap<Integer, GradingSheetTotalRecord>();
+        GradingSheetTotalRecord.Handler handler = new GradingSheetTotalRecord.Handler() {
+            @Override
+            public void handle(GradingSheetTotalRecord record) {
+                assertNull(totals.put(record.getGroupId(), record));
+            }
+        };
+        _database.readGradingSheetTotals(ImmutableSet.of(_part.getId()), null, null, handler);
+        assertEquals(3, totals.size());
+        
+        GradingSheetTotalRecord total1 = totals.get(_group.getId());
+        assertEquals(_part.getId().intValue(), total1.getPartId());
+        assertEquals(_ta.getId(), total1.getAssignedToId());
+        assertTrue(total1.isSubmitted());
+        assertEquals(10.5, total1.getEarnedTotal(), 0);
+        assertTrue(total1.hasEarnedPoints());
+        assertFalse(total1.hasComments());
+        
+        GradingSheetTotalRecord total2 = totals.get(group2.getId());
+        assertNull(total2.getAssignedToId());
+        assertFalse(total2.isSubmitted());
+        assertNull(total2.getEarnedTotal());
+        assertTrue(total2.hasEarnedPoints());
+        assertTrue(total2.hasComments());
+        
+        GradingSheetTotalRecord total3 = totals.get(group3.getId());
+        assertNull(total3.getEarnedTotal());
+        assertFalse(total3.hasEarnedPoints());
+        assertFalse(total3.hasComments());
+        
+        //filtered by group and by assigned TA
+        totals.clear();
+        _database.readGradingSheetTotals(ImmutableSet.of(_part.getId()), ImmutableSet.of(group2.getId()), null,
+                                         handler);
+        DatabaseTestHelpers.assertSetsEqual(ImmutableSet.of(group2.getId()), totals.keySet());
+        totals.clear();
+        _database.readGradingSheetTotals(ImmutableSet.of(_part.getId()), null, _ta.getId(), handler);
+        DatabaseTestHelpers.assertSetsEqual(ImmutableSet.of(_group.getId()), totals.keySet());
+    }
+    
+    @Test
+    public void testGetGradingSheetTotalsChangedSince() throws SQLException {
+        DbStudent student2 = new DbStudent("login2", "first2", "last2", "email2");
+        _database.putStudents(ImmutableSet.of(student2));
+        DbGroup group2 = new DbGroup(_group.getAssignmentId(), "group2", ImmutableSet.of(student2.getId()));
+        _database.putGroups(ImmutableSet.of(group2));
+        
+        int subsectionId = _part.getGradingSheetSections().iterator().next().getSubsections().iterator().next().getId();
+        DbGroupGradingSheet ggs1 = new DbGroupGradingSheet(_group.getId(), _part.getId());
+        ggs1.setEarnedPoints(subsectionId, 13.0, _ta.getId(), 1000L);
+        DbGroupGradingSheet ggs2 = new DbGroupGradingSheet(group2.getId(), _part.getId());
+        _database.putGroupGradingSheets(ImmutableSet.of(ggs1, ggs2));
+        long sequence = _database.getLatestChangeSequence();
+        
+        GradingSheetChangeSetRecord changes = _database.getGradingSheetTotalsChangedSince(sequence);
+        assertEquals(sequence, changes.getSequence());
+        assertTrue(changes.getTotals().isEmpty());
+        
+        //only the submitted grading sheet has changed
+        _database.submitGroupGradingSheets(ImmutableSet.of(ggs1), _ta.getId(), 2000L);
+        changes = _database.getGradingSheetTotalsChangedSince(sequence);
+        assertTrue(changes.getSequence() > sequence);
+        assertFalse(changes.haveGroupsChanged());
+        assertTrue(changes.getRemovedGradingSheetIds().isEmpty());
+        assertEquals(1, changes.getTotals().size());
+        GradingSheetTotalRecord total = changes.getTotals().get(0);
+        assertEquals(ggs1.getId().intValue(), total.getGradingSheetId());
+        assertTrue(total.isSubmitted());
+        assertEquals(13.0, total.getEarnedTotal(), 0);
+        
+        //removing a group removes its grading sheet
+        sequence = changes.getSequence();
+        _database.removeGroups(ImmutableSet.of(group2));
+        changes = _database.getGradingSheetTotalsChangedSince(sequence);
+        assertTrue(changes.haveGroupsChanged());
+        assertEquals(ImmutableSet.of(ggs2.getId()), changes.getRemovedGradingSheetIds());
+    }
+    
+    @Test
+    public void testStreamStudentGrades() throws SQLException, ServicesException {
+        int studentId = _group.getMemberIds().iterator().next();
+        DbStudent student2 = new DbStudent("login2", "first2", "last2", "email2");
+        DbStudent student3 = new DbStudent("login3", "first3", "last3", "email3");
+        _database.putStudents(ImmutableSet.of(student2, student3));
+        DbGroup group2 = new DbGroup(_group.getAssignmentId(), "group2", ImmutableSet.of(student2.getId()));
+        _database.putGroups(ImmutableSet.of(group2));
+        
+        int geId = _part.getGradableEvent().getId();
+        int subsectionId = _part.getGradingSheetSections().iterator().next().getSubsections().iterator().next().getId();
+        DbGroupGradingSheet ggs = new DbGroupGradingSheet(_group.getId(), _part.getId());
+        ggs.setEarnedPoints(subsectionId, 13.0, _ta.getId(), 1000L);
+        _database.putGroupGradingSheets(ImmutableSet.of(ggs));
+        _database.submitGroupGradingSheets(ImmutableSet.of(ggs), _ta.getId(), 2000L);
+        _database.setGradableEventOccurrences(geId, ImmutableMap.of(group2.getId(), 3000L), _ta.getId(), 4000L);
+        _database.setExtensions(geId, 5000L, false, "note", 6000L, _ta.getId(), ImmutableSet.of(_group.getId()));
+        
+        final List<StudentGradesRecord> records = new ArrayList<StudentGradesRecord>();
+        _database.streamStudentGrades(ImmutableList.of(student3.getId(), studentId, student2.getId()),
+                new StudentGradesRecord.Handler() {
+                    @Override
+                    public boolean handle(StudentGradesRecord record) {
+                        records.add(record);
+                        return true;
+                    }
+                });
+        
+        //records are in the order of the given student IDs
+        assertEquals(3, records.size());
+        assertEquals(student3.getId().intValue(), records.get(0).getStudentId());
+        assertEquals(studentId, records.get(1).getStudentId());
+        assertEquals(student2.getId().intValue(), records.get(2).getStudentId());
+        
+        //student without a group
+        assertTrue(records.get(0).getGroupIds().isEmpty());
+        assertTrue(records.get(0).getGradingSheetTotals().isEmpty());
+        
+        //student with a submitted grading sheet and an extension
+        assertEquals(ImmutableMap.of(_group.getAssignmentId(), _group.getId()), records.get(1).getGroupIds());
+        GradingSheetTotalRecord total = records.get(1).getGradingSheetTotals().get(_part.getId());
+        assertEquals(_group.getId().intValue(), total.getGroupId());
+        assertTrue(total.isSubmitted());
+        assertEquals(13.0, total.getEarnedTotal(), 0);
+        assertTrue(records.get(1).getOccurrences().isEmpty());
+        assertEquals(5000L, records.get(1).getExtensions().get(geId).getOnTime());
+        
+        //student with an occurrence but no grading sheet
+        assertEquals(ImmutableMap.of(_group.getAssignmentId(), group2.getId()), records.get(2).getGroupIds());
+        assertTrue(records.get(2).getGradingSheetTotals().isEmpty());
+        assertEquals(3000L, records.get(2).getOccurrences().get(geId).getOccurrenceDate());
+        assertTrue(records.get(2).getExtensions().isEmpty());
+    }
+    
+    @Test
+    public void testStreamStudentGradesStopsWhenHandlerReturnsFalse() throws SQLException, ServicesException {
+        DbStudent student2 = new DbStudent("login2", "first2", "last2", "email2");
+        _database.putStudents(ImmutableSet.of(student2));
+        
+        final List<StudentGradesRecord> records = new ArrayList<StudentGradesRecord>();
+        _database.streamStudentGrades(ImmutableList.of(_group.getMemberIds().iterator().next(), student2.getId()),
+                new StudentGradesRecord.Handler() {
+                    @Override
+                    public boolean handle(StudentGradesRecord record) {
+                        records.add(record);
+                        return false;
+                    }
+                });
+        
+        assertEquals(1, records.size());
+    }
+    
+    @Test
+    public void testStreamStudentGradesReleasesDatabaseWhenHandlerFails() throws SQLException {
+        final ServicesException failure = new ServicesException("handler failed");
+        try {
+            _database.streamStudentGrades(ImmutableList.of(_group.getMemberIds().iterator().next()),
+                    new StudentGradesRecord.Handler() {
+                        @Override
+                        public boolean handle(StudentGradesRecord record) throws ServicesException {
+                            throw failure;
+                        }
+                    });
+            fail("handler failure not thrown");
+        } catch (ServicesException ex) {
+            assertSame(failure, ex);
+        }
+        
+        //the read transaction has ended, so the database can be written to
+        DbStudent student2 = new DbStudent("login2", "first2", "last2", "email2");
+        _database.putStudents(ImmutableSet.of(student2));
+        assertNotNull(student2.getId());
+    }
+    
 }
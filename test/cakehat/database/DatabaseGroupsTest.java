@@ -5,6 +5,7 @@ import cakehat.assignment.Assignment;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.ImmutableSet;
 import java.util.Set;
+import org.junit.After;
 import org.junit.Test;
 import cakehat.Allocator;
 import cakehat.Allocator.SingletonAllocation;
@@ -38,6 +39,11 @@ public class DatabaseGroupsTest {
         _database.resetDatabase();
     }
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testGetAllGroupsEmpty() throws SQLException {
         Set<DbGroup> groups = _database.getGroups();
@@ -148,4 +154,81 @@ public class DatabaseGroupsTest {
         DatabaseTestHelpers.assertSetsEqual(group2.getMemberIds(), actualRecord.getMemberIds());
     }
     
+    @Test
+    public void testGetChangesSince() throws SQLException {
+        Assignment asgn = DatabaseTestHelpers.createNewAssignmentInDb(_database, "asgn", 1);
+        DbStudent student1 = new DbStudent("alinc", "abraham", "lincoln", "alinc@cs.brown.edu");
+        DbStudent student2 = new DbStudent("gwash", "george", "washington", "gwash@cs.brown.edu");
+        _database.putStudents(ImmutableSet.of(student1, student2));
+        DbGroup group1 = new DbGroup(asgn.getId(), "group1", ImmutableSet.of(student1.getId()));
+        DbGroup group2 = new DbGroup(asgn.getId(), "group2", ImmutableSet.of(student2.getId()));
+        _database.putGroups(ImmutableSet.of(group1, group2));
+        
+        ChangeSetRecord all = _database.getChangesSince(0);
+        assertTrue(all.isComplete());
+        assertEquals(_database.getLatestChangeSequence(), all.getSequence());
+        assertEquals(2, all.getStudents().size());
+        assertEquals(2, all.getGroups().size());
+        assertTrue(all.getRemovedStudentIds().isEmpty());
+        assertTrue(all.getRemovedGroupIds().isEmpty());
+        
+        //nothing changed
+        ChangeSetRecord none = _database.getChangesSince(all.getSequence());
+        assertEquals(all.getSequence(), none.getSequence());
+        assertTrue(none.getStudents().isEmpty());
+        assertTrue(none.getGroups().isEmpty());
+        
+        //a membership change is a change to the group; removing a group is reported as a removal
+        _database.removeGroups(ImmutableSet.of(group2));
+        group1.addMember(new Student(student2));
+        _database.putGroups(ImmutableSet.of(group1));
+        
+        ChangeSetRecord changes = _database.getChangesSince(all.getSequence());
+        assertTrue(changes.getSequence() > all.getSequence());
+        assertTrue(changes.getStudents().isEmpty());
+        assertEquals(1, changes.getGroups().size());
+        DbGroup changedGroup = changes.getGroups().iterator().next();
+        assertEquals(group1.getId(), changedGroup.getId());
+        DatabaseTestHelpers.assertSetsEqual(ImmutableSet.of(student1.getId(), student2.getId()),
+                                            changedGroup.getMemberIds());
+        DatabaseTestHelpers.assertSetsEqual(ImmutableSet.of(group2.getId()), changes.getRemovedGroupIds());
+        
+        //resetting the database changes the epoch, whatever the sequence after the reset
+        String epoch = _database.getChangeEpoch();
+        assertEquals(epoch, changes.getEpoch());
+        _database.resetDatabase();
+        assertFalse(epoch.equals(_database.getChangeEpoch()));
+        ChangeSetRecord afterReset = _database.getChangesSince(changes.getSequence());
+        assertFalse(epoch.equals(afterReset.getEpoch()));
+    }
+    
+    @Test
+    public void testGetChangesSincePrunedSequence() throws SQLException {
+        DbStudent student1 = new DbStudent("alinc", "abraham", "lincoln", "alinc@cs.brown.edu");
+        _database.putStudents(ImmutableSet.of(student1));
+        long before = _database.getLatestChangeSequence();
+        DbStudent student2 = new DbStudent("gwash", "george", "washington", "gwash@cs.brown.edu");
+        _database.putStudents(ImmutableSet.of(student2));
+        long latest = _database.getLatestChangeSequence();
+        
+        //only the change adding gwash is kept
+        ((DatabaseImpl) _database).pruneChangeLog(1);
+        assertEquals(latest, _database.getLatestChangeSequence());
+        
+        ChangeSetRecord pruned = _database.getChangesSince(before - 1);
+        assertFalse(pruned.isComplete());
+        assertEquals(latest, pruned.getSequence());
+        assertTrue(pruned.getStudents().isEmpty());
+        assertFalse(_database.getGradingSheetTotalsChangedSince(before - 1).isComplete());
+        
+        ChangeSetRecord kept = _database.getChangesSince(before);
+        assertTrue(kept.isComplete());
+        assertEquals(1, kept.getStudents().size());
+        assertEquals(student2.getId(), kept.getStudents().iterator().next().getId());
+        
+        //pruning again with nothing new to remove leaves the change log as it was
+        ((DatabaseImpl) _database).pruneChangeLog(1);
+        assertTrue(_database.getChangesSince(before).isComplete());
+    }
+    
 }
@@ -0,0 +1,86 @@
+package cakehat.database;
+
+import cakehat.Allocator;
+import cakehat.database.HandinCatalogRecord.EntryRecord;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link Database} methods related to the handin catalog.
+ */
+public class DatabaseHandinCatalogTest {
+
+    private Database _database;
+
+    public DatabaseHandinCatalogTest() throws IOException {
+        _database = new DatabaseImpl(Allocator.getFileSystemUtilities().createTempFile("tempDB", "db"));
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        _database.resetDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
+    @Test
+    public void testGetUncataloged() throws SQLException {
+        assertTrue(_database.getHandinCatalogRecords(ImmutableSet.of("/handins/jak2.tar")).isEmpty());
+    }
+
+    @Test
+    public void testPutGetHandinCatalogRecords() throws SQLException {
+        HandinCatalogRecord jak2 = new HandinCatalogRecord("/handins/jak2.tar", 2048, 1000, "abc123",
+                ImmutableList.of(new EntryRecord("src/", true, 0, 900),
+                                 new EntryRecord("src/Main.java", false, 1500, 950)));
+        HandinCatalogRecord hdrosen = new HandinCatalogRecord("/handins/hdrosen.zip", 512, 2000, "def456",
+                ImmutableList.<EntryRecord>of());
+        _database.putHandinCatalogRecords(ImmutableSet.of(jak2, hdrosen));
+
+        Map<String, HandinCatalogRecord> records = _database.getHandinCatalogRecords(
+                ImmutableSet.of("/handins/jak2.tar", "/handins/hdrosen.zip", "/handins/jeldridg.tar"));
+        assertEquals(ImmutableSet.of("/handins/jak2.tar", "/handins/hdrosen.zip"), records.keySet());
+        this.assertRecordEquals(jak2, records.get("/handins/jak2.tar"));
+        this.assertRecordEquals(hdrosen, records.get("/handins/hdrosen.zip"));
+    }
+
+    @Test
+    public void testPutReplacesExistingRecord() throws SQLException {
+        HandinCatalogRecord original = new HandinCatalogRecord("/handins/jak2.tar", 2048, 1000, "abc123",
+                ImmutableList.of(new EntryRecord("old.txt", false, 10, 900)));
+        _database.putHandinCatalogRecords(ImmutableSet.of(original));
+
+        HandinCatalogRecord resubmitted = new HandinCatalogRecord("/handins/jak2.tar", 4096, 3000, "fed321",
+                ImmutableList.of(new EntryRecord("new.txt", false, 20, 2900)));
+        _database.putHandinCatalogRecords(ImmutableSet.of(resubmitted));
+
+        this.assertRecordEquals(resubmitted,
+                _database.getHandinCatalogRecords(ImmutableSet.of("/handins/jak2.tar")).get("/handins/jak2.tar"));
+    }
+
+    private void assertRecordEquals(HandinCatalogRecord expected, HandinCatalogRecord actual) {
+        assertEquals(expected.getPath(), actual.getPath());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getLastModified(), actual.getLastModified());
+        assertEquals(expected.getSha256(), actual.getSha256());
+        assertEquals(expected.getEntries().size(), actual.getEntries().size());
+        for (int i = 0; i < expected.getEntries().size(); i++) {
+            EntryRecord expectedEntry = expected.getEntries().get(i);
+            EntryRecord actualEntry = actual.getEntries().get(i);
+            assertEquals(expectedEntry.getName(), actualEntry.getName());
+            assertEquals(expectedEntry.isDirectory(), actualEntry.isDirectory());
+            assertEquals(expectedEntry.getSize(), actualEntry.getSize());
+            assertEquals(expectedEntry.getLastModified(), actualEntry.getLastModified());
+        }
+    }
+}
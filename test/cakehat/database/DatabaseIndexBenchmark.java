@@ -0,0 +1,130 @@
+package cakehat.database;
+
+import cakehat.Allocator;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures the effect of the secondary indexes added by {@link SchemaMigrations} on the hot lookups of
+ * {@link DatabaseImpl} for a synthetic 1,000 student course. Not run as part of the test suite; run {@link #main}
+ * directly.
+ */
+public class DatabaseIndexBenchmark {
+
+    private static final int NUM_STUDENTS = 1000;
+    private static final int NUM_ASSIGNMENTS = 10;
+    private static final int PARTS_PER_ASSIGNMENT = 3;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = Allocator.getFileSystemUtilities().createTempFile("benchmarkDB", "db");
+        final PooledConnectionProvider connProvider = new PooledConnectionProvider(dbFile);
+        final Database database = new DatabaseImpl(dbFile, connProvider);
+        final SyntheticCourse course = SyntheticCourse.create(database, NUM_STUDENTS, NUM_ASSIGNMENTS,
+                                                              PARTS_PER_ASSIGNMENT, true);
+
+        System.out.println("Synthetic course: " + NUM_STUDENTS + " students, " + NUM_ASSIGNMENTS + " assignments, "
+                + course.parts.size() + " parts");
+        System.out.println();
+
+        double[] after = runQueries(database, connProvider, course);
+        List<String> dropped = dropSecondaryIndexes(connProvider);
+        System.out.println("Dropped indexes: " + dropped);
+        double[] before = runQueries(database, connProvider, course);
+
+        String[] names = { "getGroupGradingSheets (one assignment)", "group membership by student",
+                           "getGradableEventOccurrences", "getExtensions", "getBlacklist" };
+        System.out.println();
+        System.out.println(String.format("%-40s %12s %12s", "query", "before (ms)", "after (ms)"));
+        for (int i = 0; i < names.length; i++) {
+            System.out.println(String.format("%-40s %12.3f %12.3f", names[i], before[i], after[i]));
+        }
+
+        connProvider.shutdown();
+    }
+
+    private static double[] runQueries(final Database database, final ConnectionProvider connProvider,
+                                       final SyntheticCourse course) throws Exception {
+        final DbAssignment asgn = course.assignments.get(NUM_ASSIGNMENTS / 2);
+        final DbGradableEvent ge = course.gradableEvents.get(NUM_ASSIGNMENTS / 2);
+        final Set<Integer> groupIds = course.groupIdsByAssignment.get(asgn.getId());
+        final Set<Integer> partIds = new HashSet<Integer>();
+        for (DbPart part : ge.getParts()) {
+            partIds.add(part.getId());
+        }
+        final Set<Integer> sectionIds = SyntheticCourse.getSectionIds(ge.getParts());
+        final Set<Integer> subsectionIds = SyntheticCourse.getSubsectionIds(ge.getParts());
+        final int studentId = course.students.get(NUM_STUDENTS / 2).getId();
+        final int taId = course.tas.get(0).getId();
+
+        double[] times = new double[5];
+        times[0] = SyntheticCourse.time(ITERATIONS, new SyntheticCourse.Operation() {
+            @Override
+            public void run() throws SQLException {
+                database.getGroupGradingSheets(partIds, subsectionIds, sectionIds, groupIds);
+            }
+        });
+        times[1] = SyntheticCourse.time(ITERATIONS * 50, new SyntheticCourse.Operation() {
+            @Override
+            public void run() throws SQLException {
+                Connection conn = connProvider.createConnection();
+                try {
+                    PreparedStatement ps = conn.prepareStatement("SELECT agid FROM groupmember WHERE sid == ?");
+                    ps.setInt(1, studentId);
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        rs.getInt(1);
+                    }
+                } finally {
+                    connProvider.closeConnection(conn);
+                }
+            }
+        });
+        times[2] = SyntheticCourse.time(ITERATIONS, new SyntheticCourse.Operation() {
+            @Override
+            public void run() throws SQLException {
+                database.getGradableEventOccurrences(ge.getId(), groupIds);
+            }
+        });
+        times[3] = SyntheticCourse.time(ITERATIONS, new SyntheticCourse.Operation() {
+            @Override
+            public void run() throws SQLException {
+                database.getExtensions(ge.getId(), groupIds);
+            }
+        });
+        times[4] = SyntheticCourse.time(ITERATIONS * 50, new SyntheticCourse.Operation() {
+            @Override
+            public void run() throws SQLException {
+                database.getBlacklist(taId);
+            }
+        });
+
+        return times;
+    }
+
+    private static List<String> dropSecondaryIndexes(ConnectionProvider connProvider) throws SQLException {
+        List<String> indexes = new ArrayList<String>();
+        Connection conn = connProvider.createConnection();
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT name FROM sqlite_master WHERE type == 'index'"
+                    + " AND name NOT LIKE 'sqlite_autoindex%'");
+            while (rs.next()) {
+                indexes.add(rs.getString("name"));
+            }
+            for (String index : indexes) {
+                conn.createStatement().executeUpdate("DROP INDEX " + index);
+            }
+        } finally {
+            connProvider.closeConnection(conn);
+        }
+
+        return indexes;
+    }
+}
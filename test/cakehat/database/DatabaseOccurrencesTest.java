@@ -4,7 +4,9 @@ import cakehat.assignment.Assignment;
 import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
 import java.util.Set;
+import org.junit.After;
 import org.junit.Test;
 import cakehat.Allocator;
 import cakehat.Allocator.SingletonAllocation;
@@ -39,6 +41,11 @@ public class DatabaseOccurrencesTest {
         _database.resetDatabase();
     }
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testSetGetGradableEventOccurrences() throws SQLException {
         //Setup
@@ -58,8 +65,8 @@ public class DatabaseOccurrencesTest {
         _database.putGroups(ImmutableSet.of(group));
         group.getId();
 
-        final String occurrenceDate = "Around now";
-        final String dateRecorded = "Back in the day";
+        final long occurrenceDate = 1351000000000L;
+        final long dateRecorded = 1350000000000L;
 
         //Set
         _database.setGradableEventOccurrences(ge.getId(),
@@ -95,15 +102,15 @@ public class DatabaseOccurrencesTest {
         _database.putGroups(ImmutableSet.of(group));
         group.getId();
 
-        final String occurrenceDate = "Around now";
-        final String dateRecorded = "Back in the day";
+        final long occurrenceDate = 1351000000000L;
+        final long dateRecorded = 1350000000000L;
 
         //Set
         _database.setGradableEventOccurrences(ge.getId(),
                                               ImmutableMap.of(group.getId(), occurrenceDate), tid, dateRecorded);
 
-        final String newOccurrenceDate = "In a bit";
-        final String newDateRecorded = "Way back when";
+        final long newOccurrenceDate = 1352000000000L;
+        final long newDateRecorded = 1351500000000L;
 
         //Set - should cause overwrite
         _database.setGradableEventOccurrences(ge.getId(),
@@ -139,8 +146,8 @@ public class DatabaseOccurrencesTest {
         _database.putGroups(ImmutableSet.of(group));
         group.getId();
 
-        final String occurrenceDate = "Around now";
-        final String dateRecorded = "Back in the day";
+        final long occurrenceDate = 1351000000000L;
+        final long dateRecorded = 1350000000000L;
 
         //Set
         _database.setGradableEventOccurrences(ge.getId(),
@@ -178,15 +185,15 @@ public class DatabaseOccurrencesTest {
         _database.putTAs(ImmutableSet.of(ta));
 
         //Set, get, and verify extensions
-        _database.setExtensions(dbEvent.getId(), "On Time", true, "A note", "Right Now", ta.getId(), groupIds);
+        _database.setExtensions(dbEvent.getId(), 1352000000000L, true, "A note", 1351000000000L, ta.getId(), groupIds);
 
         Map<Integer, ExtensionRecord> extensions = _database.getExtensions(dbEvent.getId(), groupIds);
 
         DatabaseTestHelpers.assertSetsEqual(groupIds, extensions.keySet());
         for (ExtensionRecord record : extensions.values()) {
-            assertEquals("Right Now", record.getDateRecorded());
+            assertEquals(1351000000000L, record.getDateRecorded());
             assertEquals("A note", record.getNote());
-            assertEquals("On Time", record.getOnTime());
+            assertEquals(1352000000000L, record.getOnTime());
             assertEquals(true, record.getShiftDates());
             assertEquals((Integer) ta.getId(), (Integer) record.getTAId());
         }
@@ -213,16 +220,16 @@ public class DatabaseOccurrencesTest {
         _database.putTAs(ImmutableSet.of(ta));
 
         //Set, set again with different values, get, and verify extensions
-        _database.setExtensions(dbEvent.getId(), "Blah", false, "Lazy students", "Eventually", ta.getId(), groupIds);
-        _database.setExtensions(dbEvent.getId(), "On Time", true, "A note", "Right Now", ta.getId(), groupIds);
+        _database.setExtensions(dbEvent.getId(), 1353000000000L, false, "Lazy students", 1350000000000L, ta.getId(), groupIds);
+        _database.setExtensions(dbEvent.getId(), 1352000000000L, true, "A note", 1351000000000L, ta.getId(), groupIds);
 
         Map<Integer, ExtensionRecord> extensions = _database.getExtensions(dbEvent.getId(), groupIds);
 
         DatabaseTestHelpers.assertSetsEqual(groupIds, extensions.keySet());
         for (ExtensionRecord record : extensions.values()) {
-            assertEquals("Right Now", record.getDateRecorded());
+            assertEquals(1351000000000L, record.getDateRecorded());
             assertEquals("A note", record.getNote());
-            assertEquals("On Time", record.getOnTime());
+            assertEquals(1352000000000L, record.getOnTime());
             assertEquals(true, record.getShiftDates());
             assertEquals((Integer) ta.getId(), (Integer) record.getTAId());
         }
@@ -249,7 +256,7 @@ public class DatabaseOccurrencesTest {
         _database.putTAs(ImmutableSet.of(ta));
 
         //Set for two, delete for one, get extensions
-        _database.setExtensions(dbEvent.getId(), "On Time", true, "A note", "Right Now", ta.getId(), groupIds);
+        _database.setExtensions(dbEvent.getId(), 1352000000000L, true, "A note", 1351000000000L, ta.getId(), groupIds);
 
         _database.deleteExtensions(dbEvent.getId(), ImmutableSet.of(dbGroup1.getId()));
 
@@ -257,12 +264,46 @@ public class DatabaseOccurrencesTest {
 
         DatabaseTestHelpers.assertSetsEqual(ImmutableSet.of(dbGroup2.getId()), extensions.keySet());
         for (ExtensionRecord record : extensions.values()) {
-            assertEquals("Right Now", record.getDateRecorded());
+            assertEquals(1351000000000L, record.getDateRecorded());
             assertEquals("A note", record.getNote());
-            assertEquals("On Time", record.getOnTime());
+            assertEquals(1352000000000L, record.getOnTime());
             assertEquals(true, record.getShiftDates());
             assertEquals((Integer) ta.getId(), (Integer) record.getTAId());
         }
     }
     
+    @Test
+    public void testGetExtensionsFiltersByGivenGroupIds() throws SQLException {
+        //Set up
+        DbAssignment dbAsgn = new DbAssignment("The Asgn", 27);
+        DbGradableEvent dbEvent = DbGradableEvent.build(dbAsgn, "The Event", 42);
+        _database.putAssignments(ImmutableSet.of(dbAsgn));
+        _database.putGradableEvents(ImmutableSet.of(dbEvent));
+
+        DbGroup dbGroup1 = new DbGroup(dbAsgn.getId(), "The Group", ImmutableSet.<Integer>of());
+        DbGroup dbGroup2 = new DbGroup(dbAsgn.getId(), "Another Group", ImmutableSet.<Integer>of());
+        _database.putGroups(ImmutableSet.of(dbGroup1, dbGroup2));
+
+        DbTA ta = new DbTA(57, "talogin", "FirstName", "LastName", true, true);
+        _database.putTAs(ImmutableSet.of(ta));
+        _database.setExtensions(dbEvent.getId(), 1352000000000L, true, "A note", 1351000000000L, ta.getId(),
+                                ImmutableSet.of(dbGroup1.getId(), dbGroup2.getId()));
+
+        //Successive gets must not see IDs from previous gets
+        DatabaseTestHelpers.assertSetsEqual(ImmutableSet.of(dbGroup1.getId()),
+                _database.getExtensions(dbEvent.getId(), ImmutableSet.of(dbGroup1.getId())).keySet());
+        DatabaseTestHelpers.assertSetsEqual(ImmutableSet.of(dbGroup2.getId()),
+                _database.getExtensions(dbEvent.getId(), ImmutableSet.of(dbGroup2.getId())).keySet());
+        assertTrue(_database.getExtensions(dbEvent.getId(), ImmutableSet.<Integer>of()).isEmpty());
+
+        //More IDs than would reasonably fit in a literal IN list
+        Set<Integer> manyGroupIds = new HashSet<Integer>();
+        for (int i = 0; i < 100000; i++) {
+            manyGroupIds.add(dbGroup2.getId() + 1 + i);
+        }
+        manyGroupIds.add(dbGroup1.getId());
+        DatabaseTestHelpers.assertSetsEqual(ImmutableSet.of(dbGroup1.getId()),
+                _database.getExtensions(dbEvent.getId(), manyGroupIds).keySet());
+    }
+    
 }
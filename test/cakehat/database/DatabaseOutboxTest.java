@@ -0,0 +1,155 @@
+package cakehat.database;
+
+import cakehat.Allocator;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link Database} methods related to the email outbox.
+ */
+public class DatabaseOutboxTest {
+
+    private Database _database;
+
+    public DatabaseOutboxTest() throws IOException {
+        _database = new DatabaseImpl(Allocator.getFileSystemUtilities().createTempFile("tempDB", "db"));
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        _database.resetDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
+    @Test
+    public void testAddClaimOutboxMessages() throws SQLException {
+        List<OutboxRecord.Attachment> attachments = ImmutableList.of(
+                new OutboxRecord.Attachment("/outbox/a.dat", "handin.tar", "application/x-tar"),
+                new OutboxRecord.Attachment("/outbox/b.dat", "design.pdf", "application/pdf"));
+        int first = _database.addOutboxMessage("batch1", 1, "jak2@cs.brown.edu", "/outbox/1.eml", attachments,
+                                               "session1", 1000);
+        int second = this.addOutboxMessage("batch1", 1, "/outbox/2.eml", "session1", 1000);
+        this.addOutboxMessage("batch2", 1, "/outbox/3.eml", "session1", 1000);
+        this.addOutboxMessage("batch1", 2, "/outbox/4.eml", "session1", 1000);
+
+        List<OutboxRecord> claimed = _database.claimOutboxMessages(1, "batch1", "session1", 500, 2000);
+        assertEquals(2, claimed.size());
+
+        OutboxRecord record = claimed.get(0);
+        assertEquals(first, record.getId());
+        assertEquals("batch1", record.getBatch());
+        assertEquals(1, record.getTAId());
+        assertEquals("jak2@cs.brown.edu", record.getRecipients());
+        assertEquals("/outbox/1.eml", record.getMessagePath());
+        assertEquals(OutboxRecord.Status.PENDING, record.getStatus());
+        assertEquals(0, record.getAttempts());
+        assertNull(record.getLastError());
+        assertEquals("session1", record.getOwner());
+        assertEquals(2000, record.getLeaseExpires());
+        assertEquals(2, record.getAttachments().size());
+        assertEquals("/outbox/a.dat", record.getAttachments().get(0).getPath());
+        assertEquals("handin.tar", record.getAttachments().get(0).getName());
+        assertEquals("application/x-tar", record.getAttachments().get(0).getContentType());
+        assertEquals("design.pdf", record.getAttachments().get(1).getName());
+        assertEquals(second, claimed.get(1).getId());
+        assertTrue(claimed.get(1).getAttachments().isEmpty());
+    }
+
+    @Test
+    public void testHeldOutboxMessagesAreNotClaimed() throws SQLException {
+        this.addOutboxMessage("batch1", 1, "/outbox/1.eml", "session1", 1000);
+        this.addOutboxMessage("batch2", 1, "/outbox/2.eml", "session1", 2000);
+
+        //session1 is still running
+        assertTrue(_database.claimOutboxMessages(1, "batch1", "session2", 500, 3000).isEmpty());
+        assertTrue(_database.claimOutboxMessages(1, null, "session2", 500, 3000).isEmpty());
+        assertEquals(0, _database.getAbandonedOutboxMessageCount(1, "session2", 500));
+
+        //session1's hold on batch1 has lapsed, but it does not consider its own emails abandoned
+        assertEquals(1, _database.getAbandonedOutboxMessageCount(1, "session2", 1500));
+        assertEquals(0, _database.getAbandonedOutboxMessageCount(1, "session1", 1500));
+        assertTrue(_database.claimOutboxMessages(1, null, "session1", 1500, 3000).isEmpty());
+
+        List<OutboxRecord> claimed = _database.claimOutboxMessages(1, null, "session2", 1500, 3000);
+        assertEquals(1, claimed.size());
+        assertEquals("batch1", claimed.get(0).getBatch());
+        assertEquals(0, _database.getAbandonedOutboxMessageCount(1, "session1", 1500));
+        assertTrue(_database.claimOutboxMessages(1, "batch1", "session1", 1500, 3000).isEmpty());
+    }
+
+    @Test
+    public void testRenewOutboxLeases() throws SQLException {
+        int sent = this.addOutboxMessage("batch", 1, "/outbox/1.eml", "session1", 1000);
+        this.addOutboxMessage("batch", 1, "/outbox/2.eml", "session1", 1000);
+        this.addOutboxMessage("batch", 1, "/outbox/3.eml", "session2", 1000);
+        _database.updateOutboxMessage(sent, OutboxRecord.Status.SENT, 1, null);
+
+        assertEquals(1, _database.renewOutboxLeases("session1", 5000));
+        assertEquals(1, _database.getAbandonedOutboxMessageCount(1, "session3", 2000));
+        assertEquals(0, _database.renewOutboxLeases("session3", 5000));
+    }
+
+    @Test
+    public void testUpdateOutboxMessage() throws SQLException {
+        int sent = this.addOutboxMessage("batch", 1, "/outbox/1.eml", "session", 1000);
+        int retrying = this.addOutboxMessage("batch", 1, "/outbox/2.eml", "session", 1000);
+
+        _database.updateOutboxMessage(sent, OutboxRecord.Status.SENT, 1, null);
+        _database.updateOutboxMessage(retrying, OutboxRecord.Status.PENDING, 1, "Connection refused");
+
+        List<OutboxRecord> pending = _database.claimOutboxMessages(1, "batch", "session", 500, 1000);
+        assertEquals(1, pending.size());
+        assertEquals(retrying, pending.get(0).getId());
+        assertEquals(1, pending.get(0).getAttempts());
+        assertEquals("Connection refused", pending.get(0).getLastError());
+    }
+
+    @Test
+    public void testCancelOutboxMessages() throws SQLException {
+        int canceled = this.addOutboxMessage("batch", 1, "/outbox/1.eml", "session", 1000);
+        int sent = this.addOutboxMessage("batch", 1, "/outbox/2.eml", "session", 1000);
+        int pending = this.addOutboxMessage("batch", 1, "/outbox/3.eml", "session", 1000);
+        _database.updateOutboxMessage(sent, OutboxRecord.Status.SENT, 1, null);
+
+        _database.cancelOutboxMessages(ImmutableList.of(canceled, sent));
+        List<OutboxRecord> records = _database.claimOutboxMessages(1, "batch", "session", 500, 1000);
+        assertEquals(1, records.size());
+        assertEquals(pending, records.get(0).getId());
+    }
+
+    @Test
+    public void testIsOutboxAttachmentPending() throws SQLException {
+        List<OutboxRecord.Attachment> attachments = ImmutableList.of(
+                new OutboxRecord.Attachment("/outbox/a.dat", "handin.tar", "application/x-tar"));
+        int first = _database.addOutboxMessage("batch", 1, "jak2@cs.brown.edu", "/outbox/1.eml", attachments,
+                                               "session", 1000);
+        int second = _database.addOutboxMessage("batch", 1, "hdrosen@cs.brown.edu", "/outbox/2.eml", attachments,
+                                                "session", 1000);
+
+        assertTrue(_database.isOutboxAttachmentPending("/outbox/a.dat"));
+        assertFalse(_database.isOutboxAttachmentPending("/outbox/b.dat"));
+
+        _database.updateOutboxMessage(first, OutboxRecord.Status.SENT, 1, null);
+        assertTrue(_database.isOutboxAttachmentPending("/outbox/a.dat"));
+
+        _database.cancelOutboxMessages(ImmutableList.of(second));
+        assertFalse(_database.isOutboxAttachmentPending("/outbox/a.dat"));
+    }
+
+    private int addOutboxMessage(String batch, int taId, String messagePath, String owner, long leaseExpires)
+            throws SQLException {
+        return _database.addOutboxMessage(batch, taId, "jak2@cs.brown.edu", messagePath,
+                                          Collections.<OutboxRecord.Attachment>emptyList(), owner, leaseExpires);
+    }
+}
@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Set;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -41,6 +42,11 @@ public class DatabasePropertiesTest {
         _database.resetDatabase();
     }
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testSetGetStringProperty() throws SQLException {
         String account = "cakehat@cs.brown.edu";
@@ -61,6 +67,16 @@ public class DatabasePropertiesTest {
         assertEquals(attach, property.getValue());
     }
     
+    @Test
+    public void testSetGetIntegerProperty() throws SQLException {
+        int quota = 4096;
+        _database.putPropertyValue(DbPropertyValue.DbPropertyKey.TEMP_SPACE_QUOTA_MB,
+                                   new DbPropertyValue<Integer>(quota));
+        
+        DbPropertyValue<Integer> property = _database.getPropertyValue(DbPropertyValue.DbPropertyKey.TEMP_SPACE_QUOTA_MB);
+        assertEquals(Integer.valueOf(quota), property.getValue());
+    }
+    
     @Test
     public void testGetNotifyAddressesBeforeAnyPut() throws SQLException {
         Set<DbNotifyAddress> addresses = _database.getNotifyAddresses();
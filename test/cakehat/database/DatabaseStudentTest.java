@@ -6,6 +6,7 @@ import java.util.Map;
 import cakehat.database.DatabaseTestHelpers.EqualityAsserter;
 import com.google.common.collect.ImmutableSet;
 import java.util.Set;
+import org.junit.After;
 import org.junit.Test;
 import cakehat.Allocator;
 import cakehat.Allocator.SingletonAllocation;
@@ -56,6 +57,11 @@ public class DatabaseStudentTest {
         }
     };
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testPutGetSingleStudent() throws SQLException {
         DbStudent student = new DbStudent("login", "first", "last", "email");
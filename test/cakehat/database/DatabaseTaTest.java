@@ -3,6 +3,7 @@ package cakehat.database;
 import cakehat.database.DatabaseTestHelpers.EqualityAsserter;
 import com.google.common.collect.ImmutableSet;
 import java.util.Set;
+import org.junit.After;
 import org.junit.Test;
 import cakehat.Allocator;
 import cakehat.Allocator.SingletonAllocation;
@@ -48,6 +49,11 @@ public class DatabaseTaTest {
         }
     };
     
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
     @Test
     public void testPutGetSingleTA() throws SQLException {
         int taId = 1;
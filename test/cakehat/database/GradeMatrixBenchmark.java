@@ -0,0 +1,155 @@
+package cakehat.database;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.CakehatSession;
+import cakehat.TestCakehatSessionProvider;
+import cakehat.assignment.Assignment;
+import cakehat.assignment.GradableEvent;
+import cakehat.assignment.Part;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Compares the memory footprint and the time to load and scan the grades of a synthetic 1,000 student, 100 part course
+ * as {@link GroupGradingSheet}s from {@link DataServices#getGroupGradingSheets(SetMultimap)} and as a
+ * {@link GradeMatrix} from {@link DataServices#getGradeMatrix(List, List)}. Not run as part of the test suite; run
+ * {@link #main} directly.
+ * <br/><br/>
+ * {@link Allocator} may only be customized from a JUnit test, so {@link #main} runs the benchmark through JUnit.
+ */
+public class GradeMatrixBenchmark {
+
+    private static final int NUM_STUDENTS = 1000;
+    private static final int NUM_ASSIGNMENTS = 20;
+    private static final int PARTS_PER_ASSIGNMENT = 5;
+    private static final int ITERATIONS = 5;
+    private static final int SCAN_ITERATIONS = 100;
+
+    public static void main(String[] args) {
+        Result result = JUnitCore.runClasses(Benchmark.class);
+        for (Failure failure : result.getFailures()) {
+            System.out.println(failure.getTrace());
+        }
+    }
+
+    public static class Benchmark {
+
+        @Test
+        public void benchmark() throws Exception {
+            GradeMatrixBenchmark.benchmark();
+        }
+    }
+
+    private static void benchmark() throws Exception {
+        File dbFile = Allocator.getFileSystemUtilities().createTempFile("benchmarkDB", "db");
+        PooledConnectionProvider connProvider = new PooledConnectionProvider(dbFile);
+        final Database database = new DatabaseImpl(dbFile, connProvider);
+        SyntheticCourse.create(database, NUM_STUDENTS, NUM_ASSIGNMENTS, PARTS_PER_ASSIGNMENT, true);
+
+        new Allocator.Customizer().setDatabase(new SingletonAllocation<Database>() {
+            @Override
+            public Database allocate() { return database; }
+        }).customize();
+        CakehatSession.setSessionProviderForTesting(new TestCakehatSessionProvider(SyntheticCourse.NUM_TAS));
+
+        final DataServices dataServices = Allocator.getDataServices();
+        final List<Student> students = new ArrayList<Student>(dataServices.getStudents());
+        final List<Part> parts = new ArrayList<Part>();
+        final SetMultimap<Part, Group> toRetrieve = HashMultimap.create();
+        for (Assignment asgn : dataServices.getAssignments()) {
+            for (GradableEvent ge : asgn) {
+                for (Part part : ge) {
+                    parts.add(part);
+                    toRetrieve.putAll(part, dataServices.getGroups(asgn));
+                }
+            }
+        }
+        System.out.println("Synthetic course: " + students.size() + " students, " + parts.size() + " parts, "
+                + toRetrieve.size() + " grading sheets");
+        System.out.println();
+
+        long before = usedMemory();
+        Map<Part, Map<Group, GroupGradingSheet>> sheets = dataServices.getGroupGradingSheets(toRetrieve);
+        long sheetsBytes = usedMemory() - before;
+
+        before = usedMemory();
+        GradeMatrix matrix = dataServices.getGradeMatrix(students, parts);
+        long matrixBytes = usedMemory() - before;
+
+        double sheetsLoad = SyntheticCourse.time(ITERATIONS, new SyntheticCourse.Operation() {
+            @Override
+            public void run() throws Exception {
+                dataServices.getGroupGradingSheets(toRetrieve);
+            }
+        });
+        double matrixLoad = SyntheticCourse.time(ITERATIONS, new SyntheticCourse.Operation() {
+            @Override
+            public void run() throws Exception {
+                dataServices.getGradeMatrix(students, parts);
+            }
+        });
+
+        final Map<Part, Map<Group, GroupGradingSheet>> scannedSheets = sheets;
+        final GradeMatrix scannedMatrix = matrix;
+        final double[] totals = new double[2];
+        double sheetsScan = SyntheticCourse.time(SCAN_ITERATIONS, new SyntheticCourse.Operation() {
+            @Override
+            public void run() {
+                double total = 0;
+                for (Map<Group, GroupGradingSheet> partSheets : scannedSheets.values()) {
+                    for (GroupGradingSheet sheet : partSheets.values()) {
+                        Double earned = sheet.getEarned();
+                        if (earned != null) {
+                            total += earned;
+                        }
+                    }
+                }
+                totals[0] = total;
+            }
+        });
+        double matrixScan = SyntheticCourse.time(SCAN_ITERATIONS, new SyntheticCourse.Operation() {
+            @Override
+            public void run() {
+                double total = 0;
+                for (Part part : scannedMatrix.getParts()) {
+                    int numGroups = scannedMatrix.getGroups(part.getAssignment()).size();
+                    for (int groupIndex = 0; groupIndex < numGroups; groupIndex++) {
+                        double earned = scannedMatrix.getEarned(part, groupIndex);
+                        if (!Double.isNaN(earned)) {
+                            total += earned;
+                        }
+                    }
+                }
+                totals[1] = total;
+            }
+        });
+
+        System.out.println(String.format("%-22s %12s %12s %12s", "", "memory (KB)", "load (ms)", "scan (ms)"));
+        System.out.println(String.format("%-22s %12d %12.1f %12.3f", "group grading sheets", sheetsBytes / 1024,
+                                         sheetsLoad, sheetsScan));
+        System.out.println(String.format("%-22s %12d %12.1f %12.3f", "grade matrix", matrixBytes / 1024,
+                                         matrixLoad, matrixScan));
+        System.out.println();
+        System.out.println(String.format("Totals: %.1f (sheets), %.1f (matrix)", totals[0], totals[1]));
+        connProvider.shutdown();
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
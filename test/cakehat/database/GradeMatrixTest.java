@@ -0,0 +1,257 @@
+package cakehat.database;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.CakehatSession;
+import cakehat.TestCakehatSessionProvider;
+import cakehat.assignment.Assignment;
+import cakehat.assignment.Part;
+import cakehat.gradingsheet.GradingSheetSubsection;
+import cakehat.services.ServicesException;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link GradeMatrix} as built by {@link DataServices#getGradeMatrix(List, List)} and for the
+ * {@link GroupGradingSheetTotal}s it is consistent with.
+ */
+public class GradeMatrixTest
+{
+    private static final int USER_TA_UID = 429;
+
+    private Database _database;
+    private DataServices _dataServices;
+    private Assignment _asgn;
+    private Part _designPart, _stylePart;
+    private Map<String, Student> _students;
+    private Map<String, Group> _groups;
+
+    @Before
+    public void setup() throws Exception
+    {
+        final Database database = new DatabaseImpl(Allocator.getFileSystemUtilities().createTempFile("tempDB", "db"));
+        _database = database;
+        database.resetDatabase();
+        new Allocator.Customizer()
+                .setDatabase(new SingletonAllocation<Database>()
+                    { public Database allocate() { return database; } })
+                .customize();
+        CakehatSession.setSessionProviderForTesting(new TestCakehatSessionProvider(USER_TA_UID));
+
+        database.putTAs(ImmutableSet.of(new DbTA(USER_TA_UID, "jak2", "Josh", "Kaplan", true, false)));
+
+        DbAssignment dbAsgn = new DbAssignment("Cartoon", 1);
+        dbAsgn.setHasGroups(true);
+        database.putAssignments(ImmutableSet.of(dbAsgn));
+        DbGradableEvent dbGe = DbGradableEvent.build(dbAsgn, "Code", 1);
+        database.putGradableEvents(ImmutableSet.of(dbGe));
+
+        //Earned points of the design part are the total of its subsections; the style part starts from its out of
+        DbPart dbDesignPart = DbPart.build(dbGe, "Design", 1);
+        DbPart dbStylePart = DbPart.build(dbGe, "Style", 2);
+        database.putParts(ImmutableSet.of(dbDesignPart, dbStylePart));
+        DbGradingSheetSection design = DbGradingSheetSection.build(dbDesignPart, "Design", 1, null);
+        DbGradingSheetSection style = DbGradingSheetSection.build(dbStylePart, "Style", 1, 5.0);
+        database.putGradingSheetSections(ImmutableSet.of(design, style));
+        database.putGradingSheetSubsections(ImmutableSet.of(
+                DbGradingSheetSubsection.build(design, "Classes", 1, 10.0),
+                DbGradingSheetSubsection.build(design, "Methods", 2, 10.0),
+                DbGradingSheetSubsection.build(style, "Naming", 1, null)));
+
+        //The assignments are loaded when data services is first used
+        _dataServices = Allocator.getDataServices();
+        _asgn = _dataServices.getAssignments().get(0);
+        _designPart = _asgn.getGradableEvents().get(0).getParts().get(0);
+        _stylePart = _asgn.getGradableEvents().get(0).getParts().get(1);
+
+        _dataServices.addStudents(ImmutableSet.of(
+                new DbStudent("aunger", "Alex", "Unger", "aunger@cs.brown.edu"),
+                new DbStudent("bchan", "Bea", "Chan", "bchan@cs.brown.edu"),
+                new DbStudent("cdiaz", "Cam", "Diaz", "cdiaz@cs.brown.edu"),
+                new DbStudent("dlee", "Dana", "Lee", "dlee@cs.brown.edu")));
+        _dataServices.updateDataCache();
+        _students = new HashMap<String, Student>();
+        for(Student student : _dataServices.getStudents())
+        {
+            _students.put(student.getLogin(), student);
+        }
+
+        database.putGroups(ImmutableSet.of(
+                new DbGroup(_asgn, "The Pair", ImmutableSet.of(_students.get("aunger"), _students.get("bchan"))),
+                new DbGroup(_asgn, "Solo", ImmutableSet.of(_students.get("cdiaz")))));
+        _dataServices.updateDataCache();
+        _groups = new HashMap<String, Group>();
+        for(Group group : _dataServices.getGroups(_asgn))
+        {
+            _groups.put(group.getName(), group);
+        }
+
+        //The pair has a submitted design grade and an unsubmitted style grade; the solo group has no grades
+        Group pair = _groups.get("The Pair");
+        GroupGradingSheet designSheet = _dataServices.getGroupGradingSheet(_designPart, pair);
+        designSheet.setEarnedPoints(getSubsection(_designPart, 0), 7.5);
+        _dataServices.saveGroupGradingSheet(designSheet);
+        _dataServices.setGroupGradingSheetsSubmitted(ImmutableSet.of(designSheet), true);
+
+        GroupGradingSheet styleSheet = _dataServices.getGroupGradingSheet(_stylePart, pair);
+        styleSheet.setEarnedPoints(getSubsection(_stylePart, 0), -1.5);
+        _dataServices.saveGroupGradingSheet(styleSheet);
+
+        //Only the design grading sheets are distributed, both to the user
+        SetMultimap<TA, Group> designDist = HashMultimap.create();
+        designDist.putAll(_dataServices.getTA(USER_TA_UID), _groups.values());
+        _dataServices.setDistribution(ImmutableMap.of(_designPart, designDist));
+    }
+
+    private static GradingSheetSubsection getSubsection(Part part, int index)
+    {
+        return part.getGradingSheet().getSections().get(0).getSubsections().get(index);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _database.close();
+    }
+
+    @Test
+    public void testMatrixMatchesGroupGradingSheets() throws ServicesException
+    {
+        List<Part> parts = ImmutableList.of(_designPart, _stylePart);
+        GradeMatrix matrix = _dataServices.getGradeMatrix(ImmutableList.<Student>of(), parts);
+
+        SetMultimap<Part, Group> toRetrieve = HashMultimap.create();
+        for(Part part : parts)
+        {
+            toRetrieve.putAll(part, _groups.values());
+        }
+        Map<Part, Map<Group, GroupGradingSheet>> sheets = _dataServices.getGroupGradingSheets(toRetrieve);
+
+        for(Part part : parts)
+        {
+            for(Group group : _groups.values())
+            {
+                int groupIndex = matrix.getGroupIndex(group);
+                GroupGradingSheet sheet = sheets.get(part).get(group);
+
+                Double earned = sheet.getEarned();
+                if(earned == null)
+                {
+                    assertTrue(Double.isNaN(matrix.getEarned(part, groupIndex)));
+                }
+                else
+                {
+                    assertEquals(earned, matrix.getEarned(part, groupIndex), 0);
+                }
+                assertEquals(sheet.getId() != null, matrix.hasGradingSheet(part, groupIndex));
+                assertEquals(sheet.isSubmitted(), matrix.isSubmitted(part, groupIndex));
+                assertEquals(sheet.getAssignedTo(), matrix.getAssignedTo(part, groupIndex));
+            }
+        }
+
+        Group pair = _groups.get("The Pair");
+        Group solo = _groups.get("Solo");
+        assertEquals(7.5, matrix.getEarned(_designPart, matrix.getGroupIndex(pair)), 0);
+        assertTrue(matrix.isSubmitted(_designPart, matrix.getGroupIndex(pair)));
+        assertTrue(Double.isNaN(matrix.getEarned(_designPart, matrix.getGroupIndex(solo))));
+        assertEquals(3.5, matrix.getEarned(_stylePart, matrix.getGroupIndex(pair)), 0);
+        assertFalse(matrix.isSubmitted(_stylePart, matrix.getGroupIndex(pair)));
+        assertEquals(5.0, matrix.getEarned(_stylePart, matrix.getGroupIndex(solo)), 0);
+        assertFalse(matrix.hasGradingSheet(_stylePart, matrix.getGroupIndex(solo)));
+    }
+
+    @Test
+    public void testTotalsMatchGroupGradingSheets() throws ServicesException
+    {
+        SetMultimap<Part, Group> toRetrieve = HashMultimap.create();
+        toRetrieve.putAll(_designPart, _groups.values());
+        toRetrieve.put(_stylePart, _groups.get("Solo"));
+        Map<Part, Map<Group, GroupGradingSheetTotal>> totals = _dataServices.getGroupGradingSheetTotals(toRetrieve);
+        Map<Part, Map<Group, GroupGradingSheet>> sheets = _dataServices.getGroupGradingSheets(toRetrieve);
+
+        assertEquals(sheets.keySet(), totals.keySet());
+        for(Part part : toRetrieve.keySet())
+        {
+            assertEquals(sheets.get(part).keySet(), totals.get(part).keySet());
+            for(Group group : toRetrieve.get(part))
+            {
+                GroupGradingSheet sheet = sheets.get(part).get(group);
+                GroupGradingSheetTotal total = totals.get(part).get(group);
+
+                assertEquals(sheet.getEarned(), total.getEarned());
+                assertEquals(sheet.isSubmitted(), total.isSubmitted());
+                assertEquals(sheet.getAssignedTo(), total.getAssignedTo());
+                assertEquals(sheet.getId() != null, total.hasGradingSheet());
+                assertEquals(sheet.isSubmitted() || !sheet.getEarnedPoints().isEmpty()
+                        || !sheet.getComments().isEmpty(), total.isModified());
+            }
+        }
+
+        //The solo group's unassigned, ungraded style sheet starts from the section's out of
+        GroupGradingSheetTotal soloStyle = totals.get(_stylePart).get(_groups.get("Solo"));
+        assertEquals(5.0, soloStyle.getEarned(), 0);
+        assertFalse(soloStyle.isModified());
+    }
+
+    @Test
+    public void testAssignedTotals() throws ServicesException
+    {
+        TA user = _dataServices.getTA(USER_TA_UID);
+        Map<Part, Map<Group, GroupGradingSheetTotal>> totals = _dataServices.getAssignedGroupGradingSheetTotals(user);
+
+        assertEquals(ImmutableSet.of(_designPart), totals.keySet());
+        assertEquals(_dataServices.getAssignedGroups(user).get(_designPart), totals.get(_designPart).keySet());
+
+        GroupGradingSheetTotal pair = totals.get(_designPart).get(_groups.get("The Pair"));
+        assertEquals(7.5, pair.getEarned(), 0);
+        assertTrue(pair.isSubmitted());
+        assertEquals(user, pair.getAssignedTo());
+        GroupGradingSheetTotal solo = totals.get(_designPart).get(_groups.get("Solo"));
+        assertNull(solo.getEarned());
+        assertFalse(solo.isModified());
+    }
+
+    @Test
+    public void testStudentsAreIndexedInOrderGiven() throws ServicesException
+    {
+        List<Student> students = ImmutableList.of(_students.get("dlee"), _students.get("cdiaz"),
+                _students.get("bchan"), _students.get("aunger"));
+        GradeMatrix matrix = _dataServices.getGradeMatrix(students, ImmutableList.of(_designPart));
+
+        assertEquals(students, matrix.getStudents());
+        for(int i = 0; i < students.size(); i++)
+        {
+            assertEquals(i, matrix.getStudentIndex(students.get(i)));
+        }
+
+        List<Group> groups = matrix.getGroups(_asgn);
+        assertEquals(2, groups.size());
+        assertEquals(-1, matrix.getGroupIndex(_asgn, 0));
+        assertEquals(_groups.get("Solo"), groups.get(matrix.getGroupIndex(_asgn, 1)));
+        assertEquals(_groups.get("The Pair"), groups.get(matrix.getGroupIndex(_asgn, 2)));
+        assertEquals(_groups.get("The Pair"), groups.get(matrix.getGroupIndex(_asgn, 3)));
+
+        double[] column = matrix.getEarnedColumn(_designPart);
+        assertEquals(7.5, column[matrix.getGroupIndex(_asgn, 3)], 0);
+        column[matrix.getGroupIndex(_asgn, 3)] = 0;
+        assertEquals(7.5, matrix.getEarned(_designPart, matrix.getGroupIndex(_asgn, 3)), 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPartNotInMatrix() throws ServicesException
+    {
+        GradeMatrix matrix = _dataServices.getGradeMatrix(ImmutableList.<Student>of(), ImmutableList.of(_designPart));
+        matrix.getEarned(_stylePart, 0);
+    }
+}
@@ -0,0 +1,67 @@
+package cakehat.database;
+
+import cakehat.Allocator;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.joda.time.DateTime;
+
+/**
+ * Measures rows per second written by {@link Database#putGroupGradingSheets(Set)} when saving the grading sheets of
+ * every group for a part at once, as happens when a distribution is made or a whole part is submitted. Not run as part
+ * of the test suite; run {@link #main} directly.
+ */
+public class GroupGradingSheetSaveBenchmark {
+
+    private static final int NUM_STUDENTS = 1000;
+    private static final int NUM_PARTS = 5;
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = Allocator.getFileSystemUtilities().createTempFile("benchmarkDB", "db");
+        PooledConnectionProvider connProvider = new PooledConnectionProvider(dbFile);
+        Database database = new DatabaseImpl(dbFile, connProvider);
+        SyntheticCourse course = SyntheticCourse.create(database, NUM_STUDENTS, 1, NUM_PARTS, false);
+
+        //create the sheets for every part up front so only the database writes are timed
+        List<Set<DbGroupGradingSheet>> sheetsByPart = new ArrayList<Set<DbGroupGradingSheet>>();
+        long modifiedTime = new DateTime(2012, 11, 1, 12, 0).getMillis();
+        int rowsPerPart = 0;
+        for (DbPart part : course.parts) {
+            Set<DbGroupGradingSheet> sheets = new HashSet<DbGroupGradingSheet>();
+            rowsPerPart = 0;
+            for (int groupId : course.groupIdsByAssignment.get(part.getGradableEvent().getAssignment().getId())) {
+                DbGroupGradingSheet sheet = new DbGroupGradingSheet(groupId, part.getId());
+                sheet.setAssignedToId(course.tas.get(groupId % course.tas.size()).getId());
+                rowsPerPart++;
+                for (DbGradingSheetSection section : part.getGradingSheetSections()) {
+                    for (DbGradingSheetSubsection subsection : section.getSubsections()) {
+                        sheet.setEarnedPoints(subsection.getId(), 7.5, 1, modifiedTime);
+                        rowsPerPart++;
+                    }
+                    sheet.setComments(section.getId(), "Nice work", 1, modifiedTime);
+                    rowsPerPart++;
+                }
+                sheets.add(sheet);
+            }
+            sheetsByPart.add(sheets);
+        }
+
+        System.out.println(String.format("%d sheets per part, %d rows per part", NUM_STUDENTS, rowsPerPart));
+
+        //first save inserts every row, second save updates them
+        for (String phase : new String[] { "insert", "update" }) {
+            long start = System.nanoTime();
+            for (Set<DbGroupGradingSheet> sheets : sheetsByPart) {
+                database.putGroupGradingSheets(sheets);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long rows = (long) rowsPerPart * NUM_PARTS;
+            System.out.println(String.format("%-6s %8d rows in %7.3f s = %10.0f rows/s", phase, rows, seconds,
+                                             rows / seconds));
+        }
+
+        connProvider.shutdown();
+    }
+}
@@ -0,0 +1,163 @@
+package cakehat.database;
+
+import cakehat.Allocator;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PooledConnectionProvider}.
+ */
+public class PooledConnectionProviderTest {
+
+    private File _dbFile;
+    private PooledConnectionProvider _provider;
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        _dbFile = Allocator.getFileSystemUtilities().createTempFile("tempDB", "db");
+        _provider = new PooledConnectionProvider(_dbFile, 2, 60 * 1000, 200);
+
+        Connection conn = _provider.createConnection();
+        try {
+            conn.createStatement().executeUpdate("CREATE TABLE item (id INTEGER PRIMARY KEY AUTOINCREMENT)");
+        } finally {
+            _provider.closeConnection(conn);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        _provider.shutdown();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws SQLException {
+        Connection conn1 = _provider.createConnection();
+        _provider.closeConnection(conn1);
+        Connection conn2 = _provider.createConnection();
+        _provider.closeConnection(conn2);
+
+        PooledConnectionProvider.Statistics stats = _provider.getStatistics();
+        assertEquals(1, stats.getCreatedCount());
+        assertEquals(3, stats.getBorrowCount());
+        assertEquals(0, stats.getActiveCount());
+        assertEquals(1, stats.getIdleCount());
+    }
+
+    @Test
+    public void testUsageSummaryIsReported() throws SQLException {
+        Connection conn = _provider.createConnection();
+        _provider.closeConnection(conn);
+
+        String summary = new DatabaseImpl(_dbFile, _provider).getConnectionUsageSummary();
+        assertTrue(summary, summary.startsWith("active=0, idle=1, borrowed="));
+    }
+
+    @Test
+    public void testReturnedConnectionMayNotBeUsed() throws SQLException {
+        Connection conn = _provider.createConnection();
+        _provider.closeConnection(conn);
+        assertTrue(conn.isClosed());
+
+        try {
+            conn.createStatement();
+            fail();
+        } catch (SQLException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testUncommittedTransactionIsRolledBackOnReturn() throws SQLException {
+        Connection conn = _provider.createConnection();
+        conn.setAutoCommit(false);
+        conn.createStatement().executeUpdate("INSERT INTO item DEFAULT VALUES");
+        _provider.closeConnection(conn);
+
+        conn = _provider.createConnection();
+        try {
+            assertTrue(conn.getAutoCommit());
+            assertEquals(0, this.countItems(conn));
+        } finally {
+            _provider.closeConnection(conn);
+        }
+    }
+
+    @Test
+    public void testOpenStatementsAreClosedOnReturn() throws SQLException {
+        Connection conn = _provider.createConnection();
+        Statement statement = conn.createStatement();
+        statement.executeQuery("SELECT id FROM item");
+        _provider.closeConnection(conn);
+
+        //a statement left open would keep the table locked
+        conn = _provider.createConnection();
+        try {
+            conn.createStatement().executeUpdate("DROP TABLE item");
+        } finally {
+            _provider.closeConnection(conn);
+        }
+    }
+
+    @Test
+    public void testForeignKeysEnforced() throws SQLException {
+        Connection conn = _provider.createConnection();
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("PRAGMA foreign_keys");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        } finally {
+            _provider.closeConnection(conn);
+        }
+    }
+
+    @Test
+    public void testTimesOutWhenExhausted() throws SQLException {
+        Connection conn1 = _provider.createConnection();
+        Connection conn2 = _provider.createConnection();
+        try {
+            _provider.createConnection();
+            fail();
+        } catch (SQLException e) {
+            //expected
+        } finally {
+            _provider.closeConnection(conn1);
+            _provider.closeConnection(conn2);
+        }
+
+        assertEquals(2, _provider.getStatistics().getIdleCount());
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws SQLException, InterruptedException {
+        PooledConnectionProvider provider = new PooledConnectionProvider(_dbFile, 2, 0, 200);
+        try {
+            Connection conn = provider.createConnection();
+            provider.closeConnection(conn);
+            Thread.sleep(5);
+            conn = provider.createConnection();
+            provider.closeConnection(conn);
+
+            PooledConnectionProvider.Statistics stats = provider.getStatistics();
+            assertEquals(2, stats.getCreatedCount());
+            assertEquals(1, stats.getEvictedCount());
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    private int countItems(Connection conn) throws SQLException {
+        ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM item");
+        rs.next();
+
+        return rs.getInt(1);
+    }
+}
@@ -0,0 +1,248 @@
+package cakehat.database;
+
+import cakehat.Allocator;
+import cakehat.InitializationException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SchemaMigrations} and how {@link DatabaseImpl} applies them.
+ */
+public class SchemaMigrationsTest {
+
+    private File _dbFile;
+    private PooledConnectionProvider _connProvider;
+    private Database _database;
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        _dbFile = Allocator.getFileSystemUtilities().createTempFile("tempDB", "db");
+        _connProvider = new PooledConnectionProvider(_dbFile);
+        _database = new DatabaseImpl(_dbFile, _connProvider);
+        _database.resetDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        _connProvider.shutdown();
+    }
+
+    @Test
+    public void testResetDatabaseCreatesLatestVersion() throws SQLException {
+        assertEquals(SchemaMigrations.LATEST_VERSION, this.getVersion());
+        assertTrue(this.getIndexes().contains("groupmember_sid"));
+    }
+
+    @Test
+    public void testEmptyDatabaseIsNotMigrated() throws IOException, SQLException {
+        File emptyDbFile = Allocator.getFileSystemUtilities().createTempFile("tempDB", "db");
+        PooledConnectionProvider connProvider = new PooledConnectionProvider(emptyDbFile);
+        try {
+            new DatabaseImpl(emptyDbFile, connProvider);
+
+            Connection conn = connProvider.createConnection();
+            try {
+                assertFalse(SchemaMigrations.hasSchema(conn));
+                assertEquals(0, SchemaMigrations.getVersion(conn));
+            } finally {
+                connProvider.closeConnection(conn);
+            }
+        } finally {
+            connProvider.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnversionedDatabaseIsUpgradedWhenOpened() throws SQLException {
+        Connection conn = _connProvider.createConnection();
+        try {
+            for (String index : this.getIndexes()) {
+                conn.createStatement().executeUpdate("DROP INDEX " + index);
+            }
+            conn.createStatement().executeUpdate("DROP TABLE schema_version");
+        } finally {
+            _connProvider.closeConnection(conn);
+        }
+        assertEquals(0, this.getVersion());
+        assertTrue(this.getIndexes().isEmpty());
+
+        new DatabaseImpl(_dbFile, _connProvider);
+
+        assertEquals(SchemaMigrations.LATEST_VERSION, this.getVersion());
+        assertTrue(this.getIndexes().contains("groupgradingsheet_agid_pid"));
+        assertTrue(this.getIndexes().contains("blacklist_tid"));
+    }
+
+    @Test
+    public void testVersion1TimestampsAreConvertedToEpochMillis() throws SQLException {
+        DbTA ta = new DbTA(1, "talogin", "first", "last", true, true);
+        _database.putTAs(ImmutableSet.of(ta));
+        DbAssignment asgn = new DbAssignment("asgn", 1);
+        DbGradableEvent ge = DbGradableEvent.build(asgn, "ge", 1);
+        DbPart part = DbPart.build(ge, "part", 1);
+        DbGradingSheetSection section = DbGradingSheetSection.build(part, "section", 1, null);
+        DbGradingSheetSubsection subsection = DbGradingSheetSubsection.build(section, "subsection", 1, 10.0);
+        _database.putAssignments(ImmutableSet.of(asgn));
+        _database.putGradableEvents(ImmutableSet.of(ge));
+        _database.putParts(ImmutableSet.of(part));
+        _database.putGradingSheetSections(ImmutableSet.of(section));
+        _database.putGradingSheetSubsections(ImmutableSet.of(subsection));
+        DbStudent student = new DbStudent("login", "first", "last", "email");
+        _database.putStudents(ImmutableSet.of(student));
+        DbGroup group = new DbGroup(asgn.getId(), "group", ImmutableSet.of(student.getId()));
+        _database.putGroups(ImmutableSet.of(group));
+        DbGroupGradingSheet ggs = new DbGroupGradingSheet(group.getId(), part.getId());
+        ggs.setEarnedPoints(subsection.getId(), 7.0, ta.getId(), 0L);
+        _database.putGroupGradingSheets(ImmutableSet.of(ggs));
+
+        //recreate the state of a version 1 database, which stored timestamps as ISO 8601 strings
+        String occurred = "2012-10-15T23:59:00.000-04:00";
+        String recorded = "2012-10-16T09:30:00.000-04:00";
+        String modified = "2012-11-01T12:00:00.000-04:00";
+        String submitted = "2012-11-02T08:15:30.250Z";
+        Connection conn = _connProvider.createConnection();
+        try {
+            conn.createStatement().executeUpdate("DROP TABLE geoccurrence");
+            conn.createStatement().executeUpdate("CREATE TABLE geoccurrence (geid INTEGER NOT NULL,"
+                    + " agid INTEGER NOT NULL, time VARCHAR NOT NULL, daterecorded VARCHAR NOT NULL, path VARCHAR,"
+                    + " tid INTEGER, CONSTRAINT singlehandin UNIQUE (agid, geid) ON CONFLICT REPLACE)");
+            conn.createStatement().executeUpdate("INSERT INTO geoccurrence (geid, agid, time, daterecorded, tid)"
+                    + " VALUES (" + ge.getId() + ", " + group.getId() + ", '" + occurred + "', '" + recorded + "', "
+                    + ta.getId() + ")");
+            conn.createStatement().executeUpdate("UPDATE groupgradingsheetsubsection SET lastmodifieddate = '"
+                    + modified + "'");
+            conn.createStatement().executeUpdate("UPDATE groupgradingsheet SET submittedby = " + ta.getId()
+                    + ", datesubmitted = '" + submitted + "'");
+            conn.createStatement().executeUpdate("UPDATE schema_version SET version = 1");
+        } finally {
+            _connProvider.closeConnection(conn);
+        }
+
+        new DatabaseImpl(_dbFile, _connProvider);
+
+        assertEquals(SchemaMigrations.LATEST_VERSION, this.getVersion());
+        assertTrue(this.getIndexes().contains("geoccurrence_geid_agid"));
+        assertTrue(this.getIndexes().contains("groupgradingsheet_agid_pid"));
+
+        GradableEventOccurrenceRecord occurrence = _database.getGradableEventOccurrences(ge.getId(),
+                ImmutableSet.of(group.getId())).get(group.getId());
+        assertEquals(new DateTime(occurred).getMillis(), occurrence.getOccurrenceDate());
+        assertEquals(new DateTime(recorded).getMillis(), occurrence.getDateRecorded());
+
+        DbGroupGradingSheet ggsFromDb = _database.getGroupGradingSheets(ImmutableSet.of(part.getId()),
+                ImmutableSet.of(subsection.getId()), ImmutableSet.of(section.getId()),
+                ImmutableSet.of(group.getId())).get(part.getId()).get(group.getId());
+        assertEquals(ggs.getId(), ggsFromDb.getId());
+        assertEquals(Long.valueOf(new DateTime(submitted).getMillis()), ggsFromDb.getSubmittedDate());
+        assertEquals(new DateTime(modified).getMillis(),
+                ggsFromDb.getSubsectionEarnedPoints().get(subsection.getId()).getLastModifiedTime());
+
+        //new grading sheets must not reuse the IDs of existing ones
+        DbPart part2 = DbPart.build(ge, "part2", 2);
+        _database.putParts(ImmutableSet.of(part2));
+        DbGroupGradingSheet newGgs = new DbGroupGradingSheet(group.getId(), part2.getId());
+        _database.putGroupGradingSheets(ImmutableSet.of(newGgs));
+        assertTrue(newGgs.getId() > ggs.getId());
+    }
+
+    @Test
+    public void testDatabaseOpenedConcurrentlyIsMigratedOnce() throws Exception {
+        Connection conn = _connProvider.createConnection();
+        try {
+            conn.createStatement().executeUpdate("DROP TABLE schema_version");
+        } finally {
+            _connProvider.closeConnection(conn);
+        }
+
+        //each user opens the database with their own connections
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Exception> failures = new CopyOnWriteArrayList<Exception>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    PooledConnectionProvider connProvider = new PooledConnectionProvider(_dbFile);
+                    try {
+                        start.await();
+                        new DatabaseImpl(_dbFile, connProvider);
+                    } catch (Exception e) {
+                        failures.add(e);
+                    } finally {
+                        connProvider.shutdown();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(ImmutableList.<Exception>of(), failures);
+        assertEquals(SchemaMigrations.LATEST_VERSION, this.getVersion());
+        conn = _connProvider.createConnection();
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) AS applied FROM schema_version");
+            assertEquals(1, rs.getInt("applied"));
+        } finally {
+            _connProvider.closeConnection(conn);
+        }
+    }
+
+    @Test(expected=InitializationException.class)
+    public void testNewerDatabaseIsRejected() throws SQLException {
+        Connection conn = _connProvider.createConnection();
+        try {
+            conn.createStatement().executeUpdate("INSERT INTO schema_version (version, dateapplied)"
+                    + " VALUES (" + (SchemaMigrations.LATEST_VERSION + 1) + ", datetime('now'))");
+        } finally {
+            _connProvider.closeConnection(conn);
+        }
+
+        new DatabaseImpl(_dbFile, _connProvider);
+    }
+
+    private int getVersion() throws SQLException {
+        Connection conn = _connProvider.createConnection();
+        try {
+            return SchemaMigrations.getVersion(conn);
+        } finally {
+            _connProvider.closeConnection(conn);
+        }
+    }
+
+    private Set<String> getIndexes() throws SQLException {
+        Set<String> indexes = new HashSet<String>();
+        Connection conn = _connProvider.createConnection();
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT name FROM sqlite_master WHERE type == 'index'"
+                    + " AND name NOT LIKE 'sqlite_autoindex%'");
+            while (rs.next()) {
+                indexes.add(rs.getString("name"));
+            }
+        } finally {
+            _connProvider.closeConnection(conn);
+        }
+
+        return indexes;
+    }
+}
@@ -0,0 +1,240 @@
+package cakehat.database;
+
+import com.google.common.collect.ImmutableSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.joda.time.DateTime;
+
+/**
+ * Populates a {@link Database} with a synthetic course for use by benchmarks. Every student is in their own group for
+ * every assignment, every assignment has one gradable event and every group has a grading sheet with earned points for
+ * every subsection of every part.
+ */
+class SyntheticCourse {
+
+    static final int NUM_TAS = 20;
+    static final int SECTIONS_PER_PART = 2;
+    static final int SUBSECTIONS_PER_SECTION = 3;
+
+    final Database database;
+    final List<DbTA> tas = new ArrayList<DbTA>();
+    final List<DbStudent> students = new ArrayList<DbStudent>();
+    final List<DbAssignment> assignments = new ArrayList<DbAssignment>();
+    final List<DbGradableEvent> gradableEvents = new ArrayList<DbGradableEvent>();
+    final List<DbPart> parts = new ArrayList<DbPart>();
+    final Map<Integer, Set<Integer>> groupIdsByAssignment = new HashMap<Integer, Set<Integer>>();
+    final Set<Integer> sectionIds = new HashSet<Integer>();
+    final Set<Integer> subsectionIds = new HashSet<Integer>();
+
+    private SyntheticCourse(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Resets {@code database} and fills it with the synthetic course.
+     *
+     * @param database
+     * @param numStudents
+     * @param numAssignments
+     * @param partsPerAssignment
+     * @param withGradingSheets whether to create grading sheets for every group and part
+     * @return
+     * @throws SQLException
+     */
+    static SyntheticCourse create(Database database, int numStudents, int numAssignments, int partsPerAssignment,
+                                  boolean withGradingSheets) throws SQLException {
+        SyntheticCourse course = new SyntheticCourse(database);
+        Random random = new Random(numStudents * 31 + numAssignments);
+
+        database.resetDatabase();
+
+        for (int i = 0; i < NUM_TAS; i++) {
+            course.tas.add(new DbTA(i + 1, "ta" + i, "TA", "Number" + i, true, false));
+        }
+        database.putTAs(new HashSet<DbTA>(course.tas));
+
+        for (int i = 0; i < numStudents; i++) {
+            course.students.add(new DbStudent("student" + i, "First" + i, "Last" + i, "student" + i + "@example.edu"));
+        }
+        database.putStudents(new HashSet<DbStudent>(course.students));
+
+        for (int i = 0; i < numAssignments; i++) {
+            course.assignments.add(new DbAssignment("Assignment " + i, i));
+        }
+        database.putAssignments(new HashSet<DbAssignment>(course.assignments));
+
+        List<DbGradingSheetSection> sections = new ArrayList<DbGradingSheetSection>();
+        List<DbGradingSheetSubsection> subsections = new ArrayList<DbGradingSheetSubsection>();
+        for (DbAssignment asgn : course.assignments) {
+            DbGradableEvent ge = DbGradableEvent.build(asgn, "Handin", 1);
+            course.gradableEvents.add(ge);
+            for (int p = 0; p < partsPerAssignment; p++) {
+                DbPart part = DbPart.build(ge, "Part " + p, p);
+                course.parts.add(part);
+                for (int s = 0; s < SECTIONS_PER_PART; s++) {
+                    DbGradingSheetSection section = DbGradingSheetSection.build(part, "Section " + s, s, null);
+                    sections.add(section);
+                    for (int ss = 0; ss < SUBSECTIONS_PER_SECTION; ss++) {
+                        subsections.add(DbGradingSheetSubsection.build(section, "Subsection " + ss, ss, 10.0));
+                    }
+                }
+            }
+        }
+        database.putGradableEvents(new HashSet<DbGradableEvent>(course.gradableEvents));
+        database.putParts(new HashSet<DbPart>(course.parts));
+        database.putGradingSheetSections(new HashSet<DbGradingSheetSection>(sections));
+        database.putGradingSheetSubsections(new HashSet<DbGradingSheetSubsection>(subsections));
+        for (DbGradingSheetSection section : sections) {
+            course.sectionIds.add(section.getId());
+        }
+        for (DbGradingSheetSubsection subsection : subsections) {
+            course.subsectionIds.add(subsection.getId());
+        }
+
+        for (DbAssignment asgn : course.assignments) {
+            Set<DbGroup> groups = new HashSet<DbGroup>();
+            for (DbStudent student : course.students) {
+                groups.add(new DbGroup(asgn.getId(), student.getLogin(), ImmutableSet.of(student.getId())));
+            }
+            database.putGroups(groups);
+
+            Set<Integer> groupIds = new HashSet<Integer>();
+            for (DbGroup group : groups) {
+                groupIds.add(group.getId());
+            }
+            course.groupIdsByAssignment.put(asgn.getId(), groupIds);
+        }
+
+        for (DbGradableEvent ge : course.gradableEvents) {
+            course.putOccurrencesAndExtensions(ge, random);
+        }
+
+        for (DbTA ta : course.tas) {
+            Set<Integer> blacklisted = new HashSet<Integer>();
+            for (int i = 0; i < 3; i++) {
+                blacklisted.add(course.students.get(random.nextInt(numStudents)).getId());
+            }
+            database.blacklistStudents(blacklisted, ta.getId());
+        }
+
+        if (withGradingSheets) {
+            for (DbPart part : course.parts) {
+                course.putGradingSheets(part, random);
+            }
+        }
+
+        return course;
+    }
+
+    private void putOccurrencesAndExtensions(DbGradableEvent ge, Random random) throws SQLException {
+        Map<Integer, Long> occurrences = new HashMap<Integer, Long>();
+        Set<Integer> extended = new HashSet<Integer>();
+        for (int groupId : this.groupIdsByAssignment.get(ge.getAssignment().getId())) {
+            occurrences.put(groupId, new DateTime(2012, 10, 10 + random.nextInt(10), 23, 59).getMillis());
+            if (random.nextInt(10) == 0) {
+                extended.add(groupId);
+            }
+        }
+        int taId = this.tas.get(0).getId();
+        long dateRecorded = new DateTime(2012, 10, 20, 12, 0).getMillis();
+        this.database.setGradableEventOccurrences(ge.getId(), occurrences, taId, dateRecorded);
+        this.database.setExtensions(ge.getId(), new DateTime(2012, 10, 25, 23, 59).getMillis(), false, "extension", 
+                                    dateRecorded, taId, extended);
+    }
+
+    private void putGradingSheets(DbPart part, Random random) throws SQLException {
+        long now = new DateTime(2012, 11, 1, 12, 0).getMillis();
+        Set<DbGroupGradingSheet> sheets = new HashSet<DbGroupGradingSheet>();
+        for (int groupId : this.groupIdsByAssignment.get(part.getGradableEvent().getAssignment().getId())) {
+            DbGroupGradingSheet sheet = new DbGroupGradingSheet(groupId, part.getId());
+            int taId = this.tas.get(random.nextInt(this.tas.size())).getId();
+            sheet.setAssignedToId(taId);
+            for (DbGradingSheetSection section : part.getGradingSheetSections()) {
+                for (DbGradingSheetSubsection subsection : section.getSubsections()) {
+                    sheet.setEarnedPoints(subsection.getId(), (double) random.nextInt(11), taId, now);
+                }
+                sheet.setComments(section.getId(), "Comments for group " + groupId, taId, now);
+            }
+            sheets.add(sheet);
+        }
+        this.database.putGroupGradingSheets(sheets);
+    }
+
+    Set<Integer> getPartIds() {
+        Set<Integer> partIds = new HashSet<Integer>();
+        for (DbPart part : this.parts) {
+            partIds.add(part.getId());
+        }
+
+        return partIds;
+    }
+
+    /**
+     * Returns the IDs of the grading sheet sections of {@code parts}.
+     */
+    static Set<Integer> getSectionIds(Iterable<DbPart> parts) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (DbPart part : parts) {
+            for (DbGradingSheetSection section : part.getGradingSheetSections()) {
+                ids.add(section.getId());
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Returns the IDs of the grading sheet subsections of {@code parts}.
+     */
+    static Set<Integer> getSubsectionIds(Iterable<DbPart> parts) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (DbPart part : parts) {
+            for (DbGradingSheetSection section : part.getGradingSheetSections()) {
+                for (DbGradingSheetSubsection subsection : section.getSubsections()) {
+                    ids.add(subsection.getId());
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    Set<Integer> getAllGroupIds() {
+        Set<Integer> groupIds = new HashSet<Integer>();
+        for (Set<Integer> ids : this.groupIdsByAssignment.values()) {
+            groupIds.addAll(ids);
+        }
+
+        return groupIds;
+    }
+
+    /**
+     * Runs {@code operation} {@code iterations} times after a warm up run and returns the mean time per run in
+     * milliseconds.
+     *
+     * @param iterations
+     * @param operation
+     * @return
+     * @throws Exception
+     */
+    static double time(int iterations, Operation operation) throws Exception {
+        operation.run();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    static interface Operation {
+        void run() throws Exception;
+    }
+}
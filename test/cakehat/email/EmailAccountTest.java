@@ -0,0 +1,203 @@
+package cakehat.email;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.internet.InternetAddress;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link EmailAccount} sending to a local stand-in for an SMTP server.
+ */
+public class EmailAccountTest
+{
+    private FakeSmtpServer _server;
+
+    @After
+    public void tearDown() throws IOException
+    {
+        if(_server != null)
+        {
+            _server.close();
+        }
+    }
+
+    @Test
+    public void testBatchSendsOverOneConnection() throws Exception
+    {
+        _server = new FakeSmtpServer(Integer.MAX_VALUE);
+        EmailBatch batch = createAccount(_server).openBatch();
+        try
+        {
+            for(int i = 0; i < 5; i++)
+            {
+                sendEmail(batch, i);
+            }
+        }
+        finally
+        {
+            batch.close();
+        }
+
+        assertEquals(5, _server.getMessageCount());
+        assertEquals(1, _server.getConnectionCount());
+    }
+
+    @Test
+    public void testBatchReconnectsWhenConnectionIsDropped() throws Exception
+    {
+        _server = new FakeSmtpServer(2);
+        EmailBatch batch = createAccount(_server).openBatch();
+        try
+        {
+            for(int i = 0; i < 5; i++)
+            {
+                sendEmail(batch, i);
+            }
+        }
+        finally
+        {
+            batch.close();
+        }
+
+        assertEquals(5, _server.getMessageCount());
+        assertEquals(3, _server.getConnectionCount());
+    }
+
+    private static EmailAccount createAccount(FakeSmtpServer server)
+    {
+        Properties properties = new Properties();
+        properties.put("mail.smtp.host", "localhost");
+        properties.put("mail.smtp.port", Integer.toString(server.getPort()));
+
+        return new EmailAccount(properties, null);
+    }
+
+    private static void sendEmail(EmailBatch batch, int i) throws Exception
+    {
+        batch.send(new InternetAddress("cakehat@cs.brown.edu"),
+                   ImmutableSet.of(new InternetAddress("student" + i + "@cs.brown.edu")),
+                   null,
+                   null,
+                   "Grading",
+                   "Grading sheet " + i,
+                   null);
+    }
+
+    /**
+     * Accepts connections one at a time and speaks just enough SMTP to receive messages. Closes each connection after
+     * it has received a given number of messages, as a server which drops idle or long lived connections would.
+     */
+    private static class FakeSmtpServer
+    {
+        private final ServerSocket _serverSocket;
+        private final int _messagesPerConnection;
+        private final AtomicInteger _messageCount = new AtomicInteger();
+        private final AtomicInteger _connectionCount = new AtomicInteger();
+
+        FakeSmtpServer(int messagesPerConnection) throws IOException
+        {
+            _serverSocket = new ServerSocket(0);
+            _messagesPerConnection = messagesPerConnection;
+
+            Thread thread = new Thread("fake-smtp-server")
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while(true)
+                        {
+                            Socket socket = _serverSocket.accept();
+                            _connectionCount.incrementAndGet();
+                            try
+                            {
+                                converse(socket);
+                            }
+                            finally
+                            {
+                                socket.close();
+                            }
+                        }
+                    }
+                    //Signals that the server was closed
+                    catch(IOException e) { }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void converse(Socket socket) throws IOException
+        {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            OutputStream out = socket.getOutputStream();
+            reply(out, "220 localhost ESMTP");
+
+            int messages = 0;
+            for(String line = in.readLine(); line != null; line = in.readLine())
+            {
+                String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase();
+                if(command.equals("DATA"))
+                {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    for(String dataLine = in.readLine(); dataLine != null && !dataLine.equals(".");
+                            dataLine = in.readLine()) { }
+                    _messageCount.incrementAndGet();
+                    reply(out, "250 OK");
+
+                    messages++;
+                    if(messages == _messagesPerConnection)
+                    {
+                        return;
+                    }
+                }
+                else if(command.equals("QUIT"))
+                {
+                    reply(out, "221 Bye");
+                    return;
+                }
+                else
+                {
+                    reply(out, "250 OK");
+                }
+            }
+        }
+
+        private static void reply(OutputStream out, String reply) throws IOException
+        {
+            out.write((reply + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+        }
+
+        int getPort()
+        {
+            return _serverSocket.getLocalPort();
+        }
+
+        int getMessageCount()
+        {
+            return _messageCount.get();
+        }
+
+        int getConnectionCount()
+        {
+            return _connectionCount.get();
+        }
+
+        void close() throws IOException
+        {
+            _serverSocket.close();
+        }
+    }
+}
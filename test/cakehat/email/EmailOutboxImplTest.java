@@ -0,0 +1,387 @@
+package cakehat.email;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.database.Database;
+import cakehat.database.DatabaseImpl;
+import cakehat.services.FileSystemServices;
+import cakehat.services.PathServices;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.ByteArrayDataSource;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import support.utils.UserUtilities;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link EmailOutboxImpl} dispatching to a stand-in for the mail server.
+ */
+public class EmailOutboxImplTest
+{
+    private File _outboxDir;
+    private Database _database;
+    private FakeMailServer _server;
+
+    @Before
+    public void setup() throws Exception
+    {
+        _outboxDir = Allocator.getFileSystemUtilities().createTempFile("outbox", "");
+        _outboxDir.delete();
+        _outboxDir.mkdir();
+        _server = new FakeMailServer();
+
+        final Database database = new DatabaseImpl(Allocator.getFileSystemUtilities().createTempFile("tempDB", "db"));
+        _database = database;
+        database.resetDatabase();
+
+        final PathServices pathServices = createMock(PathServices.class);
+        expect(pathServices.getOutboxDir()).andReturn(_outboxDir).anyTimes();
+        final FileSystemServices fileSystemServices = createNiceMock(FileSystemServices.class);
+        final UserUtilities userUtils = createMock(UserUtilities.class);
+        expect(userUtils.getUserId()).andReturn(1).anyTimes();
+        final EmailManager emailManager = createMock(EmailManager.class);
+        expect(emailManager.openBatch()).andAnswer(new IAnswer<EmailBatch>()
+        {
+            @Override
+            public EmailBatch answer()
+            {
+                return _server.openBatch();
+            }
+        }).anyTimes();
+        replay(pathServices, fileSystemServices, userUtils, emailManager);
+
+        new Allocator.Customizer()
+                .setDatabase(new SingletonAllocation<Database>()
+                    { public Database allocate() { return database; } })
+                .setPathServices(new SingletonAllocation<PathServices>()
+                    { public PathServices allocate() { return pathServices; } })
+                .setFileSystemServices(new SingletonAllocation<FileSystemServices>()
+                    { public FileSystemServices allocate() { return fileSystemServices; } })
+                .setUserUtils(new SingletonAllocation<UserUtilities>()
+                    { public UserUtilities allocate() { return userUtils; } })
+                .setEmailManager(new SingletonAllocation<EmailManager>()
+                    { public EmailManager allocate() { return emailManager; } })
+                .customize();
+    }
+
+    @After
+    public void tearDown()
+    {
+        _database.close();
+        Allocator.getFileSystemUtilities().deleteFilesSilently(ImmutableList.of(_outboxDir));
+    }
+
+    @Test
+    public void testDispatchRetriesFailedEmails() throws Exception
+    {
+        EmailOutbox outbox = new EmailOutboxImpl(2, 1000, 0);
+        String batch = outbox.createBatch();
+        for(int i = 0; i < 5; i++)
+        {
+            enqueue(outbox, batch, "student" + i + "@cs.brown.edu");
+        }
+        _server.failOnce("student2@cs.brown.edu");
+
+        RecordingListener listener = new RecordingListener();
+        outbox.dispatch(batch, listener);
+
+        assertEquals(5, _server.getSent().size());
+        assertEquals(5, listener._sent.get());
+        assertEquals(0, listener._failed.get());
+        assertEquals(0, this.getPendingCount());
+        assertEquals(0, _outboxDir.list().length);
+        assertTrue(_server.getOpenCount() <= 2);
+    }
+
+    @Test
+    public void testRejectedRecipientIsNotRetried() throws Exception
+    {
+        EmailOutbox outbox = new EmailOutboxImpl(1, 1000, 0);
+        String batch = outbox.createBatch();
+        enqueue(outbox, batch, "student0@cs.brown.edu");
+        enqueue(outbox, batch, "nobody@cs.brown.edu");
+        _server.reject("nobody@cs.brown.edu");
+
+        RecordingListener listener = new RecordingListener();
+        outbox.dispatch(batch, listener);
+
+        assertEquals(ImmutableList.of("student0@cs.brown.edu"), _server.getSent());
+        assertEquals(1, listener._sent.get());
+        assertEquals(1, listener._failed.get());
+        assertEquals(2, _server.getAttemptCount());
+        assertEquals(0, this.getPendingCount());
+    }
+
+    @Test
+    public void testCanceledEmailsRemainPendingUntilDispatched() throws Exception
+    {
+        EmailOutbox outbox = new EmailOutboxImpl(3, 1000, 0);
+        String batch = outbox.createBatch();
+        for(int i = 0; i < 4; i++)
+        {
+            enqueue(outbox, batch, "student" + i + "@cs.brown.edu");
+        }
+
+        RecordingListener canceled = new RecordingListener();
+        canceled._cancel = true;
+        outbox.dispatch(batch, canceled);
+        assertTrue(_server.getSent().isEmpty());
+        assertEquals(4, this.getPendingCount());
+        assertEquals(0, outbox.getAbandonedCount());
+
+        //As a later session would once the session that added the emails is no longer running
+        this.abandon(batch);
+        EmailOutbox later = new EmailOutboxImpl(3, 1000, 0);
+        assertEquals(4, later.getAbandonedCount());
+        RecordingListener resumed = new RecordingListener();
+        later.dispatch(null, resumed);
+        assertEquals(4, _server.getSent().size());
+        assertEquals(0, this.getPendingCount());
+    }
+
+    @Test
+    public void testEmailsHeldByRunningSessionAreNotDispatched() throws Exception
+    {
+        EmailOutbox outbox = new EmailOutboxImpl(1, 1000, 0);
+        enqueue(outbox, outbox.createBatch(), "student0@cs.brown.edu");
+
+        EmailOutbox other = new EmailOutboxImpl(1, 1000, 0);
+        assertEquals(0, other.getAbandonedCount());
+        other.dispatch(null, new RecordingListener());
+        other.cancel(null);
+        assertTrue(_server.getSent().isEmpty());
+        assertEquals(1, this.getPendingCount());
+    }
+
+    @Test
+    public void testCancelDiscardsPendingEmails() throws Exception
+    {
+        EmailOutbox outbox = new EmailOutboxImpl(1, 1000, 0);
+        String batch = outbox.createBatch();
+        String otherBatch = outbox.createBatch();
+        enqueue(outbox, batch, "student0@cs.brown.edu");
+        enqueue(outbox, otherBatch, "student1@cs.brown.edu");
+
+        outbox.cancel(batch);
+        assertEquals(1, this.getPendingCount());
+        assertEquals(1, _outboxDir.list().length);
+
+        this.abandon(otherBatch);
+        new EmailOutboxImpl(1, 1000, 0).dispatch(null, new RecordingListener());
+        assertEquals(ImmutableList.of("student1@cs.brown.edu"), _server.getSent());
+    }
+
+    @Test
+    public void testSpooledAttachmentIsStoredOnce() throws Exception
+    {
+        EmailOutbox outbox = new EmailOutboxImpl(2, 1000, 0);
+        String batch = outbox.createBatch();
+        DataSource attachment = outbox.spoolAttachment(new ByteArrayDataSource("handin contents".getBytes(),
+                "application/x-tar"));
+        for(int i = 0; i < 3; i++)
+        {
+            outbox.enqueue(batch,
+                           new InternetAddress("cakehat@cs.brown.edu"),
+                           ImmutableSet.of(new InternetAddress("student" + i + "@cs.brown.edu")),
+                           null,
+                           null,
+                           "Grading",
+                           "Grading sheet",
+                           ImmutableList.of(attachment));
+        }
+        outbox.releaseAttachment(attachment);
+
+        //One file for each email and one for the attachment they share
+        assertEquals(4, _outboxDir.list().length);
+
+        outbox.dispatch(batch, new RecordingListener());
+        assertEquals(3, _server.getSent().size());
+        assertEquals(ImmutableList.of("handin contents", "handin contents", "handin contents"),
+                _server.getAttachments());
+        assertEquals(0, _outboxDir.list().length);
+    }
+
+    @Test
+    public void testReleasedAttachmentIsDeletedIfUnused() throws Exception
+    {
+        EmailOutbox outbox = new EmailOutboxImpl(1, 1000, 0);
+        DataSource attachment = outbox.spoolAttachment(new ByteArrayDataSource("handin contents".getBytes(),
+                "application/x-tar"));
+        assertEquals(1, _outboxDir.list().length);
+
+        outbox.releaseAttachment(attachment);
+        assertEquals(0, _outboxDir.list().length);
+    }
+
+    /**
+     * The number of emails in the outbox which are pending, regardless of the session holding them.
+     */
+    private int getPendingCount() throws Exception
+    {
+        return _database.getAbandonedOutboxMessageCount(1, "", Long.MAX_VALUE);
+    }
+
+    /**
+     * Simulates the session holding the pending emails in {@code batch} having crashed.
+     */
+    private void abandon(String batch) throws Exception
+    {
+        _database.claimOutboxMessages(1, batch, "crashed", Long.MAX_VALUE, 0);
+    }
+
+    private static void enqueue(EmailOutbox outbox, String batch, String to) throws Exception
+    {
+        outbox.enqueue(batch,
+                       new InternetAddress("cakehat@cs.brown.edu"),
+                       ImmutableSet.of(new InternetAddress(to)),
+                       null,
+                       null,
+                       "Grading",
+                       "Grading sheet for " + to,
+                       Collections.<DataSource>emptyList());
+    }
+
+    private static class RecordingListener implements EmailOutbox.DispatchListener
+    {
+        private final AtomicInteger _sent = new AtomicInteger();
+        private final AtomicInteger _failed = new AtomicInteger();
+        private volatile boolean _cancel = false;
+
+        @Override
+        public void messageSending(int id, String recipients) { }
+
+        @Override
+        public void messageSent(int id)
+        {
+            _sent.incrementAndGet();
+        }
+
+        @Override
+        public void messageFailed(int id, MessagingException cause)
+        {
+            _failed.incrementAndGet();
+        }
+
+        @Override
+        public boolean isCancelRequested()
+        {
+            return _cancel;
+        }
+    }
+
+    /**
+     * Records the recipient of each email sent through the batches it opens. Sending to some recipients can be made to
+     * fail once, as when a connection is dropped, or to always be rejected.
+     */
+    private static class FakeMailServer
+    {
+        private final List<String> _sent = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> _attachments = Collections.synchronizedList(new ArrayList<String>());
+        private final Set<String> _failOnce = Collections.synchronizedSet(new HashSet<String>());
+        private final Set<String> _rejected = Collections.synchronizedSet(new HashSet<String>());
+        private final AtomicInteger _attemptCount = new AtomicInteger();
+        private final AtomicInteger _openCount = new AtomicInteger();
+
+        void failOnce(String recipient)
+        {
+            _failOnce.add(recipient);
+        }
+
+        void reject(String recipient)
+        {
+            _rejected.add(recipient);
+        }
+
+        List<String> getSent()
+        {
+            return _sent;
+        }
+
+        /**
+         * The contents of the attachments of the emails sent.
+         */
+        List<String> getAttachments()
+        {
+            return _attachments;
+        }
+
+        int getAttemptCount()
+        {
+            return _attemptCount.get();
+        }
+
+        int getOpenCount()
+        {
+            return _openCount.get();
+        }
+
+        EmailBatch openBatch()
+        {
+            _openCount.incrementAndGet();
+
+            return new EmailBatch()
+            {
+                @Override
+                public void send(InternetAddress from, Iterable<InternetAddress> to, Iterable<InternetAddress> cc,
+                        Iterable<InternetAddress> bcc, String subject, String body,
+                        Iterable<? extends DataSource> attachments) throws MessagingException
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void send(MimeMessage message) throws MessagingException
+                {
+                    _attemptCount.incrementAndGet();
+                    String recipient = message.getAllRecipients()[0].toString();
+                    if(_rejected.contains(recipient))
+                    {
+                        throw new SendFailedException("Invalid address " + recipient);
+                    }
+                    if(_failOnce.remove(recipient))
+                    {
+                        throw new MessagingException("Connection dropped");
+                    }
+                    _sent.add(recipient);
+
+                    try
+                    {
+                        Multipart multipart = (Multipart) message.getContent();
+                        for(int i = 1; i < multipart.getCount(); i++)
+                        {
+                            _attachments.add(new String(ByteStreams.toByteArray(
+                                    multipart.getBodyPart(i).getInputStream())));
+                        }
+                    }
+                    catch(IOException e)
+                    {
+                        throw new MessagingException("Unable to read email", e);
+                    }
+                }
+
+                @Override
+                public void close() { }
+            };
+        }
+    }
+}
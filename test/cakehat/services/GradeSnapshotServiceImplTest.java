@@ -0,0 +1,176 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.CakehatSession;
+import cakehat.TestCakehatSessionProvider;
+import cakehat.assignment.Assignment;
+import cakehat.assignment.DeadlineInfo;
+import cakehat.assignment.DeadlineInfo.TimeStatus;
+import cakehat.assignment.GradableEvent;
+import cakehat.assignment.Part;
+import cakehat.database.DataServices;
+import cakehat.database.Database;
+import cakehat.database.DatabaseImpl;
+import cakehat.database.DbAssignment;
+import cakehat.database.DbGradableEvent;
+import cakehat.database.DbGradingSheetSection;
+import cakehat.database.DbGradingSheetSubsection;
+import cakehat.database.DbGroup;
+import cakehat.database.DbPart;
+import cakehat.database.DbStudent;
+import cakehat.database.DbTA;
+import cakehat.database.Group;
+import cakehat.database.GroupGradingSheet;
+import cakehat.database.Student;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashMap;
+import java.util.Map;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link GradeSnapshotServiceImpl}.
+ */
+public class GradeSnapshotServiceImplTest
+{
+    private static final int USER_TA_UID = 429;
+
+    private Database _database;
+    private DataServices _dataServices;
+    private GradeSnapshotService _service;
+    private Assignment _asgn;
+    private GradableEvent _ge;
+    private Part _part;
+    private Map<String, Student> _students;
+    private Map<String, Group> _groups;
+
+    @Before
+    public void setup() throws Exception
+    {
+        final Database database = new DatabaseImpl(Allocator.getFileSystemUtilities().createTempFile("tempDB", "db"));
+        _database = database;
+        database.resetDatabase();
+        new Allocator.Customizer()
+                .setDatabase(new SingletonAllocation<Database>()
+                    { public Database allocate() { return database; } })
+                .customize();
+        CakehatSession.setSessionProviderForTesting(new TestCakehatSessionProvider(USER_TA_UID));
+
+        database.putTAs(ImmutableSet.of(new DbTA(USER_TA_UID, "jak2", "Josh", "Kaplan", true, false)));
+
+        DbAssignment dbAsgn = new DbAssignment("Cartoon", 1);
+        dbAsgn.setHasGroups(true);
+        database.putAssignments(ImmutableSet.of(dbAsgn));
+
+        DbGradableEvent dbGe = DbGradableEvent.build(dbAsgn, "Design Check", 1);
+        dbGe.setDeadlineType(DeadlineInfo.Type.FIXED);
+        dbGe.setOnTimeDate(new DateTime(2012, 9, 12, 23, 59));
+        dbGe.setLateDate(new DateTime(2012, 9, 14, 23, 59));
+        dbGe.setLatePoints(-3.5);
+        database.putGradableEvents(ImmutableSet.of(dbGe));
+
+        DbPart dbPart = DbPart.build(dbGe, "Design Doc", 1);
+        database.putParts(ImmutableSet.of(dbPart));
+        DbGradingSheetSection section = DbGradingSheetSection.build(dbPart, "Design", 1, null);
+        database.putGradingSheetSections(ImmutableSet.of(section));
+        database.putGradingSheetSubsections(ImmutableSet.of(
+                DbGradingSheetSubsection.build(section, "Complete", 1, 10.0)));
+
+        //The assignments are loaded when data services is first used
+        _dataServices = Allocator.getDataServices();
+        _asgn = _dataServices.getAssignments().get(0);
+        _ge = _asgn.getGradableEvents().get(0);
+        _part = _ge.getParts().get(0);
+
+        _dataServices.addStudents(ImmutableSet.of(
+                new DbStudent("aunger", "Alex", "Unger", "aunger@cs.brown.edu"),
+                new DbStudent("bchan", "Bea", "Chan", "bchan@cs.brown.edu"),
+                new DbStudent("cdiaz", "Cam", "Diaz", "cdiaz@cs.brown.edu")));
+        _dataServices.updateDataCache();
+        _students = new HashMap<String, Student>();
+        for(Student student : _dataServices.getStudents())
+        {
+            _students.put(student.getLogin(), student);
+        }
+
+        database.putGroups(ImmutableSet.of(
+                new DbGroup(_asgn, "The Pair", ImmutableSet.of(_students.get("aunger"), _students.get("bchan")))));
+        _dataServices.updateDataCache();
+        _groups = new HashMap<String, Group>();
+        for(Group group : _dataServices.getGroups(_asgn))
+        {
+            _groups.put(group.getName(), group);
+        }
+
+        _service = new GradeSnapshotServiceImpl();
+    }
+
+    @After
+    public void tearDown()
+    {
+        _database.close();
+    }
+
+    @Test
+    public void testSnapshotContainsGroupsOfStudents() throws ServicesException
+    {
+        GradeSnapshot snapshot = _service.getSnapshot();
+
+        Group pair = _groups.get("The Pair");
+        assertEquals(ImmutableSet.of(pair), snapshot.getGroups(_asgn));
+        assertEquals(pair, snapshot.getGroup(_asgn, _students.get("aunger")));
+        assertEquals(pair, snapshot.getGroup(_asgn, _students.get("bchan")));
+        assertNull(snapshot.getGroup(_asgn, _students.get("cdiaz")));
+        assertNull(snapshot.getGroup(_asgn, null));
+        assertNull(snapshot.getGroupGradingSheet(_part, null));
+    }
+
+    @Test
+    public void testSnapshotIsReusedUntilDatabaseChanges() throws ServicesException
+    {
+        Group pair = _groups.get("The Pair");
+        GradeSnapshot first = _service.getSnapshot();
+        assertNull(first.getGroupGradingSheet(_part, pair).getEarned());
+        assertSame(first, _service.getSnapshot());
+
+        GroupGradingSheet sheet = _dataServices.getGroupGradingSheet(_part, pair);
+        sheet.setEarnedPoints(_part.getGradingSheet().getSections().get(0).getSubsections().get(0), 7.5);
+        _dataServices.saveGroupGradingSheet(sheet);
+
+        GradeSnapshot second = _service.getSnapshot();
+        assertNotSame(first, second);
+        assertTrue(second.getChangeSequence() > first.getChangeSequence());
+        assertEquals(7.5, second.getGroupGradingSheet(_part, pair).getEarned(), 0);
+        assertSame(second, _service.getSnapshot());
+
+        //The earlier snapshot is unaffected
+        assertNull(first.getGroupGradingSheet(_part, pair).getEarned());
+    }
+
+    @Test
+    public void testSnapshotReflectsOccurrencesAndExtensions() throws ServicesException
+    {
+        Group pair = _groups.get("The Pair");
+        DateTime occurrence = new DateTime(2012, 9, 13, 12, 0);
+        _dataServices.setGradableEventOccurrences(_ge, ImmutableMap.of(pair, occurrence));
+
+        GradeSnapshot late = _service.getSnapshot();
+        assertEquals(occurrence, late.getOccurrenceDate(_ge, pair));
+        assertNull(late.getExtension(_ge, pair));
+        assertEquals(TimeStatus.LATE, late.getDeadlineResolution(_ge, pair).getTimeStatus());
+
+        DateTime extendedOnTime = new DateTime(2012, 9, 16, 23, 59);
+        _dataServices.setExtensions(_ge, ImmutableSet.of(pair), extendedOnTime, false, "Sick");
+
+        GradeSnapshot extended = _service.getSnapshot();
+        assertNotSame(late, extended);
+        assertEquals(extendedOnTime, extended.getExtension(_ge, pair).getNewOnTime());
+        assertEquals(TimeStatus.ON_TIME, extended.getDeadlineResolution(_ge, pair).getTimeStatus());
+    }
+}
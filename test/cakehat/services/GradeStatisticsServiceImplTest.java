@@ -0,0 +1,234 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.CakehatSession;
+import cakehat.TestCakehatSessionProvider;
+import cakehat.assignment.Assignment;
+import cakehat.assignment.Part;
+import cakehat.database.DataServices;
+import cakehat.database.Database;
+import cakehat.database.DatabaseImpl;
+import cakehat.database.DbAssignment;
+import cakehat.database.DbGradableEvent;
+import cakehat.database.DbGradingSheetSection;
+import cakehat.database.DbGradingSheetSubsection;
+import cakehat.database.DbGroup;
+import cakehat.database.DbPart;
+import cakehat.database.DbStudent;
+import cakehat.database.DbTA;
+import cakehat.database.Group;
+import cakehat.database.GroupGradingSheet;
+import cakehat.database.Student;
+import cakehat.database.TA;
+import cakehat.gradingsheet.GradingSheetSubsection;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link GradeStatisticsServiceImpl}.
+ */
+public class GradeStatisticsServiceImplTest
+{
+    private static final int USER_TA_UID = 429;
+    private static final int OTHER_TA_UID = 430;
+
+    private Database _database;
+    private DataServices _dataServices;
+    private GradeStatisticsService _service;
+    private Assignment _asgn;
+    private Part _codePart, _stylePart;
+    private Set<Part> _parts;
+    private Map<String, Student> _students;
+    private Map<String, Group> _groups;
+
+    @Before
+    public void setup() throws Exception
+    {
+        final Database database = new DatabaseImpl(Allocator.getFileSystemUtilities().createTempFile("tempDB", "db"));
+        database.resetDatabase();
+        new Allocator.Customizer()
+                .setDatabase(new SingletonAllocation<Database>()
+                    { public Database allocate() { return database; } })
+                .customize();
+        CakehatSession.setSessionProviderForTesting(new TestCakehatSessionProvider(USER_TA_UID));
+        _database = database;
+
+        database.putTAs(ImmutableSet.of(new DbTA(USER_TA_UID, "jak2", "Josh", "Kaplan", true, false),
+                                        new DbTA(OTHER_TA_UID, "jeldridg", "Jonathan", "Eldridge", true, false)));
+
+        DbAssignment dbAsgn = new DbAssignment("Cartoon", 1);
+        dbAsgn.setHasGroups(true);
+        database.putAssignments(ImmutableSet.of(dbAsgn));
+        DbGradableEvent dbGe = DbGradableEvent.build(dbAsgn, "Code", 1);
+        database.putGradableEvents(ImmutableSet.of(dbGe));
+
+        DbPart dbCodePart = DbPart.build(dbGe, "Code", 1);
+        DbPart dbStylePart = DbPart.build(dbGe, "Style", 2);
+        database.putParts(ImmutableSet.of(dbCodePart, dbStylePart));
+        DbGradingSheetSection code = DbGradingSheetSection.build(dbCodePart, "Code", 1, null);
+        DbGradingSheetSection style = DbGradingSheetSection.build(dbStylePart, "Style", 1, null);
+        database.putGradingSheetSections(ImmutableSet.of(code, style));
+        database.putGradingSheetSubsections(ImmutableSet.of(
+                DbGradingSheetSubsection.build(code, "Works", 1, 10.0),
+                DbGradingSheetSubsection.build(style, "Naming", 1, 5.0)));
+
+        //The assignments are loaded when data services is first used
+        _dataServices = Allocator.getDataServices();
+        _asgn = _dataServices.getAssignments().get(0);
+        _codePart = _asgn.getGradableEvents().get(0).getParts().get(0);
+        _stylePart = _asgn.getGradableEvents().get(0).getParts().get(1);
+        _parts = ImmutableSet.of(_codePart, _stylePart);
+
+        _dataServices.addStudents(ImmutableSet.of(
+                new DbStudent("aunger", "Alex", "Unger", "aunger@cs.brown.edu"),
+                new DbStudent("bchan", "Bea", "Chan", "bchan@cs.brown.edu"),
+                new DbStudent("cdiaz", "Cam", "Diaz", "cdiaz@cs.brown.edu"),
+                new DbStudent("dlee", "Dana", "Lee", "dlee@cs.brown.edu"),
+                new DbStudent("efox", "Eli", "Fox", "efox@cs.brown.edu")));
+        _dataServices.updateDataCache();
+        _students = new HashMap<String, Student>();
+        for(Student student : _dataServices.getStudents())
+        {
+            _students.put(student.getLogin(), student);
+        }
+
+        database.putGroups(ImmutableSet.of(
+                new DbGroup(_asgn, "A", ImmutableSet.of(_students.get("aunger"))),
+                new DbGroup(_asgn, "B", ImmutableSet.of(_students.get("bchan"))),
+                new DbGroup(_asgn, "C", ImmutableSet.of(_students.get("cdiaz"))),
+                new DbGroup(_asgn, "D", ImmutableSet.of(_students.get("dlee")))));
+        _dataServices.updateDataCache();
+        _groups = new HashMap<String, Group>();
+        for(Group group : _dataServices.getGroups(_asgn))
+        {
+            _groups.put(group.getName(), group);
+        }
+
+        //A and B are assigned to the user, C to the other TA, and D is not assigned
+        SetMultimap<TA, Group> codeDist = HashMultimap.create();
+        codeDist.putAll(_dataServices.getTA(USER_TA_UID), ImmutableSet.of(_groups.get("A"), _groups.get("B")));
+        codeDist.put(_dataServices.getTA(OTHER_TA_UID), _groups.get("C"));
+        _dataServices.setDistribution(ImmutableMap.of(_codePart, codeDist));
+
+        //D's grade is not submitted and so is not a score
+        grade(_codePart, "A", 4.0, true);
+        grade(_codePart, "B", 6.0, true);
+        grade(_codePart, "C", 8.0, true);
+        grade(_codePart, "D", 10.0, false);
+
+        _service = new GradeStatisticsServiceImpl();
+    }
+
+    private void grade(Part part, String groupName, double earned, boolean submit) throws ServicesException
+    {
+        GroupGradingSheet sheet = _dataServices.getGroupGradingSheet(part, _groups.get(groupName));
+        GradingSheetSubsection subsection = part.getGradingSheet().getSections().get(0).getSubsections().get(0);
+        sheet.setEarnedPoints(subsection, earned);
+        _dataServices.saveGroupGradingSheet(sheet);
+        _dataServices.setGroupGradingSheetsSubmitted(ImmutableSet.of(sheet), submit);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _database.close();
+    }
+
+    @Test
+    public void testStatistics() throws ServicesException
+    {
+        PartStatistics statistics = _service.getStatistics(_parts).get(_codePart);
+
+        assertEquals(_codePart, statistics.getPart());
+        assertEquals(4, statistics.getGroupCount());
+        assertEquals(3, statistics.getSummary().getCount());
+        assertEquals(6.0, statistics.getSummary().getMean(), 1E-9);
+        assertEquals(Math.sqrt(8.0 / 3), statistics.getSummary().getStandardDeviation(), 1E-9);
+        assertEquals(6.0, statistics.getMedian(), 0);
+        assertEquals(4.0, statistics.getMin(), 0);
+        assertEquals(8.0, statistics.getMax(), 0);
+
+        //The histogram spans the part's out of of 10
+        assertEquals(0, statistics.getHistogramMin(), 0);
+        assertEquals(1, statistics.getHistogramBinWidth(), 1E-9);
+        assertArrayEquals(new int[] { 0, 0, 0, 0, 1, 0, 1, 0, 1, 0 }, statistics.getHistogram());
+
+        Map<TA, PartStatistics.Summary> taSummaries = statistics.getTASummaries();
+        assertEquals(ImmutableSet.of(_dataServices.getTA(USER_TA_UID), _dataServices.getTA(OTHER_TA_UID)),
+                     taSummaries.keySet());
+        assertEquals(2, taSummaries.get(_dataServices.getTA(USER_TA_UID)).getCount());
+        assertEquals(5.0, taSummaries.get(_dataServices.getTA(USER_TA_UID)).getMean(), 1E-9);
+        assertEquals(1.0, taSummaries.get(_dataServices.getTA(USER_TA_UID)).getStandardDeviation(), 1E-9);
+        assertEquals(8.0, taSummaries.get(_dataServices.getTA(OTHER_TA_UID)).getMean(), 1E-9);
+
+        PartStatistics ungraded = _service.getStatistics(_parts).get(_stylePart);
+        assertEquals(0, ungraded.getSummary().getCount());
+        assertTrue(Double.isNaN(ungraded.getSummary().getMean()));
+        assertTrue(Double.isNaN(ungraded.getMedian()));
+        assertArrayEquals(new int[PartStatistics.HISTOGRAM_BINS], ungraded.getHistogram());
+    }
+
+    @Test
+    public void testUnchangedStatisticsAreReused() throws ServicesException
+    {
+        Map<Part, PartStatistics> first = _service.getStatistics(_parts);
+        Map<Part, PartStatistics> second = _service.getStatistics(_parts);
+
+        assertSame(first.get(_codePart), second.get(_codePart));
+        assertSame(first.get(_stylePart), second.get(_stylePart));
+    }
+
+    @Test
+    public void testOnlyChangedPartsAreRecomputed() throws ServicesException
+    {
+        Map<Part, PartStatistics> before = _service.getStatistics(_parts);
+
+        //Submitting D's grade makes it a score; the style part does not change
+        grade(_codePart, "D", 10.0, true);
+        Map<Part, PartStatistics> after = _service.getStatistics(_parts);
+
+        PartStatistics code = after.get(_codePart);
+        assertTrue(code.getVersion() > before.get(_codePart).getVersion());
+        assertEquals(4, code.getSummary().getCount());
+        assertEquals(7.0, code.getMedian(), 0);
+        assertEquals(10.0, code.getMax(), 0);
+        assertEquals(1, code.getHistogram()[PartStatistics.HISTOGRAM_BINS - 1]);
+        assertSame(before.get(_stylePart), after.get(_stylePart));
+
+        //Unsubmitting removes the score again
+        GroupGradingSheet sheet = _dataServices.getGroupGradingSheet(_codePart, _groups.get("A"));
+        _dataServices.setGroupGradingSheetsSubmitted(ImmutableSet.of(sheet), false);
+        assertEquals(3, _service.getStatistics(_parts).get(_codePart).getSummary().getCount());
+        assertEquals(8.0, _service.getStatistics(_parts).get(_codePart).getMedian(), 0);
+    }
+
+    @Test
+    public void testPartsAreReadAgainWhenGroupsChange() throws Exception
+    {
+        assertEquals(4, _service.getStatistics(_parts).get(_codePart).getGroupCount());
+
+        _database.putGroups(ImmutableSet.of(new DbGroup(_asgn, "E", ImmutableSet.of(_students.get("efox")))));
+        _dataServices.updateDataCache();
+        for(Group group : _dataServices.getGroups(_asgn))
+        {
+            _groups.put(group.getName(), group);
+        }
+        grade(_codePart, "E", 2.0, true);
+
+        PartStatistics statistics = _service.getStatistics(_parts).get(_codePart);
+        assertEquals(5, statistics.getGroupCount());
+        assertEquals(4, statistics.getSummary().getCount());
+        assertEquals(2.0, statistics.getMin(), 0);
+    }
+}
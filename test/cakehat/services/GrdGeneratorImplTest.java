@@ -0,0 +1,217 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.CakehatSession;
+import cakehat.TestCakehatSessionProvider;
+import cakehat.assignment.Assignment;
+import cakehat.assignment.DeadlineInfo;
+import cakehat.assignment.GradableEvent;
+import cakehat.assignment.Part;
+import cakehat.database.DataServices;
+import cakehat.database.Database;
+import cakehat.database.DatabaseImpl;
+import cakehat.database.DbAssignment;
+import cakehat.database.DbGradableEvent;
+import cakehat.database.DbGradingSheetDetail;
+import cakehat.database.DbGradingSheetSection;
+import cakehat.database.DbGradingSheetSubsection;
+import cakehat.database.DbGroup;
+import cakehat.database.DbPart;
+import cakehat.database.DbStudent;
+import cakehat.database.DbTA;
+import cakehat.database.Group;
+import cakehat.database.GroupGradingSheet;
+import cakehat.database.Student;
+import cakehat.database.TA;
+import cakehat.gradingsheet.GradingSheetSection;
+import cakehat.gradingsheet.GradingSheetSubsection;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link GrdGeneratorImpl} produces the same grading sheets whether generated serially or in parallel,
+ * compared against grading sheets known to be correct. The expected grading sheets are stored in
+ * {@code GrdGeneratorImplTest.golden}, one student per line as the student's login, a tab and then the grading sheet.
+ */
+public class GrdGeneratorImplTest {
+
+    private static final int USER_TA_UID = 429;
+
+    private Database _database;
+    private Assignment _asgn;
+    private Set<Student> _students;
+
+    @Before
+    public void setUp() throws ServicesException, SQLException, IOException {
+        final Database database = new DatabaseImpl(Allocator.getFileSystemUtilities().createTempFile("tempDB", "db"));
+        _database = database;
+        database.resetDatabase();
+        new Allocator.Customizer().setDatabase(new SingletonAllocation<Database>() {
+            @Override
+            public Database allocate() { return database; }
+        }).customize();
+        CakehatSession.setSessionProviderForTesting(new TestCakehatSessionProvider(USER_TA_UID));
+
+        database.putTAs(ImmutableSet.of(new DbTA(USER_TA_UID, "jeldridg", "Jonathan", "Eldridge", true, false)));
+
+        DbAssignment dbAsgn = new DbAssignment("Cartoon", 1);
+        dbAsgn.setHasGroups(true);
+        database.putAssignments(ImmutableSet.of(dbAsgn));
+
+        DbGradableEvent design = DbGradableEvent.build(dbAsgn, "Design Check", 1);
+        design.setDeadlineType(DeadlineInfo.Type.FIXED);
+        design.setEarlyDate(new DateTime(2012, 9, 10, 23, 59));
+        design.setEarlyPoints(2.0);
+        design.setOnTimeDate(new DateTime(2012, 9, 12, 23, 59));
+        design.setLateDate(new DateTime(2012, 9, 14, 23, 59));
+        design.setLatePoints(-3.5);
+        DbGradableEvent handin = DbGradableEvent.build(dbAsgn, "Final Handin", 2);
+        database.putGradableEvents(ImmutableSet.of(design, handin));
+
+        DbPart designDoc = DbPart.build(design, "Design Doc", 1);
+        DbPart code = DbPart.build(handin, "Code", 1);
+        DbPart readme = DbPart.build(handin, "README", 2);
+        database.putParts(ImmutableSet.of(designDoc, code, readme));
+
+        Set<DbGradingSheetSection> sections = new HashSet<DbGradingSheetSection>();
+        Set<DbGradingSheetSubsection> subsections = new HashSet<DbGradingSheetSubsection>();
+        Set<DbGradingSheetDetail> details = new HashSet<DbGradingSheetDetail>();
+        for (DbPart part : ImmutableSet.of(designDoc, code, readme)) {
+            DbGradingSheetSection functionality = DbGradingSheetSection.build(part, "Functionality", 1, null);
+            DbGradingSheetSection style = DbGradingSheetSection.build(part, "Style", 2, null);
+            sections.add(functionality);
+            sections.add(style);
+
+            DbGradingSheetSubsection works = DbGradingSheetSubsection.build(functionality, "Works", 1, 10.0);
+            details.add(DbGradingSheetDetail.build(works, "Cartoon animates", 1));
+            details.add(DbGradingSheetDetail.build(works, "Cartoon responds to input", 2));
+            subsections.add(works);
+            subsections.add(DbGradingSheetSubsection.build(functionality, "Edge cases", 2, 5.0));
+            subsections.add(DbGradingSheetSubsection.build(style, "Comments", 1, 3.0));
+        }
+        database.putGradingSheetSections(sections);
+        database.putGradingSheetSubsections(subsections);
+        database.putGradingSheetDetails(details);
+
+        //The assignments are loaded when data services is first used
+        DataServices dataServices = Allocator.getDataServices();
+
+        dataServices.addStudents(ImmutableSet.of(
+                new DbStudent("aunger", "Alex", "Unger", "aunger@cs.brown.edu"),
+                new DbStudent("bchan", "Bea", "Chan", "bchan@cs.brown.edu"),
+                new DbStudent("cdiaz", "Cam", "Diaz", "cdiaz@cs.brown.edu"),
+                new DbStudent("dkim", "Dana", "Kim", "dkim@cs.brown.edu"),
+                new DbStudent("eortiz", "Eli", "Ortiz", "eortiz@cs.brown.edu")));
+        dataServices.updateDataCache();
+        Map<String, Student> students = new HashMap<String, Student>();
+        for (Student student : dataServices.getStudents()) {
+            students.put(student.getLogin(), student);
+        }
+        _students = ImmutableSet.copyOf(students.values());
+
+        for (Assignment asgn : dataServices.getAssignments()) {
+            if (asgn.getId() == dbAsgn.getId()) {
+                _asgn = asgn;
+            }
+        }
+        database.putGroups(ImmutableSet.of(
+                new DbGroup(_asgn, "The Pair", ImmutableSet.of(students.get("aunger"), students.get("bchan"))),
+                new DbGroup(_asgn, "cdiaz", ImmutableSet.of(students.get("cdiaz"))),
+                new DbGroup(_asgn, "dkim", ImmutableSet.of(students.get("dkim"))),
+                new DbGroup(_asgn, "eortiz", ImmutableSet.of(students.get("eortiz")))));
+        dataServices.updateDataCache();
+        Map<String, Group> groups = new HashMap<String, Group>();
+        for (Group group : dataServices.getGroups(_asgn)) {
+            groups.put(group.getName(), group);
+        }
+
+        GradableEvent designGe = null;
+        for (GradableEvent ge : _asgn) {
+            if (ge.getId() == design.getId()) {
+                designGe = ge;
+            }
+        }
+        dataServices.setGradableEventOccurrences(designGe, ImmutableMap.of(
+                groups.get("The Pair"), new DateTime(2012, 9, 9, 12, 0),
+                groups.get("cdiaz"), new DateTime(2012, 9, 11, 12, 0),
+                groups.get("dkim"), new DateTime(2012, 9, 13, 12, 0),
+                groups.get("eortiz"), new DateTime(2012, 9, 14, 12, 0)));
+        dataServices.setExtensions(designGe, ImmutableSet.of(groups.get("dkim")), new DateTime(2012, 9, 16, 23, 59),
+                false, "Sick");
+
+        TA grader = dataServices.getTA(USER_TA_UID);
+        for (GradableEvent ge : _asgn) {
+            for (Part part : ge) {
+                for (Group group : groups.values()) {
+                    GroupGradingSheet sheet = dataServices.getGroupGradingSheet(part, group);
+                    if (!group.getName().equals("cdiaz")) {
+                        sheet.setAssignedTo(grader);
+                    }
+                    for (GradingSheetSection section : sheet.getGradingSheet().getSections()) {
+                        for (GradingSheetSubsection subsection : section.getSubsections()) {
+                            //Vary the points earned by group, part and subsection
+                            double earned = (group.getName().length() * 1.3333 + part.getName().length() +
+                                    subsection.getOrder()) % subsection.getOutOf();
+                            sheet.setEarnedPoints(subsection, earned);
+                        }
+                        sheet.setComments(section, "Nice work on " + section.getName() + ", " + group.getName());
+                    }
+                    dataServices.saveGroupGradingSheet(sheet);
+                    //One group has not had their README grading submitted
+                    if (!(group.getName().equals("eortiz") && part.getId() == readme.getId())) {
+                        dataServices.setGroupGradingSheetsSubmitted(ImmutableSet.of(sheet), true);
+                    }
+                }
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        _database.close();
+    }
+
+    @Test
+    public void testSerialGenerationMatchesGolden() throws ServicesException, IOException {
+        assertEquals(loadGolden(), render(new GrdGeneratorImpl(1).generateGRD(_asgn, _students)));
+    }
+
+    @Test
+    public void testParallelGenerationMatchesGolden() throws ServicesException, IOException {
+        assertEquals(loadGolden(), render(new GrdGeneratorImpl(4).generateGRD(_asgn, _students)));
+    }
+
+    private static String loadGolden() throws IOException {
+        return Resources.toString(Resources.getResource(GrdGeneratorImplTest.class, "GrdGeneratorImplTest.golden"),
+                                  Charsets.UTF_8);
+    }
+
+    private static String render(Map<Student, String> grds) {
+        Map<String, String> byLogin = new TreeMap<String, String>();
+        for (Map.Entry<Student, String> entry : grds.entrySet()) {
+            byLogin.put(entry.getKey().getLogin(), entry.getValue());
+        }
+
+        StringBuilder rendered = new StringBuilder();
+        for (Map.Entry<String, String> entry : byLogin.entrySet()) {
+            rendered.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+
+        return rendered.toString();
+    }
+}
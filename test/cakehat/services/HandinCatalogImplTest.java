@@ -0,0 +1,237 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import cakehat.Allocator.SingletonAllocation;
+import cakehat.database.Database;
+import cakehat.database.DatabaseImpl;
+import cakehat.database.HandinCatalogRecord;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import support.utils.ArchiveUtilities;
+
+import static org.junit.Assert.*;
+import static org.easymock.EasyMock.*;
+
+/**
+ * Tests for {@link HandinCatalogImpl}.
+ */
+public class HandinCatalogImplTest
+{
+    private Database _database;
+    private ArchiveUtilities _archiveUtils;
+    private File _handin;
+
+    @Before
+    public void setup() throws Exception
+    {
+        final Database database = new DatabaseImpl(Allocator.getFileSystemUtilities().createTempFile("tempDB", "db"));
+        _database = database;
+        database.resetDatabase();
+
+        _archiveUtils = createMock(ArchiveUtilities.class);
+        new Allocator.Customizer()
+                .setDatabase(new SingletonAllocation<Database>()
+                    { public Database allocate() { return database; } })
+                .setArchiveUtils(new SingletonAllocation<ArchiveUtilities>()
+                    { public ArchiveUtilities allocate() { return _archiveUtils; } })
+                .customize();
+
+        _handin = Allocator.getFileSystemUtilities().createTempFile("jak2", ".zip");
+        Files.write("first handin".getBytes("UTF-8"), _handin);
+        _handin.setLastModified(1000000000000L);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _database.close();
+        _handin.delete();
+    }
+
+    @Test
+    public void testCatalogIsStoredAndReusedBySessions() throws Exception
+    {
+        expect(_archiveUtils.getArchiveContents(_handin)).andReturn(createContents("src/", "src/Main.java"));
+        replay(_archiveUtils);
+
+        CatalogedHandin cataloged = new HandinCatalogImpl().getCatalogedHandin(_handin);
+        assertEquals(_handin.length(), cataloged.getSize());
+        assertEquals(_handin.lastModified(), cataloged.getLastModified());
+        assertEquals(Files.hash(_handin, Hashing.sha256()).toString(), cataloged.getSha256());
+        assertEquals(ImmutableSet.of("src/", "src/Main.java"), getNames(cataloged));
+
+        //the catalog is stored in the database
+        Map<String, HandinCatalogRecord> records =
+                _database.getHandinCatalogRecords(ImmutableSet.of(_handin.getAbsolutePath()));
+        HandinCatalogRecord record = records.get(_handin.getAbsolutePath());
+        assertEquals(cataloged.getSize(), record.getSize());
+        assertEquals(cataloged.getLastModified(), record.getLastModified());
+        assertEquals(cataloged.getSha256(), record.getSha256());
+        assertEquals(2, record.getEntries().size());
+
+        //another session reads the stored catalog without decompressing the handin again
+        CatalogedHandin reread = new HandinCatalogImpl().getCatalogedHandin(_handin);
+        assertEquals(cataloged.getSha256(), reread.getSha256());
+        assertEquals(getNames(cataloged), getNames(reread));
+        ArchiveEntry mainEntry = null;
+        for(ArchiveEntry entry : reread.getContents())
+        {
+            if(entry.getName().equals("src/Main.java"))
+            {
+                mainEntry = entry;
+            }
+        }
+        assertFalse(mainEntry.isDirectory());
+        assertEquals(1500, mainEntry.getSize());
+        assertEquals(900000000000L, mainEntry.getLastModifiedDate().getTime());
+
+        verify(_archiveUtils);
+    }
+
+    @Test
+    public void testResubmittedHandinIsRecataloged() throws Exception
+    {
+        expect(_archiveUtils.getArchiveContents(_handin)).andReturn(createContents("old.txt"));
+        expect(_archiveUtils.getArchiveContents(_handin)).andReturn(createContents("new.txt"));
+        replay(_archiveUtils);
+
+        HandinCatalog catalog = new HandinCatalogImpl();
+        String originalSha256 = catalog.getCatalogedHandin(_handin).getSha256();
+
+        //a different size makes the catalog stale
+        Files.write("resubmitted handin".getBytes("UTF-8"), _handin);
+        _handin.setLastModified(1000000000000L);
+
+        CatalogedHandin resubmitted = catalog.getCatalogedHandin(_handin);
+        assertFalse(originalSha256.equals(resubmitted.getSha256()));
+        assertEquals(ImmutableSet.of("new.txt"), getNames(resubmitted));
+        assertEquals(ImmutableSet.of("new.txt"), getNames(new HandinCatalogImpl().getCatalogedHandin(_handin)));
+
+        verify(_archiveUtils);
+    }
+
+    @Test
+    public void testModifiedHandinWithSameSizeIsRecataloged() throws Exception
+    {
+        expect(_archiveUtils.getArchiveContents(_handin)).andReturn(createContents("old.txt"));
+        expect(_archiveUtils.getArchiveContents(_handin)).andReturn(createContents("new.txt"));
+        replay(_archiveUtils);
+
+        HandinCatalog catalog = new HandinCatalogImpl();
+        catalog.getCatalogedHandin(_handin);
+
+        //same size, different contents and modification time
+        Files.write("FIRST HANDIN".getBytes("UTF-8"), _handin);
+        _handin.setLastModified(1000000060000L);
+
+        CatalogedHandin modified = catalog.getCatalogedHandin(_handin);
+        assertEquals(1000000060000L, modified.getLastModified());
+        assertEquals(ImmutableSet.of("new.txt"), getNames(modified));
+
+        verify(_archiveUtils);
+    }
+
+    @Test
+    public void testTouchedHandinReusesEntries() throws Exception
+    {
+        expect(_archiveUtils.getArchiveContents(_handin)).andReturn(createContents("src/", "src/Main.java"));
+        replay(_archiveUtils);
+
+        HandinCatalog catalog = new HandinCatalogImpl();
+        CatalogedHandin original = catalog.getCatalogedHandin(_handin);
+
+        //only the modification time has changed, so the hash matches and the archive is not decompressed again
+        _handin.setLastModified(1000000060000L);
+
+        CatalogedHandin touched = catalog.getCatalogedHandin(_handin);
+        assertEquals(1000000060000L, touched.getLastModified());
+        assertEquals(original.getSha256(), touched.getSha256());
+        assertEquals(getNames(original), getNames(touched));
+        assertEquals(1000000060000L, _database.getHandinCatalogRecords(ImmutableSet.of(_handin.getAbsolutePath()))
+                .get(_handin.getAbsolutePath()).getLastModified());
+
+        verify(_archiveUtils);
+    }
+
+    @Test
+    public void testHandinsAreCatalogedTogether() throws Exception
+    {
+        File hdrosen = Allocator.getFileSystemUtilities().createTempFile("hdrosen", ".zip");
+        try
+        {
+            Files.write("second handin".getBytes("UTF-8"), hdrosen);
+
+            expect(_archiveUtils.getArchiveContents(_handin)).andReturn(createContents("jak2.txt"));
+            expect(_archiveUtils.getArchiveContents(hdrosen)).andReturn(createContents("hdrosen.txt"));
+            replay(_archiveUtils);
+
+            Map<File, CatalogedHandin> cataloged =
+                    new HandinCatalogImpl().getCatalogedHandins(ImmutableSet.of(_handin, hdrosen));
+            assertEquals(ImmutableSet.of(_handin, hdrosen), cataloged.keySet());
+            assertEquals(ImmutableSet.of("jak2.txt"), getNames(cataloged.get(_handin)));
+            assertEquals(ImmutableSet.of("hdrosen.txt"), getNames(cataloged.get(hdrosen)));
+
+            verify(_archiveUtils);
+        }
+        finally
+        {
+            hdrosen.delete();
+        }
+    }
+
+    @Test
+    public void testUnreadableHandinIsNotCataloged() throws Exception
+    {
+        expect(_archiveUtils.getArchiveContents(_handin)).andThrow(new IOException("not an archive"));
+        replay(_archiveUtils);
+
+        try
+        {
+            new HandinCatalogImpl().getCatalogedHandin(_handin);
+            fail("ServicesException not thrown for an unreadable handin");
+        }
+        catch(ServicesException e) { }
+
+        assertTrue(_database.getHandinCatalogRecords(ImmutableSet.of(_handin.getAbsolutePath())).isEmpty());
+        verify(_archiveUtils);
+    }
+
+    private static Set<ArchiveEntry> createContents(String... names)
+    {
+        Set<ArchiveEntry> contents = new HashSet<ArchiveEntry>();
+        for(String name : names)
+        {
+            ZipArchiveEntry entry = new ZipArchiveEntry(name);
+            if(!entry.isDirectory())
+            {
+                entry.setSize(1500);
+            }
+            entry.setTime(900000000000L);
+            contents.add(entry);
+        }
+
+        return contents;
+    }
+
+    private static Set<String> getNames(CatalogedHandin cataloged)
+    {
+        Set<String> names = new HashSet<String>();
+        for(ArchiveEntry entry : cataloged.getContents())
+        {
+            names.add(entry.getName());
+        }
+
+        return names;
+    }
+}
@@ -130,6 +130,14 @@ public class PathServicesTest
         assertEquals(expected, _service.getDatabaseBackupDir());
     }
     
+    @Test
+    public void testGetOutboxDir()
+    {
+        File expected = new File("/course/" + COURSE + "/.cakehat/" + YEAR + "/outbox/" + TA_ID);
+        
+        assertEquals(expected, _service.getOutboxDir());
+    }
+    
     @Test
     public void testGetTempDir()
     {
@@ -0,0 +1,166 @@
+package cakehat.services;
+
+import cakehat.Allocator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TempSpaceManagerImpl}.
+ */
+public class TempSpaceManagerImplTest
+{
+    private static final String USER = "1001";
+
+    private File _root;
+
+    @Before
+    public void setup() throws IOException
+    {
+        _root = Allocator.getFileSystemUtilities().createTempFile("tempSpace", "");
+        _root.delete();
+        _root.mkdir();
+    }
+
+    @After
+    public void tearDown()
+    {
+        Allocator.getFileSystemUtilities().deleteFilesSilently(ImmutableList.of(_root));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTreesAreEvicted() throws IOException
+    {
+        File jak2 = createTree("jak2", 100);
+        File hdrosen = createTree("hdrosen", 100);
+        File jeldridg = createTree("jeldridg", 100);
+        //Room for two and a half trees
+        TempSpaceManager manager = new TempSpaceManagerImpl(MoreExecutors.sameThreadExecutor(),
+                getSize(jak2) * 5 / 2, 0, USER);
+
+        manager.track(jak2);
+        manager.track(hdrosen);
+        //Using jak2 makes hdrosen the least recently used
+        manager.beginUse(ImmutableSet.of(jak2));
+        manager.endUse(ImmutableSet.of(jak2));
+        manager.track(jeldridg);
+
+        assertTrue(jak2.exists());
+        assertFalse(hdrosen.exists());
+        assertTrue(jeldridg.exists());
+        assertEquals(getSize(jak2) + getSize(jeldridg), manager.getUsage());
+        //The use markers of an evicted tree are deleted with it
+        assertEquals(ImmutableSet.of("jak2", ".jak2.1001.use", "jeldridg", ".jeldridg.1001.use"),
+                ImmutableSet.copyOf(_root.list()));
+    }
+
+    @Test
+    public void testTreesInUseAreNotEvicted() throws IOException
+    {
+        File jak2 = createTree("jak2", 100);
+        File hdrosen = createTree("hdrosen", 100);
+        //Room for one and a half trees
+        TempSpaceManager manager = new TempSpaceManagerImpl(MoreExecutors.sameThreadExecutor(),
+                getSize(jak2) * 3 / 2, 0, USER);
+
+        manager.beginUse(ImmutableSet.of(jak2));
+        manager.beginUse(ImmutableSet.of(jak2));
+        manager.track(jak2);
+        manager.track(hdrosen);
+        assertTrue(jak2.exists());
+        assertFalse(hdrosen.exists());
+
+        //Still in use until each use has ended
+        manager.endUse(ImmutableSet.of(jak2));
+        manager.setQuota(0);
+        assertTrue(jak2.exists());
+
+        manager.endUse(ImmutableSet.of(jak2));
+        assertFalse(jak2.exists());
+        assertEquals(0, manager.getUsage());
+    }
+
+    @Test
+    public void testTreesUsedWithinGracePeriodAreNotEvicted() throws IOException
+    {
+        File jak2 = createTree("jak2", 100);
+        TempSpaceManager manager = new TempSpaceManagerImpl(MoreExecutors.sameThreadExecutor(), 0, 60 * 1000, USER);
+
+        manager.track(jak2);
+
+        assertTrue(jak2.exists());
+        assertEquals(getSize(jak2), manager.getUsage());
+    }
+
+    @Test
+    public void testTreesUsedByOtherSessionsAreNotEvicted() throws Exception
+    {
+        File jak2 = createTree("jak2", 100);
+        TempSpaceManager manager = new TempSpaceManagerImpl(MoreExecutors.sameThreadExecutor(), Long.MAX_VALUE, 200,
+                USER);
+        manager.track(jak2);
+        Thread.sleep(300);
+
+        //Another TA is using the handin
+        File otherMarker = new File(_root, ".jak2.1002.use");
+        otherMarker.createNewFile();
+        manager.setQuota(0);
+        assertTrue(jak2.exists());
+
+        //Their use ended longer ago than the grace period
+        otherMarker.setLastModified(System.currentTimeMillis() - 1000);
+        manager.setQuota(0);
+        assertFalse(jak2.exists());
+        assertEquals(0, _root.list().length);
+        assertEquals(0, manager.getUsage());
+    }
+
+    @Test
+    public void testMarkerIsTouchedWhenUseBegins() throws Exception
+    {
+        File jak2 = createTree("jak2", 100);
+        TempSpaceManager manager = new TempSpaceManagerImpl(MoreExecutors.sameThreadExecutor(), Long.MAX_VALUE,
+                60 * 1000, USER);
+        File marker = new File(_root, ".jak2.1001.use");
+        marker.createNewFile();
+        marker.setLastModified(System.currentTimeMillis() - 60 * 60 * 1000);
+
+        manager.beginUse(ImmutableSet.of(jak2));
+
+        assertTrue(System.currentTimeMillis() - marker.lastModified() < 60 * 1000);
+    }
+
+    private File createTree(String name, int fileSize) throws IOException
+    {
+        File dir = new File(_root, name);
+        File subdir = new File(dir, "src");
+        subdir.mkdirs();
+
+        FileOutputStream out = new FileOutputStream(new File(subdir, "Main.java"));
+        try
+        {
+            out.write(new byte[fileSize]);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return dir;
+    }
+
+    private static long getSize(File dir)
+    {
+        File subdir = new File(dir, "src");
+
+        return dir.length() + subdir.length() + new File(subdir, "Main.java").length();
+    }
+}
@@ -0,0 +1,205 @@
+package support.utils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import support.utils.ArchiveUtilities.ArchiveFormat;
+import support.utils.posix.FilePermission;
+
+/**
+ * Measures {@link ArchiveUtilitiesImpl#extractArchive(File, File, FileFilter, String)} for a large handin made up of
+ * several parts when extracting a single small file, as a part with a narrow inclusion filter does, and when extracting
+ * everything. For zips the time is compared with reading the whole archive as a stream, which is how zips were
+ * extracted before the central directory was used. Changing the group and permissions of extracted files is stubbed
+ * out so that only reading and decompressing the archive is measured. Not run as part of the test suite; run
+ * {@link #main} directly.
+ */
+public class ArchiveExtractionBenchmark
+{
+    private static final int NUM_PARTS = 4;
+    private static final int FILES_PER_PART = 10;
+    private static final int FILE_SIZE = 5 * 1024 * 1024;
+    private static final int SMALL_FILE_SIZE = 2 * 1024;
+    private static final int ITERATIONS = 3;
+
+    //The single small file extracted for the last part, as late in the archive as possible
+    private static final String SMALL_FILE = "handin/part" + (NUM_PARTS - 1) + "/README.txt";
+
+    public static void main(String[] args) throws Exception
+    {
+        File workDir = File.createTempFile("archiveBenchmark", "");
+        workDir.delete();
+        workDir.mkdir();
+
+        ArchiveUtilitiesImpl archiveUtils = new ArchiveUtilitiesImpl(new NoPermissionsFileSystemUtilities());
+        System.out.println(String.format("%d parts x %d files x %d MB, one %d KB file per part", NUM_PARTS,
+                FILES_PER_PART, FILE_SIZE / 1024 / 1024, SMALL_FILE_SIZE / 1024));
+        System.out.println();
+        System.out.println(String.format("%-8s %10s %-20s %12s", "format", "size (MB)", "extraction", "time (ms)"));
+
+        for(ArchiveFormat format : ArchiveFormat.values())
+        {
+            File archive = new File(workDir, "handin." + format.getDefaultFileExtension());
+            createArchive(archive, format);
+            String size = String.format("%.1f", archive.length() / 1024.0 / 1024.0);
+
+            if(format == ArchiveFormat.ZIP)
+            {
+                printResult(format, size, "one file (stream)",
+                        timeStreamedZipExtraction(archive, new File(workDir, "out"), new SingleFileFilter()));
+            }
+            printResult(format, size, "one file",
+                    timeExtraction(archiveUtils, archive, new File(workDir, "out"), new SingleFileFilter()));
+            printResult(format, size, "everything",
+                    timeExtraction(archiveUtils, archive, new File(workDir, "out"), new AlwaysAcceptingFileFilter()));
+
+            archive.delete();
+        }
+
+        new FileSystemUtilitiesImpl().deleteFiles(Collections.singleton(workDir));
+    }
+
+    private static void printResult(ArchiveFormat format, String size, String extraction, double millis)
+    {
+        System.out.println(String.format("%-8s %10s %-20s %12.1f", format.getDefaultFileExtension(), size,
+                extraction, millis));
+    }
+
+    private static double timeExtraction(ArchiveUtilitiesImpl archiveUtils, File archive, File dstDir,
+            FileFilter filter) throws Exception
+    {
+        long total = 0;
+        for(int i = 0; i < ITERATIONS; i++)
+        {
+            dstDir.mkdir();
+            long start = System.nanoTime();
+            archiveUtils.extractArchive(archive, dstDir, filter, null);
+            total += System.nanoTime() - start;
+            new FileSystemUtilitiesImpl().deleteFiles(Collections.singleton(dstDir));
+        }
+
+        return total / 1e6 / ITERATIONS;
+    }
+
+    /**
+     * Extracts the accepted entries of a zip by reading it as a stream, decompressing every entry.
+     */
+    private static double timeStreamedZipExtraction(File archive, File dstDir, FileFilter filter) throws Exception
+    {
+        long total = 0;
+        for(int i = 0; i < ITERATIONS; i++)
+        {
+            dstDir.mkdir();
+            long start = System.nanoTime();
+            ZipArchiveInputStream in = new ZipArchiveInputStream(new FileInputStream(archive));
+            for(ArchiveEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+            {
+                File file = new File(dstDir, entry.getName());
+                if(filter.accept(file) && !entry.isDirectory())
+                {
+                    file.getParentFile().mkdirs();
+                    OutputStream out = new FileOutputStream(file);
+                    IOUtils.copy(in, out);
+                    out.close();
+                }
+            }
+            in.close();
+            total += System.nanoTime() - start;
+            new FileSystemUtilitiesImpl().deleteFiles(Collections.singleton(dstDir));
+        }
+
+        return total / 1e6 / ITERATIONS;
+    }
+
+    private static void createArchive(File archive, ArchiveFormat format) throws IOException
+    {
+        ArchiveOutputStream out;
+        if(format == ArchiveFormat.ZIP)
+        {
+            out = new ZipArchiveOutputStream(archive);
+        }
+        else if(format == ArchiveFormat.TAR)
+        {
+            out = new TarArchiveOutputStream(new FileOutputStream(archive));
+        }
+        else
+        {
+            out = new TarArchiveOutputStream(new GZIPOutputStream(new FileOutputStream(archive)));
+        }
+
+        //Source code like data: compressible, but not trivially so
+        Random random = new Random(42);
+        byte[] alphabet = "abcdefghijklmnopqrstuvwxyz{}();= \n".getBytes("US-ASCII");
+        byte[] data = new byte[FILE_SIZE];
+        for(int part = 0; part < NUM_PARTS; part++)
+        {
+            String partDir = "handin/part" + part + "/";
+            putEntry(out, format, partDir + "README.txt", new byte[SMALL_FILE_SIZE], SMALL_FILE_SIZE);
+            for(int i = 0; i < FILES_PER_PART; i++)
+            {
+                for(int b = 0; b < data.length; b++)
+                {
+                    data[b] = alphabet[random.nextInt(alphabet.length)];
+                }
+                putEntry(out, format, partDir + "File" + i + ".java", data, data.length);
+            }
+        }
+        out.close();
+    }
+
+    private static void putEntry(ArchiveOutputStream out, ArchiveFormat format, String name, byte[] data, int length)
+            throws IOException
+    {
+        ArchiveEntry entry;
+        if(format == ArchiveFormat.ZIP)
+        {
+            entry = new ZipArchiveEntry(name);
+        }
+        else
+        {
+            TarArchiveEntry tarEntry = new TarArchiveEntry(name);
+            tarEntry.setSize(length);
+            entry = tarEntry;
+        }
+        out.putArchiveEntry(entry);
+        out.write(data, 0, length);
+        out.closeArchiveEntry();
+    }
+
+    private static class SingleFileFilter implements FileFilter
+    {
+        @Override
+        public boolean accept(File file)
+        {
+            return file.getAbsolutePath().endsWith(SMALL_FILE);
+        }
+    }
+
+    private static class NoPermissionsFileSystemUtilities extends FileSystemUtilitiesImpl
+    {
+        @Override
+        public void chmod(File file, Set<FilePermission> permissions) { }
+
+        @Override
+        public void changeGroup(File file, String group) { }
+
+        @Override
+        public void changeGroupAndChmod(Map<File, Set<FilePermission>> permissions, String group) { }
+    }
+}
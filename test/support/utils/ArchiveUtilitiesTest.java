@@ -0,0 +1,79 @@
+package support.utils;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.junit.Test;
+import support.utils.ArchiveUtilities.ArchiveFormat;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ArchiveUtilitiesImpl}.
+ */
+public class ArchiveUtilitiesTest
+{
+    @Test
+    public void testArchiveDataSourceIsBackedByTempFile() throws IOException
+    {
+        FileSystemUtilities fileSystemUtils = new FileSystemUtilitiesImpl();
+        File src = fileSystemUtils.createTempFile("handin", "");
+        src.delete();
+        File srcDir = new File(src, "src");
+        srcDir.mkdirs();
+        FileOutputStream out = new FileOutputStream(new File(srcDir, "Main.java"));
+        try
+        {
+            out.write(new byte[64 * 1024]);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        TempFileDataSource dataSource = new ArchiveUtilitiesImpl(fileSystemUtils).createArchiveDataSource("handin",
+                ArchiveFormat.ZIP, src, new AlwaysAcceptingFileFilter());
+        assertEquals("handin.zip", dataSource.getName());
+        assertEquals(ArchiveFormat.ZIP.getMimeType(), dataSource.getContentType());
+
+        //The data may be read once per email it is attached to
+        Set<String> entries = getEntryNames(dataSource.getInputStream());
+        assertEquals(3, entries.size());
+        assertEquals(entries, getEntryNames(dataSource.getInputStream()));
+
+        dataSource.delete();
+        try
+        {
+            dataSource.getInputStream();
+            fail("Data source should not be readable once deleted");
+        }
+        catch(IOException e) { }
+
+        fileSystemUtils.deleteFilesSilently(ImmutableList.of(src));
+    }
+
+    private static Set<String> getEntryNames(InputStream in) throws IOException
+    {
+        Set<String> names = new HashSet<String>();
+        ZipArchiveInputStream zipStream = new ZipArchiveInputStream(in);
+        try
+        {
+            for(ArchiveEntry entry = zipStream.getNextEntry(); entry != null; entry = zipStream.getNextEntry())
+            {
+                names.add(entry.getName());
+            }
+        }
+        finally
+        {
+            zipStream.close();
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,70 @@
+package support.utils;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import support.utils.posix.FilePermission;
+import support.utils.posix.NativeFunctions;
+
+/**
+ * Measures the time taken to change the group and permissions of the files of an extracted handin one file at a time,
+ * as extraction used to, and with a single call to
+ * {@link FileSystemUtilities#changeGroupAndChmod(java.util.Map, String)}. The files are given the user's primary group.
+ * Not run as part of the test suite; run {@link #main} directly.
+ */
+public class ExtractionPermissionsBenchmark
+{
+    private static final int NUM_FILES = 2000;
+    private static final int ITERATIONS = 5;
+
+    private static final Set<FilePermission> PERMISSIONS = ImmutableSet.of(
+        FilePermission.OWNER_READ, FilePermission.OWNER_WRITE,
+        FilePermission.GROUP_READ, FilePermission.GROUP_WRITE);
+
+    public static void main(String[] args) throws Exception
+    {
+        NativeFunctions nativeFunctions = new NativeFunctions();
+        String group = nativeFunctions.getGroupName(nativeFunctions.getPrimaryUserGroupId());
+        FileSystemUtilities fileSystemUtils = new FileSystemUtilitiesImpl();
+
+        File dir = File.createTempFile("permissionsBenchmark", "");
+        dir.delete();
+        dir.mkdir();
+        Map<File, Set<FilePermission>> permissions = new LinkedHashMap<File, Set<FilePermission>>();
+        for(int i = 0; i < NUM_FILES; i++)
+        {
+            File file = new File(dir, "File" + i + ".java");
+            file.createNewFile();
+            permissions.put(file, PERMISSIONS);
+        }
+
+        //Warm up the native library and the group lookup
+        fileSystemUtils.changeGroupAndChmod(permissions, group);
+
+        long perFile = 0;
+        long batched = 0;
+        for(int i = 0; i < ITERATIONS; i++)
+        {
+            long start = System.nanoTime();
+            for(File file : permissions.keySet())
+            {
+                fileSystemUtils.changeGroup(file, group);
+                fileSystemUtils.chmod(file, PERMISSIONS);
+            }
+            perFile += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            fileSystemUtils.changeGroupAndChmod(permissions, group);
+            batched += System.nanoTime() - start;
+        }
+
+        System.out.println(String.format("%d files, group %s", NUM_FILES, group));
+        System.out.println(String.format("per file: %.1f ms", perFile / 1e6 / ITERATIONS));
+        System.out.println(String.format("batched:  %.1f ms", batched / 1e6 / ITERATIONS));
+
+        fileSystemUtils.deleteFiles(Collections.singleton(dir));
+    }
+}
@@ -1,9 +1,17 @@
 package support.utils;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import org.junit.Test;
+import support.utils.posix.FilePermission;
 import static org.junit.Assert.*;
 import static org.easymock.EasyMock.*;
 
@@ -41,4 +49,52 @@ public class FileSystemUtilitiesTest
         assertTrue(response.contains(subFile1));
         assertTrue(response.contains(subFile2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMakeDirectory_PermissionsDeferred() throws IOException
+    {
+        FileSystemUtilities fileSystemUtils = new FileSystemUtilitiesImpl();
+        File root = fileSystemUtils.createTempFile("root", "");
+        root.delete();
+        File dir = new File(new File(root, "parent"), "child");
+
+        //The group does not exist, so changing it would fail
+        Set<File> created = fileSystemUtils.makeDirectory(dir, "nosuchgroup", false);
+        assertEquals(ImmutableSet.of(root, dir.getParentFile(), dir), created);
+        assertTrue(dir.isDirectory());
+        assertTrue(fileSystemUtils.makeDirectory(dir, "nosuchgroup", false).isEmpty());
+
+        fileSystemUtils.deleteFilesSilently(ImmutableList.of(root));
+    }
+
+    @Test
+    public void testChangeGroupAndChmod_FallsBackToEachFile() throws IOException
+    {
+        final Map<File, String> changes = new LinkedHashMap<File, String>();
+        FileSystemUtilities fileSystemUtils = new FileSystemUtilitiesImpl()
+        {
+            @Override
+            public void changeGroup(File file, String group)
+            {
+                changes.put(file, group);
+            }
+
+            @Override
+            public void chmod(File file, Set<FilePermission> permissions)
+            {
+                changes.put(file, changes.get(file) + " " + permissions.size());
+            }
+        };
+        File file1 = fileSystemUtils.createTempFile("file1", "");
+        File file2 = fileSystemUtils.createTempFile("file2", "");
+
+        //Looking up the group fails for the files together, so each file is changed on its own
+        Map<File, Set<FilePermission>> permissions = new LinkedHashMap<File, Set<FilePermission>>();
+        permissions.put(file1, ImmutableSet.of(FilePermission.OWNER_READ));
+        permissions.put(file2, ImmutableSet.of(FilePermission.OWNER_READ, FilePermission.GROUP_READ));
+        fileSystemUtils.changeGroupAndChmod(permissions, "nosuchgroup");
+        assertEquals(ImmutableMap.of(file1, "nosuchgroup 1", file2, "nosuchgroup 2"), changes);
+
+        fileSystemUtils.deleteFilesSilently(ImmutableList.of(file1, file2));
+    }
+}